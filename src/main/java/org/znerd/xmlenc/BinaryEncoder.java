@@ -0,0 +1,177 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Encoder that converts bytes to Base64 or hexadecimal text and writes that text to a
+ * <code>Writer</code> in fixed-size chunks. The output only contains ASCII characters that need
+ * no escaping in XML.
+ * <p />
+ * Bytes are passed in with {@link #write(byte[],int,int)} as often as needed and the encoding is
+ * completed with {@link #finish()}. The memory used does not depend on the number of bytes:
+ * the characters are collected in the buffer passed to the constructor and written whenever it is
+ * full.
+ * <p />
+ * Instances of this class are <em>not</em> thread-safe.
+ *
+ * @since XMLenc 0.54
+ */
+final class BinaryEncoder extends Object {
+
+    /**
+     * The Base64 alphabet, see RFC 4648.
+     */
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /**
+     * The hexadecimal digits. Upper case is used, since that is the canonical representation of
+     * the XML Schema <code>hexBinary</code> type.
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The number of characters that is written at most for a group of input bytes, including a
+     * line break.
+     */
+    private static final int MAX_GROUP_LENGTH = 8;
+
+    /**
+     * Constructs a new <code>BinaryEncoder</code>.
+     *
+     * @param out        the writer to write the text to, not <code>null</code>.
+     * @param buffer     the buffer to collect the text in, not <code>null</code>. Its length must
+     *                   be at least 16.
+     * @param base64     <code>true</code> for Base64, <code>false</code> for hexadecimal.
+     * @param lineLength the maximum number of characters on a line, or 0 if no line breaks should
+     *                   be written.
+     */
+    BinaryEncoder(Writer out, char[] buffer, boolean base64, int lineLength) {
+        _out = out;
+        _buffer = buffer;
+        _base64 = base64;
+        _lineLength = lineLength;
+    }
+
+    /**
+     * The writer to write the text to. Never <code>null</code>.
+     */
+    private final Writer _out;
+
+    /**
+     * The buffer the text is collected in. Never <code>null</code>.
+     */
+    private final char[] _buffer;
+
+    /**
+     * Flag that indicates whether Base64 or hexadecimal is written.
+     */
+    private final boolean _base64;
+
+    /**
+     * The maximum number of characters on a line, or 0 if no line breaks are written.
+     */
+    private final int _lineLength;
+
+    /**
+     * The number of characters in the buffer.
+     */
+    private int _length;
+
+    /**
+     * The number of characters written on the current line.
+     */
+    private int _column;
+
+    /**
+     * The bytes not yet encoded, since Base64 encodes groups of 3 bytes. The most recent byte is
+     * in the lowest 8 bits.
+     */
+    private int _pending;
+
+    /**
+     * The number of bytes in {@link #_pending}, 0, 1 or 2.
+     */
+    private int _pendingCount;
+
+    /**
+     * Encodes the specified bytes.
+     *
+     * @param b   the byte array, not <code>null</code>.
+     * @param off the index of the first byte to encode.
+     * @param len the number of bytes to encode.
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        if (_base64) {
+            for (int i = off; i < end; i++) {
+                _pending = (_pending << 8) | (b[i] & 0xFF);
+                if (++_pendingCount == 3) {
+                    ensureCapacity();
+                    put(BASE64[(_pending >> 18) & 0x3F]);
+                    put(BASE64[(_pending >> 12) & 0x3F]);
+                    put(BASE64[(_pending >> 6) & 0x3F]);
+                    put(BASE64[_pending & 0x3F]);
+                    _pending = 0;
+                    _pendingCount = 0;
+                }
+            }
+        } else {
+            for (int i = off; i < end; i++) {
+                ensureCapacity();
+                put(HEX[(b[i] >> 4) & 0x0F]);
+                put(HEX[b[i] & 0x0F]);
+            }
+        }
+    }
+
+    /**
+     * Encodes the remaining bytes, adding padding if needed, and writes all text still in the
+     * buffer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void finish() throws IOException {
+        if (_pendingCount > 0) {
+            ensureCapacity();
+            int bits = _pending << (8 * (3 - _pendingCount));
+            put(BASE64[(bits >> 18) & 0x3F]);
+            put(BASE64[(bits >> 12) & 0x3F]);
+            put(_pendingCount == 2 ? BASE64[(bits >> 6) & 0x3F] : '=');
+            put('=');
+            _pendingCount = 0;
+        }
+        if (_length > 0) {
+            _out.write(_buffer, 0, _length);
+            _length = 0;
+        }
+    }
+
+    /**
+     * Writes the buffer if there may not be room for another group of characters.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void ensureCapacity() throws IOException {
+        if (_length > _buffer.length - MAX_GROUP_LENGTH) {
+            _out.write(_buffer, 0, _length);
+            _length = 0;
+        }
+    }
+
+    /**
+     * Adds a character to the buffer, preceded by a line break if the current line is full.
+     *
+     * @param c the character to add.
+     */
+    private void put(char c) {
+        if (_lineLength > 0 && _column == _lineLength) {
+            _buffer[_length++] = '\n';
+            _column = 0;
+        }
+        _buffer[_length++] = c;
+        _column++;
+    }
+}
@@ -0,0 +1,317 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that writes the characters passed to it as the contents of a CDATA section. Instances
+ * are obtained from {@link XMLOutputter#cdataWriter()}; {@link RawXMLOutputter} uses one
+ * internally.
+ * <p />
+ * Since a CDATA section cannot contain the string <code>"]]&gt;"</code>, the section is split
+ * between the <code>"]]"</code> and the <code>"&gt;"</code>, also if they are passed in
+ * different calls. Characters that the encoding cannot represent are written as numeric
+ * character references, by closing the section before the reference and opening a new one after
+ * it. Characters that are not allowed in XML are handled according to the invalid character
+ * policy of the {@link EscapePolicy} passed to {@link #open(Writer, XMLEncoder, EscapePolicy)},
+ * using the same character class table as the {@link XMLEncoder}. A surrogate pair may be split
+ * between two calls; a high surrogate that is still unpaired when the section is closed is
+ * handled as an invalid character.
+ * <p />
+ * Instances of this class are reused by their outputter and are <em>not</em> thread-safe.
+ *
+ * @since XMLenc 0.54
+ */
+final class CDATAWriter extends Writer {
+
+    /**
+     * The characters that start a CDATA section.
+     */
+    private static final char[] START = "<![CDATA[".toCharArray();
+
+    /**
+     * The characters that end a CDATA section.
+     */
+    private static final char[] END = "]]>".toCharArray();
+
+    /**
+     * The characters that end a CDATA section and start a new one.
+     */
+    private static final char[] SPLIT = "]]><![CDATA[".toCharArray();
+
+    /**
+     * Constructs a new <code>CDATAWriter</code> for the specified outputter.
+     *
+     * @param outputter the outputter that is notified when the section is closed, or
+     *                  <code>null</code> if no notification is needed.
+     */
+    CDATAWriter(XMLOutputter outputter) {
+        _outputter = outputter;
+    }
+
+    /**
+     * The outputter that is notified when the section is closed, or <code>null</code>.
+     */
+    private final XMLOutputter _outputter;
+
+    /**
+     * The writer to write the section to. Only <code>null</code> before the first section.
+     */
+    private Writer _out;
+
+    /**
+     * The encoder that determines which characters can be written as-is. Only <code>null</code>
+     * before the first section.
+     */
+    private XMLEncoder _encoder;
+
+    /**
+     * The character class table for text, see {@link EscapePolicy}. Only the classes of invalid
+     * characters are used, since nothing is escaped within a CDATA section. Only
+     * <code>null</code> before the first section.
+     */
+    private byte[] _table;
+
+    /**
+     * Flag that indicates whether a section is currently open.
+     */
+    private boolean _open;
+
+    /**
+     * The number of consecutive <code>']'</code> characters just written, up to 2.
+     */
+    private int _brackets;
+
+    /**
+     * A high surrogate at the end of the last call, held back until the next character is known,
+     * or 0.
+     */
+    private char _highSurrogate;
+
+    /**
+     * Buffer that single characters and strings are copied into. Allocated on first use.
+     */
+    private char[] _buffer;
+
+    /**
+     * Opens a new CDATA section.
+     *
+     * @param out     the writer to write the section to, not <code>null</code>.
+     * @param encoder the encoder for the output, not <code>null</code>.
+     * @param policy  the escape policy whose invalid character policy is applied, not
+     *                <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void open(Writer out, XMLEncoder encoder, EscapePolicy policy) throws IOException {
+        _out = out;
+        _encoder = encoder;
+        _table = encoder.getTextTable(policy);
+        _brackets = 0;
+        _highSurrogate = 0;
+        _open = true;
+        _out.write(START, 0, START.length);
+    }
+
+    /**
+     * Writes characters to the CDATA section.
+     *
+     * @param cbuf the characters, not <code>null</code>.
+     * @param off  the index of the first character to write.
+     * @param len  the number of characters to write.
+     * @throws InvalidXMLException if one of the characters is invalid in XML.
+     * @throws IOException         if the section is closed or if an I/O error occurs.
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws InvalidXMLException, IOException {
+
+        // Check state
+        if (!_open) {
+            throw new IOException("The CDATA section is closed.");
+        }
+
+        int end = off + len;
+
+        // Complete a held back surrogate pair
+        if (_highSurrogate != 0 && off < end) {
+            char c = _highSurrogate;
+            _highSurrogate = 0;
+            if (Character.isLowSurrogate(cbuf[off])) {
+                pair(c, cbuf[off++]);
+            } else {
+                invalid(c);
+            }
+        }
+
+        // The start of the characters not written yet
+        int run = off;
+
+        for (int i = off; i < end; i++) {
+            char c = cbuf[i];
+            if (c == ']') {
+                _brackets = Math.min(_brackets + 1, 2);
+            } else if (c == '>' && _brackets == 2) {
+                _out.write(cbuf, run, i - run);
+                _out.write(SPLIT, 0, SPLIT.length);
+                run = i;
+                _brackets = 0;
+            } else if (c < EscapePolicy.NON_ASCII) {
+                if (_table[c] >= EscapePolicy.INVALID) {
+                    _out.write(cbuf, run, i - run);
+                    invalid(c);
+                    run = i + 1;
+                } else {
+                    _brackets = 0;
+                }
+            } else if (Character.isHighSurrogate(c)) {
+                _out.write(cbuf, run, i - run);
+                if (i + 1 == end) {
+                    _highSurrogate = c;
+                } else if (Character.isLowSurrogate(cbuf[i + 1])) {
+                    pair(c, cbuf[++i]);
+                } else {
+                    invalid(c);
+                }
+                run = i + 1;
+            } else if (Character.isLowSurrogate(c) || c >= 0xFFFE) {
+                _out.write(cbuf, run, i - run);
+                invalid(c);
+                run = i + 1;
+            } else if (!_encoder.canEncode(c)) {
+                _out.write(cbuf, run, i - run);
+                reference(c);
+                run = i + 1;
+            } else {
+                _brackets = 0;
+            }
+        }
+        _out.write(cbuf, run, end - run);
+    }
+
+    /**
+     * Writes a surrogate pair, as-is if the encoding supports it and as a character reference
+     * otherwise.
+     *
+     * @param high the high surrogate.
+     * @param low  the low surrogate.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void pair(char high, char low) throws IOException {
+        if (_encoder.canEncode(high)) {
+            _out.write(high);
+            _out.write(low);
+            _brackets = 0;
+        } else {
+            reference(Character.toCodePoint(high, low));
+        }
+    }
+
+    /**
+     * Handles a character that is not allowed in XML according to the invalid character policy.
+     * A stripped character leaves the count of <code>']'</code> characters unchanged, since
+     * nothing is written between them and what follows.
+     *
+     * @param c the invalid character.
+     * @throws InvalidXMLException if the policy is to throw.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private void invalid(char c) throws InvalidXMLException, IOException {
+        int cls = _table[EscapePolicy.INVALID_NON_ASCII];
+        if (cls == EscapePolicy.REPLACE) {
+            if (_encoder.canEncode(XMLEncoder.REPLACEMENT_CHARACTER)) {
+                _out.write(XMLEncoder.REPLACEMENT_CHARACTER);
+                _brackets = 0;
+            } else {
+                reference(XMLEncoder.REPLACEMENT_CHARACTER);
+            }
+        } else if (cls == EscapePolicy.REPLACE_WITH_QUESTION_MARK) {
+            _out.write('?');
+            _brackets = 0;
+        } else if (cls != EscapePolicy.STRIP) {
+            throw XMLEncoder.invalidCharacter(c);
+        }
+    }
+
+    /**
+     * Writes a character reference outside the CDATA section. Never called for a surrogate,
+     * since a character reference to a surrogate is not allowed.
+     *
+     * @param codePoint the code point of the character.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void reference(int codePoint) throws IOException {
+        _out.write(END, 0, END.length);
+        CharacterReferences.write(_out, codePoint);
+        _out.write(START, 0, START.length);
+        _brackets = 0;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        char[] buffer = getBuffer();
+        buffer[0] = (char) c;
+        write(buffer, 0, 1);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+
+        // Copy in chunks, so that a long string does not need a long array
+        char[] buffer = getBuffer();
+        while (len > 0) {
+            int count = Math.min(len, buffer.length);
+            str.getChars(off, off + count, buffer, 0);
+            write(buffer, 0, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Returns the buffer, allocating it on first use.
+     *
+     * @return the buffer, never <code>null</code>.
+     */
+    private char[] getBuffer() {
+        if (_buffer == null) {
+            _buffer = new char[1024];
+        }
+        return _buffer;
+    }
+
+    /**
+     * Flushes the underlying writer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (_out != null) {
+            _out.flush();
+        }
+    }
+
+    /**
+     * Ends the CDATA section. The outputter can be used again afterwards. Closing an already
+     * closed writer has no effect. The underlying writer is not closed. A held back high
+     * surrogate is handled as an invalid character first.
+     *
+     * @throws InvalidXMLException if a high surrogate is held back and the policy is to throw.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public void close() throws InvalidXMLException, IOException {
+        if (_open) {
+            if (_highSurrogate != 0) {
+                char c = _highSurrogate;
+                _highSurrogate = 0;
+                invalid(c);
+            }
+            _out.write(END, 0, END.length);
+            _open = false;
+            if (_outputter != null) {
+                _outputter.cdataWriterClosed();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Cache of numeric character references, such as <code>"&amp;#233;"</code>.
+ * <p />
+ * The references are stored in pages of 256 code points each. A page is created the first
+ * time one of its code points is referenced and it is kept for the lifetime of the class, so
+ * writing a character reference never allocates once the page is filled. Documents typically
+ * only use a handful of pages.
+ * <p />
+ * This class is thread-safe. Two threads may create the same page concurrently; one of them
+ * simply wins. Since the page contents are held in a <code>final</code> field, a page is
+ * always seen fully initialized.
+ *
+ * @since XMLenc 0.54
+ */
+final class CharacterReferences extends Object {
+
+    /**
+     * The number of characters reserved for each reference in a page. The longest reference is
+     * <code>"&amp;#1114111;"</code>, which has 10 characters.
+     */
+    private static final int SLOT_SIZE = 10;
+
+    /**
+     * The number of bits of the code point that select the slot within a page.
+     */
+    private static final int PAGE_BITS = 8;
+
+    /**
+     * The number of code points in a page.
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * The pages, indexed by <code>codePoint &gt;&gt; PAGE_BITS</code>. Elements are
+     * <code>null</code> until first used.
+     */
+    private static final Page[] PAGES = new Page[(Character.MAX_CODE_POINT >> PAGE_BITS) + 1];
+
+    /**
+     * Constructs a new <code>CharacterReferences</code> object. This constructor is private,
+     * since this class only has static methods.
+     */
+    private CharacterReferences() {
+    }
+
+    /**
+     * Returns the array that holds the reference for the specified code point, at
+     * {@link #getOffset(int)}.
+     *
+     * @param codePoint the code point, between <code>0</code> and
+     *                  {@link Character#MAX_CODE_POINT}.
+     * @return the array, never <code>null</code>.
+     */
+    static char[] getChars(int codePoint) {
+        int index = codePoint >> PAGE_BITS;
+        Page page = PAGES[index];
+        if (page == null) {
+            page = new Page(index << PAGE_BITS);
+            PAGES[index] = page;
+        }
+        return page._chars;
+    }
+
+    /**
+     * Returns the offset of the reference for the specified code point in the array returned
+     * by {@link #getChars(int)}.
+     *
+     * @param codePoint the code point.
+     * @return the offset.
+     */
+    static int getOffset(int codePoint) {
+        return (codePoint & (PAGE_SIZE - 1)) * SLOT_SIZE;
+    }
+
+    /**
+     * Returns the length of the reference for the specified code point, including the leading
+     * <code>"&amp;#"</code> and the trailing <code>';'</code>.
+     *
+     * @param codePoint the code point, must be &gt;= 0.
+     * @return the length, between 4 and {@link #SLOT_SIZE}.
+     */
+    static int getLength(int codePoint) {
+        int digits = 1;
+        for (int n = codePoint; n >= 10; n /= 10) {
+            digits++;
+        }
+        return digits + 3;
+    }
+
+    /**
+     * Writes the reference for the specified code point.
+     *
+     * @param out       the character stream to write to, not <code>null</code>.
+     * @param codePoint the code point, between <code>0</code> and
+     *                  {@link Character#MAX_CODE_POINT}.
+     * @throws IOException if an I/O error occurs.
+     */
+    static void write(Writer out, int codePoint) throws IOException {
+        out.write(getChars(codePoint), getOffset(codePoint), getLength(codePoint));
+    }
+
+    /**
+     * Page with the references of 256 consecutive code points.
+     */
+    private static final class Page extends Object {
+
+        /**
+         * Constructs a new <code>Page</code> and fills it.
+         *
+         * @param first the first code point in the page.
+         */
+        Page(int first) {
+            char[] chars = new char[PAGE_SIZE * SLOT_SIZE];
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                int codePoint = first + i;
+                int offset = i * SLOT_SIZE;
+                int end = offset + getLength(codePoint) - 1;
+                chars[offset] = '&';
+                chars[offset + 1] = '#';
+                chars[end] = ';';
+                for (int j = end - 1, n = codePoint; j > offset + 1; j--, n /= 10) {
+                    chars[j] = (char) ('0' + n % 10);
+                }
+            }
+            _chars = chars;
+        }
+
+        /**
+         * The references, each one at the start of a slot of {@link #SLOT_SIZE} characters.
+         */
+        final char[] _chars;
+    }
+}
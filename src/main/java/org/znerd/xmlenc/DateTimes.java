@@ -0,0 +1,228 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * Writes ISO-8601 dates and times into a character array, without creating a
+ * <code>String</code> or any other object.
+ * <p />
+ * The output is identical to that of the corresponding <code>DateTimeFormatter</code>:
+ * {@link java.time.format.DateTimeFormatter#ISO_INSTANT ISO_INSTANT} for instants,
+ * {@link java.time.format.DateTimeFormatter#ISO_OFFSET_DATE_TIME ISO_OFFSET_DATE_TIME} for
+ * date-times with an offset and
+ * {@link java.time.format.DateTimeFormatter#ISO_LOCAL_DATE ISO_LOCAL_DATE} for dates. Only years
+ * from 0 to 9999 are supported; those have a fixed layout. For other years the methods return
+ * <code>-1</code> and the caller falls back to the formatter.
+ *
+ * @since XMLenc 0.54
+ */
+final class DateTimes extends Object {
+
+    /**
+     * The maximum number of characters written, which is the length of
+     * <code>"9999-12-31T23:59:59.999999999+18:00:00"</code>.
+     */
+    static final int MAX_LENGTH = 38;
+
+    /**
+     * The number of seconds in a day.
+     */
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * The number of days from 0000-03-01 to 1970-01-01.
+     */
+    private static final long DAYS_0000_TO_1970 = 719468L;
+
+    /**
+     * The number of days in a 400-year cycle.
+     */
+    private static final int DAYS_PER_CYCLE = 146097;
+
+    /**
+     * Constructs a new <code>DateTimes</code> object. This constructor is private, since this
+     * class only has static methods.
+     */
+    private DateTimes() {
+    }
+
+    /**
+     * Writes an instant in UTC, like {@link java.time.Instant#toString()}. The fraction of the
+     * second is written with 3, 6 or 9 digits, or left out if it is zero.
+     *
+     * @param epochSecond the number of seconds since 1970-01-01T00:00:00Z.
+     * @param nano        the nanoseconds within the second, from 0 to 999,999,999.
+     * @param buf         the destination array, not <code>null</code>.
+     * @param off         the index of the first character to write; there must be room for
+     *                    {@link #MAX_LENGTH} characters from it.
+     * @return the index just past the last character written, or <code>-1</code> if the year
+     * is not between 0 and 9999.
+     */
+    static int getChars(long epochSecond, int nano, char[] buf, int off) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // Convert the day to a date in the proleptic Gregorian calendar, with
+        // years that start on March 1, so that the leap day comes last
+        long z = epochDay + DAYS_0000_TO_1970;
+        long cycle = Math.floorDiv(z, DAYS_PER_CYCLE);
+        int dayOfCycle = (int) (z - cycle * DAYS_PER_CYCLE);
+        int yearOfCycle = (dayOfCycle - dayOfCycle / 1460 + dayOfCycle / 36524 - dayOfCycle / 146096) / 365;
+        int dayOfYear = dayOfCycle - (365 * yearOfCycle + yearOfCycle / 4 - yearOfCycle / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = cycle * 400 + yearOfCycle + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+
+        int pos = date((int) year, month, day, buf, off);
+        buf[pos++] = 'T';
+        pos = time(secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60, buf, pos);
+        if (nano != 0) {
+            buf[pos++] = '.';
+            if (nano % 1000000 == 0) {
+                pos = digits(nano / 1000000, 3, buf, pos);
+            } else if (nano % 1000 == 0) {
+                pos = digits(nano / 1000, 6, buf, pos);
+            } else {
+                pos = digits(nano, 9, buf, pos);
+            }
+        }
+        buf[pos++] = 'Z';
+        return pos;
+    }
+
+    /**
+     * Writes a date-time with an offset, like
+     * {@link java.time.format.DateTimeFormatter#ISO_OFFSET_DATE_TIME}. The seconds are always
+     * written; the fraction of the second is written with as many digits as needed.
+     *
+     * @param value the date-time, not <code>null</code>.
+     * @param buf   the destination array, not <code>null</code>.
+     * @param off   the index of the first character to write; there must be room for
+     *              {@link #MAX_LENGTH} characters from it.
+     * @return the index just past the last character written, or <code>-1</code> if the year
+     * is not between 0 and 9999.
+     */
+    static int getChars(OffsetDateTime value, char[] buf, int off) {
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+
+        int pos = date(year, value.getMonthValue(), value.getDayOfMonth(), buf, off);
+        buf[pos++] = 'T';
+        pos = time(value.getHour(), value.getMinute(), value.getSecond(), buf, pos);
+
+        // Write the fraction without trailing zeroes
+        int nano = value.getNano();
+        if (nano != 0) {
+            int length = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                length--;
+            }
+            buf[pos++] = '.';
+            pos = digits(nano, length, buf, pos);
+        }
+
+        // Write the offset as Z, +hh:mm or +hh:mm:ss
+        int offset = value.getOffset().getTotalSeconds();
+        if (offset == 0) {
+            buf[pos++] = 'Z';
+        } else {
+            buf[pos++] = offset < 0 ? '-' : '+';
+            offset = Math.abs(offset);
+            pos = digits(offset / 3600, 2, buf, pos);
+            buf[pos++] = ':';
+            pos = digits(offset / 60 % 60, 2, buf, pos);
+            if (offset % 60 != 0) {
+                buf[pos++] = ':';
+                pos = digits(offset % 60, 2, buf, pos);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Writes a date, like {@link java.time.format.DateTimeFormatter#ISO_LOCAL_DATE}.
+     *
+     * @param value the date, not <code>null</code>.
+     * @param buf   the destination array, not <code>null</code>.
+     * @param off   the index of the first character to write; there must be room for 10
+     *              characters from it.
+     * @return the index just past the last character written, or <code>-1</code> if the year
+     * is not between 0 and 9999.
+     */
+    static int getChars(LocalDate value, char[] buf, int off) {
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        return date(year, value.getMonthValue(), value.getDayOfMonth(), buf, off);
+    }
+
+    /**
+     * Writes a date as <code>yyyy-mm-dd</code>.
+     *
+     * @param year  the year, from 0 to 9999.
+     * @param month the month, from 1 to 12.
+     * @param day   the day of the month, from 1 to 31.
+     * @param buf   the destination array, not <code>null</code>.
+     * @param pos   the index of the first character to write.
+     * @return the index just past the last character written.
+     */
+    private static int date(int year, int month, int day, char[] buf, int pos) {
+        pos = digits(year, 4, buf, pos);
+        buf[pos++] = '-';
+        pos = digits(month, 2, buf, pos);
+        buf[pos++] = '-';
+        return digits(day, 2, buf, pos);
+    }
+
+    /**
+     * Writes a time as <code>hh:mm:ss</code>.
+     *
+     * @param hour   the hour, from 0 to 23.
+     * @param minute the minute, from 0 to 59.
+     * @param second the second, from 0 to 59.
+     * @param buf    the destination array, not <code>null</code>.
+     * @param pos    the index of the first character to write.
+     * @return the index just past the last character written.
+     */
+    private static int time(int hour, int minute, int second, char[] buf, int pos) {
+        pos = digits(hour, 2, buf, pos);
+        buf[pos++] = ':';
+        pos = digits(minute, 2, buf, pos);
+        buf[pos++] = ':';
+        return digits(second, 2, buf, pos);
+    }
+
+    /**
+     * Writes a non-negative number with a fixed number of digits, padded with leading zeroes.
+     *
+     * @param value  the number, less than 10<sup>length</sup>.
+     * @param length the number of digits.
+     * @param buf    the destination array, not <code>null</code>.
+     * @param pos    the index of the first character to write.
+     * @return the index just past the last character written.
+     */
+    private static int digits(int value, int length, char[] buf, int pos) {
+        int end = pos + length;
+        int i = end;
+        while (i - pos >= 2) {
+            int r = value % 100;
+            value /= 100;
+            buf[--i] = Digits.ONES[r];
+            buf[--i] = Digits.TENS[r];
+        }
+        if (i > pos) {
+            buf[--i] = (char) ('0' + value);
+        }
+        return end;
+    }
+}
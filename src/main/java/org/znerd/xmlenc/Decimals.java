@@ -0,0 +1,573 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Writes the decimal representation of floating-point numbers and <code>BigDecimal</code>s into a
+ * character array, without creating a <code>String</code>.
+ * <p />
+ * A <code>double</code> or <code>float</code> is written with the shortest sequence of digits
+ * that converts back to the same value, using the Schubfach algorithm by Raffaello Giulietti. The
+ * layout is that of {@link Double#toString(double)}: plain notation for magnitudes from
+ * 10<sup>-3</sup> up to 10<sup>7</sup>, computerized scientific notation otherwise, and always at
+ * least one digit after the decimal point. Java 19 and later produce the same output; older
+ * versions sometimes produce more digits than necessary.
+ * <p />
+ * A <code>BigDecimal</code> is written in plain notation, like
+ * {@link BigDecimal#toPlainString()}.
+ *
+ * @since XMLenc 0.54
+ */
+final class Decimals extends Object {
+
+    /**
+     * The maximum number of characters written for a <code>double</code> or a
+     * <code>float</code>, which is the length of <code>"-2.2250738585072014E-308"</code>.
+     */
+    static final int MAX_DOUBLE_LENGTH = 24;
+
+    /**
+     * The smallest exponent of a <code>double</code>, so that the smallest positive value is
+     * 2<sup>Q_MIN</sup>.
+     */
+    private static final int Q_MIN = -1074;
+
+    /**
+     * The smallest significand of a normal <code>double</code>, 2<sup>52</sup>.
+     */
+    private static final long C_MIN = 1L << 52;
+
+    /**
+     * The significands of subnormal <code>double</code>s below this value are multiplied by 10
+     * first, so that the algorithm has enough precision.
+     */
+    private static final int C_TINY = 3;
+
+    /**
+     * The smallest exponent of a <code>float</code>.
+     */
+    private static final int FLOAT_Q_MIN = -149;
+
+    /**
+     * The smallest significand of a normal <code>float</code>, 2<sup>23</sup>.
+     */
+    private static final int FLOAT_C_MIN = 1 << 23;
+
+    /**
+     * The significand threshold for subnormal <code>float</code>s, see {@link #C_TINY}.
+     */
+    private static final int FLOAT_C_TINY = 8;
+
+    /**
+     * The smallest power of ten in the table {@link #G}.
+     */
+    private static final int K_MIN = -324;
+
+    /**
+     * The largest power of ten in the table {@link #G}.
+     */
+    private static final int K_MAX = 292;
+
+    /**
+     * The lower 63 bits of a <code>long</code>.
+     */
+    private static final long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+
+    /**
+     * The lower 32 bits of a <code>long</code>.
+     */
+    private static final long MASK_32 = 0xFFFFFFFFL;
+
+    /**
+     * Approximations of the powers of ten, as pairs of <code>long</code>s. For each
+     * <code>k</code> from {@link #K_MIN} to {@link #K_MAX}, let 10<sup>-k</sup> = &beta;
+     * 2<sup>r</sup> with 2<sup>125</sup> &lt;= &beta; &lt; 2<sup>126</sup>, and let
+     * <code>g</code> = &lfloor;&beta;&rfloor; + 1. Then element <code>2 (k - K_MIN)</code> holds
+     * the upper 63 bits of <code>g</code> and the next element holds the lower 63 bits.
+     */
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger p = BigInteger.TEN.pow(-k);
+                g = r <= 0 ? p.shiftLeft(-r) : p.shiftRight(r);
+            } else {
+                g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    /**
+     * Constructs a new <code>Decimals</code> object. This constructor is private, since this
+     * class only has static methods.
+     */
+    private Decimals() {
+    }
+
+    /**
+     * Writes the shortest decimal representation of the specified <code>double</code>.
+     *
+     * @param v   the value to write.
+     * @param buf the destination array, not <code>null</code>.
+     * @param off the index of the first character to write; there must be room for
+     *            {@link #MAX_DOUBLE_LENGTH} characters from it.
+     * @return the index just past the last character written.
+     */
+    static int getChars(double v, char[] buf, int off) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & (C_MIN - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        boolean negative = bits < 0;
+
+        if (bq == 0x7FF) {
+            return special(t != 0, negative, buf, off);
+        } else if (bq != 0) {
+
+            // Normal value: v = c 2^q, with q = -mq
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+
+            // Integers below 2^53 are written as they are
+            if (0 < mq && mq < 53) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(negative, f, 0, buf, off);
+                }
+            }
+            return toDecimal(negative, -mq, c, 0, buf, off);
+        } else if (t != 0) {
+
+            // Subnormal value
+            return t < C_TINY ? toDecimal(negative, Q_MIN, 10 * t, -1, buf, off) : toDecimal(negative, Q_MIN, t, 0, buf, off);
+        } else {
+            return toChars(negative, 0, 0, buf, off);
+        }
+    }
+
+    /**
+     * Writes the shortest decimal representation of the specified <code>float</code>.
+     *
+     * @param v   the value to write.
+     * @param buf the destination array, not <code>null</code>.
+     * @param off the index of the first character to write; there must be room for
+     *            {@link #MAX_DOUBLE_LENGTH} characters from it.
+     * @return the index just past the last character written.
+     */
+    static int getChars(float v, char[] buf, int off) {
+        int bits = Float.floatToRawIntBits(v);
+        int t = bits & (FLOAT_C_MIN - 1);
+        int bq = (bits >>> 23) & 0xFF;
+        boolean negative = bits < 0;
+
+        if (bq == 0xFF) {
+            return special(t != 0, negative, buf, off);
+        } else if (bq != 0) {
+
+            // Normal value: v = c 2^q, with q = -mq
+            int mq = -FLOAT_Q_MIN + 1 - bq;
+            int c = FLOAT_C_MIN | t;
+
+            // Integers below 2^24 are written as they are
+            if (0 < mq && mq < 24) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(negative, f, 0, buf, off);
+                }
+            }
+            return toDecimal(negative, -mq, c, 0, buf, off);
+        } else if (t != 0) {
+
+            // Subnormal value
+            return t < FLOAT_C_TINY ? toDecimal(negative, FLOAT_Q_MIN, 10 * t, -1, buf, off) : toDecimal(negative, FLOAT_Q_MIN, t, 0, buf, off);
+        } else {
+            return toChars(negative, 0, 0, buf, off);
+        }
+    }
+
+    /**
+     * Computes the shortest decimal that rounds to the <code>double</code> c 2<sup>q</sup>
+     * and writes it.
+     *
+     * @param negative flag that indicates whether the value is negative.
+     * @param q        the binary exponent.
+     * @param c        the significand.
+     * @param dk       the correction to the decimal exponent for tiny subnormals, <code>0</code>
+     *                 or <code>-1</code>.
+     * @param buf      the destination array, not <code>null</code>.
+     * @param off      the index of the first character to write.
+     * @return the index just past the last character written.
+     */
+    private static int toDecimal(boolean negative, int q, long c, int dk, char[] buf, int off) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        // The rounding interval is asymmetric at powers of two
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        // Try a decimal with one digit less first
+        long s = vb >> 2;
+        if (s >= 100) {
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return toChars(negative, upin ? sp10 : tp10, k, buf, off);
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return toChars(negative, uin ? s : t, k + dk, buf, off);
+        }
+
+        // Both are in the rounding interval, pick the closest
+        long cmp = vb - (s + t << 1);
+        return toChars(negative, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, off);
+    }
+
+    /**
+     * Computes the shortest decimal that rounds to the <code>float</code> c 2<sup>q</sup>
+     * and writes it.
+     *
+     * @param negative flag that indicates whether the value is negative.
+     * @param q        the binary exponent.
+     * @param c        the significand.
+     * @param dk       the correction to the decimal exponent for tiny subnormals, <code>0</code>
+     *                 or <code>-1</code>.
+     * @param buf      the destination array, not <code>null</code>.
+     * @param off      the index of the first character to write.
+     * @return the index just past the last character written.
+     */
+    private static int toDecimal(boolean negative, int q, int c, int dk, char[] buf, int off) {
+        int out = c & 0x1;
+        long cb = (long) c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        // The rounding interval is asymmetric at powers of two
+        if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+
+        long g = G[2 * (k - K_MIN)] + 1;
+
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+
+        // Try a decimal with one digit less first
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (int) (s * 1717986919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return toChars(negative, upin ? sp10 : tp10, k, buf, off);
+            }
+        }
+
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return toChars(negative, uin ? s : t, k + dk, buf, off);
+        }
+
+        // Both are in the rounding interval, pick the closest
+        int cmp = vb - (s + t << 1);
+        return toChars(negative, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, off);
+    }
+
+    /**
+     * Computes the rounded product of the 126-bit <code>g</code> and <code>cp</code>, divided
+     * by 2<sup>127</sup>, for <code>double</code>s.
+     *
+     * @param g1 the upper 63 bits of <code>g</code>.
+     * @param g0 the lower 63 bits of <code>g</code>.
+     * @param cp the other factor.
+     * @return the product, rounded to odd.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * Computes the rounded product of the 64-bit <code>g</code> and <code>cp</code>, divided
+     * by 2<sup>95</sup>, for <code>float</code>s.
+     *
+     * @param g  the upper 63 bits of the 126-bit <code>g</code>, plus one.
+     * @param cp the other factor.
+     * @return the product, rounded to odd.
+     */
+    private static int rop(long g, long cp) {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+    }
+
+    /**
+     * Returns the upper 64 bits of the 128-bit product of two signed <code>long</code>s. This
+     * is <code>Math.multiplyHigh</code>, which is not available in Java 8.
+     *
+     * @param x the first factor.
+     * @param y the second factor.
+     * @return the upper 64 bits of the product.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & MASK_32;
+        long y1 = y >> 32;
+        long y2 = y & MASK_32;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & MASK_32) + x2 * y1;
+        long z0 = t >> 32;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * Returns &lfloor;q log<sub>10</sub> 2&rfloor;.
+     *
+     * @param q the exponent, between -5456721 and 5456721.
+     * @return the floor of the logarithm.
+     */
+    private static int flog10pow2(int q) {
+        return (int) (q * 661971961083L >> 41);
+    }
+
+    /**
+     * Returns &lfloor;log<sub>10</sub> (3/4 2<sup>q</sup>)&rfloor;.
+     *
+     * @param q the exponent, between -2933850 and 2933849.
+     * @return the floor of the logarithm.
+     */
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661971961083L + -274743187321L >> 41);
+    }
+
+    /**
+     * Returns &lfloor;e log<sub>2</sub> 10&rfloor;.
+     *
+     * @param e the exponent, between -1233 and 1233.
+     * @return the floor of the logarithm.
+     */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913124641741L >> 38);
+    }
+
+    /**
+     * Writes <code>"NaN"</code>, <code>"Infinity"</code> or <code>"-Infinity"</code>.
+     *
+     * @param nan      flag that indicates whether the value is not a number.
+     * @param negative flag that indicates whether the value is negative.
+     * @param buf      the destination array, not <code>null</code>.
+     * @param off      the index of the first character to write.
+     * @return the index just past the last character written.
+     */
+    private static int special(boolean nan, boolean negative, char[] buf, int off) {
+        String s = nan ? "NaN" : negative ? "-Infinity" : "Infinity";
+        s.getChars(0, s.length(), buf, off);
+        return off + s.length();
+    }
+
+    /**
+     * Writes the decimal f 10<sup>e</sup> in the layout of {@link Double#toString(double)}.
+     *
+     * @param negative flag that indicates whether to write a minus sign.
+     * @param f        the significand, at most 17 digits.
+     * @param e        the decimal exponent.
+     * @param buf      the destination array, not <code>null</code>.
+     * @param off      the index of the first character to write; there must be room for
+     *                 {@link #MAX_DOUBLE_LENGTH} characters from it.
+     * @return the index just past the last character written.
+     */
+    private static int toChars(boolean negative, long f, int e, char[] buf, int off) {
+
+        // Write the digits at the end of the available space and drop the
+        // trailing zeroes
+        int end = off + MAX_DOUBLE_LENGTH;
+        int start = Digits.getChars(f, buf, end);
+        while (end - start > 1 && buf[end - 1] == '0') {
+            end--;
+            e++;
+        }
+        int n = end - start;
+
+        // The exponent in scientific notation
+        int exp = n + e - 1;
+
+        // Now move the digits into place; System.arraycopy handles the
+        // overlap, and all other characters are written before the digits
+        // that are still to be moved
+        int pos = off;
+        if (negative) {
+            buf[pos++] = '-';
+        }
+        if (exp >= 0 && exp < 7) {
+            if (n <= exp + 1) {
+                System.arraycopy(buf, start, buf, pos, n);
+                pos += n;
+                for (int i = n; i <= exp; i++) {
+                    buf[pos++] = '0';
+                }
+                buf[pos++] = '.';
+                buf[pos++] = '0';
+            } else {
+                System.arraycopy(buf, start, buf, pos, exp + 1);
+                pos += exp + 1;
+                buf[pos++] = '.';
+                System.arraycopy(buf, start + exp + 1, buf, pos, n - exp - 1);
+                pos += n - exp - 1;
+            }
+        } else if (exp < 0 && exp >= -3) {
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for (int i = -1; i > exp; i--) {
+                buf[pos++] = '0';
+            }
+            System.arraycopy(buf, start, buf, pos, n);
+            pos += n;
+        } else {
+            buf[pos++] = buf[start];
+            buf[pos++] = '.';
+            if (n == 1) {
+                buf[pos++] = '0';
+            } else {
+                System.arraycopy(buf, start + 1, buf, pos, n - 1);
+                pos += n - 1;
+            }
+            buf[pos++] = 'E';
+            if (exp < 0) {
+                buf[pos++] = '-';
+                exp = -exp;
+            }
+            if (exp >= 100) {
+                buf[pos++] = (char) ('0' + exp / 100);
+                exp %= 100;
+                buf[pos++] = Digits.TENS[exp];
+            } else if (exp >= 10) {
+                buf[pos++] = Digits.TENS[exp];
+            }
+            buf[pos++] = Digits.ONES[exp];
+        }
+        return pos;
+    }
+
+    /**
+     * Writes the specified <code>BigDecimal</code> in plain notation, like
+     * {@link BigDecimal#toPlainString()}.
+     *
+     * @param value the value to write, not <code>null</code>.
+     * @param buf   the destination array, not <code>null</code>.
+     * @param off   the index of the first character to write.
+     * @return the index just past the last character written, or <code>-1</code> if the
+     * unscaled value does not fit in a <code>long</code> or if the result does not fit in the
+     * array; in that case the contents of the array are undefined.
+     */
+    static int getChars(BigDecimal value, char[] buf, int off) {
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() > 63 || buf.length - off < Digits.MAX_LONG_LENGTH) {
+            return -1;
+        }
+        long u = unscaled.longValue();
+        int scale = value.scale();
+        boolean negative = u < 0;
+
+        // Write the digits at the end of the array
+        int start = Digits.getChars(u, buf, buf.length);
+        if (negative) {
+            start++;
+        }
+        int n = buf.length - start;
+
+        // Check that the result fits
+        long length;
+        if (u == 0 && scale < 0) {
+            length = 1;
+        } else if (scale <= 0) {
+            length = (long) n - scale;
+        } else if (n > scale) {
+            length = n + 1;
+        } else {
+            length = (long) scale + 2;
+        }
+        if (negative) {
+            length++;
+        }
+        if (length > buf.length - off) {
+            return -1;
+        }
+
+        // Move the digits into place; all other characters are written
+        // before the digits that are still to be moved
+        int pos = off;
+        if (negative) {
+            buf[pos++] = '-';
+        }
+        if (u == 0 && scale < 0) {
+            buf[pos++] = '0';
+        } else if (scale <= 0) {
+            System.arraycopy(buf, start, buf, pos, n);
+            pos += n;
+            for (int i = scale; i < 0; i++) {
+                buf[pos++] = '0';
+            }
+        } else if (n > scale) {
+            int intLength = n - scale;
+            System.arraycopy(buf, start, buf, pos, intLength);
+            pos += intLength;
+            buf[pos++] = '.';
+            System.arraycopy(buf, start + intLength, buf, pos, scale);
+            pos += scale;
+        } else {
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for (int i = n; i < scale; i++) {
+                buf[pos++] = '0';
+            }
+            System.arraycopy(buf, start, buf, pos, n);
+            pos += n;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,122 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+/**
+ * Writes the decimal representation of numbers into a character array, without creating a
+ * <code>String</code>. The output is identical to {@link Integer#toString(int)} and
+ * {@link Long#toString(long)}.
+ * <p />
+ * Digits are produced two at a time, from a table of the 100 two-digit pairs, from right to left.
+ * The caller passes the index just past the end of the space to fill, and gets back the index of
+ * the first character written.
+ *
+ * @since XMLenc 0.54
+ */
+final class Digits extends Object {
+
+    /**
+     * The maximum number of characters written for a <code>long</code>, which is the length of
+     * <code>"-9223372036854775808"</code>.
+     */
+    static final int MAX_LONG_LENGTH = 20;
+
+    /**
+     * The tens digit of each number from 0 to 99.
+     */
+    static final char[] TENS = new char[100];
+
+    /**
+     * The ones digit of each number from 0 to 99.
+     */
+    static final char[] ONES = new char[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            TENS[i] = (char) ('0' + i / 10);
+            ONES[i] = (char) ('0' + i % 10);
+        }
+    }
+
+    /**
+     * Constructs a new <code>Digits</code> object. This constructor is private, since this class
+     * only has static methods.
+     */
+    private Digits() {
+    }
+
+    /**
+     * Writes the decimal representation of the specified <code>int</code>, ending just before
+     * the specified index.
+     *
+     * @param value the value to write.
+     * @param buf   the destination array, not <code>null</code>.
+     * @param end   the index just past the last character to write; there must be room for
+     *              at least 11 characters before it.
+     * @return the index of the first character written.
+     */
+    static int getChars(int value, char[] buf, int end) {
+        int pos = end;
+
+        // Work with a negative number, so that Integer.MIN_VALUE needs no
+        // special treatment
+        boolean negative = value < 0;
+        int i = negative ? value : -value;
+        while (i <= -100) {
+            int q = i / 100;
+            int r = q * 100 - i;
+            i = q;
+            buf[--pos] = ONES[r];
+            buf[--pos] = TENS[r];
+        }
+        if (i <= -10) {
+            buf[--pos] = ONES[-i];
+            buf[--pos] = TENS[-i];
+        } else {
+            buf[--pos] = (char) ('0' - i);
+        }
+        if (negative) {
+            buf[--pos] = '-';
+        }
+        return pos;
+    }
+
+    /**
+     * Writes the decimal representation of the specified <code>long</code>, ending just before
+     * the specified index.
+     *
+     * @param value the value to write.
+     * @param buf   the destination array, not <code>null</code>.
+     * @param end   the index just past the last character to write; there must be room for
+     *              at least {@link #MAX_LONG_LENGTH} characters before it.
+     * @return the index of the first character written.
+     */
+    static int getChars(long value, char[] buf, int end) {
+        if (value == (int) value) {
+            return getChars((int) value, buf, end);
+        }
+
+        int pos = end;
+
+        // Reduce the value with long divisions until it fits in an int
+        boolean negative = value < 0;
+        long i = negative ? value : -value;
+        while (i < Integer.MIN_VALUE) {
+            long q = i / 100;
+            int r = (int) (q * 100 - i);
+            i = q;
+            buf[--pos] = ONES[r];
+            buf[--pos] = TENS[r];
+        }
+
+        // The remaining digits are all significant
+        pos = getChars((int) i, buf, pos);
+
+        // Replace the minus sign written for the remaining part
+        if (negative) {
+            buf[pos] = '-';
+        } else {
+            pos++;
+        }
+        return pos;
+    }
+}
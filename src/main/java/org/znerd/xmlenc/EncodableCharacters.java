@@ -0,0 +1,135 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of the characters in the Basic Multilingual Plane that a character set can encode. The
+ * {@link XMLEncoder} uses it to decide which non-ASCII characters must be written as numeric
+ * character references.
+ * <p />
+ * The set is stored as a bitmap of 65536 bits (8 kilobytes). It is computed once per character
+ * set, using {@link CharsetEncoder#canEncode(char)}, and then cached for the lifetime of the
+ * class.
+ * <p />
+ * Instances of this class are immutable and can be shared between threads.
+ *
+ * @since XMLenc 0.54
+ */
+final class EncodableCharacters extends Object {
+
+    /**
+     * The cached instances, keyed by canonical character set name.
+     */
+    private static final ConcurrentHashMap<String, EncodableCharacters> CACHE = new ConcurrentHashMap<String, EncodableCharacters>();
+
+    /**
+     * Returns the set of encodable characters for the specified encoding.
+     *
+     * @param encoding the name of the encoding, not <code>null</code>.
+     * @return the set of encodable characters, or <code>null</code> if the encoding is not
+     * supported by this JVM or if it cannot be used for encoding.
+     */
+    static EncodableCharacters forName(String encoding) {
+        Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalCharsetNameException exception) {
+            return null;
+        } catch (UnsupportedCharsetException exception) {
+            return null;
+        }
+        if (!charset.canEncode()) {
+            return null;
+        }
+
+        EncodableCharacters encodable = CACHE.get(charset.name());
+        if (encodable == null) {
+            encodable = new EncodableCharacters(charset);
+            EncodableCharacters existing = CACHE.putIfAbsent(charset.name(), encodable);
+            if (existing != null) {
+                encodable = existing;
+            }
+        }
+        return encodable;
+    }
+
+    /**
+     * Constructs a new <code>EncodableCharacters</code> for the specified character set.
+     *
+     * @param charset the character set, not <code>null</code>.
+     */
+    private EncodableCharacters(Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder();
+        _bits = new long[(Character.MAX_VALUE + 1) >> 6];
+
+        boolean complete = true;
+        boolean asciiOnly = true;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                continue;
+            } else if (encoder.canEncode((char) c)) {
+                _bits[c >> 6] |= 1L << c;
+                if (c >= 0x80) {
+                    asciiOnly = false;
+                }
+            } else {
+                complete = false;
+            }
+        }
+        _complete = complete && encoder.canEncode("\ud800\udc00");
+        _asciiOnly = asciiOnly;
+    }
+
+    /**
+     * The bitmap. Bit <code>c &amp; 63</code> of element <code>c &gt;&gt; 6</code> is set if
+     * character <code>c</code> can be encoded.
+     */
+    private final long[] _bits;
+
+    /**
+     * Flag that indicates whether all Unicode characters can be encoded.
+     */
+    private final boolean _complete;
+
+    /**
+     * Flag that indicates whether only ASCII characters can be encoded.
+     */
+    private final boolean _asciiOnly;
+
+    /**
+     * Determines whether all Unicode characters, including the supplementary characters, can be
+     * encoded.
+     *
+     * @return <code>true</code> if the character set covers all of Unicode, <code>false</code>
+     * otherwise.
+     */
+    boolean isComplete() {
+        return _complete;
+    }
+
+    /**
+     * Determines whether no characters outside the ASCII range can be encoded.
+     *
+     * @return <code>true</code> if only ASCII characters can be encoded, <code>false</code>
+     * otherwise.
+     */
+    boolean isASCIIOnly() {
+        return _asciiOnly;
+    }
+
+    /**
+     * Determines whether the specified character can be encoded. Surrogates are never
+     * considered encodable on their own.
+     *
+     * @param c the character.
+     * @return <code>true</code> if the character can be encoded, <code>false</code> otherwise.
+     */
+    boolean canEncode(int c) {
+        return (_bits[c >> 6] & (1L << c)) != 0;
+    }
+}
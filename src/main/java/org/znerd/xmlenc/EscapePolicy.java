@@ -0,0 +1,328 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+/**
+ * Policy that determines which characters are escaped in text and attribute values. The
+ * characters that must be escaped according to the XML 1.0 Specification are always escaped;
+ * a policy can specify additional ASCII characters that should be written as character
+ * references, for example <code>'/'</code> or <code>']'</code> when embedding XML in other
+ * documents.
+ * <p />
+ * A policy precomputes a character class table for every combination of encoding class
+ * (7-bit or Unicode), quotation mark (none for text, <code>'"'</code> or <code>'\''</code>
+ * for attribute values) and ampersand mode. The {@link XMLEncoder} looks up the class of each
+ * character in one of these tables, so a custom policy is exactly as fast as the
+ * {@link #DEFAULT default policy}.
+ * <p />
+ * A policy also determines what happens to characters that are not allowed in XML, see
+ * {@link InvalidCharacterPolicy}. They are handled by the same table lookup, so a policy that
+ * strips or replaces them does not slow down writing valid text.
+ * <p />
+ * Instances of this class are immutable and can be shared between threads.
+ *
+ * @since XMLenc 0.54
+ */
+public final class EscapePolicy extends Object {
+
+    /**
+     * Character class for characters that are written as-is.
+     */
+    static final byte PLAIN = 0;
+
+    /**
+     * Character class for the less-than character, written as <code>"&amp;lt;"</code>.
+     */
+    static final byte LESS_THAN = 1;
+
+    /**
+     * Character class for the greater-than character, written as <code>"&amp;gt;"</code>.
+     */
+    static final byte GREATER_THAN = 2;
+
+    /**
+     * Character class for the ampersand, written as <code>"&amp;amp;"</code>.
+     */
+    static final byte AMPERSAND = 3;
+
+    /**
+     * Character class for the quote character, written as <code>"&amp;quot;"</code>.
+     */
+    static final byte QUOTE = 4;
+
+    /**
+     * Character class for the apostrophe, written as <code>"&amp;apos;"</code>.
+     */
+    static final byte APOSTROPHE = 5;
+
+    /**
+     * Character class for characters that are written as a numeric character reference.
+     */
+    static final byte CHARACTER_REFERENCE = 6;
+
+    /**
+     * Character class for characters that are not allowed in XML, if they cause an exception.
+     */
+    static final byte INVALID = 7;
+
+    /**
+     * Character class for characters that are not allowed in XML, if they are left out.
+     */
+    static final byte STRIP = 8;
+
+    /**
+     * Character class for characters that are not allowed in XML, if they are replaced by the
+     * replacement character U+FFFD.
+     */
+    static final byte REPLACE = 9;
+
+    /**
+     * Character class for characters that are not allowed in XML, if they are replaced by a
+     * question mark.
+     */
+    static final byte REPLACE_WITH_QUESTION_MARK = 10;
+
+    /**
+     * The index in each table that holds the class of all non-ASCII characters.
+     */
+    static final int NON_ASCII = 128;
+
+    /**
+     * The index in each table that holds the class of the non-ASCII characters that are not allowed
+     * in XML: unpaired surrogates, U+FFFE and U+FFFF.
+     */
+    static final int INVALID_NON_ASCII = 129;
+
+    /**
+     * The default policy. It only escapes the characters that must be escaped.
+     */
+    public static final EscapePolicy DEFAULT = new EscapePolicy("", InvalidCharacterPolicy.THROW);
+
+    /**
+     * Returns a policy that escapes the specified characters, in addition to the characters
+     * that must be escaped according to the XML 1.0 Specification.
+     *
+     * @param characters the additional characters to escape, not <code>null</code>. Only ASCII
+     *                   characters that are valid in XML are allowed.
+     * @return the policy, never <code>null</code>.
+     * @throws IllegalArgumentException if <code>characters == null</code> or if it contains a
+     *                                  character that is not ASCII or that is not valid in XML.
+     */
+    public static EscapePolicy escaping(String characters) throws IllegalArgumentException {
+
+        // Check argument
+        if (characters == null) {
+            throw new IllegalArgumentException("characters == null");
+        }
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            if (c >= NON_ASCII || c < 0x20 && c != 0x9 && c != 0xA && c != 0xD) {
+                throw new IllegalArgumentException("The character 0x" + Integer.toHexString(c) + " cannot be escaped by an escape policy.");
+            }
+        }
+
+        return characters.length() == 0 ? DEFAULT : new EscapePolicy(characters, InvalidCharacterPolicy.THROW);
+    }
+
+    /**
+     * Constructs a new <code>EscapePolicy</code> and computes all its tables.
+     *
+     * @param characters             the additional characters to escape, not <code>null</code>.
+     * @param invalidCharacterPolicy the invalid character policy, not <code>null</code>.
+     */
+    private EscapePolicy(String characters, InvalidCharacterPolicy invalidCharacterPolicy) {
+        _characters = characters;
+        _invalidCharacterPolicy = invalidCharacterPolicy;
+        _standard = isSpecialOnly(characters);
+        _tables = new byte[12][];
+        for (int i = 0; i < _tables.length; i++) {
+            boolean sevenBitEncoding = (i & 1) != 0;
+            boolean escapeAmpersands = (i & 2) != 0;
+            char quotationMark = i < 4 ? 0 : i < 8 ? '"' : '\'';
+            _tables[i] = buildTable(sevenBitEncoding, quotationMark, escapeAmpersands, characters, invalidCharacterPolicy);
+        }
+    }
+
+    /**
+     * The additional characters to escape. Never <code>null</code>.
+     */
+    private final String _characters;
+
+    /**
+     * The invalid character policy. Never <code>null</code>.
+     */
+    private final InvalidCharacterPolicy _invalidCharacterPolicy;
+
+    /**
+     * Flag that indicates whether this policy only escapes characters that are special according
+     * to the {@link EscapeScanner}.
+     */
+    private final boolean _standard;
+
+    /**
+     * The character class tables, see {@link #getTable(boolean, char, boolean)}.
+     */
+    private final byte[][] _tables;
+
+    /**
+     * Determines whether all of the specified characters are special according to the
+     * {@link EscapeScanner}.
+     *
+     * @param characters the characters to check, not <code>null</code>.
+     * @return <code>true</code> if all characters are special, <code>false</code> otherwise.
+     */
+    private static boolean isSpecialOnly(String characters) {
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '&' && c != '\'' && c != '<' && c != '>') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a character class table.
+     *
+     * @param sevenBitEncoding       flag that indicates whether the encoding is a 7-bit encoding.
+     * @param quotationMark          the quotation mark, or <code>0</code> for text.
+     * @param escapeAmpersands       flag that indicates whether ampersands should be escaped.
+     * @param characters             the additional characters to escape, not <code>null</code>.
+     * @param invalidCharacterPolicy the invalid character policy, not <code>null</code>.
+     * @return the table, with {@link #INVALID_NON_ASCII}<code> + 1</code> entries.
+     */
+    private static byte[] buildTable(boolean sevenBitEncoding, char quotationMark, boolean escapeAmpersands, String characters, InvalidCharacterPolicy invalidCharacterPolicy) {
+        byte[] table = new byte[INVALID_NON_ASCII + 1];
+
+        // Control characters, except tab, line feed and carriage return
+        byte invalid = classOf(invalidCharacterPolicy);
+        for (int c = 0; c < 0x20; c++) {
+            table[c] = invalid;
+        }
+        table[0x9] = PLAIN;
+        table[0xA] = PLAIN;
+        table[0xD] = PLAIN;
+
+        table['<'] = LESS_THAN;
+        table['>'] = GREATER_THAN;
+        if (escapeAmpersands) {
+            table['&'] = AMPERSAND;
+        }
+        if (quotationMark == '"') {
+            table['"'] = QUOTE;
+        } else if (quotationMark == '\'') {
+            table['\''] = APOSTROPHE;
+        }
+
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            if (table[c] == PLAIN) {
+                table[c] = CHARACTER_REFERENCE;
+            }
+        }
+
+        table[NON_ASCII] = sevenBitEncoding ? CHARACTER_REFERENCE : PLAIN;
+        table[INVALID_NON_ASCII] = invalid;
+
+        return table;
+    }
+
+    /**
+     * Returns the character class for invalid characters that corresponds with the specified
+     * invalid character policy.
+     *
+     * @param invalidCharacterPolicy the invalid character policy, not <code>null</code>.
+     * @return the character class.
+     */
+    private static byte classOf(InvalidCharacterPolicy invalidCharacterPolicy) {
+        switch (invalidCharacterPolicy) {
+            case STRIP:
+                return STRIP;
+            case REPLACE:
+                return REPLACE;
+            case REPLACE_WITH_QUESTION_MARK:
+                return REPLACE_WITH_QUESTION_MARK;
+            default:
+                return INVALID;
+        }
+    }
+
+    /**
+     * Returns the character class table for the specified combination. Index <code>c</code>
+     * holds the class of ASCII character <code>c</code>, index {@link #NON_ASCII} holds the class
+     * of all other characters and index {@link #INVALID_NON_ASCII} holds the class of the
+     * non-ASCII characters that are not allowed in XML.
+     *
+     * @param sevenBitEncoding flag that indicates whether the encoding is a 7-bit encoding.
+     * @param quotationMark    the quotation mark, or <code>0</code> for text.
+     * @param escapeAmpersands flag that indicates whether ampersands should be escaped.
+     * @return the table, never <code>null</code>.
+     */
+    byte[] getTable(boolean sevenBitEncoding, char quotationMark, boolean escapeAmpersands) {
+        int index = (sevenBitEncoding ? 1 : 0) | (escapeAmpersands ? 2 : 0);
+        if (quotationMark == '"') {
+            index += 4;
+        } else if (quotationMark == '\'') {
+            index += 8;
+        }
+        return _tables[index];
+    }
+
+    /**
+     * Determines whether this policy only escapes characters that are special according to the
+     * {@link EscapeScanner}. If so, the escape loops can use the scanner to skip over characters
+     * that certainly need no escaping.
+     *
+     * @return <code>true</code> if the scanner can be used with the tables of this policy,
+     * <code>false</code> otherwise.
+     */
+    boolean isStandard() {
+        return _standard;
+    }
+
+    /**
+     * Returns the characters this policy escapes in addition to the characters that must be
+     * escaped.
+     *
+     * @return the additional characters, never <code>null</code>.
+     */
+    public String getEscapedCharacters() {
+        return _characters;
+    }
+
+    /**
+     * Returns the policy for characters that are not allowed in XML.
+     *
+     * @return the invalid character policy, never <code>null</code>.
+     */
+    public InvalidCharacterPolicy getInvalidCharacterPolicy() {
+        return _invalidCharacterPolicy;
+    }
+
+    /**
+     * Returns a policy that escapes the same characters as this one, but that uses the specified
+     * policy for characters that are not allowed in XML.
+     *
+     * @param invalidCharacterPolicy the invalid character policy, not <code>null</code>.
+     * @return the policy, never <code>null</code>.
+     * @throws IllegalArgumentException if <code>invalidCharacterPolicy == null</code>.
+     */
+    public EscapePolicy withInvalidCharacterPolicy(InvalidCharacterPolicy invalidCharacterPolicy) throws IllegalArgumentException {
+
+        // Check argument
+        if (invalidCharacterPolicy == null) {
+            throw new IllegalArgumentException("invalidCharacterPolicy == null");
+        }
+
+        if (invalidCharacterPolicy == _invalidCharacterPolicy) {
+            return this;
+        } else if (_characters.length() == 0 && invalidCharacterPolicy == InvalidCharacterPolicy.THROW) {
+            return DEFAULT;
+        }
+        return new EscapePolicy(_characters, invalidCharacterPolicy);
+    }
+
+    @Override
+    public String toString() {
+        return "EscapePolicy(\"" + _characters + "\", " + _invalidCharacterPolicy + ')';
+    }
+}
@@ -0,0 +1,45 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+/**
+ * Determines what happens to characters that are not allowed in XML documents when text, an
+ * attribute value or a CDATA section is written. These are the control characters other than
+ * tab, line feed and carriage return, unpaired surrogates, and the non-characters U+FFFE and
+ * U+FFFF.
+ * <p />
+ * An {@link EscapePolicy} has an invalid character policy, see
+ * {@link EscapePolicy#withInvalidCharacterPolicy(InvalidCharacterPolicy)}. The {@link XMLEncoder}
+ * applies it while escaping, so it costs nothing for text that contains no invalid characters.
+ * <p />
+ * A surrogate pair is never completed across two calls: a high surrogate at the end of the text
+ * or a low surrogate at the start of it is unpaired, and the policy applies to it. Methods that
+ * read the text in chunks, such as {@link XMLOutputter#pcdata(java.io.Reader)}, keep pairs within
+ * a single chunk. The writer returned by {@link XMLOutputter#cdataWriter()} completes a pair that
+ * is split between two of its writes, until it is closed.
+ *
+ * @since XMLenc 0.54
+ */
+public enum InvalidCharacterPolicy {
+
+    /**
+     * Throws an {@link InvalidXMLException} when an invalid character is found. This is the
+     * default.
+     */
+    THROW,
+
+    /**
+     * Leaves out invalid characters.
+     */
+    STRIP,
+
+    /**
+     * Replaces each invalid character by the Unicode replacement character U+FFFD. If the encoding
+     * cannot represent it, it is written as a character reference.
+     */
+    REPLACE,
+
+    /**
+     * Replaces each invalid character by a question mark (<code>'?'</code>).
+     */
+    REPLACE_WITH_QUESTION_MARK
+}
@@ -0,0 +1,38 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+/**
+ * Set of rules that determines which characters are allowed in the <em>Name</em> production. The
+ * rules changed between editions of the XML Specification; {@link XMLChecker} can check names
+ * against each of them.
+ *
+ * @since XMLenc 0.54
+ */
+public enum NameRules {
+
+    /**
+     * The rules of the first four editions of the XML 1.0 Specification. They are based on the
+     * character classes of Unicode 2.0, listed in Appendix B, and only allow characters from the
+     * Basic Multilingual Plane. These are the rules that the {@link XMLChecker} methods without a
+     * <code>NameRules</code> argument use. See: <a
+     * href="http://www.w3.org/TR/2006/REC-xml-20060816/#NT-Name">Definition of Name (Fourth
+     * Edition)</a>.
+     */
+    XML_1_0_FOURTH_EDITION,
+
+    /**
+     * The rules of the fifth edition of the XML 1.0 Specification. They consist of a few ranges of
+     * code points, including the supplementary planes, and allow most characters that are not
+     * punctuation or white space. See: <a href="http://www.w3.org/TR/REC-xml/#NT-Name">Definition
+     * of Name (Fifth Edition)</a>.
+     */
+    XML_1_0_FIFTH_EDITION,
+
+    /**
+     * The rules of the XML 1.1 Specification. XML 1.1 introduced the code point ranges that the
+     * fifth edition of XML 1.0 later adopted, so names are checked exactly as for
+     * {@link #XML_1_0_FIFTH_EDITION}. See: <a href="http://www.w3.org/TR/xml11/#NT-Name">Definition
+     * of Name (XML 1.1)</a>.
+     */
+    XML_1_1
+}
@@ -0,0 +1,216 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.util.Arrays;
+
+/**
+ * Symbol table that maps element type names to {@link XMLName} objects holding their ready-made
+ * start and end tags. An {@link XMLOutputter} keeps one, so that a name that is used many times is
+ * encoded only once and every end tag is written with a single bulk write. If the outputter
+ * checks names (see {@link XMLOutputter#setNameValidation(NameRules)}), the table also remembers
+ * which element and attribute names passed the check, so that a name that is used many times is
+ * scanned only once.
+ * <p />
+ * A name is only encoded the second time it is looked up; the first time, only the
+ * <code>String</code> is remembered. This way an outputter that is created for a single document
+ * does not pay for encoding the names that it uses just once.
+ * <p />
+ * The table uses open addressing. A lookup first compares the <code>String</code> instances,
+ * then the (cached) hash codes, and only calls <code>equals</code> if those match. The names are
+ * not checked against the <em>Name</em> production here; the table does not know against which
+ * {@link NameRules} they were checked, so {@link #clearValidated()} must be called when the rules
+ * change.
+ * <p />
+ * The number of names is limited, so that an application that uses unbounded sets of names does
+ * not fill up the memory. Once the table is full, {@link #intern(String)} returns
+ * <code>null</code> for new names and {@link #setValidated(String)} ignores them.
+ * <p />
+ * Instances of this class are <em>not</em> thread-safe.
+ *
+ * @since XMLenc 0.54
+ */
+final class NameTable extends Object {
+
+    /**
+     * The initial number of slots. Must be a power of 2.
+     */
+    private static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * The maximum number of names in the table.
+     */
+    static final int MAX_SIZE = 1024;
+
+    /**
+     * Constructs a new, empty <code>NameTable</code>.
+     */
+    NameTable() {
+        _names = new String[INITIAL_CAPACITY];
+        _entries = new XMLName[INITIAL_CAPACITY];
+        _validated = new boolean[INITIAL_CAPACITY];
+    }
+
+    /**
+     * The slots, either <code>null</code> or holding a name. At most half of the slots are
+     * used, so that a lookup always finds an empty slot.
+     */
+    private String[] _names;
+
+    /**
+     * The entries for the names in the corresponding slots of {@link #_names}. An entry is
+     * <code>null</code> until its name is looked up for the second time.
+     */
+    private XMLName[] _entries;
+
+    /**
+     * Flags that indicate whether the names in the corresponding slots of {@link #_names} passed
+     * the name check.
+     */
+    private boolean[] _validated;
+
+    /**
+     * The number of names in the table.
+     */
+    private int _size;
+
+    /**
+     * Returns the number of names in the table.
+     *
+     * @return the number of names, from 0 to {@link #MAX_SIZE}.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the entry for the specified name. The first time a name is looked up, it is added to
+     * the table without an entry; the entry is created the second time.
+     *
+     * @param name the name, not <code>null</code>.
+     * @return the entry for the name, or <code>null</code> if the name was not in the table yet.
+     */
+    XMLName intern(String name) {
+        int i = find(name);
+        if (i < 0) {
+            add(~i, name);
+            return null;
+        }
+        XMLName entry = _entries[i];
+        if (entry == null) {
+            entry = new XMLName(_names[i], null, false);
+            _entries[i] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Checks if the specified name passed the name check.
+     *
+     * @param name the name, not <code>null</code>.
+     * @return <code>true</code> if {@link #setValidated(String)} was called for the name since the
+     * last call to {@link #clearValidated()}, <code>false</code> otherwise.
+     */
+    boolean isValidated(String name) {
+        int i = find(name);
+        return i >= 0 && _validated[i];
+    }
+
+    /**
+     * Records that the specified name passed the name check. The name is added to the table if it
+     * is not in it yet, unless the table is full.
+     *
+     * @param name the name, not <code>null</code>.
+     */
+    void setValidated(String name) {
+        int i = find(name);
+        if (i < 0) {
+            i = add(~i, name);
+        }
+        if (i >= 0) {
+            _validated[i] = true;
+        }
+    }
+
+    /**
+     * Forgets which names passed the name check. The names and their entries are kept.
+     */
+    void clearValidated() {
+        Arrays.fill(_validated, false);
+    }
+
+    /**
+     * Finds the slot of the specified name.
+     *
+     * @param name the name, not <code>null</code>.
+     * @return the index of the slot that holds the name, or the complement (<code>~</code>) of
+     * the index of the empty slot where it can be added.
+     */
+    private int find(String name) {
+        int hash = name.hashCode();
+        int mask = _names.length - 1;
+        int i = spread(hash) & mask;
+        for (String entryName = _names[i]; entryName != null; entryName = _names[i]) {
+            if (entryName == name || (entryName.hashCode() == hash && entryName.equals(name))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    /**
+     * Adds the specified name to the specified empty slot, unless the table is full.
+     *
+     * @param i    the index of the empty slot, as returned by {@link #find(String)}.
+     * @param name the name, not <code>null</code>.
+     * @return the index of the slot that holds the name, which differs from <code>i</code> if the
+     * table grew, or <code>-1</code> if the table is full.
+     */
+    private int add(int i, String name) {
+        if (_size == MAX_SIZE) {
+            return -1;
+        }
+        _names[i] = name;
+        _size++;
+        if (_size * 2 > _names.length) {
+            grow();
+            i = find(name);
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the number of slots.
+     */
+    private void grow() {
+        String[] oldNames = _names;
+        XMLName[] oldEntries = _entries;
+        boolean[] oldValidated = _validated;
+        _names = new String[oldNames.length * 2];
+        _entries = new XMLName[oldNames.length * 2];
+        _validated = new boolean[oldNames.length * 2];
+        int mask = _names.length - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] != null) {
+                int i = spread(oldNames[j].hashCode()) & mask;
+                while (_names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                _names[i] = oldNames[j];
+                _entries[i] = oldEntries[j];
+                _validated[i] = oldValidated[j];
+            }
+        }
+    }
+
+    /**
+     * Spreads the high bits of a hash code to the low bits, since only the low bits are used to
+     * select a slot.
+     *
+     * @param hash the hash code.
+     * @return the spread hash code.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
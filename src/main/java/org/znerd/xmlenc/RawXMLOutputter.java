@@ -0,0 +1,507 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+/**
+ * XML event listener that writes its output without checking the order of the calls or the
+ * arguments passed. Only the element stack, whether a start tag is still open and whether the root
+ * element has been closed are maintained; {@link #getState()} derives an approximate state from
+ * these.
+ * <p />
+ * This class is intended for producers that are correct by construction, such as generated
+ * serializers. If the methods are called in the wrong order or with invalid arguments, the output
+ * is not well-formed or a {@link NullPointerException} or
+ * {@link ArrayIndexOutOfBoundsException} is thrown. To get the checks that an
+ * {@link XMLOutputter} performs, wrap an instance of this class in a
+ * {@link ValidatingXMLEventListener}.
+ * <p />
+ * Text and attribute values are still escaped by the {@link XMLEncoder}, which throws an
+ * {@link InvalidXMLException} for characters that are not allowed in XML. Attribute values are
+ * surrounded by double quotes and no line breaks or indentation are written.
+ * <p />
+ * Instances of this class are <em>not</em> thread-safe.
+ *
+ * @since XMLenc 0.54
+ */
+public class RawXMLOutputter extends Object implements XMLEventListener {
+
+    /**
+     * Constructs a new <code>RawXMLOutputter</code>. It cannot be used until it is initialized
+     * using {@link #reset(Writer, String)} or {@link #reset(Writer, XMLEncoder)}.
+     */
+    public RawXMLOutputter() {
+        _elementStack = new String[16];
+    }
+
+    /**
+     * Constructs a new <code>RawXMLOutputter</code> for the specified <code>Writer</code> and
+     * encoding.
+     *
+     * @param out      the output stream to write to, not <code>null</code>.
+     * @param encoding the encoding, not <code>null</code>.
+     * @throws IllegalArgumentException     if <code>out == null || encoding == null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    public RawXMLOutputter(Writer out, String encoding) throws IllegalArgumentException, UnsupportedEncodingException {
+
+        this();
+
+        // Initialize
+        reset(out, encoding);
+    }
+
+    /**
+     * Constructs a new <code>RawXMLOutputter</code> for the specified <code>Writer</code> and
+     * encoder.
+     *
+     * @param out     the output stream to write to, not <code>null</code>.
+     * @param encoder the encoder, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>out == null || encoder == null</code>.
+     */
+    public RawXMLOutputter(Writer out, XMLEncoder encoder) throws IllegalArgumentException {
+
+        this();
+
+        // Initialize
+        reset(out, encoder);
+    }
+
+    /**
+     * The output stream this outputter will write to. Only <code>null</code> if this outputter is
+     * not initialized.
+     */
+    private Writer _out;
+
+    /**
+     * The encoder used to actually encode character streams. Only <code>null</code> if this
+     * outputter is not initialized.
+     */
+    private XMLEncoder _encoder;
+
+    /**
+     * Stack of open elements. Never <code>null</code>.
+     */
+    private String[] _elementStack;
+
+    /**
+     * The size of the element stack.
+     */
+    private int _elementStackSize;
+
+    /**
+     * Flag that indicates whether the start tag of the current element still needs to be closed.
+     */
+    private boolean _startTagOpen;
+
+    /**
+     * Flag that indicates whether the root element has been closed.
+     */
+    private boolean _rootElementClosed;
+
+    /**
+     * The writer for CDATA sections, reused for every section. Created on first use.
+     */
+    private CDATAWriter _cdataWriter;
+
+    /**
+     * Returns the output stream this outputter uses.
+     *
+     * @return the output stream, or <code>null</code> if this outputter is not initialized.
+     */
+    public final Writer getWriter() {
+        return _out;
+    }
+
+    /**
+     * Returns the encoding of this outputter.
+     *
+     * @return the encoding, or <code>null</code> if this outputter is not initialized.
+     */
+    public final String getEncoding() {
+        if (_encoder == null) {
+            return null;
+        } else {
+            return _encoder.getEncoding();
+        }
+    }
+
+    /**
+     * Resets this outputter. The <code>Writer</code> and the encoding are set to
+     * <code>null</code> and the element stack is cleared.
+     */
+    @Override
+    public void reset() {
+        _out = null;
+        _encoder = null;
+        _elementStackSize = 0;
+        _startTagOpen = false;
+        _rootElementClosed = false;
+    }
+
+    /**
+     * Resets this outputter and configures it for the specified output stream and encoding.
+     *
+     * @param out      the output stream to write to, not <code>null</code>.
+     * @param encoding the encoding, not <code>null</code>.
+     * @throws IllegalArgumentException     if <code>out == null || encoding == null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    public final void reset(Writer out, String encoding) throws IllegalArgumentException, UnsupportedEncodingException {
+
+        // Check arguments
+        if (encoding == null) {
+            throw new IllegalArgumentException("encoding == null");
+        }
+
+        reset(out, XMLEncoder.getEncoder(encoding));
+    }
+
+    /**
+     * Resets this outputter and configures it for the specified output stream and encoder.
+     *
+     * @param out     the output stream to write to, not <code>null</code>.
+     * @param encoder the encoder, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>out == null || encoder == null</code>.
+     */
+    public final void reset(Writer out, XMLEncoder encoder) throws IllegalArgumentException {
+
+        // Check arguments
+        if (out == null) {
+            throw new IllegalArgumentException("out == null");
+        } else if (encoder == null) {
+            throw new IllegalArgumentException("encoder == null");
+        }
+
+        _out = out;
+        _encoder = encoder;
+        _elementStackSize = 0;
+        _startTagOpen = false;
+        _rootElementClosed = false;
+    }
+
+    /**
+     * Returns the number of open elements.
+     *
+     * @return the size of the element stack, always &gt;= 0.
+     */
+    public final int getElementStackSize() {
+        return _elementStackSize;
+    }
+
+    /**
+     * Returns the current state of this outputter. The state is derived from whether this
+     * outputter is initialized, whether a start tag is open, the depth of the element stack and
+     * whether the root element has been closed. The states before the root element are not
+     * distinguished, they are all reported as {@link #BEFORE_XML_DECLARATION}; neither is
+     * {@link #DOCUMENT_ENDED}, which is reported as {@link #AFTER_ROOT_ELEMENT}.
+     *
+     * @return the current state, never <code>null</code>.
+     */
+    @Override
+    public final XMLEventListenerState getState() {
+        if (_out == null) {
+            return XMLEventListenerStates.UNINITIALIZED;
+        } else if (_startTagOpen) {
+            return XMLEventListenerStates.START_TAG_OPEN;
+        } else if (_elementStackSize > 0) {
+            return XMLEventListenerStates.WITHIN_ELEMENT;
+        } else if (_rootElementClosed) {
+            return XMLEventListenerStates.AFTER_ROOT_ELEMENT;
+        } else {
+            return XMLEventListenerStates.BEFORE_XML_DECLARATION;
+        }
+    }
+
+    /**
+     * Sets the state of this outputter. Only the element stack, whether a start tag is open and
+     * whether the root element has been closed are derived from the arguments; they are not
+     * checked.
+     * <p />
+     * Calling this method with {@link #UNINITIALIZED} as the state is equivalent to calling
+     * {@link #reset()}.
+     *
+     * @param newState        the new state, not <code>null</code>.
+     * @param newElementStack the new element stack, or <code>null</code> if there are no open
+     *                        elements.
+     */
+    @Override
+    public final void setState(XMLEventListenerState newState, String[] newElementStack) {
+        if (newState == XMLEventListenerStates.UNINITIALIZED) {
+            reset();
+            return;
+        }
+
+        if (newElementStack == null) {
+            _elementStackSize = 0;
+        } else {
+            if (newElementStack.length > _elementStack.length) {
+                _elementStack = new String[newElementStack.length + 16];
+            }
+            System.arraycopy(newElementStack, 0, _elementStack, 0, newElementStack.length);
+            _elementStackSize = newElementStack.length;
+        }
+        _startTagOpen = newState == XMLEventListenerStates.START_TAG_OPEN;
+        _rootElementClosed = newState == XMLEventListenerStates.AFTER_ROOT_ELEMENT || newState == XMLEventListenerStates.DOCUMENT_ENDED;
+    }
+
+    /**
+     * Closes the start tag of the current element, if it is still open.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void closeStartTag() throws IOException {
+        if (_startTagOpen) {
+            _out.write('>');
+            _startTagOpen = false;
+        }
+    }
+
+    /**
+     * Writes the XML declaration, including the encoding.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void declaration() throws IOException {
+        _encoder.declaration(_out, '"');
+    }
+
+    /**
+     * Writes a document type declaration.
+     *
+     * @param name     the name of the document type.
+     * @param publicID the public identifier, or <code>null</code>.
+     * @param systemID the system identifier, or <code>null</code>; it must be specified if
+     *                 <code>publicID</code> is.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void dtd(String name, String publicID, String systemID) throws IOException {
+        _out.write("<!DOCTYPE ");
+        _out.write(name);
+        if (publicID != null) {
+            _out.write(" PUBLIC \"");
+            _out.write(publicID);
+            _out.write("\" \"");
+            _out.write(systemID);
+            _out.write('"');
+        } else if (systemID != null) {
+            _out.write(" SYSTEM \"");
+            _out.write(systemID);
+            _out.write('"');
+        }
+        _out.write('>');
+    }
+
+    /**
+     * Writes an element start tag and stores the element type name on the element stack.
+     *
+     * @param type the type of the tag to start.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void startTag(String type) throws IOException {
+        closeStartTag();
+
+        // Increase the stack size if necessary
+        if (_elementStackSize == _elementStack.length) {
+            String[] newStack = new String[_elementStackSize * 2];
+            System.arraycopy(_elementStack, 0, newStack, 0, _elementStackSize);
+            _elementStack = newStack;
+        }
+        _elementStack[_elementStackSize++] = type;
+
+        _out.write('<');
+        _out.write(type);
+        _startTagOpen = true;
+    }
+
+    /**
+     * Adds an attribute to the current element.
+     *
+     * @param name  the name of the attribute.
+     * @param value the value of the attribute.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void attribute(String name, String value) throws IOException {
+        _encoder.attribute(_out, name, value, '"', true, EscapePolicy.DEFAULT);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a value taken from a character sequence.
+     *
+     * @param name  the name of the attribute.
+     * @param value the value of the attribute.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void attribute(String name, CharSequence value) throws IOException {
+        _encoder.attribute(_out, name, value, '"', true, EscapePolicy.DEFAULT);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a value taken from a character array.
+     *
+     * @param name   the name of the attribute.
+     * @param ch     the character array that contains the value of the attribute.
+     * @param start  the start index in the array.
+     * @param length the number of characters to read from the array.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void attribute(String name, char[] ch, int start, int length) throws IOException {
+        _encoder.attribute(_out, name, ch, start, length, '"', true, EscapePolicy.DEFAULT);
+    }
+
+    /**
+     * Writes the end tag for the element on top of the stack. If its start tag is still open, the
+     * element is written as an empty element instead.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void endTag() throws IOException {
+        String type = _elementStack[--_elementStackSize];
+        if (_startTagOpen) {
+            _out.write('/');
+            _out.write('>');
+            _startTagOpen = false;
+        } else {
+            _out.write('<');
+            _out.write('/');
+            _out.write(type);
+            _out.write('>');
+        }
+        _rootElementClosed = _elementStackSize == 0;
+    }
+
+    /**
+     * Writes the specified <code>String</code> as PCDATA.
+     *
+     * @param text the PCDATA text to be written.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public final void pcdata(String text) throws InvalidXMLException, IOException {
+        closeStartTag();
+        _encoder.text(_out, text, true, EscapePolicy.DEFAULT);
+    }
+
+    /**
+     * Writes the specified character array as PCDATA.
+     *
+     * @param ch     the character array containing the text to be written.
+     * @param start  the start index in the array.
+     * @param length the number of characters to read from the array.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public final void pcdata(char[] ch, int start, int length) throws InvalidXMLException, IOException {
+        closeStartTag();
+        _encoder.text(_out, ch, start, length, true, EscapePolicy.DEFAULT);
+    }
+
+    /**
+     * Writes a CDATA section. The section is split where the text contains
+     * <code>"]]&gt;"</code> and characters that cannot be printed in this encoding are written
+     * as numeric character references, as by {@link XMLOutputter#cdata(String)}.
+     *
+     * @param text the contents of the CDATA section.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public final void cdata(String text) throws InvalidXMLException, IOException {
+        closeStartTag();
+        if (_cdataWriter == null) {
+            _cdataWriter = new CDATAWriter(null);
+        }
+        _cdataWriter.open(_out, _encoder, EscapePolicy.DEFAULT);
+        _cdataWriter.write(text, 0, text.length());
+        _cdataWriter.close();
+    }
+
+    /**
+     * Writes the specified string as ignorable whitespace.
+     *
+     * @param whitespace the whitespace to be written.
+     * @throws InvalidXMLException if the string contains a character that is invalid as
+     *                             whitespace.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public final void whitespace(String whitespace) throws InvalidXMLException, IOException {
+        closeStartTag();
+        _encoder.whitespace(_out, whitespace);
+    }
+
+    /**
+     * Writes text from the specified character array as ignorable whitespace.
+     *
+     * @param ch     the character array containing the whitespace to be written.
+     * @param start  the start index in the array.
+     * @param length the number of characters to read from the array.
+     * @throws InvalidXMLException if the characters contain one that is invalid as whitespace.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public final void whitespace(char[] ch, int start, int length) throws InvalidXMLException, IOException {
+        closeStartTag();
+        _encoder.whitespace(_out, ch, start, length);
+    }
+
+    /**
+     * Writes the specified comment.
+     *
+     * @param text the text of the comment, which should not contain <code>"--"</code>.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    @Override
+    public final void comment(String text) throws InvalidXMLException, IOException {
+        closeStartTag();
+        _out.write("<!--");
+        _encoder.text(_out, text, true);
+        _out.write("-->");
+    }
+
+    /**
+     * Writes a processing instruction.
+     *
+     * @param target      the target of the instruction.
+     * @param instruction the instruction, or <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void pi(String target, String instruction) throws IOException {
+        closeStartTag();
+        _out.write('<');
+        _out.write('?');
+        _out.write(target);
+        if (instruction != null) {
+            _out.write(' ');
+            _out.write(instruction);
+        }
+        _out.write('?');
+        _out.write('>');
+    }
+
+    /**
+     * Closes all open elements and flushes the output stream.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public final void endDocument() throws IOException {
+        while (_elementStackSize > 0) {
+            endTag();
+        }
+        _out.flush();
+    }
+}
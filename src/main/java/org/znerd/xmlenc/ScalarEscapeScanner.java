@@ -0,0 +1,121 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+/**
+ * Pure Java implementation of the {@link EscapeScanner} methods, for Java versions or JVMs
+ * without the Vector API.
+ * <p />
+ * The characters are checked in groups of four, with a single branch per group: the
+ * characters are OR-ed together to find out if any of them is outside the ASCII range, and
+ * their flags in a lookup table are OR-ed together to find out if any of them is special. Only
+ * the group that contains a hit is checked one character at a time. With mostly plain text this
+ * takes about a third less time than checking each character separately.
+ *
+ * @since XMLenc 0.54
+ */
+final class ScalarEscapeScanner extends Object {
+
+    /**
+     * The bits that are only set in a character that is not ASCII.
+     */
+    private static final int NON_ASCII = 0xFF80;
+
+    /**
+     * Flags for all ASCII characters; <code>1</code> for the special characters, see
+     * {@link EscapeScanner}.
+     */
+    private static final byte[] SPECIAL = new byte[128];
+
+    /**
+     * Flags for all ASCII characters; <code>1</code> for the characters that do not match the
+     * <em>S</em> (white space) production.
+     */
+    private static final byte[] NON_WHITESPACE = new byte[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            SPECIAL[c] = 1;
+        }
+        SPECIAL['"'] = 1;
+        SPECIAL['&'] = 1;
+        SPECIAL['\''] = 1;
+        SPECIAL['<'] = 1;
+        SPECIAL['>'] = 1;
+
+        for (int c = 0; c < 128; c++) {
+            NON_WHITESPACE[c] = 1;
+        }
+        NON_WHITESPACE[0x20] = 0;
+        NON_WHITESPACE[0x9] = 0;
+        NON_WHITESPACE[0xD] = 0;
+        NON_WHITESPACE[0xA] = 0;
+    }
+
+    /**
+     * Constructs a new <code>ScalarEscapeScanner</code> object. This constructor is private,
+     * since this class only has static methods.
+     */
+    private ScalarEscapeScanner() {
+    }
+
+    /**
+     * Returns the index of the first special character in the specified part of a character
+     * array. See {@link EscapeScanner#indexOfSpecial(char[], int, int)}.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @return the index of the first special character, or <code>end</code> if there is none.
+     */
+    static int indexOfSpecial(char[] ch, int start, int end) {
+        return indexOf(ch, start, end, SPECIAL);
+    }
+
+    /**
+     * Returns the index of the first character that does not match the <em>S</em> (white space)
+     * production in the specified part of a character array. See
+     * {@link EscapeScanner#indexOfNonWhitespace(char[], int, int)}.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @return the index of the first character that is not white space, or <code>end</code> if
+     * there is none.
+     */
+    static int indexOfNonWhitespace(char[] ch, int start, int end) {
+        return indexOf(ch, start, end, NON_WHITESPACE);
+    }
+
+    /**
+     * Returns the index of the first character that is either not ASCII or flagged in the
+     * specified table.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @param flags the flags for all ASCII characters, not <code>null</code>.
+     * @return the index of the first matching character, or <code>end</code> if there is none.
+     */
+    private static int indexOf(char[] ch, int start, int end, byte[] flags) {
+        int i = start;
+        for (int upperBound = end - 3; i < upperBound; i += 4) {
+            int c0 = ch[i];
+            int c1 = ch[i + 1];
+            int c2 = ch[i + 2];
+            int c3 = ch[i + 3];
+            if (((c0 | c1 | c2 | c3) & NON_ASCII) != 0 || (flags[c0] | flags[c1] | flags[c2] | flags[c3]) != 0) {
+                break;
+            }
+        }
+
+        // Check the remaining characters, starting with the group that
+        // contains a match
+        for (; i < end; i++) {
+            char c = ch[i];
+            if (c >= 0x80 || flags[c] != 0) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
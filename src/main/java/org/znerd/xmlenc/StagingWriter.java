@@ -0,0 +1,144 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that collects characters in a buffer and passes them to another writer in bulk. Unlike
+ * {@link java.io.BufferedWriter} it does not synchronize, since an {@link XMLOutputter} is only
+ * used from one thread at a time. It also counts the number of bulk writes, so that the buffer
+ * size can be tuned.
+ * <p />
+ * Instances of this class are <em>not</em> thread-safe.
+ *
+ * @since XMLenc 0.54
+ */
+final class StagingWriter extends Writer {
+
+    /**
+     * Constructs a new <code>StagingWriter</code> with the specified buffer size.
+     *
+     * @param size the size of the buffer, in characters, must be &gt; 0.
+     */
+    StagingWriter(int size) {
+        _buffer = new char[size];
+    }
+
+    /**
+     * The buffer. Never <code>null</code>.
+     */
+    private final char[] _buffer;
+
+    /**
+     * The number of characters in the buffer.
+     */
+    private int _length;
+
+    /**
+     * The writer the characters are passed to. Can be <code>null</code>.
+     */
+    private Writer _out;
+
+    /**
+     * The number of bulk writes to {@link #_out}.
+     */
+    private long _flushCount;
+
+    /**
+     * Sets the writer to pass the characters to. Characters still in the buffer are passed to the
+     * previous writer first. If that fails, they are discarded and the writer is set anyway.
+     *
+     * @param out the writer, or <code>null</code>.
+     * @throws IOException if an I/O error occurs while passing characters to the previous writer.
+     */
+    void reset(Writer out) throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            _out = out;
+            _length = 0;
+        }
+    }
+
+    /**
+     * Returns the size of the buffer.
+     *
+     * @return the size of the buffer, in characters.
+     */
+    int getBufferSize() {
+        return _buffer.length;
+    }
+
+    /**
+     * Returns the number of times characters were passed to the underlying writer.
+     *
+     * @return the number of bulk writes.
+     */
+    long getFlushCount() {
+        return _flushCount;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (_length == _buffer.length) {
+            flushBuffer();
+        }
+        _buffer[_length++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len > _buffer.length - _length) {
+            flushBuffer();
+
+            // Pass long arrays on without copying
+            if (len >= _buffer.length) {
+                _out.write(cbuf, off, len);
+                _flushCount++;
+                return;
+            }
+        }
+        System.arraycopy(cbuf, off, _buffer, _length, len);
+        _length += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_length == _buffer.length) {
+                flushBuffer();
+            }
+            int count = Math.min(len, _buffer.length - _length);
+            str.getChars(off, off + count, _buffer, _length);
+            _length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Passes the characters in the buffer to the underlying writer, without flushing that writer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void flushBuffer() throws IOException {
+        if (_length > 0) {
+            _out.write(_buffer, 0, _length);
+            _length = 0;
+            _flushCount++;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        _out.close();
+    }
+}
@@ -0,0 +1,452 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Character stream that encodes directly to UTF-8 bytes. Characters are
+ * collected in a reusable <code>byte</code> buffer which is handed to an
+ * {@link OutputStream} or a {@link WritableByteChannel} when it is full or when
+ * this writer is flushed.
+ * <p />
+ * Unlike an {@link java.io.OutputStreamWriter}, this class does not use a
+ * {@link java.nio.charset.CharsetEncoder}. When an {@link XMLEncoder} writes
+ * text or attribute values to a <code>UTF8XMLWriter</code>, then the characters
+ * are escaped and encoded in a single pass, straight into the byte buffer.
+ * <p />
+ * Surrogate pairs are encoded as a single 4-byte sequence, even if the high
+ * and the low surrogate are passed in separate calls. Unpaired surrogates are
+ * replaced by a question mark (<code>'?'</code>).
+ * <h3>Multi-threading</h3> This class is <em>not</em> thread-safe. Do not use
+ * it from multiple threads at the same time.
+ *
+ * @since XMLenc 0.54
+ */
+public final class UTF8XMLWriter extends Writer {
+
+    /**
+     * The default size of the byte buffer, in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The minimum size of the byte buffer, in bytes.
+     */
+    public static final int MIN_BUFFER_SIZE = 64;
+
+    /**
+     * The number of bytes that must be available in the buffer before a single
+     * character, a surrogate pair or an escape sequence is added to it. The longest
+     * sequence is a character reference for a supplementary character:
+     * <code>"&amp;#1114111;"</code>.
+     */
+    static final int MAX_BYTES_PER_CHAR = 12;
+
+    /**
+     * Constructs a new <code>UTF8XMLWriter</code> that writes to the specified
+     * output stream, using a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param out the output stream to write to, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>out == null</code>.
+     */
+    public UTF8XMLWriter(OutputStream out) throws IllegalArgumentException {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new <code>UTF8XMLWriter</code> that writes to the specified
+     * output stream, using a buffer of the specified size.
+     *
+     * @param out        the output stream to write to, not <code>null</code>.
+     * @param bufferSize the size of the byte buffer, must be &gt;= {@link #MIN_BUFFER_SIZE}.
+     * @throws IllegalArgumentException if <code>out == null || bufferSize &lt; {@link #MIN_BUFFER_SIZE}</code>.
+     */
+    public UTF8XMLWriter(OutputStream out, int bufferSize) throws IllegalArgumentException {
+
+        // Check arguments
+        if (out == null) {
+            throw new IllegalArgumentException("out == null");
+        } else if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize (" + bufferSize + ") < " + MIN_BUFFER_SIZE);
+        }
+
+        _out = out;
+        _channel = null;
+        _buffer = new byte[bufferSize];
+        _byteBuffer = null;
+    }
+
+    /**
+     * Constructs a new <code>UTF8XMLWriter</code> that writes to the specified
+     * channel, using a buffer of {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param channel the channel to write to, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>channel == null</code>.
+     */
+    public UTF8XMLWriter(WritableByteChannel channel) throws IllegalArgumentException {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new <code>UTF8XMLWriter</code> that writes to the specified
+     * channel, using a buffer of the specified size.
+     *
+     * @param channel    the channel to write to, not <code>null</code>.
+     * @param bufferSize the size of the byte buffer, must be &gt;= {@link #MIN_BUFFER_SIZE}.
+     * @throws IllegalArgumentException if <code>channel == null || bufferSize &lt; {@link #MIN_BUFFER_SIZE}</code>.
+     */
+    public UTF8XMLWriter(WritableByteChannel channel, int bufferSize) throws IllegalArgumentException {
+
+        // Check arguments
+        if (channel == null) {
+            throw new IllegalArgumentException("channel == null");
+        } else if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize (" + bufferSize + ") < " + MIN_BUFFER_SIZE);
+        }
+
+        _out = null;
+        _channel = channel;
+        _buffer = new byte[bufferSize];
+        _byteBuffer = ByteBuffer.wrap(_buffer);
+    }
+
+    /**
+     * The output stream to write to. Either this field or {@link #_channel} is
+     * <code>null</code>, never both.
+     */
+    private final OutputStream _out;
+
+    /**
+     * The channel to write to. Either this field or {@link #_out} is
+     * <code>null</code>, never both.
+     */
+    private final WritableByteChannel _channel;
+
+    /**
+     * The byte buffer. Bytes <code>0</code> to {@link #_position} (exclusive)
+     * have not been passed to the underlying stream or channel yet.
+     */
+    final byte[] _buffer;
+
+    /**
+     * The {@link ByteBuffer} that wraps {@link #_buffer}, only used when
+     * writing to a channel, otherwise <code>null</code>.
+     */
+    private final ByteBuffer _byteBuffer;
+
+    /**
+     * The current position in the byte buffer.
+     */
+    int _position;
+
+    /**
+     * A high surrogate that has been written, but that has not been followed
+     * by a low surrogate yet. If there is no such surrogate, then the value is
+     * <code>0</code>.
+     */
+    char _highSurrogate;
+
+    /**
+     * Passes the contents of the byte buffer to the underlying output stream
+     * or channel and empties the buffer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void flushBuffer() throws IOException {
+        int length = _position;
+        if (length > 0) {
+            _position = 0;
+            if (_out != null) {
+                _out.write(_buffer, 0, length);
+            } else {
+                _byteBuffer.clear();
+                _byteBuffer.limit(length);
+                while (_byteBuffer.hasRemaining()) {
+                    _channel.write(_byteBuffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure there is room in the buffer for at least
+     * {@link #MAX_BYTES_PER_CHAR} bytes.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void ensureCapacity() throws IOException {
+        if (_position > _buffer.length - MAX_BYTES_PER_CHAR) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes ASCII characters from the specified array. The characters are
+     * not checked; each one is simply truncated to a byte.
+     *
+     * @param ch     the array containing the ASCII characters, not <code>null</code>.
+     * @param start  the start index into <code>ch</code>.
+     * @param length the number of characters to write, at most {@link #MAX_BYTES_PER_CHAR}.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeASCII(char[] ch, int start, int length) throws IOException {
+        ensureCapacity();
+        byte[] buffer = _buffer;
+        int position = _position;
+        for (int i = start, end = start + length; i < end; i++) {
+            buffer[position++] = (byte) ch[i];
+        }
+        _position = position;
+    }
+
+    /**
+     * Writes bytes that are already encoded as UTF-8, such as the
+     * pre-encoded forms of an {@link XMLName}. A pending high surrogate is
+     * written as a question mark first.
+     *
+     * @param bytes the UTF-8 bytes, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a range of bytes that are already encoded as UTF-8. A pending
+     * high surrogate is written as a question mark first.
+     *
+     * @param bytes  the UTF-8 bytes, not <code>null</code>.
+     * @param start  the start index into <code>bytes</code>.
+     * @param length the number of bytes to write.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeBytes(byte[] bytes, int start, int length) throws IOException {
+        if (_highSurrogate != 0) {
+            completeSurrogate('?');
+        }
+
+        if (_position + length > _buffer.length) {
+            flushBuffer();
+        }
+        for (int offset = 0; offset < length;) {
+            if (_position == _buffer.length) {
+                flushBuffer();
+            }
+            int count = Math.min(length - offset, _buffer.length - _position);
+            System.arraycopy(bytes, start + offset, _buffer, _position, count);
+            _position += count;
+            offset += count;
+        }
+    }
+
+    /**
+     * Encodes the specified non-ASCII character. If it is a high surrogate
+     * followed by a low surrogate, then both are encoded as a single code
+     * point. If it is a high surrogate at the end of the input, then it is
+     * stored until the next character is written.
+     * <p />
+     * The caller must make sure there is room for {@link #MAX_BYTES_PER_CHAR}
+     * bytes in the buffer.
+     *
+     * @param c    the character to encode, <code>c &gt;= 0x80</code>.
+     * @param next the character following <code>c</code>, or <code>-1</code> if
+     *             <code>c</code> is the last character of the input.
+     * @return the number of characters consumed, either 1 or 2.
+     */
+    int encode(char c, int next) {
+        byte[] buffer = _buffer;
+        int position = _position;
+        int consumed = 1;
+
+        if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+            buffer[position++] = (byte) (0xE0 | c >> 12);
+            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c)) {
+            if (next < 0) {
+                _highSurrogate = c;
+            } else if (Character.isLowSurrogate((char) next)) {
+                position = encodeCodePoint(Character.toCodePoint(c, (char) next), buffer, position);
+                consumed = 2;
+            } else {
+                buffer[position++] = '?';
+            }
+        } else {
+            buffer[position++] = '?';
+        }
+
+        _position = position;
+        return consumed;
+    }
+
+    /**
+     * Completes a pending high surrogate, if any. This method must be called
+     * before any other character is encoded.
+     *
+     * @param next the character that follows the pending high surrogate.
+     * @return <code>true</code> if <code>next</code> was consumed as the low
+     * surrogate of a surrogate pair, <code>false</code> otherwise.
+     * @throws IOException if an I/O error occurs.
+     */
+    boolean completeSurrogate(char next) throws IOException {
+        ensureCapacity();
+        char high = _highSurrogate;
+        _highSurrogate = 0;
+        if (Character.isLowSurrogate(next)) {
+            _position = encodeCodePoint(Character.toCodePoint(high, next), _buffer, _position);
+            return true;
+        } else {
+            _buffer[_position++] = '?';
+            return false;
+        }
+    }
+
+    /**
+     * Encodes a supplementary code point as a 4-byte UTF-8 sequence.
+     *
+     * @param codePoint the supplementary code point.
+     * @param buffer    the buffer to write to, not <code>null</code>.
+     * @param position  the position in the buffer to start at.
+     * @return the new position in the buffer.
+     */
+    private static int encodeCodePoint(int codePoint, byte[] buffer, int position) {
+        buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+        buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+        buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+        buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+        return position;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        char ch = (char) c;
+        if (_highSurrogate != 0 && completeSurrogate(ch)) {
+            return;
+        }
+
+        ensureCapacity();
+        if (ch < 0x80) {
+            _buffer[_position++] = (byte) ch;
+        } else {
+            encode(ch, -1);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+
+        // Check arguments
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", cbuf.length=" + cbuf.length);
+        }
+
+        int i = off;
+        int end = off + len;
+        if (_highSurrogate != 0 && i < end && completeSurrogate(cbuf[i])) {
+            i++;
+        }
+
+        byte[] buffer = _buffer;
+        int limit = buffer.length - MAX_BYTES_PER_CHAR;
+        while (i < end) {
+            if (_position > limit) {
+                flushBuffer();
+            }
+
+            // Copy a run of ASCII characters in a tight loop, leaving room for
+            // one multi-byte sequence after the run
+            int position = _position;
+            int runEnd = Math.min(end, i + limit - position + 1);
+            char c;
+            while (i < runEnd && (c = cbuf[i]) < 0x80) {
+                buffer[position++] = (byte) c;
+                i++;
+            }
+            _position = position;
+
+            if (i < runEnd) {
+                i += encode(cbuf[i], i + 1 < end ? cbuf[i + 1] : -1);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+
+        // Check arguments
+        if (off < 0 || len < 0 || off + len > str.length()) {
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", str.length()=" + str.length());
+        }
+
+        int i = off;
+        int end = off + len;
+        if (_highSurrogate != 0 && i < end && completeSurrogate(str.charAt(i))) {
+            i++;
+        }
+
+        byte[] buffer = _buffer;
+        int limit = buffer.length - MAX_BYTES_PER_CHAR;
+        while (i < end) {
+            if (_position > limit) {
+                flushBuffer();
+            }
+
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                buffer[_position++] = (byte) c;
+                i++;
+            } else {
+                i += encode(c, i + 1 < end ? str.charAt(i + 1) : -1);
+            }
+        }
+    }
+
+    @Override
+    public Writer append(char c) throws IOException {
+        write(c);
+        return this;
+    }
+
+    /**
+     * Passes all buffered bytes to the underlying output stream or channel,
+     * and flushes the output stream. A pending high surrogate is kept, since
+     * the matching low surrogate may still follow.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (_out != null) {
+            _out.flush();
+        }
+    }
+
+    /**
+     * Flushes this writer and closes the underlying output stream or channel.
+     * A pending high surrogate is written as a question mark.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_highSurrogate != 0) {
+            _highSurrogate = 0;
+            ensureCapacity();
+            _buffer[_position++] = '?';
+        }
+        flush();
+        if (_out != null) {
+            _out.close();
+        } else {
+            _channel.close();
+        }
+    }
+}
@@ -0,0 +1,487 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+
+/**
+ * Decorator that checks the calls made to another <code>XMLEventListener</code>. It keeps track
+ * of the state, using the state model documented in {@link XMLEventListener}, and checks the
+ * arguments and the productions in the same way as {@link XMLOutputter}. Only calls that pass
+ * these checks are passed on to the wrapped listener.
+ * <p />
+ * Typically the wrapped listener is a {@link RawXMLOutputter}, so that producers that are
+ * correct by construction can use the raw outputter directly, while other producers get the
+ * full checks:
+ * <blockquote><code>XMLEventListener out = new ValidatingXMLEventListener(new RawXMLOutputter(writer, "UTF-8"));</code></blockquote>
+ * <p />
+ * If the wrapped listener throws an exception while handling a call, the state is set to
+ * {@link #ERROR_STATE}.
+ * <p />
+ * Instances of this class are <em>not</em> thread-safe.
+ *
+ * @since XMLenc 0.54
+ */
+public class ValidatingXMLEventListener extends Object implements StatefulXMLEventListener {
+
+    /**
+     * Constructs a new <code>ValidatingXMLEventListener</code> for the specified listener. The
+     * initial state is taken from the listener. If elements are open, their number is taken from
+     * the listener too; this is only supported for an {@link XMLOutputter}, a
+     * {@link RawXMLOutputter} or another <code>ValidatingXMLEventListener</code>.
+     *
+     * @param listener the listener to pass the checked calls to, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>listener == null</code>, or if the state of the
+     *                                  listener is {@link #START_TAG_OPEN} or
+     *                                  {@link #WITHIN_ELEMENT} and the number of open elements
+     *                                  cannot be determined.
+     */
+    public ValidatingXMLEventListener(XMLEventListener listener) throws IllegalArgumentException {
+
+        // Check arguments
+        if (listener == null) {
+            throw new IllegalArgumentException("listener == null");
+        }
+
+        XMLEventListenerState state = listener.getState();
+        int depth;
+        if (listener instanceof XMLOutputter) {
+            depth = ((XMLOutputter) listener).getElementStackSize();
+        } else if (listener instanceof RawXMLOutputter) {
+            depth = ((RawXMLOutputter) listener).getElementStackSize();
+        } else if (listener instanceof ValidatingXMLEventListener) {
+            depth = ((ValidatingXMLEventListener) listener)._depth;
+        } else if (state == XMLEventListenerStates.START_TAG_OPEN || state == XMLEventListenerStates.WITHIN_ELEMENT) {
+            throw new IllegalArgumentException("listener.getState() == " + state + ", but the number of open elements is unknown");
+        } else {
+            depth = 0;
+        }
+
+        _listener = listener;
+        _state = state;
+        _depth = depth;
+    }
+
+    /**
+     * The listener the checked calls are passed to. Never <code>null</code>.
+     */
+    private final XMLEventListener _listener;
+
+    /**
+     * The current state. Never <code>null</code>.
+     */
+    private XMLEventListenerState _state;
+
+    /**
+     * The number of open elements. Only the number is needed to determine the state after an end
+     * tag; the element types themselves are kept by the wrapped listener.
+     */
+    private int _depth;
+
+    /**
+     * Returns the listener the checked calls are passed to.
+     *
+     * @return the wrapped listener, never <code>null</code>.
+     */
+    public final XMLEventListener getListener() {
+        return _listener;
+    }
+
+    /**
+     * Resets this listener and the wrapped listener. This sets the state to
+     * {@link #UNINITIALIZED}.
+     */
+    @Override
+    public void reset() {
+        _listener.reset();
+        _state = XMLEventListenerStates.UNINITIALIZED;
+        _depth = 0;
+    }
+
+    /**
+     * Returns the current state of this listener.
+     *
+     * @return the current state, cannot be <code>null</code>.
+     */
+    @Override
+    public final XMLEventListenerState getState() {
+        return _state;
+    }
+
+    /**
+     * Sets the state of this listener and of the wrapped listener. After re-initializing the
+     * wrapped listener with a new output stream, call this method with
+     * {@link #BEFORE_XML_DECLARATION} to start checking a new document.
+     *
+     * @param newState        the new state, not <code>null</code>.
+     * @param newElementStack the new element stack, if <code>newState == START_TAG_OPEN
+     *                        || newState == WITHIN_ELEMENT</code> then it should be
+     *                        non-<code>null</code> and containing no <code>null</code> elements,
+     *                        otherwise it must be <code>null</code>.
+     * @throws IllegalArgumentException if <code>newState == null
+     *                                  || (newState == {@link #START_TAG_OPEN} &amp;&amp; newElementStack == null) ||
+     *                                  (newState == {@link #WITHIN_ELEMENT} &amp;&amp; newElementStack == null) || (newState
+     *                                  != {@link #START_TAG_OPEN} &amp;&amp; newState != {@link #WITHIN_ELEMENT} &amp;&amp;
+     *                                  newElementStack != null) || newElementStack[<i>n</i>] == null</code> (where
+     *                                  <code>0 &lt;= <i>n</i> &lt; newElementStack.length</code>).
+     */
+    @Override
+    public final void setState(XMLEventListenerState newState, String[] newElementStack) throws IllegalArgumentException {
+
+        // Check arguments
+        if (newState == null) {
+            throw new IllegalArgumentException("newState == null");
+        } else if (newState == XMLEventListenerStates.START_TAG_OPEN && newElementStack == null) {
+            throw new IllegalArgumentException("newState == START_TAG_OPEN && newElementStack == null");
+        } else if (newState == XMLEventListenerStates.WITHIN_ELEMENT && newElementStack == null) {
+            throw new IllegalArgumentException("newState == WITHIN_ELEMENT && newElementStack == null");
+        } else if (newState != XMLEventListenerStates.START_TAG_OPEN && newState != XMLEventListenerStates.WITHIN_ELEMENT && newElementStack != null) {
+            throw new IllegalArgumentException("newState != START_TAG_OPEN && newState != WITHIN_ELEMENT && newElementStack != null");
+        }
+        if (newElementStack != null) {
+            for (int i = 0; i < newElementStack.length; i++) {
+                if (newElementStack[i] == null) {
+                    throw new IllegalArgumentException("newElementStack[" + i + "] == null");
+                }
+            }
+        }
+
+        _listener.setState(newState, newElementStack);
+        _state = newState;
+        _depth = newElementStack == null ? 0 : newElementStack.length;
+    }
+
+    /**
+     * Checks that the current state is in the specified set of states.
+     *
+     * @param states the allowed states, see {@link XMLEventListenerState#setOf(XMLEventListenerState...)}.
+     * @throws IllegalStateException if the current state is not in the set.
+     */
+    private void checkState(int states) throws IllegalStateException {
+        if (!_state.isIn(states)) {
+            throw new IllegalStateException("getState() == " + _state);
+        }
+    }
+
+    /**
+     * Checks the arguments that specify a range of characters in an array.
+     *
+     * @param ch     the character array.
+     * @param start  the start index in the array.
+     * @param length the number of characters.
+     * @throws IllegalArgumentException if <code>ch == null || start &lt; 0 || start &gt;= ch.length || length &lt; 0</code>.
+     */
+    private static void checkRange(char[] ch, int start, int length) throws IllegalArgumentException {
+        if (ch == null) {
+            throw new IllegalArgumentException("ch == null");
+        } else if (start < 0) {
+            throw new IllegalArgumentException("start (" + start + ") < 0");
+        } else if (start >= ch.length) {
+            throw new IllegalArgumentException("start (" + start + ") >= ch.length (" + ch.length + ')');
+        } else if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        }
+    }
+
+    /**
+     * Returns the state after whitespace, a comment or a processing instruction is written in the
+     * specified state.
+     *
+     * @param oldState the state before the output.
+     * @return the state after the output.
+     */
+    private static XMLEventListenerState afterMisc(XMLEventListenerState oldState) {
+        if (oldState == XMLEventListenerStates.BEFORE_XML_DECLARATION) {
+            return XMLEventListenerStates.BEFORE_DTD_DECLARATION;
+        } else if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            return XMLEventListenerStates.WITHIN_ELEMENT;
+        } else {
+            return oldState;
+        }
+    }
+
+    @Override
+    public final void declaration() throws IllegalStateException, IOException {
+
+        // Check state
+        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION) {
+            throw new IllegalStateException("getState() == " + _state);
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown by the listener, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        _listener.declaration();
+
+        _state = XMLEventListenerStates.BEFORE_DTD_DECLARATION;
+    }
+
+    /**
+     * Checks and passes on a document type declaration.
+     *
+     * @param name     the name of the document type, not <code>null</code>.
+     * @param publicID the public identifier, can be <code>null</code>, but if not, then it
+     *                 must match the <em>PubidLiteral</em> production, when quoted.
+     * @param systemID the system identifier, can be <code>null</code>, but if not, then it
+     *                 must match the <em>SystemLiteral</em> production, when quoted.
+     * @throws IllegalStateException    if <code>getState() != {@link #BEFORE_XML_DECLARATION} &amp;&amp; getState() !=
+     *                                  {@link #BEFORE_DTD_DECLARATION}</code>.
+     * @throws IllegalArgumentException if <code>name == null ||
+     *                                  (publicID != null &amp;&amp; systemID == null)</code>.
+     * @throws InvalidXMLException      if the name or one of the identifiers does not match its
+     *                                  production.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    @Override
+    public final void dtd(String name, String publicID, String systemID) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.DTD_STATES);
+
+        // Check arguments
+        if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        } else if (publicID != null && systemID == null) {
+            throw new IllegalArgumentException("Found public identifier, but no system identifier.");
+        }
+
+        // Check productions
+        XMLChecker.checkName(name);
+        if (publicID != null) {
+            XMLChecker.checkPubidLiteral("\"" + publicID + "\"");
+        }
+        if (systemID != null) {
+            XMLChecker.checkSystemLiteral("\"" + systemID + "\"");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown by the listener, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        _listener.dtd(name, publicID, systemID);
+
+        _state = XMLEventListenerStates.BEFORE_ROOT_ELEMENT;
+    }
+
+    @Override
+    public final void startTag(String type) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.START_TAG_STATES);
+
+        // Check arguments
+        if (type == null) {
+            throw new IllegalArgumentException("type == null");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown by the listener, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        _listener.startTag(type);
+
+        _depth++;
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+    }
+
+    @Override
+    public final void attribute(String name, String value) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+        checkAttribute(name, value);
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.attribute(name, value);
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+    }
+
+    @Override
+    public final void attribute(String name, CharSequence value) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+        checkAttribute(name, value);
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.attribute(name, value);
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+    }
+
+    @Override
+    public final void attribute(String name, char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+
+        // Check state
+        if (_state != XMLEventListenerStates.START_TAG_OPEN) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        } else if (ch == null) {
+            throw new IllegalArgumentException("ch == null");
+        } else if (start < 0) {
+            throw new IllegalArgumentException("start (" + start + ") < 0");
+        } else if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        } else if (start > ch.length - length) {
+            throw new IndexOutOfBoundsException("start (" + start + ") + length (" + length + ") > ch.length (" + ch.length + ')');
+        }
+
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.attribute(name, ch, start, length);
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+    }
+
+    /**
+     * Checks the state and the arguments for adding an attribute.
+     *
+     * @param name  the name of the attribute.
+     * @param value the value of the attribute.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     */
+    private void checkAttribute(String name, CharSequence value) throws IllegalStateException, IllegalArgumentException {
+
+        // Check state
+        if (_state != XMLEventListenerStates.START_TAG_OPEN) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (name == null && value == null) {
+            throw new IllegalArgumentException("name == null && value == null");
+        } else if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        } else if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+    }
+
+    @Override
+    public final void endTag() throws IllegalStateException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.CONTENT_STATES);
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown by the listener, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        _listener.endTag();
+
+        _depth--;
+        _state = _depth == 0 ? XMLEventListenerStates.AFTER_ROOT_ELEMENT : XMLEventListenerStates.WITHIN_ELEMENT;
+    }
+
+    @Override
+    public final void pcdata(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.CONTENT_STATES);
+
+        // Check arguments
+        if (text == null) {
+            throw new IllegalArgumentException("text == null");
+        }
+
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.pcdata(text);
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+    }
+
+    @Override
+    public final void pcdata(char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+
+        // Check state and arguments
+        checkState(XMLOutputter.CONTENT_STATES);
+        checkRange(ch, start, length);
+
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.pcdata(ch, start, length);
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+    }
+
+    @Override
+    public final void cdata(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.CONTENT_STATES);
+
+        // Check arguments
+        if (text == null) {
+            throw new IllegalArgumentException("text == null");
+        }
+
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.cdata(text);
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+    }
+
+    @Override
+    public final void whitespace(String whitespace) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.MISC_STATES);
+
+        // Check arguments
+        if (whitespace == null) {
+            throw new IllegalArgumentException("whitespace == null");
+        }
+
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.whitespace(whitespace);
+        _state = afterMisc(oldState);
+    }
+
+    @Override
+    public final void whitespace(char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+
+        // Check state and arguments
+        checkState(XMLOutputter.MISC_STATES);
+        checkRange(ch, start, length);
+
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.whitespace(ch, start, length);
+        _state = afterMisc(oldState);
+    }
+
+    @Override
+    public final void comment(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.MISC_STATES);
+
+        // Check arguments
+        if (text == null) {
+            throw new IllegalArgumentException("text == null");
+        }
+
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.comment(text);
+        _state = afterMisc(oldState);
+    }
+
+    @Override
+    public final void pi(String target, String instruction) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.MISC_STATES);
+
+        // Check arguments
+        if (target == null) {
+            throw new IllegalArgumentException("target == null");
+        }
+
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.pi(target, instruction);
+        _state = afterMisc(oldState);
+    }
+
+    @Override
+    public final void endDocument() throws IllegalStateException, IOException {
+
+        // Check state
+        checkState(XMLOutputter.CLOSE_STATES);
+
+        _state = XMLEventListenerStates.ERROR_STATE;
+        _listener.endDocument();
+        _depth = 0;
+        _state = XMLEventListenerStates.DOCUMENT_ENDED;
+    }
+}
@@ -8,6 +8,182 @@ package org.znerd.xmlenc;
  */
 public final class XMLChecker extends Object {
 
+    /**
+     * The number of <code>long</code> elements in a bitmap of all characters in the Basic
+     * Multilingual Plane.
+     */
+    private static final int BITMAP_LENGTH = (Character.MAX_VALUE + 1) >> 6;
+
+    /**
+     * The ranges of the <em>BaseChar</em> production, as pairs of first and last character.
+     */
+    private static final char[] BASE_CHAR = {
+        0x0041, 0x005A, 0x0061, 0x007A, 0x00C0, 0x00D6, 0x00D8, 0x00F6, 0x00F8, 0x00FF, 0x0100, 0x0131, 0x0134, 0x013E, 0x0141, 0x0148,
+        0x014A, 0x017E, 0x0180, 0x01C3, 0x01CD, 0x01F0, 0x01F4, 0x01F5, 0x01FA, 0x0217, 0x0250, 0x02A8, 0x02BB, 0x02C1, 0x0386, 0x0386,
+        0x0388, 0x038A, 0x038C, 0x038C, 0x038E, 0x03A1, 0x03A3, 0x03CE, 0x03D0, 0x03D6, 0x03DA, 0x03DA, 0x03DC, 0x03DC, 0x03DE, 0x03DE,
+        0x03E0, 0x03E0, 0x03E2, 0x03F3, 0x0401, 0x040C, 0x040E, 0x044F, 0x0451, 0x045C, 0x045E, 0x0481, 0x0490, 0x04C4, 0x04C7, 0x04C8,
+        0x04CB, 0x04CC, 0x04D0, 0x04EB, 0x04EE, 0x04F5, 0x04F8, 0x04F9, 0x0531, 0x0556, 0x0559, 0x0559, 0x0561, 0x0586, 0x05D0, 0x05EA,
+        0x05F0, 0x05F2, 0x0621, 0x063A, 0x0641, 0x064A, 0x0671, 0x06B7, 0x06BA, 0x06BE, 0x06C0, 0x06CE, 0x06D0, 0x06D3, 0x06D5, 0x06D5,
+        0x06E5, 0x06E6, 0x0905, 0x0939, 0x093D, 0x093D, 0x0958, 0x0961, 0x0985, 0x098C, 0x098F, 0x0990, 0x0993, 0x09A8, 0x09AA, 0x09B0,
+        0x09B2, 0x09B2, 0x09B6, 0x09B9, 0x09DC, 0x09DD, 0x09DF, 0x09E1, 0x09F0, 0x09F1, 0x0A05, 0x0A0A, 0x0A0F, 0x0A10, 0x0A13, 0x0A28,
+        0x0A2A, 0x0A30, 0x0A32, 0x0A33, 0x0A35, 0x0A36, 0x0A38, 0x0A39, 0x0A59, 0x0A5C, 0x0A5E, 0x0A5E, 0x0A72, 0x0A74, 0x0A85, 0x0A8B,
+        0x0A8D, 0x0A8D, 0x0A8F, 0x0A91, 0x0A93, 0x0AA8, 0x0AAA, 0x0AB0, 0x0AB2, 0x0AB3, 0x0AB5, 0x0AB9, 0x0ABD, 0x0ABD, 0x0AE0, 0x0AE0,
+        0x0B05, 0x0B0C, 0x0B0F, 0x0B10, 0x0B13, 0x0B28, 0x0B2A, 0x0B30, 0x0B32, 0x0B33, 0x0B36, 0x0B39, 0x0B3D, 0x0B3D, 0x0B5C, 0x0B5D,
+        0x0B5F, 0x0B61, 0x0B85, 0x0B8A, 0x0B8E, 0x0B90, 0x0B92, 0x0B95, 0x0B99, 0x0B9A, 0x0B9C, 0x0B9C, 0x0B9E, 0x0B9F, 0x0BA3, 0x0BA4,
+        0x0BA8, 0x0BAA, 0x0BAE, 0x0BB5, 0x0BB7, 0x0BB9, 0x0C05, 0x0C0C, 0x0C0E, 0x0C10, 0x0C12, 0x0C28, 0x0C2A, 0x0C33, 0x0C35, 0x0C39,
+        0x0C60, 0x0C61, 0x0C85, 0x0C8C, 0x0C8E, 0x0C90, 0x0C92, 0x0CA8, 0x0CAA, 0x0CB3, 0x0CB5, 0x0CB9, 0x0CDE, 0x0CDE, 0x0CE0, 0x0CE1,
+        0x0D05, 0x0D0C, 0x0D0E, 0x0D10, 0x0D12, 0x0D28, 0x0D2A, 0x0D39, 0x0D60, 0x0D61, 0x0E01, 0x0E2E, 0x0E30, 0x0E30, 0x0E32, 0x0E33,
+        0x0E40, 0x0E45, 0x0E81, 0x0E82, 0x0E84, 0x0E84, 0x0E87, 0x0E88, 0x0E8A, 0x0E8A, 0x0E8D, 0x0E8D, 0x0E94, 0x0E97, 0x0E99, 0x0E9F,
+        0x0EA1, 0x0EA3, 0x0EA5, 0x0EA5, 0x0EA7, 0x0EA7, 0x0EAA, 0x0EAB, 0x0EAD, 0x0EAE, 0x0EB0, 0x0EB0, 0x0EB2, 0x0EB3, 0x0EBD, 0x0EBD,
+        0x0EC0, 0x0EC4, 0x0F40, 0x0F47, 0x0F49, 0x0F69, 0x10A0, 0x10C5, 0x10D0, 0x10F6, 0x1100, 0x1100, 0x1102, 0x1103, 0x1105, 0x1107,
+        0x1109, 0x1109, 0x110B, 0x110C, 0x110E, 0x1112, 0x113C, 0x113C, 0x113E, 0x113E, 0x1140, 0x1140, 0x114C, 0x114C, 0x114E, 0x114E,
+        0x1150, 0x1150, 0x1154, 0x1155, 0x1159, 0x1159, 0x115F, 0x1161, 0x1163, 0x1163, 0x1165, 0x1165, 0x1167, 0x1167, 0x1169, 0x1169,
+        0x116D, 0x116E, 0x1172, 0x1173, 0x1175, 0x1175, 0x119E, 0x119E, 0x11A8, 0x11A8, 0x11AB, 0x11AB, 0x11AE, 0x11AF, 0x11B7, 0x11B8,
+        0x11BA, 0x11BA, 0x11BC, 0x11C2, 0x11EB, 0x11EB, 0x11F0, 0x11F0, 0x11F9, 0x11F9, 0x1E00, 0x1E9B, 0x1EA0, 0x1EF9, 0x1F00, 0x1F15,
+        0x1F18, 0x1F1D, 0x1F20, 0x1F45, 0x1F48, 0x1F4D, 0x1F50, 0x1F57, 0x1F59, 0x1F59, 0x1F5B, 0x1F5B, 0x1F5D, 0x1F5D, 0x1F5F, 0x1F7D,
+        0x1F80, 0x1FB4, 0x1FB6, 0x1FBC, 0x1FBE, 0x1FBE, 0x1FC2, 0x1FC4, 0x1FC6, 0x1FCC, 0x1FD0, 0x1FD3, 0x1FD6, 0x1FDB, 0x1FE0, 0x1FEC,
+        0x1FF2, 0x1FF4, 0x1FF6, 0x1FFC, 0x2126, 0x2126, 0x212A, 0x212B, 0x212E, 0x212E, 0x2180, 0x2182, 0x3041, 0x3094, 0x30A1, 0x30FA,
+        0x3105, 0x312C, 0xAC00, 0xD7A3
+    };
+
+    /**
+     * The ranges of the <em>Ideographic</em> production, as pairs of first and last character.
+     */
+    private static final char[] IDEOGRAPHIC = {
+        0x3007, 0x3007, 0x3021, 0x3029, 0x4E00, 0x9FA5
+    };
+
+    /**
+     * The ranges of the <em>CombiningChar</em> production, as pairs of first and last character.
+     */
+    private static final char[] COMBINING_CHAR = {
+        0x0300, 0x0345, 0x0360, 0x0361, 0x0483, 0x0486, 0x0591, 0x05A1, 0x05A3, 0x05B9, 0x05BB, 0x05BD, 0x05BF, 0x05BF, 0x05C1, 0x05C2,
+        0x05C4, 0x05C4, 0x064B, 0x0652, 0x0670, 0x0670, 0x06D6, 0x06DC, 0x06DD, 0x06DF, 0x06E0, 0x06E4, 0x06E7, 0x06E8, 0x06EA, 0x06ED,
+        0x0901, 0x0903, 0x093C, 0x093C, 0x093E, 0x094C, 0x094D, 0x094D, 0x0951, 0x0954, 0x0962, 0x0963, 0x0981, 0x0983, 0x09BC, 0x09BC,
+        0x09BE, 0x09BE, 0x09BF, 0x09BF, 0x09C0, 0x09C4, 0x09C7, 0x09C8, 0x09CB, 0x09CD, 0x09D7, 0x09D7, 0x09E2, 0x09E3, 0x0A02, 0x0A02,
+        0x0A3C, 0x0A3C, 0x0A3E, 0x0A3E, 0x0A3F, 0x0A3F, 0x0A40, 0x0A42, 0x0A47, 0x0A48, 0x0A4B, 0x0A4D, 0x0A70, 0x0A71, 0x0A81, 0x0A83,
+        0x0ABC, 0x0ABC, 0x0ABE, 0x0AC5, 0x0AC7, 0x0AC9, 0x0ACB, 0x0ACD, 0x0B01, 0x0B03, 0x0B3C, 0x0B3C, 0x0B3E, 0x0B43, 0x0B47, 0x0B48,
+        0x0B4B, 0x0B4D, 0x0B56, 0x0B57, 0x0B82, 0x0B83, 0x0BBE, 0x0BC2, 0x0BC6, 0x0BC8, 0x0BCA, 0x0BCD, 0x0BD7, 0x0BD7, 0x0C01, 0x0C03,
+        0x0C3E, 0x0C44, 0x0C46, 0x0C48, 0x0C4A, 0x0C4D, 0x0C55, 0x0C56, 0x0C82, 0x0C83, 0x0CBE, 0x0CC4, 0x0CC6, 0x0CC8, 0x0CCA, 0x0CCD,
+        0x0CD5, 0x0CD6, 0x0D02, 0x0D03, 0x0D3E, 0x0D43, 0x0D46, 0x0D48, 0x0D4A, 0x0D4D, 0x0D57, 0x0D57, 0x0E31, 0x0E31, 0x0E34, 0x0E3A,
+        0x0E47, 0x0E4E, 0x0EB1, 0x0EB1, 0x0EB4, 0x0EB9, 0x0EBB, 0x0EBC, 0x0EC8, 0x0ECD, 0x0F18, 0x0F19, 0x0F35, 0x0F35, 0x0F37, 0x0F37,
+        0x0F39, 0x0F39, 0x0F3E, 0x0F3E, 0x0F3F, 0x0F3F, 0x0F71, 0x0F84, 0x0F86, 0x0F8B, 0x0F90, 0x0F95, 0x0F97, 0x0F97, 0x0F99, 0x0FAD,
+        0x0FB1, 0x0FB7, 0x0FB9, 0x0FB9, 0x20D0, 0x20DC, 0x20E1, 0x20E1, 0x302A, 0x302F, 0x3099, 0x3099, 0x309A, 0x309A
+    };
+
+    /**
+     * The ranges of the <em>Digit</em> production, as pairs of first and last character.
+     */
+    private static final char[] DIGIT = {
+        0x0030, 0x0039, 0x0660, 0x0669, 0x06F0, 0x06F9, 0x0966, 0x096F, 0x09E6, 0x09EF, 0x0A66, 0x0A6F, 0x0AE6, 0x0AEF, 0x0B66, 0x0B6F,
+        0x0BE7, 0x0BEF, 0x0C66, 0x0C6F, 0x0CE6, 0x0CEF, 0x0D66, 0x0D6F, 0x0E50, 0x0E59, 0x0ED0, 0x0ED9, 0x0F20, 0x0F29
+    };
+
+    /**
+     * The ranges of the <em>Extender</em> production, as pairs of first and last character.
+     */
+    private static final char[] EXTENDER = {
+        0x00B7, 0x00B7, 0x02D0, 0x02D0, 0x02D1, 0x02D1, 0x0387, 0x0387, 0x0640, 0x0640, 0x0E46, 0x0E46, 0x0EC6, 0x0EC6, 0x3005, 0x3005,
+        0x3031, 0x3035, 0x309D, 0x309E, 0x30FC, 0x30FE
+    };
+
+    /**
+     * Bitmap of the characters that match <code>(Letter | '_' | ':')</code>, the first
+     * character of the <em>Name</em> production. Bit <code>c &amp; 63</code> of element
+     * <code>c &gt;&gt; 6</code> is set if character <code>c</code> matches.
+     */
+    private static final long[] NAME_START_CHARS = new long[BITMAP_LENGTH];
+
+    /**
+     * Bitmap of the characters that match the <em>NameChar</em> production.
+     */
+    private static final long[] NAME_CHARS = new long[BITMAP_LENGTH];
+
+    /**
+     * Bitmap of the characters that are allowed in a <em>PubidLiteral</em>, except for the
+     * apostrophe, which is only allowed between quotes. Any character of the <em>Letter</em> or
+     * the <em>Digit</em> production is accepted, not only ASCII letters and digits.
+     */
+    private static final long[] PUBID_CHARS = new long[BITMAP_LENGTH];
+
+    /**
+     * The code points that match the <em>NameStartChar</em> production of XML 1.0 Fifth Edition
+     * and XML 1.1, as pairs of first and last code point, in ascending order.
+     */
+    private static final int[] NAME_START_CODE_POINTS = {
+        ':', ':', 'A', 'Z', '_', '_', 'a', 'z', 0xC0, 0xD6, 0xD8, 0xF6, 0xF8, 0x2FF, 0x370, 0x37D, 0x37F, 0x1FFF, 0x200C, 0x200D,
+        0x2070, 0x218F, 0x2C00, 0x2FEF, 0x3001, 0xD7FF, 0xF900, 0xFDCF, 0xFDF0, 0xFFFD, 0x10000, 0xEFFFF
+    };
+
+    /**
+     * The code points that match the <em>NameChar</em> production of XML 1.0 Fifth Edition and
+     * XML 1.1, as pairs of first and last code point, in ascending order.
+     */
+    private static final int[] NAME_CODE_POINTS = {
+        '-', '.', '0', ':', 'A', 'Z', '_', '_', 'a', 'z', 0xB7, 0xB7, 0xC0, 0xD6, 0xD8, 0xF6, 0xF8, 0x37D, 0x37F, 0x1FFF,
+        0x200C, 0x200D, 0x203F, 0x2040, 0x2070, 0x218F, 0x2C00, 0x2FEF, 0x3001, 0xD7FF, 0xF900, 0xFDCF, 0xFDF0, 0xFFFD,
+        0x10000, 0xEFFFF
+    };
+
+    /**
+     * Bitmap of the characters in the Basic Multilingual Plane that are in
+     * {@link #NAME_START_CODE_POINTS}.
+     */
+    private static final long[] FIFTH_EDITION_NAME_START_CHARS = new long[BITMAP_LENGTH];
+
+    /**
+     * Bitmap of the characters in the Basic Multilingual Plane that are in
+     * {@link #NAME_CODE_POINTS}.
+     */
+    private static final long[] FIFTH_EDITION_NAME_CHARS = new long[BITMAP_LENGTH];
+
+    static {
+        for (char[] ranges : new char[][] { BASE_CHAR, IDEOGRAPHIC }) {
+            add(NAME_START_CHARS, ranges);
+            add(NAME_CHARS, ranges);
+            add(PUBID_CHARS, ranges);
+        }
+        add(NAME_CHARS, COMBINING_CHAR);
+        add(NAME_CHARS, DIGIT);
+        add(NAME_CHARS, EXTENDER);
+        add(PUBID_CHARS, DIGIT);
+        for (char c : " \r\n-()+,./:=?;!*#@$_%".toCharArray()) {
+            add(PUBID_CHARS, new char[] { c, c });
+        }
+        add(NAME_START_CHARS, new char[] { '_', '_', ':', ':' });
+        add(NAME_CHARS, new char[] { '_', '_', ':', ':', '.', '.', '-', '-' });
+        add(FIFTH_EDITION_NAME_START_CHARS, NAME_START_CODE_POINTS);
+        add(FIFTH_EDITION_NAME_CHARS, NAME_CODE_POINTS);
+    }
+
+    /**
+     * Adds ranges of characters to a bitmap.
+     *
+     * @param bitmap the bitmap, not <code>null</code>.
+     * @param ranges the ranges, as pairs of first and last character, not <code>null</code>.
+     */
+    private static void add(long[] bitmap, char[] ranges) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int c = ranges[i]; c <= ranges[i + 1]; c++) {
+                bitmap[c >> 6] |= 1L << c;
+            }
+        }
+    }
+
+    /**
+     * Adds the part of ranges of code points that is in the Basic Multilingual Plane to a bitmap.
+     *
+     * @param bitmap the bitmap, not <code>null</code>.
+     * @param ranges the ranges, as pairs of first and last code point, not <code>null</code>.
+     */
+    private static void add(long[] bitmap, int[] ranges) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int c = ranges[i]; c <= Math.min(ranges[i + 1], Character.MAX_VALUE); c++) {
+                bitmap[c >> 6] |= 1L << c;
+            }
+        }
+    }
+
     /**
      * Checks if the specified string matches the <em>S</em> (white space) production. See: <a
      * href="http://www.w3.org/TR/REC-xml#NT-S">Definition of S</a>.
@@ -18,7 +194,30 @@ public final class XMLChecker extends Object {
      *                              production.
      */
     public static final void checkS(String s) throws NullPointerException {
-        checkS(s.toCharArray(), 0, s.length());
+        checkS((CharSequence) s);
+    }
+
+    /**
+     * Checks if the specified character sequence matches the <em>S</em> (white space) production.
+     * The characters are checked in place, without copying them. See: <a
+     * href="http://www.w3.org/TR/REC-xml#NT-S">Definition of S</a>.
+     *
+     * @param s the character sequence to check, cannot be <code>null</code>.
+     * @throws NullPointerException if <code>s == null</code>.
+     * @throws InvalidXMLException  if the specified character sequence does not match the <em>S</em>
+     *                              production.
+     * @since XMLenc 0.54
+     */
+    public static final void checkS(CharSequence s) throws NullPointerException, InvalidXMLException {
+
+        // Loop through the sequence and check each character
+        for (int i = 0, length = s.length(); i < length; i++) {
+            int c = s.charAt(i);
+
+            if (c != 0x20 && c != 0x9 && c != 0xD && c != 0xA) {
+                throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid for the 'S' production (white space).");
+            }
+        }
     }
 
     /**
@@ -38,13 +237,12 @@ public final class XMLChecker extends Object {
      */
     public static final void checkS(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException {
 
-        // Loop through the array and check each character
-        for (int i = start; i < length; i++) {
+        // Find the first character that is not white space
+        int end = start + length;
+        int i = EscapeScanner.indexOfNonWhitespace(ch, start, end);
+        if (i < end) {
             int c = ch[i];
-
-            if (c != 0x20 && c != 0x9 && c != 0xD && c != 0xA) {
-                throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid for the 'S' production (white space).");
-            }
+            throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid for the 'S' production (white space).");
         }
     }
 
@@ -58,12 +256,82 @@ public final class XMLChecker extends Object {
      * @throws NullPointerException if <code>s == null</code>.
      */
     public static final boolean isName(String s) throws NullPointerException {
-        try {
-            checkName(s);
-            return true;
-        } catch (InvalidXMLException exception) {
-            return false;
+        return indexOfInvalidName(s) < 0;
+    }
+
+    /**
+     * Finds the first character in the specified character sequence that keeps it from matching
+     * the <em>Name</em> production. Unlike {@link #checkName(CharSequence)}, this method does
+     * not throw an exception if the sequence does not match and it does not allocate any
+     * objects. See: <a href="http://www.w3.org/TR/REC-xml#NT-Name">Definition of Name</a>.
+     *
+     * @param s the character sequence to check, cannot be <code>null</code>.
+     * @return <code>-1</code> if the sequence matches the production, <code>0</code> if it is
+     * empty, or otherwise the index of the first character that is not valid at its position.
+     * @throws NullPointerException if <code>s == null</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidName(CharSequence s) throws NullPointerException {
+
+        // Minimum length is 1
+        int length = s.length();
+        if (length < 1) {
+            return 0;
+        }
+
+        // First char must match: (Letter | '_' | ':')
+        if (!isNameStartChar(s.charAt(0))) {
+            return 0;
         }
+
+        // Loop through the sequence and check each character
+        for (int i = 1; i < length; i++) {
+            if (!isNameChar(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first character in the specified part of a character array that keeps it from
+     * matching the <em>Name</em> production. Unlike {@link #checkName(char[],int,int)}, this
+     * method does not throw an exception if the characters do not match and it does not
+     * allocate any objects. See: <a href="http://www.w3.org/TR/REC-xml#NT-Name">Definition of
+     * Name</a>.
+     *
+     * @param ch     the character array that contains the characters to be checked, cannot be
+     *               <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at the
+     *               <code>start</code> index.
+     * @return <code>-1</code> if the characters match the production, <code>start</code> if
+     * <code>length == 0</code>, or otherwise the index in <code>ch</code> of the first character
+     * that is not valid at its position.
+     * @throws NullPointerException      if <code>ch == null</code>.
+     * @throws IndexOutOfBoundsException if
+     *                                   <code>start &lt; 0 || start + length &gt; ch.length</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidName(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException {
+
+        // Minimum length is 1
+        if (length < 1) {
+            return start;
+        }
+
+        // First char must match: (Letter | '_' | ':')
+        if (!isNameStartChar(ch[start])) {
+            return start;
+        }
+
+        // Loop through the array and check each character
+        for (int i = start + 1, end = start + length; i < end; i++) {
+            if (!isNameChar(ch[i])) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -76,7 +344,25 @@ public final class XMLChecker extends Object {
      *                              <em>Name</em> production.
      */
     public static final void checkName(String s) throws NullPointerException, InvalidXMLException {
-        checkName(s.toCharArray(), 0, s.length());
+        checkName((CharSequence) s);
+    }
+
+    /**
+     * Checks if the specified character sequence matches the <em>Name</em> production. The
+     * characters are checked in place, without copying them. See: <a
+     * href="http://www.w3.org/TR/REC-xml#NT-Name">Definition of Name</a>.
+     *
+     * @param s the character sequence to check, cannot be <code>null</code>.
+     * @throws NullPointerException if <code>s == null</code>.
+     * @throws InvalidXMLException  if the specified character sequence does not match the
+     *                              <em>Name</em> production.
+     * @since XMLenc 0.54
+     */
+    public static final void checkName(CharSequence s) throws NullPointerException, InvalidXMLException {
+        int index = indexOfInvalidName(s);
+        if (index >= 0) {
+            throw invalidName(s.length() == 0, index == 0, s.length() == 0 ? 0 : s.charAt(index));
+        }
     }
 
     /**
@@ -95,26 +381,171 @@ public final class XMLChecker extends Object {
      *                                   <em>Name</em> production.
      */
     public static final void checkName(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException {
+        int index = indexOfInvalidName(ch, start, length);
+        if (index >= 0) {
+            throw invalidName(length < 1, index == start, length < 1 ? 0 : ch[index]);
+        }
+    }
+
+    /**
+     * Determines if the specified string matches the <em>Name</em> production of the specified
+     * set of rules.
+     *
+     * @param s     the character string to check, cannot be <code>null</code>.
+     * @param rules the name rules to apply, cannot be <code>null</code>.
+     * @return <code>true</code> if the {@link String} matches the production, or <code>false</code>
+     * otherwise.
+     * @throws NullPointerException if <code>s == null || rules == null</code>.
+     * @since XMLenc 0.54
+     */
+    public static final boolean isName(String s, NameRules rules) throws NullPointerException {
+        return indexOfInvalidName(s, rules) < 0;
+    }
+
+    /**
+     * Finds the first character in the specified character sequence that keeps it from matching
+     * the <em>Name</em> production of the specified set of rules. Supplementary characters are
+     * taken from surrogate pairs; an unpaired surrogate never matches. This method does not throw
+     * an exception if the sequence does not match and it does not allocate any objects.
+     *
+     * @param s     the character sequence to check, cannot be <code>null</code>.
+     * @param rules the name rules to apply, cannot be <code>null</code>.
+     * @return <code>-1</code> if the sequence matches the production, <code>0</code> if it is
+     * empty, or otherwise the index of the first character that is not valid at its position.
+     * @throws NullPointerException if <code>s == null || rules == null</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidName(CharSequence s, NameRules rules) throws NullPointerException {
+        if (rules.equals(NameRules.XML_1_0_FOURTH_EDITION)) {
+            return indexOfInvalidName(s);
+        }
 
         // Minimum length is 1
+        int length = s.length();
         if (length < 1) {
-            throw new InvalidXMLException("An empty string does not match the 'Name' production.");
+            return 0;
         }
 
-        // First char must match: (Letter | '_' | ':')
-        int i = start;
-        char c = ch[i];
-        if (c != '_' && c != ':' && !isLetter(c)) {
-            throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is invalid as a starting character in the 'Name' production.");
+        // Loop through the sequence and check each code point; the first must be a NameStartChar
+        for (int i = 0; i < length;) {
+            int c = s.charAt(i);
+            int count = 1;
+            if (Character.isHighSurrogate((char) c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, s.charAt(i + 1));
+                count = 2;
+            }
+            if (i == 0 ? !isNameStartCodePoint(c) : !isNameCodePoint(c)) {
+                return i;
+            }
+            i += count;
         }
+        return -1;
+    }
 
-        // Loop through the array and check each character
-        for (i++; i < length; i++) {
-            c = ch[i];
+    /**
+     * Finds the first character in the specified part of a character array that keeps it from
+     * matching the <em>Name</em> production of the specified set of rules. Supplementary
+     * characters are taken from surrogate pairs; an unpaired surrogate never matches. This method
+     * does not throw an exception if the characters do not match and it does not allocate any
+     * objects.
+     *
+     * @param ch     the character array that contains the characters to be checked, cannot be
+     *               <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at the
+     *               <code>start</code> index.
+     * @param rules  the name rules to apply, cannot be <code>null</code>.
+     * @return <code>-1</code> if the characters match the production, <code>start</code> if
+     * <code>length == 0</code>, or otherwise the index in <code>ch</code> of the first character
+     * that is not valid at its position.
+     * @throws NullPointerException      if <code>ch == null || rules == null</code>.
+     * @throws IndexOutOfBoundsException if
+     *                                   <code>start &lt; 0 || start + length &gt; ch.length</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidName(char[] ch, int start, int length, NameRules rules) throws NullPointerException, IndexOutOfBoundsException {
+        if (rules.equals(NameRules.XML_1_0_FOURTH_EDITION)) {
+            return indexOfInvalidName(ch, start, length);
+        }
 
-            if (!isNameChar(c)) {
-                throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid for the 'Name' production.");
+        // Minimum length is 1
+        if (length < 1) {
+            return start;
+        }
+
+        // Loop through the array and check each code point; the first must be a NameStartChar
+        for (int i = start, end = start + length; i < end;) {
+            int c = ch[i];
+            int count = 1;
+            if (Character.isHighSurrogate((char) c) && i + 1 < end && Character.isLowSurrogate(ch[i + 1])) {
+                c = Character.toCodePoint((char) c, ch[i + 1]);
+                count = 2;
             }
+            if (i == start ? !isNameStartCodePoint(c) : !isNameCodePoint(c)) {
+                return i;
+            }
+            i += count;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the specified character sequence matches the <em>Name</em> production of the
+     * specified set of rules.
+     *
+     * @param s     the character sequence to check, cannot be <code>null</code>.
+     * @param rules the name rules to apply, cannot be <code>null</code>.
+     * @throws NullPointerException if <code>s == null || rules == null</code>.
+     * @throws InvalidXMLException  if the specified character sequence does not match the
+     *                              <em>Name</em> production.
+     * @since XMLenc 0.54
+     */
+    public static final void checkName(CharSequence s, NameRules rules) throws NullPointerException, InvalidXMLException {
+        int index = indexOfInvalidName(s, rules);
+        if (index >= 0) {
+            throw invalidName(s.length() == 0, index == 0, s.length() == 0 ? 0 : Character.codePointAt(s, index));
+        }
+    }
+
+    /**
+     * Checks if the specified part of a character array matches the <em>Name</em> production of
+     * the specified set of rules.
+     *
+     * @param ch     the character array that contains the characters to be checked, cannot be
+     *               <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at the
+     *               <code>start</code> index.
+     * @param rules  the name rules to apply, cannot be <code>null</code>.
+     * @throws NullPointerException      if <code>ch == null || rules == null</code>.
+     * @throws IndexOutOfBoundsException if
+     *                                   <code>start &lt; 0 || start + length &gt; ch.length</code>.
+     * @throws InvalidXMLException       if the specified characters do not match the
+     *                                   <em>Name</em> production.
+     * @since XMLenc 0.54
+     */
+    public static final void checkName(char[] ch, int start, int length, NameRules rules) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException {
+        int index = indexOfInvalidName(ch, start, length, rules);
+        if (index >= 0) {
+            throw invalidName(length < 1, index == start, length < 1 ? 0 : Character.codePointAt(ch, index, start + length));
+        }
+    }
+
+    /**
+     * Creates the exception for a string that does not match the <em>Name</em> production.
+     *
+     * @param empty <code>true</code> if the string is empty.
+     * @param first <code>true</code> if the first character is invalid.
+     * @param c     the invalid character or code point.
+     * @return the exception, never <code>null</code>.
+     */
+    private static InvalidXMLException invalidName(boolean empty, boolean first, int c) {
+        if (empty) {
+            return new InvalidXMLException("An empty string does not match the 'Name' production.");
+        } else if (first) {
+            return new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is invalid as a starting character in the 'Name' production.");
+        } else {
+            return new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid for the 'Name' production.");
         }
     }
 
@@ -128,12 +559,84 @@ public final class XMLChecker extends Object {
      * @throws NullPointerException if <code>s == null</code>.
      */
     public static final boolean isSystemLiteral(String s) throws NullPointerException {
-        try {
-            checkSystemLiteral(s);
-            return true;
-        } catch (InvalidXMLException exception) {
-            return false;
+        return indexOfInvalidSystemLiteral(s) < 0;
+    }
+
+    /**
+     * Finds the first character in the specified character sequence that keeps it from matching
+     * the <em>SystemLiteral</em> production. Unlike {@link #checkSystemLiteral(CharSequence)},
+     * this method does not throw an exception if the sequence does not match and it does not
+     * allocate any objects. See: <a href="http://www.w3.org/TR/REC-xml#NT-SystemLiteral">Definition
+     * of SystemLiteral</a>.
+     *
+     * @param s the character sequence to check, cannot be <code>null</code>.
+     * @return <code>-1</code> if the sequence matches the production, the length of the sequence
+     * if it is shorter than 3 characters, or otherwise the index of the first character that is
+     * not valid at its position.
+     * @throws NullPointerException if <code>s == null</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidSystemLiteral(CharSequence s) throws NullPointerException {
+
+        // Minimum length is 3
+        int length = s.length();
+        if (length < 3) {
+            return length;
+        }
+
+        // First and last char: either both apostrophes or both quotes
+        char quote = s.charAt(0);
+        if (quote != '\'' && quote != '"') {
+            return 0;
+        }
+        int last = length - 1;
+        for (int i = 1; i < last; i++) {
+            if (s.charAt(i) == quote) {
+                return i;
+            }
+        }
+        return s.charAt(last) == quote ? -1 : last;
+    }
+
+    /**
+     * Finds the first character in the specified part of a character array that keeps it from
+     * matching the <em>SystemLiteral</em> production. Unlike
+     * {@link #checkSystemLiteral(char[],int,int)}, this method does not throw an exception if the
+     * characters do not match and it does not allocate any objects. See: <a
+     * href="http://www.w3.org/TR/REC-xml#NT-SystemLiteral">Definition of SystemLiteral</a>.
+     *
+     * @param ch     the character array that contains the characters to be checked, cannot be
+     *               <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at the
+     *               <code>start</code> index.
+     * @return <code>-1</code> if the characters match the production,
+     * <code>start + length</code> if <code>length &lt; 3</code>, or otherwise the index in
+     * <code>ch</code> of the first character that is not valid at its position.
+     * @throws NullPointerException      if <code>ch == null</code>.
+     * @throws IndexOutOfBoundsException if
+     *                                   <code>start &lt; 0 || start + length &gt; ch.length</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidSystemLiteral(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException {
+
+        // Minimum length is 3
+        if (length < 3) {
+            return start + length;
+        }
+
+        // First and last char: either both apostrophes or both quotes
+        char quote = ch[start];
+        if (quote != '\'' && quote != '"') {
+            return start;
+        }
+        int last = start + length - 1;
+        for (int i = start + 1; i < last; i++) {
+            if (ch[i] == quote) {
+                return i;
+            }
         }
+        return ch[last] == quote ? -1 : last;
     }
 
     /**
@@ -146,7 +649,26 @@ public final class XMLChecker extends Object {
      *                              <em>PubidLiteral</em> production.
      */
     public static final void checkSystemLiteral(String s) throws NullPointerException, InvalidXMLException {
-        checkSystemLiteral(s.toCharArray(), 0, s.length());
+        checkSystemLiteral((CharSequence) s);
+    }
+
+    /**
+     * Checks if the specified character sequence matches the <em>SystemLiteral</em> production.
+     * The characters are checked in place, without copying them. See: <a
+     * href="http://www.w3.org/TR/REC-xml#NT-SystemLiteral">Definition of SystemLiteral</a>.
+     *
+     * @param s the character sequence to check, cannot be <code>null</code>.
+     * @throws NullPointerException if <code>s == null</code>.
+     * @throws InvalidXMLException  if the specified character sequence does not match the
+     *                              <em>SystemLiteral</em> production.
+     * @since XMLenc 0.54
+     */
+    public static final void checkSystemLiteral(CharSequence s) throws NullPointerException, InvalidXMLException {
+        int index = indexOfInvalidSystemLiteral(s);
+        if (index >= 0) {
+            int length = s.length();
+            throw invalidLiteral("SystemLiteral", length, index, length < 3 ? 0 : s.charAt(0), length < 3 ? 0 : s.charAt(index));
+        }
     }
 
     /**
@@ -166,76 +688,132 @@ public final class XMLChecker extends Object {
      *                                   <em>SystemLiteral</em> production.
      */
     public static final void checkSystemLiteral(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException {
+        int index = indexOfInvalidSystemLiteral(ch, start, length);
+        if (index >= 0) {
+            throw invalidLiteral("SystemLiteral", length, index - start, length < 3 ? 0 : ch[start], length < 3 ? 0 : ch[index]);
+        }
+    }
+
+    /**
+     * Determines if the specified string matches the <em>PubidLiteral</em> production.
+     * See: <a href="http://www.w3.org/TR/REC-xml#NT-PubidLiteral">Definition of PubidLiteral</a>.
+     *
+     * @param s the character string to check, cannot be <code>null</code>.
+     * @return <code>true</code> if the {@link String} matches the production, or <code>false</code>
+     * otherwise.
+     * @throws NullPointerException if <code>s == null</code>.
+     */
+    public static final boolean isPubidLiteral(String s) throws NullPointerException {
+        return indexOfInvalidPubidLiteral(s) < 0;
+    }
+
+    /**
+     * Finds the first character in the specified character sequence that keeps it from matching
+     * the <em>PubidLiteral</em> production. Unlike {@link #checkPubidLiteral(CharSequence)},
+     * this method does not throw an exception if the sequence does not match and it does not
+     * allocate any objects. See: <a href="http://www.w3.org/TR/REC-xml#NT-PubidLiteral">Definition
+     * of PubidLiteral</a>.
+     *
+     * @param s the character sequence to check, cannot be <code>null</code>.
+     * @return <code>-1</code> if the sequence matches the production, the length of the sequence
+     * if it is shorter than 3 characters, or otherwise the index of the first character that is
+     * not valid at its position.
+     * @throws NullPointerException if <code>s == null</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidPubidLiteral(CharSequence s) throws NullPointerException {
 
         // Minimum length is 3
+        int length = s.length();
         if (length < 3) {
-            throw new InvalidXMLException("Minimum length for the 'SystemLiteral' production is 3 characters.");
+            return length;
         }
 
-        int lastIndex = start + length - 1;
-        char firstChar = ch[0];
-        char lastChar = ch[lastIndex];
-
-        // First and last char: single qoute (apostrophe)
-        if (firstChar == '\'') {
-            if (lastChar != '\'') {
-                throw new InvalidXMLException("First character is '\\'', but the " + "last character is 0x" + Integer.toHexString(lastChar) + '.');
+        // First and last char: either both apostrophes or both quotes
+        char quote = s.charAt(0);
+        if (quote != '\'' && quote != '"') {
+            return 0;
+        }
+        int last = length - 1;
+        for (int i = 1; i < last; i++) {
+            if (!isPubidChar(s.charAt(i), quote)) {
+                return i;
             }
+        }
+        return s.charAt(last) == quote ? -1 : last;
+    }
 
-            // First and last char: double qoute character
-        } else if (firstChar == '"') {
-            if (lastChar != '"') {
-                throw new InvalidXMLException("First character is '\"', but the " + "last character is 0x" + Integer.toHexString(lastChar) + '.');
-            }
+    /**
+     * Finds the first character in the specified part of a character array that keeps it from
+     * matching the <em>PubidLiteral</em> production. Unlike
+     * {@link #checkPubidLiteral(char[],int,int)}, this method does not throw an exception if the
+     * characters do not match and it does not allocate any objects. See: <a
+     * href="http://www.w3.org/TR/REC-xml#NT-PubidLiteral">Definition of PubidLiteral</a>.
+     *
+     * @param ch     the character array that contains the characters to be checked, cannot be
+     *               <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at the
+     *               <code>start</code> index.
+     * @return <code>-1</code> if the characters match the production,
+     * <code>start + length</code> if <code>length &lt; 3</code>, or otherwise the index in
+     * <code>ch</code> of the first character that is not valid at its position.
+     * @throws NullPointerException      if <code>ch == null</code>.
+     * @throws IndexOutOfBoundsException if
+     *                                   <code>start &lt; 0 || start + length &gt; ch.length</code>.
+     * @since XMLenc 0.54
+     */
+    public static final int indexOfInvalidPubidLiteral(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException {
 
-            // First character is invalid
-        } else {
-            throw new InvalidXMLException("First char must either be '\\'' or " + "'\"' instead of 0x" + Integer.toHexString(firstChar) + '.');
+        // Minimum length is 3
+        if (length < 3) {
+            return start + length;
         }
 
-        // Check each character
-        for (int i = 1; i < length - 1; i++) {
-            char c = ch[i];
-
-            if (c == firstChar) {
-                if (firstChar == '\'') {
-                    throw new InvalidXMLException("Found '\\'' at position " + i + '.');
-                } else {
-                    throw new InvalidXMLException("Found '\"' at position " + i + '.');
-                }
+        // First and last char: either both apostrophes or both quotes
+        char quote = ch[start];
+        if (quote != '\'' && quote != '"') {
+            return start;
+        }
+        int last = start + length - 1;
+        for (int i = start + 1; i < last; i++) {
+            if (!isPubidChar(ch[i], quote)) {
+                return i;
             }
         }
+        return ch[last] == quote ? -1 : last;
     }
 
     /**
-     * Determines if the specified string matches the <em>PubidLiteral</em> production.
+     * Checks if the specified string matches the <em>PubidLiteral</em> production.
      * See: <a href="http://www.w3.org/TR/REC-xml#NT-PubidLiteral">Definition of PubidLiteral</a>.
      *
      * @param s the character string to check, cannot be <code>null</code>.
-     * @return <code>true</code> if the {@link String} matches the production, or <code>false</code>
-     * otherwise.
      * @throws NullPointerException if <code>s == null</code>.
+     * @throws InvalidXMLException  if the specified character string does not match the
+     *                              <em>PubidLiteral</em> production.
      */
-    public static final boolean isPubidLiteral(String s) throws NullPointerException {
-        try {
-            checkPubidLiteral(s);
-            return true;
-        } catch (InvalidXMLException exception) {
-            return false;
-        }
+    public static final void checkPubidLiteral(String s) throws NullPointerException, InvalidXMLException {
+        checkPubidLiteral((CharSequence) s);
     }
 
     /**
-     * Checks if the specified string matches the <em>PubidLiteral</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-PubidLiteral">Definition of PubidLiteral</a>.
+     * Checks if the specified character sequence matches the <em>PubidLiteral</em> production.
+     * The characters are checked in place, without copying them. See: <a
+     * href="http://www.w3.org/TR/REC-xml#NT-PubidLiteral">Definition of PubidLiteral</a>.
      *
-     * @param s the character string to check, cannot be <code>null</code>.
+     * @param s the character sequence to check, cannot be <code>null</code>.
      * @throws NullPointerException if <code>s == null</code>.
-     * @throws InvalidXMLException  if the specified character string does not match the
+     * @throws InvalidXMLException  if the specified character sequence does not match the
      *                              <em>PubidLiteral</em> production.
+     * @since XMLenc 0.54
      */
-    public static final void checkPubidLiteral(String s) throws NullPointerException, InvalidXMLException {
-        checkPubidLiteral(s.toCharArray(), 0, s.length());
+    public static final void checkPubidLiteral(CharSequence s) throws NullPointerException, InvalidXMLException {
+        int index = indexOfInvalidPubidLiteral(s);
+        if (index >= 0) {
+            int length = s.length();
+            throw invalidLiteral("PubidLiteral", length, index, length < 3 ? 0 : s.charAt(0), length < 3 ? 0 : s.charAt(index));
+        }
     }
 
     /**
@@ -255,134 +833,133 @@ public final class XMLChecker extends Object {
      *                                   <em>PubidLiteral</em> production.
      */
     public static final void checkPubidLiteral(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException {
-
-        // Minimum length is 3
-        if (length < 3) {
-            throw new InvalidXMLException("Minimum length for the 'PubidLiteral' production is 3 characters.");
-        }
-
-        int lastIndex = start + length - 1;
-        char firstChar = ch[0];
-        char lastChar = ch[lastIndex];
-
-        // First and last char: single qoute (apostrophe)
-        String otherAllowedChars;
-        if (firstChar == '\'') {
-            if (lastChar != '\'') {
-                throw new InvalidXMLException("First character is '\\'', but the " + "last character is 0x" + Integer.toHexString(lastChar) + '.');
-            }
-            otherAllowedChars = "-()+,./:=?;!*#@$_%";
-
-            // First and last char: double qoute character
-        } else if (firstChar == '"') {
-            if (lastChar != '"') {
-                throw new InvalidXMLException("First character is '\"', but the " + "last character is 0x" + Integer.toHexString(lastChar) + '.');
-            }
-            otherAllowedChars = "-'()+,./:=?;!*#@$_%";
-
-            // First character is invalid
-        } else {
-            throw new InvalidXMLException("First char must either be '\\'' or " + "'\"' instead of 0x" + Integer.toHexString(firstChar) + '.');
-        }
-
-        // Check each character
-        for (int i = 1; i < length - 1; i++) {
-            char c = ch[i];
-
-            if (c != 0x20 && c != 0x0D && c != 0x0A && !isLetter(c) && !isDigit(c) && otherAllowedChars.indexOf(c) < 0) {
-                // TODO: Quote character properly, even if it is an apostrophe
-                throw new InvalidXMLException("The character '" + c + "' (0x" + Integer.toHexString(c) + ") is not valid for the " + "'PubidLiteral' production.");
-            }
+        int index = indexOfInvalidPubidLiteral(ch, start, length);
+        if (index >= 0) {
+            throw invalidLiteral("PubidLiteral", length, index - start, length < 3 ? 0 : ch[start], length < 3 ? 0 : ch[index]);
         }
     }
 
     /**
-     * Determines if the specified character matches the <em>NameChar</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-NameChar">Definition of NameChar</a>.
+     * Creates the exception for a string that does not match the <em>SystemLiteral</em> or the
+     * <em>PubidLiteral</em> production.
      *
-     * @param c the character to check.
-     * @return <code>true</code> if the character matches the production, or <code>false</code> if
-     * it does not.
+     * @param production the name of the production, not <code>null</code>.
+     * @param length     the length of the string.
+     * @param index      the index of the invalid character in the string, as returned by the
+     *                   <code>indexOfInvalid</code> method.
+     * @param quote      the first character of the string.
+     * @param c          the invalid character.
+     * @return the exception, never <code>null</code>.
      */
-    private static final boolean isNameChar(char c) {
-        return c == '.' || c == '-' || c == '_' || c == ':' || isDigit(c) || isLetter(c) || isCombiningChar(c) || isExtender(c);
+    private static InvalidXMLException invalidLiteral(String production, int length, int index, char quote, char c) {
+        if (length < 3) {
+            return new InvalidXMLException("Minimum length for the '" + production + "' production is 3 characters.");
+        } else if (index == 0) {
+            return new InvalidXMLException("First char must either be '\\'' or " + "'\"' instead of 0x" + Integer.toHexString(c) + '.');
+        } else if (index == length - 1) {
+            return new InvalidXMLException("First character is '" + (quote == '\'' ? "\\'" : "\"") + "', but the " + "last character is 0x" + Integer.toHexString(c) + '.');
+        } else if (c == quote) {
+            return new InvalidXMLException("Found '" + (quote == '\'' ? "\\'" : "\"") + "' at position " + index + '.');
+        } else {
+            return new InvalidXMLException("The character '" + c + "' (0x" + Integer.toHexString(c) + ") is not valid for the " + "'" + production + "' production.");
+        }
     }
 
     /**
-     * Determines if the specified character matches the <em>Letter</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-Letter">Definition of Letter</a>.
+     * Determines if the specified character can start a name, i.e. if it matches
+     * <code>(Letter | '_' | ':')</code>.
+     * See: <a href="http://www.w3.org/TR/REC-xml#NT-Name">Definition of Name</a>.
      *
      * @param c the character to check.
-     * @return <code>true</code> if the character matches the production, or <code>false</code> if
-     * it does not.
+     * @return <code>true</code> if the character matches, or <code>false</code> if it does not.
      */
-    private static final boolean isLetter(char c) {
-        return isBaseChar(c) || isIdeographic(c);
+    private static boolean isNameStartChar(char c) {
+        return (NAME_START_CHARS[c >> 6] & (1L << c)) != 0;
     }
 
     /**
-     * Determines if the specified character matches the <em>BaseChar</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-BaseChar">Definition of BaseChar</a>.
+     * Determines if the specified character matches the <em>NameChar</em> production.
+     * See: <a href="http://www.w3.org/TR/REC-xml#NT-NameChar">Definition of NameChar</a>.
      *
      * @param c the character to check.
      * @return <code>true</code> if the character matches the production, or <code>false</code> if
      * it does not.
      */
-    private static final boolean isBaseChar(char c) {
-        int n = c;
-        return n >= 0x0041 && n <= 0x005A || n >= 0x0061 && n <= 0x007A || n >= 0x00C0 && n <= 0x00D6 || n >= 0x00D8 && n <= 0x00F6 || n >= 0x00F8 && n <= 0x00FF || n >= 0x0100 && n <= 0x0131 || n >= 0x0134 && n <= 0x013E || n >= 0x0141 && n <= 0x0148 || n >= 0x014A && n <= 0x017E || n >= 0x0180 && n <= 0x01C3 || n >= 0x01CD && n <= 0x01F0 || n >= 0x01F4 && n <= 0x01F5 || n >= 0x01FA && n <= 0x0217 || n >= 0x0250 && n <= 0x02A8 || n >= 0x02BB && n <= 0x02C1 || n == 0x0386 || n >= 0x0388 && n <= 0x038A || n == 0x038C || n >= 0x038E && n <= 0x03A1 || n >= 0x03A3 && n <= 0x03CE || n >= 0x03D0 && n <= 0x03D6 || n == 0x03DA || n == 0x03DC || n == 0x03DE || n == 0x03E0 || n >= 0x03E2 && n <= 0x03F3 || n >= 0x0401 && n <= 0x040C || n >= 0x040E && n <= 0x044F || n >= 0x0451 && n <= 0x045C || n >= 0x045E && n <= 0x0481 || n >= 0x0490 && n <= 0x04C4 || n >= 0x04C7 && n <= 0x04C8 || n >= 0x04CB && n <= 0x04CC || n >= 0x04D0 && n <= 0x04EB || n >= 0x04EE && n <= 0x04F5 || n >= 0x04F8 && n <= 0x04F9 || n >= 0x0531 && n <= 0x0556 || n == 0x0559 || n >= 0x0561 && n <= 0x0586 || n >= 0x05D0 && n <= 0x05EA || n >= 0x05F0 && n <= 0x05F2 || n >= 0x0621 && n <= 0x063A || n >= 0x0641 && n <= 0x064A || n >= 0x0671 && n <= 0x06B7 || n >= 0x06BA && n <= 0x06BE || n >= 0x06C0 && n <= 0x06CE || n >= 0x06D0 && n <= 0x06D3 || n == 0x06D5 || n >= 0x06E5 && n <= 0x06E6 || n >= 0x0905 && n <= 0x0939 || n == 0x093D || n >= 0x0958 && n <= 0x0961 || n >= 0x0985 && n <= 0x098C || n >= 0x098F && n <= 0x0990 || n >= 0x0993 && n <= 0x09A8 || n >= 0x09AA && n <= 0x09B0 || n == 0x09B2 || n >= 0x09B6 && n <= 0x09B9 || n >= 0x09DC && n <= 0x09DD || n >= 0x09DF && n <= 0x09E1 || n >= 0x09F0 && n <= 0x09F1 || n >= 0x0A05 && n <= 0x0A0A || n >= 0x0A0F && n <= 0x0A10 || n >= 0x0A13 && n <= 0x0A28 || n >= 0x0A2A && n <= 0x0A30 || n >= 0x0A32 && n <= 0x0A33 || n >= 0x0A35 && n <= 0x0A36 || n >= 0x0A38 && n <= 0x0A39 || n >= 0x0A59 && n <= 0x0A5C || n == 0x0A5E || n >= 0x0A72 && n <= 0x0A74 || n >= 0x0A85 && n <= 0x0A8B || n == 0x0A8D || n >= 0x0A8F && n <= 0x0A91 || n >= 0x0A93 && n <= 0x0AA8 || n >= 0x0AAA && n <= 0x0AB0 || n >= 0x0AB2 && n <= 0x0AB3 || n >= 0x0AB5 && n <= 0x0AB9 || n == 0x0ABD || n == 0x0AE0 || n >= 0x0B05 && n <= 0x0B0C || n >= 0x0B0F && n <= 0x0B10 || n >= 0x0B13 && n <= 0x0B28 || n >= 0x0B2A && n <= 0x0B30 || n >= 0x0B32 && n <= 0x0B33 || n >= 0x0B36 && n <= 0x0B39 || n == 0x0B3D || n >= 0x0B5C && n <= 0x0B5D || n >= 0x0B5F && n <= 0x0B61 || n >= 0x0B85 && n <= 0x0B8A || n >= 0x0B8E && n <= 0x0B90 || n >= 0x0B92 && n <= 0x0B95 || n >= 0x0B99 && n <= 0x0B9A || n == 0x0B9C || n >= 0x0B9E && n <= 0x0B9F || n >= 0x0BA3 && n <= 0x0BA4 || n >= 0x0BA8 && n <= 0x0BAA || n >= 0x0BAE && n <= 0x0BB5 || n >= 0x0BB7 && n <= 0x0BB9 || n >= 0x0C05 && n <= 0x0C0C || n >= 0x0C0E && n <= 0x0C10 || n >= 0x0C12 && n <= 0x0C28 || n >= 0x0C2A && n <= 0x0C33 || n >= 0x0C35 && n <= 0x0C39 || n >= 0x0C60 && n <= 0x0C61 || n >= 0x0C85 && n <= 0x0C8C || n >= 0x0C8E && n <= 0x0C90 || n >= 0x0C92 && n <= 0x0CA8 || n >= 0x0CAA && n <= 0x0CB3 || n >= 0x0CB5 && n <= 0x0CB9 || n == 0x0CDE || n >= 0x0CE0 && n <= 0x0CE1 || n >= 0x0D05 && n <= 0x0D0C || n >= 0x0D0E && n <= 0x0D10 || n >= 0x0D12 && n <= 0x0D28 || n >= 0x0D2A && n <= 0x0D39 || n >= 0x0D60 && n <= 0x0D61 || n >= 0x0E01 && n <= 0x0E2E || n == 0x0E30 || n >= 0x0E32 && n <= 0x0E33 || n >= 0x0E40 && n <= 0x0E45 || n >= 0x0E81 && n <= 0x0E82 || n == 0x0E84 || n >= 0x0E87 && n <= 0x0E88 || n == 0x0E8A || n == 0x0E8D || n >= 0x0E94 && n <= 0x0E97 || n >= 0x0E99 && n <= 0x0E9F || n >= 0x0EA1 && n <= 0x0EA3 || n == 0x0EA5 || n == 0x0EA7 || n >= 0x0EAA && n <= 0x0EAB || n >= 0x0EAD && n <= 0x0EAE || n == 0x0EB0 || n >= 0x0EB2 && n <= 0x0EB3 || n == 0x0EBD || n >= 0x0EC0 && n <= 0x0EC4 || n >= 0x0F40 && n <= 0x0F47 || n >= 0x0F49 && n <= 0x0F69 || n >= 0x10A0 && n <= 0x10C5 || n >= 0x10D0 && n <= 0x10F6 || n == 0x1100 || n >= 0x1102 && n <= 0x1103 || n >= 0x1105 && n <= 0x1107 || n == 0x1109 || n >= 0x110B && n <= 0x110C || n >= 0x110E && n <= 0x1112 || n == 0x113C || n == 0x113E || n == 0x1140 || n == 0x114C || n == 0x114E || n == 0x1150 || n >= 0x1154 && n <= 0x1155 || n == 0x1159 || n >= 0x115F && n <= 0x1161 || n == 0x1163 || n == 0x1165 || n == 0x1167 || n == 0x1169 || n >= 0x116D && n <= 0x116E || n >= 0x1172 && n <= 0x1173 || n == 0x1175 || n == 0x119E || n == 0x11A8 || n == 0x11AB || n >= 0x11AE && n <= 0x11AF || n >= 0x11B7 && n <= 0x11B8 || n == 0x11BA || n >= 0x11BC && n <= 0x11C2 || n == 0x11EB || n == 0x11F0 || n == 0x11F9 || n >= 0x1E00 && n <= 0x1E9B || n >= 0x1EA0 && n <= 0x1EF9 || n >= 0x1F00 && n <= 0x1F15 || n >= 0x1F18 && n <= 0x1F1D || n >= 0x1F20 && n <= 0x1F45 || n >= 0x1F48 && n <= 0x1F4D || n >= 0x1F50 && n <= 0x1F57 || n == 0x1F59 || n == 0x1F5B || n == 0x1F5D || n >= 0x1F5F && n <= 0x1F7D || n >= 0x1F80 && n <= 0x1FB4 || n >= 0x1FB6 && n <= 0x1FBC || n == 0x1FBE || n >= 0x1FC2 && n <= 0x1FC4 || n >= 0x1FC6 && n <= 0x1FCC || n >= 0x1FD0 && n <= 0x1FD3 || n >= 0x1FD6 && n <= 0x1FDB || n >= 0x1FE0 && n <= 0x1FEC || n >= 0x1FF2 && n <= 0x1FF4 || n >= 0x1FF6 && n <= 0x1FFC || n == 0x2126 || n >= 0x212A && n <= 0x212B || n == 0x212E || n >= 0x2180 && n <= 0x2182 || n >= 0x3041 && n <= 0x3094 || n >= 0x30A1 && n <= 0x30FA || n >= 0x3105 && n <= 0x312C || n >= 0xAC00 && n <= 0xD7A3;
+    private static boolean isNameChar(char c) {
+        return (NAME_CHARS[c >> 6] & (1L << c)) != 0;
     }
 
     /**
-     * Determines if the specified character matches the <em>Ideographic</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-Ideographic">Definition of Ideographic</a>.
+     * Determines if the specified code point matches the <em>NameStartChar</em> production of XML
+     * 1.0 Fifth Edition and XML 1.1.
+     * See: <a href="http://www.w3.org/TR/REC-xml/#NT-NameStartChar">Definition of
+     * NameStartChar</a>.
      *
-     * @param c the character to check.
-     * @return <code>true</code> if the character matches the production, or <code>false</code> if
-     * it does not.
+     * @param c the code point to check.
+     * @return <code>true</code> if the code point matches the production, or <code>false</code>
+     * if it does not.
      */
-    private static final boolean isIdeographic(char c) {
-        int n = c;
-        return n >= 0x4E00 && n <= 0x9FA5 || n == 0x3007 || n >= 0x3021 && n <= 0x3029;
+    private static boolean isNameStartCodePoint(int c) {
+        if (c <= Character.MAX_VALUE) {
+            return (FIFTH_EDITION_NAME_START_CHARS[c >> 6] & (1L << c)) != 0;
+        }
+        return inRanges(NAME_START_CODE_POINTS, c);
     }
 
     /**
-     * Determines if the specified character matches the <em>CombiningChar</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-CombiningChar">Definition of CombiningChar</a>.
+     * Determines if the specified code point matches the <em>NameChar</em> production of XML 1.0
+     * Fifth Edition and XML 1.1.
+     * See: <a href="http://www.w3.org/TR/REC-xml/#NT-NameChar">Definition of NameChar</a>.
      *
-     * @param c the character to check.
-     * @return <code>true</code> if the character matches the production, or <code>false</code> if
-     * it does not.
+     * @param c the code point to check.
+     * @return <code>true</code> if the code point matches the production, or <code>false</code>
+     * if it does not.
      */
-    private static final boolean isCombiningChar(char c) {
-        int n = c;
-        return n >= 0x0300 && n <= 0x0345 || n >= 0x0360 && n <= 0x0361 || n >= 0x0483 && n <= 0x0486 || n >= 0x0591 && n <= 0x05A1 || n >= 0x05A3 && n <= 0x05B9 || n >= 0x05BB && n <= 0x05BD || n == 0x05BF || n >= 0x05C1 && n <= 0x05C2 || n == 0x05C4 || n >= 0x064B && n <= 0x0652 || n == 0x0670 || n >= 0x06D6 && n <= 0x06DC || n >= 0x06DD && n <= 0x06DF || n >= 0x06E0 && n <= 0x06E4 || n >= 0x06E7 && n <= 0x06E8 || n >= 0x06EA && n <= 0x06ED || n >= 0x0901 && n <= 0x0903 || n == 0x093C || n >= 0x093E && n <= 0x094C || n == 0x094D || n >= 0x0951 && n <= 0x0954 || n >= 0x0962 && n <= 0x0963 || n >= 0x0981 && n <= 0x0983 || n == 0x09BC || n == 0x09BE || n == 0x09BF || n >= 0x09C0 && n <= 0x09C4 || n >= 0x09C7 && n <= 0x09C8 || n >= 0x09CB && n <= 0x09CD || n == 0x09D7 || n >= 0x09E2 && n <= 0x09E3 || n == 0x0A02 || n == 0x0A3C || n == 0x0A3E || n == 0x0A3F || n >= 0x0A40 && n <= 0x0A42 || n >= 0x0A47 && n <= 0x0A48 || n >= 0x0A4B && n <= 0x0A4D || n >= 0x0A70 && n <= 0x0A71 || n >= 0x0A81 && n <= 0x0A83 || n == 0x0ABC || n >= 0x0ABE && n <= 0x0AC5 || n >= 0x0AC7 && n <= 0x0AC9 || n >= 0x0ACB && n <= 0x0ACD || n >= 0x0B01 && n <= 0x0B03 || n == 0x0B3C || n >= 0x0B3E && n <= 0x0B43 || n >= 0x0B47 && n <= 0x0B48 || n >= 0x0B4B && n <= 0x0B4D || n >= 0x0B56 && n <= 0x0B57 || n >= 0x0B82 && n <= 0x0B83 || n >= 0x0BBE && n <= 0x0BC2 || n >= 0x0BC6 && n <= 0x0BC8 || n >= 0x0BCA && n <= 0x0BCD || n == 0x0BD7 || n >= 0x0C01 && n <= 0x0C03 || n >= 0x0C3E && n <= 0x0C44 || n >= 0x0C46 && n <= 0x0C48 || n >= 0x0C4A && n <= 0x0C4D || n >= 0x0C55 && n <= 0x0C56 || n >= 0x0C82 && n <= 0x0C83 || n >= 0x0CBE && n <= 0x0CC4 || n >= 0x0CC6 && n <= 0x0CC8 || n >= 0x0CCA && n <= 0x0CCD || n >= 0x0CD5 && n <= 0x0CD6 || n >= 0x0D02 && n <= 0x0D03 || n >= 0x0D3E && n <= 0x0D43 || n >= 0x0D46 && n <= 0x0D48 || n >= 0x0D4A && n <= 0x0D4D || n == 0x0D57 || n == 0x0E31 || n >= 0x0E34 && n <= 0x0E3A || n >= 0x0E47 && n <= 0x0E4E || n == 0x0EB1 || n >= 0x0EB4 && n <= 0x0EB9 || n >= 0x0EBB && n <= 0x0EBC || n >= 0x0EC8 && n <= 0x0ECD || n >= 0x0F18 && n <= 0x0F19 || n == 0x0F35 || n == 0x0F37 || n == 0x0F39 || n == 0x0F3E || n == 0x0F3F || n >= 0x0F71 && n <= 0x0F84 || n >= 0x0F86 && n <= 0x0F8B || n >= 0x0F90 && n <= 0x0F95 || n == 0x0F97 || n >= 0x0F99 && n <= 0x0FAD || n >= 0x0FB1 && n <= 0x0FB7 || n == 0x0FB9 || n >= 0x20D0 && n <= 0x20DC || n == 0x20E1 || n >= 0x302A && n <= 0x302F || n == 0x3099 || n == 0x309A;
+    private static boolean isNameCodePoint(int c) {
+        if (c <= Character.MAX_VALUE) {
+            return (FIFTH_EDITION_NAME_CHARS[c >> 6] & (1L << c)) != 0;
+        }
+        return inRanges(NAME_CODE_POINTS, c);
     }
 
     /**
-     * Determines if the specified character matches the <em>Digit</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-Digit">Definition of Digit</a>.
+     * Determines if the specified code point is in one of the specified ranges, using a binary
+     * search.
      *
-     * @param c the character to check.
-     * @return <code>true</code> if the character matches the production, or <code>false</code> if
-     * it does not.
+     * @param ranges the ranges, as pairs of first and last code point, in ascending order, not
+     *               <code>null</code>.
+     * @param c      the code point to check.
+     * @return <code>true</code> if the code point is in one of the ranges, or <code>false</code>
+     * if it is not.
      */
-    private static final boolean isDigit(char c) {
-        int n = c;
-        return n >= 0x0030 && n <= 0x0039 || n >= 0x0660 && n <= 0x0669 || n >= 0x06F0 && n <= 0x06F9 || n >= 0x0966 && n <= 0x096F || n >= 0x09E6 && n <= 0x09EF || n >= 0x0A66 && n <= 0x0A6F || n >= 0x0AE6 && n <= 0x0AEF || n >= 0x0B66 && n <= 0x0B6F || n >= 0x0BE7 && n <= 0x0BEF || n >= 0x0C66 && n <= 0x0C6F || n >= 0x0CE6 && n <= 0x0CEF || n >= 0x0D66 && n <= 0x0D6F || n >= 0x0E50 && n <= 0x0E59 || n >= 0x0ED0 && n <= 0x0ED9 || n >= 0x0F20 && n <= 0x0F29;
+    private static boolean inRanges(int[] ranges, int c) {
+        int low = 0;
+        int high = (ranges.length >> 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (c > ranges[(middle << 1) + 1]) {
+                low = middle + 1;
+            } else if (c < ranges[middle << 1]) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Determines if the specified character matches the <em>Extender</em> production.
-     * See: <a href="http://www.w3.org/TR/REC-xml#NT-Extender">Definition of Extender</a>.
+     * Determines if the specified character is allowed in a <em>PubidLiteral</em> that is
+     * surrounded by the specified quote character.
+     * See: <a href="http://www.w3.org/TR/REC-xml#NT-PubidChar">Definition of PubidChar</a>.
      *
-     * @param c the character to check.
-     * @return <code>true</code> if the character matches the production, or <code>false</code> if
-     * it does not.
+     * @param c     the character to check.
+     * @param quote the quote character around the literal, either <code>'"'</code> or
+     *              <code>'\''</code>.
+     * @return <code>true</code> if the character is allowed, or <code>false</code> if it is not.
      */
-    private static final boolean isExtender(char c) {
-        int n = c;
-        return n == 0x00B7 || n == 0x02D0 || n == 0x02D1 || n == 0x0387 || n == 0x0640 || n == 0x0E46 || n == 0x0EC6 || n == 0x3005 || n >= 0x3031 && n <= 0x3035 || n >= 0x309D && n <= 0x309E || n >= 0x30FC && n <= 0x30FE;
+    private static boolean isPubidChar(char c, char quote) {
+        return (PUBID_CHARS[c >> 6] & (1L << c)) != 0 || (c == '\'' && quote == '"');
     }
 
     /**
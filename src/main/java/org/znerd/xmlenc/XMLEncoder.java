@@ -4,17 +4,23 @@ package org.znerd.xmlenc;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Encodes character streams for an XML document.
  * <p>
- * The following encodings are supported:
- * <ul>
- * <li><code>UTF-8</code>
- * <li><code>UTF-16</code>
- * <li><code>US-ASCII</code>, with alias <code>ASCII</code>
- * <li>all <code>ISO-8859</code> encodings
- * </ul>
+ * All encodings that the JVM can encode to are supported, for example <code>UTF-8</code>,
+ * <code>UTF-16</code>, <code>US-ASCII</code>, the <code>ISO-8859</code> encodings,
+ * <code>windows-1252</code>, <code>Shift_JIS</code> and <code>GB18030</code>. Characters that
+ * the encoding cannot represent are written as numeric character references. Which characters
+ * these are is determined once per encoding and then cached.
+ * <p>
+ * <code>ISO-8859</code> encodings that the JVM does not support are still accepted; with those,
+ * all non-ASCII characters are written as numeric character references.
+ * <p>
+ * When writing to a {@link UTF8XMLWriter}, text and attribute values are escaped and encoded to
+ * UTF-8 bytes in a single pass.
  *
  * @since XMLenc 0.1
  */
@@ -23,6 +29,9 @@ public class XMLEncoder extends Object {
     /**
      * Retrieves an <code>XMLEncoder</code> for the specified encoding. If no
      * suitable instance can be returned, then an exception is thrown.
+     * <p />
+     * Encoders are immutable, so the same instance is returned for every call with the same
+     * encoding name.
      *
      * @param encoding the name of the encoding, not <code>null</code>.
      * @return an <code>XMLEncoder</code> instance that matches the specified encoding, never
@@ -30,10 +39,30 @@ public class XMLEncoder extends Object {
      * @throws IllegalArgumentException     if <code>encoding == null</code>.
      * @throws UnsupportedEncodingException if the specified encoding is not supported.
      */
+    @SuppressWarnings("deprecation")
     public static final XMLEncoder getEncoder(String encoding) throws IllegalArgumentException, UnsupportedEncodingException {
-        return new XMLEncoder(encoding);
+
+        // Check argument
+        if (encoding == null) {
+            throw new IllegalArgumentException("encoding == null");
+        }
+
+        XMLEncoder encoder = ENCODERS.get(encoding);
+        if (encoder == null) {
+            encoder = new XMLEncoder(encoding);
+            XMLEncoder existing = ENCODERS.putIfAbsent(encoding, encoder);
+            if (existing != null) {
+                encoder = existing;
+            }
+        }
+        return encoder;
     }
 
+    /**
+     * The encoders returned by {@link #getEncoder(String)}, keyed by encoding name as passed.
+     */
+    private static final ConcurrentHashMap<String, XMLEncoder> ENCODERS = new ConcurrentHashMap<String, XMLEncoder>();
+
     /**
      * Character array representing the string <code>"&gt;"</code>.
      */
@@ -59,11 +88,6 @@ public class XMLEncoder extends Object {
      */
     private static final char[] ESC_QUOTE = new char[] { '&', 'q', 'u', 'o', 't', ';' };
 
-    /**
-     * Character array representing the string <code>"&amp;#"</code>.
-     */
-    private static final char[] AMPERSAND_HASH = new char[] { '&', '#' };
-
     /**
      * Character array representing the string <code>"='"</code>.
      */
@@ -74,6 +98,18 @@ public class XMLEncoder extends Object {
      */
     private static final char[] EQUALS_QUOTE = new char[] { '=', '"' };
 
+    /**
+     * The escape sequences, indexed by character class (see {@link EscapePolicy}). Only the
+     * classes that have a fixed escape sequence have an entry.
+     */
+    private static final char[][] ESCAPE_SEQUENCES = new char[][] { null, ESC_LESS_THAN, ESC_GREATER_THAN, ESC_AMPERSAND, ESC_QUOTE, ESC_APOSTROPHE };
+
+    /**
+     * The Unicode replacement character, written instead of invalid characters if the escape policy
+     * uses {@link InvalidCharacterPolicy#REPLACE}.
+     */
+    static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
     /**
      * Constructs a new <code>XMLEncoder</code> instance.
      *
@@ -97,14 +133,29 @@ public class XMLEncoder extends Object {
         // Check if the encoding supports all Unicode characters
         if (ucEncoding.equals("UTF-8") || ucEncoding.equals("UTF-16")) {
             _sevenBitEncoding = false;
+            _encodable = null;
 
             // Check if this is an ISO 646-based character set (7-bit ASCII)
-        } else if (ucEncoding.equals("US-ASCII") || ucEncoding.equals("ASCII") || ucEncoding.startsWith("ISO-8859-")) {
+        } else if (ucEncoding.equals("US-ASCII") || ucEncoding.equals("ASCII")) {
             _sevenBitEncoding = true;
+            _encodable = null;
 
-            // Otherwise fail
+            // Otherwise determine which characters the encoding supports
         } else {
-            throw new UnsupportedEncodingException(encoding);
+            EncodableCharacters encodable = EncodableCharacters.forName(encoding);
+            if (encodable == null) {
+                if (!ucEncoding.startsWith("ISO-8859-")) {
+                    throw new UnsupportedEncodingException(encoding);
+                }
+                _sevenBitEncoding = true;
+                _encodable = null;
+            } else if (encodable.isComplete()) {
+                _sevenBitEncoding = false;
+                _encodable = null;
+            } else {
+                _sevenBitEncoding = true;
+                _encodable = encodable.isASCIIOnly() ? null : encodable;
+            }
         }
 
         // Store encoding literally as passed
@@ -126,10 +177,17 @@ public class XMLEncoder extends Object {
      * Flag that indicates whether the encoding is based on the ISO 646
      * character set. The value is <code>true</code> if the encoding is a 7 bit
      * encoding, or <code>false</code> if the encoding supports all Unicode
-     * characters.
+     * characters. For an encoding that supports some non-ASCII characters, the
+     * value is <code>true</code> and {@link #_encodable} is set.
      */
     private final boolean _sevenBitEncoding;
 
+    /**
+     * The non-ASCII characters that the encoding supports, or <code>null</code> if it supports
+     * either all of them or none of them.
+     */
+    private final EncodableCharacters _encodable;
+
     /**
      * Returns the encoding.
      *
@@ -187,8 +245,36 @@ public class XMLEncoder extends Object {
      * @throws IOException          if an I/O error occurs.
      */
     public void text(Writer out, String text, boolean escapeAmpersands) throws NullPointerException, InvalidXMLException, IOException {
+        text(out, text, escapeAmpersands, EscapePolicy.DEFAULT);
+    }
 
-        text(out, text.toCharArray(), 0, text.length(), escapeAmpersands);
+    /**
+     * Writes the specified text, escaping characters according to the specified policy. Any
+     * characters that are non-printable in this encoding will be escaped as well.
+     * <p />
+     * The text is scanned in place; it is not copied. Runs of characters that need no escaping are
+     * passed to the character stream using {@link Writer#write(String, int, int)} if the text is a
+     * {@link String}, or one character at a time otherwise, so that no objects are created.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param text             the text to be written, not <code>null</code>.
+     * @param escapeAmpersands flag that indicates whether ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException if <code>out == null || text == null || policy == null</code>.
+     * @throws InvalidXMLException  if the specified text contains an invalid character and the
+     *                              policy uses {@link InvalidCharacterPolicy#THROW}.
+     * @throws IOException          if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void text(Writer out, CharSequence text, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, InvalidXMLException, IOException {
+        byte[] table = policy.getTable(_sevenBitEncoding, (char) 0, escapeAmpersands);
+
+        // Escape and encode in a single pass when writing UTF-8 bytes directly
+        if (out instanceof UTF8XMLWriter) {
+            escape((UTF8XMLWriter) out, text, 0, text.length(), table, _encodable);
+        } else {
+            escape(out, text, 0, text.length(), table, _encodable, null);
+        }
     }
 
     /**
@@ -214,36 +300,41 @@ public class XMLEncoder extends Object {
      * @throws IOException               if an I/O error occurs.
      */
     public void text(Writer out, char[] ch, int start, int length, boolean escapeAmpersands) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+        text(out, ch, start, length, escapeAmpersands, EscapePolicy.DEFAULT);
+    }
 
-        int end = start + length;
-
-        // The position after the last escaped character
-        int lastEscaped = start;
-
-        for (int i = start; i < end; i++) {
-            int c = ch[i];
+    /**
+     * Writes text from the specified character array, escaping characters according to the
+     * specified policy. Any characters that are non-printable in this encoding will be escaped
+     * as well.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param ch               the character array from which to retrieve the text to be written,
+     *                         not <code>null</code>.
+     * @param start            the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length           the number of characters to take from <code>ch</code>, starting at
+     *                         the <code>start</code> index.
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException      if <code>out == null || ch == null || policy == null</code>.
+     * @throws IndexOutOfBoundsException if <code>start &lt; 0
+     *                                   || start + length &gt; ch.length</code>; this may not be
+     *                                   checked before the character stream is written to, so this may
+     *                                   cause a <em>partial</em> failure.
+     * @throws InvalidXMLException       if the specified text contains an invalid character and
+     *                                   the policy uses {@link InvalidCharacterPolicy#THROW}.
+     * @throws IOException               if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void text(Writer out, char[] ch, int start, int length, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+        byte[] table = policy.getTable(_sevenBitEncoding, (char) 0, escapeAmpersands);
 
-            if (c >= 63 && c <= 127 || c >= 39 && c <= 59 || c >= 32 && c <= 37 || c == 38 && !escapeAmpersands || c > 127 && !_sevenBitEncoding || c == 10 || c == 13 || c == 61 || c == 9) {
-                continue;
-            } else {
-                out.write(ch, lastEscaped, i - lastEscaped);
-                if (c == 60) {
-                    out.write(ESC_LESS_THAN, 0, 4);
-                } else if (c == 62) {
-                    out.write(ESC_GREATER_THAN, 0, 4);
-                } else if (c == 38) {
-                    out.write(ESC_AMPERSAND, 0, 5);
-                } else if (c > 127) {
-                    out.write(AMPERSAND_HASH, 0, 2);
-                    out.write(Integer.toString(c));
-                    out.write(';');
-                } else {
-                    throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid.");
-                }
-                lastEscaped = i + 1;
-            }
+        // Escape and encode in a single pass when writing UTF-8 bytes directly
+        if (out instanceof UTF8XMLWriter) {
+            escape((UTF8XMLWriter) out, ch, start, length, table, policy.isStandard(), _encodable);
+        } else {
+            escape(out, ch, start, length, table, policy.isStandard(), _encodable);
         }
-        out.write(ch, lastEscaped, end - lastEscaped);
     }
 
     /**
@@ -262,21 +353,7 @@ public class XMLEncoder extends Object {
      */
     @Deprecated
     public void text(Writer out, char c) throws InvalidXMLException, IOException {
-        if (c >= 63 && c <= 127 || c >= 39 && c <= 59 || c >= 32 && c <= 37 || c == 38 || c > 127 && !_sevenBitEncoding || c == 10 || c == 13 || c == 61 || c == 9) {
-            out.write(c);
-        } else {
-            if (c == 60) {
-                out.write(ESC_LESS_THAN, 0, 4);
-            } else if (c == 62) {
-                out.write(ESC_GREATER_THAN, 0, 4);
-            } else if (c > 127) {
-                out.write(AMPERSAND_HASH, 0, 2);
-                out.write(Integer.toString(c));
-                out.write(';');
-            } else {
-                throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid.");
-            }
-        }
+        text(out, c, false);
     }
 
     /**
@@ -293,22 +370,12 @@ public class XMLEncoder extends Object {
      * @throws IOException         if an I/O error occurs.
      */
     public void text(Writer out, char c, boolean escapeAmpersands) throws InvalidXMLException, IOException {
-        if (c >= 63 && c <= 127 || c >= 39 && c <= 59 || c >= 32 && c <= 37 || c == 38 && escapeAmpersands || c > 127 && !_sevenBitEncoding || c == 10 || c == 13 || c == 61 || c == 9) {
+        byte[] table = EscapePolicy.DEFAULT.getTable(_sevenBitEncoding, (char) 0, escapeAmpersands);
+        int cls = table[Math.min(c, EscapePolicy.NON_ASCII)];
+        if (cls == EscapePolicy.PLAIN || isEncodable(_encodable, c)) {
             out.write(c);
         } else {
-            if (c == 60) {
-                out.write(ESC_LESS_THAN, 0, 4);
-            } else if (c == 62) {
-                out.write(ESC_GREATER_THAN, 0, 4);
-            } else if (c == 38) {
-                out.write(ESC_AMPERSAND, 0, 5);
-            } else if (c > 127) {
-                out.write(AMPERSAND_HASH, 0, 2);
-                out.write(Integer.toString(c));
-                out.write(';');
-            } else {
-                throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid.");
-            }
+            writeEscaped(out, cls, c, table, _encodable);
         }
     }
 
@@ -324,9 +391,11 @@ public class XMLEncoder extends Object {
      */
     public void whitespace(Writer out, String s) throws NullPointerException, InvalidXMLException, IOException {
 
-        char[] ch = s.toCharArray();
-        int length = ch.length;
-        whitespace(out, ch, 0, length);
+        // Check the string
+        XMLChecker.checkS(s);
+
+        // Write the complete character string at once
+        out.write(s);
     }
 
     /**
@@ -359,75 +428,772 @@ public class XMLEncoder extends Object {
     /**
      * Writes an attribute assignment.
      *
-     * @param out           the character stream to write to, not <code>null</code>.
-     * @param name          the name of the attribute, not <code>null</code>.
-     * @param value         the value of the attribute, not <code>null</code>.
-     * @param quotationMark the quotation mark, must be either the apostrophe (<code>'\''</code>)
-     *                      or the quote character (<code>'"'</code>).
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, must be either the apostrophe (<code>'\''</code>)
+     *                         or the quote character (<code>'"'</code>).
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
      * @throws NullPointerException     if <code>out == null || value == null</code>.
      * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
      * @throws IOException              if an I/O error occurs.
      */
     public void attribute(Writer out, String name, String value, char quotationMark, boolean escapeAmpersands) throws NullPointerException, IOException {
+        attribute(out, name, value, quotationMark, escapeAmpersands, EscapePolicy.DEFAULT);
+    }
 
-        char[] ch = value.toCharArray();
-        int length = ch.length;
-        int start = 0;
-        int end = start + length;
+    /**
+     * Writes an attribute assignment, escaping characters in the value according to the
+     * specified policy.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, must be either the apostrophe (<code>'\''</code>)
+     *                         or the quote character (<code>'"'</code>).
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException     if <code>out == null || value == null || policy == null</code>.
+     * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IOException              if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void attribute(Writer out, String name, String value, char quotationMark, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, IOException {
+        attribute(out, name, (CharSequence) value, quotationMark, escapeAmpersands, policy);
+    }
 
-        // TODO: Call overloaded attribute method that accepts char[]
+    /**
+     * Writes an attribute assignment with a value taken from a character sequence, escaping
+     * characters in the value according to the specified policy. The character sequence is
+     * scanned in place; it is not converted to a <code>String</code>.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, must be either the apostrophe (<code>'\''</code>)
+     *                         or the quote character (<code>'"'</code>).
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException     if <code>out == null || value == null || policy == null</code>.
+     * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IOException              if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void attribute(Writer out, String name, CharSequence value, char quotationMark, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, IOException {
+        attribute(out, name, value, quotationMark, escapeAmpersands, policy, null);
+    }
 
-        // The position after the last escaped character
-        int lastEscaped = 0;
+    /**
+     * Writes an attribute assignment with a value taken from a character sequence, copying runs
+     * of characters that need no escaping to the specified buffer if the value is not a
+     * <code>String</code>.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, either <code>'\''</code> or <code>'"'</code>.
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @param scratch          the buffer to copy runs to, or <code>null</code> to write them one
+     *                         character at a time.
+     * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IOException              if an I/O error occurs.
+     */
+    void attribute(Writer out, String name, CharSequence value, char quotationMark, boolean escapeAmpersands, EscapePolicy policy, char[] scratch) throws IOException {
+        checkQuotationMark(quotationMark);
+        attributeStart(out, name, quotationMark);
+        attributeValue(out, value, quotationMark, escapeAmpersands, policy, scratch);
+    }
 
-        boolean useQuote;
-        if (quotationMark == '"') {
-            useQuote = true;
-        } else if (quotationMark == '\'') {
-            useQuote = false;
-        } else {
-            String error = "Character 0x" + Integer.toHexString(quotationMark) + " ('" + quotationMark + "') is not a valid quotation mark.";
-            throw new IllegalArgumentException(error);
+    /**
+     * Writes an attribute assignment with a value taken from a character array, escaping
+     * characters in the value according to the specified policy.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param ch               the character array that contains the value of the attribute,
+     *                         not <code>null</code>.
+     * @param start            the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length           the number of characters to take from <code>ch</code>, starting at
+     *                         the <code>start</code> index, must be &gt;= 0.
+     * @param quotationMark    the quotation mark, must be either the apostrophe (<code>'\''</code>)
+     *                         or the quote character (<code>'"'</code>).
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException      if <code>out == null || ch == null || policy == null</code>.
+     * @throws IllegalArgumentException  if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IndexOutOfBoundsException if <code>start &lt; 0 || length &lt; 0 || start + length &gt; ch.length</code>.
+     * @throws IOException               if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void attribute(Writer out, String name, char[] ch, int start, int length, char quotationMark, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, IndexOutOfBoundsException, IOException {
+        checkQuotationMark(quotationMark);
+        checkRange(ch, start, length);
+        attributeStart(out, name, quotationMark);
+        attributeValue(out, ch, start, length, quotationMark, escapeAmpersands, policy);
+    }
+
+    /**
+     * Writes an attribute assignment with a pre-encoded name, escaping characters in the value
+     * according to the specified policy. The name, the equals sign and the opening quotation mark
+     * are written with a single bulk write.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, must be either the apostrophe (<code>'\''</code>)
+     *                         or the quote character (<code>'"'</code>).
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException     if <code>out == null || name == null || value == null || policy == null</code>.
+     * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IOException              if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void attribute(Writer out, XMLName name, CharSequence value, char quotationMark, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, IOException {
+        attribute(out, name, value, quotationMark, escapeAmpersands, policy, null);
+    }
+
+    /**
+     * Writes an attribute assignment with a pre-encoded name and a value taken from a character
+     * sequence, copying runs of characters that need no escaping to the specified buffer if the
+     * value is not a <code>String</code>.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, either <code>'\''</code> or <code>'"'</code>.
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @param scratch          the buffer to copy runs to, or <code>null</code> to write them one
+     *                         character at a time.
+     * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IOException              if an I/O error occurs.
+     */
+    void attribute(Writer out, XMLName name, CharSequence value, char quotationMark, boolean escapeAmpersands, EscapePolicy policy, char[] scratch) throws IOException {
+        checkQuotationMark(quotationMark);
+        name.writeAttributeStart(out, quotationMark);
+        attributeValue(out, value, quotationMark, escapeAmpersands, policy, scratch);
+    }
+
+    /**
+     * Writes an attribute assignment with a pre-encoded name and a value taken from a character
+     * array, escaping characters in the value according to the specified policy.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param name             the name of the attribute, not <code>null</code>.
+     * @param ch               the character array that contains the value of the attribute,
+     *                         not <code>null</code>.
+     * @param start            the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length           the number of characters to take from <code>ch</code>, starting at
+     *                         the <code>start</code> index, must be &gt;= 0.
+     * @param quotationMark    the quotation mark, must be either the apostrophe (<code>'\''</code>)
+     *                         or the quote character (<code>'"'</code>).
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws NullPointerException      if <code>out == null || name == null || ch == null || policy == null</code>.
+     * @throws IllegalArgumentException  if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     * @throws IndexOutOfBoundsException if <code>start &lt; 0 || length &lt; 0 || start + length &gt; ch.length</code>.
+     * @throws IOException               if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public void attribute(Writer out, XMLName name, char[] ch, int start, int length, char quotationMark, boolean escapeAmpersands, EscapePolicy policy) throws NullPointerException, IndexOutOfBoundsException, IOException {
+        checkQuotationMark(quotationMark);
+        checkRange(ch, start, length);
+        name.writeAttributeStart(out, quotationMark);
+        attributeValue(out, ch, start, length, quotationMark, escapeAmpersands, policy);
+    }
+
+    /**
+     * Writes an attribute assignment with a value that needs no escaping, such as the
+     * representation of a number. The value is written as-is, without checking it.
+     *
+     * @param out           the character stream to write to, not <code>null</code>.
+     * @param name          the name of the attribute, not <code>null</code>.
+     * @param ch            the character array that contains the value, not <code>null</code>.
+     *                      It must only contain ASCII characters that need no escaping.
+     * @param start         the start index into <code>ch</code>.
+     * @param length        the number of characters to take from <code>ch</code>.
+     * @param quotationMark the quotation mark, either <code>'\''</code> or <code>'"'</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void unescapedAttribute(Writer out, String name, char[] ch, int start, int length, char quotationMark) throws IOException {
+        attributeStart(out, name, quotationMark);
+        out.write(ch, start, length);
+        out.write(quotationMark);
+    }
+
+    /**
+     * Checks that the specified range lies within the specified character array.
+     *
+     * @param ch     the character array, not <code>null</code>.
+     * @param start  the start index into <code>ch</code>.
+     * @param length the number of characters.
+     * @throws NullPointerException      if <code>ch == null</code>.
+     * @throws IndexOutOfBoundsException if <code>start &lt; 0 || length &lt; 0 || start + length &gt; ch.length</code>.
+     */
+    private static void checkRange(char[] ch, int start, int length) throws NullPointerException, IndexOutOfBoundsException {
+        if (start < 0 || length < 0 || start > ch.length - length) {
+            throw new IndexOutOfBoundsException("start (" + start + "), length (" + length + "), ch.length (" + ch.length + ')');
         }
+    }
 
+    /**
+     * Writes the start of an attribute assignment: a space, the name, the equals sign and the
+     * opening quotation mark.
+     *
+     * @param out           the character stream to write to, not <code>null</code>.
+     * @param name          the name of the attribute, not <code>null</code>.
+     * @param quotationMark the quotation mark, either <code>'\''</code> or <code>'"'</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void attributeStart(Writer out, String name, char quotationMark) throws IOException {
         out.write(' ');
         out.write(name);
 
-        if (useQuote) {
+        if (quotationMark == '"') {
             out.write(EQUALS_QUOTE, 0, 2);
         } else {
             out.write(EQUALS_APOSTROPHE, 0, 2);
         }
+    }
+
+    /**
+     * Checks that the specified character is a valid quotation mark.
+     *
+     * @param quotationMark the character to check.
+     * @throws IllegalArgumentException if <code>quotationMark != '\'' &amp;&amp; quotationMark != '"'</code>.
+     */
+    private static void checkQuotationMark(char quotationMark) throws IllegalArgumentException {
+        if (quotationMark != '"' && quotationMark != '\'') {
+            String error = "Character 0x" + Integer.toHexString(quotationMark) + " ('" + quotationMark + "') is not a valid quotation mark.";
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    /**
+     * Writes an escaped attribute value, followed by the closing quotation mark.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param value            the value of the attribute, not <code>null</code>.
+     * @param quotationMark    the quotation mark, either <code>'\''</code> or <code>'"'</code>.
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @param scratch          the buffer to copy runs to, or <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void attributeValue(Writer out, CharSequence value, char quotationMark, boolean escapeAmpersands, EscapePolicy policy, char[] scratch) throws IOException {
+        byte[] table = policy.getTable(_sevenBitEncoding, quotationMark, escapeAmpersands);
+
+        // Escape and encode in a single pass when writing UTF-8 bytes directly
+        if (out instanceof UTF8XMLWriter) {
+            escape((UTF8XMLWriter) out, value, 0, value.length(), table, _encodable);
+        } else {
+            escape(out, value, 0, value.length(), table, _encodable, scratch);
+        }
+
+        out.write(quotationMark);
+    }
+
+    /**
+     * Writes an escaped attribute value taken from a character array, followed by the closing
+     * quotation mark.
+     *
+     * @param out              the character stream to write to, not <code>null</code>.
+     * @param ch               the character array that contains the value, not <code>null</code>.
+     * @param start            the start index into <code>ch</code>.
+     * @param length           the number of characters to take from <code>ch</code>.
+     * @param quotationMark    the quotation mark, either <code>'\''</code> or <code>'"'</code>.
+     * @param escapeAmpersands flag that indicates if ampersands should be escaped.
+     * @param policy           the escape policy, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void attributeValue(Writer out, char[] ch, int start, int length, char quotationMark, boolean escapeAmpersands, EscapePolicy policy) throws IOException {
+        byte[] table = policy.getTable(_sevenBitEncoding, quotationMark, escapeAmpersands);
+
+        // Escape and encode in a single pass when writing UTF-8 bytes directly
+        if (out instanceof UTF8XMLWriter) {
+            escape((UTF8XMLWriter) out, ch, start, length, table, policy.isStandard(), _encodable);
+        } else {
+            escape(out, ch, start, length, table, policy.isStandard(), _encodable);
+        }
+
+        out.write(quotationMark);
+    }
+
+    /**
+     * Determines whether the specified character can be written as-is in this encoding. Surrogates
+     * can only be written as-is if the encoding supports all of Unicode.
+     *
+     * @param c the character.
+     * @return <code>true</code> if the character can be written as-is, <code>false</code> if it
+     * must be written as a character reference.
+     */
+    boolean canEncode(char c) {
+        return !_sevenBitEncoding || c < EscapePolicy.NON_ASCII || isEncodable(_encodable, c);
+    }
+
+    /**
+     * Returns the character class table that the specified policy uses for text in this
+     * encoding, with ampersands escaped.
+     *
+     * @param policy the escape policy, not <code>null</code>.
+     * @return the table, never <code>null</code>, see {@link EscapePolicy}.
+     */
+    byte[] getTextTable(EscapePolicy policy) {
+        return policy.getTable(_sevenBitEncoding, (char) 0, true);
+    }
+
+    /**
+     * Determines whether the specified character is a non-ASCII character that the encoding
+     * supports, so that it does not need to be written as a character reference.
+     *
+     * @param encodable the non-ASCII characters that the encoding supports, or <code>null</code>.
+     * @param c         the character.
+     * @return <code>true</code> if the character can be written as-is, <code>false</code> if it
+     * should be escaped according to its class.
+     */
+    private static boolean isEncodable(EncodableCharacters encodable, int c) {
+        return encodable != null && c >= EscapePolicy.NON_ASCII && encodable.canEncode(c);
+    }
+
+    /**
+     * Writes the escape sequence for the specified character, or handles it according to the
+     * invalid character policy if it is not allowed in XML.
+     *
+     * @param out       the character stream to write to, not <code>null</code>.
+     * @param cls       the class of the character, as found in an {@link EscapePolicy} table, not
+     *                  {@link EscapePolicy#PLAIN}.
+     * @param c         the character to be escaped.
+     * @param table     the character class table, see {@link EscapePolicy}.
+     * @param encodable the non-ASCII characters that the encoding supports, or <code>null</code>.
+     * @throws InvalidXMLException if the character is invalid and the policy is to throw.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private static void writeEscaped(Writer out, int cls, int c, byte[] table, EncodableCharacters encodable) throws InvalidXMLException, IOException {
+        if (cls < EscapePolicy.CHARACTER_REFERENCE) {
+            char[] escapeSequence = ESCAPE_SEQUENCES[cls];
+            out.write(escapeSequence, 0, escapeSequence.length);
+        } else if (cls == EscapePolicy.CHARACTER_REFERENCE) {
+            CharacterReferences.write(out, c);
+        } else if (cls == EscapePolicy.REPLACE) {
+            if (table[EscapePolicy.NON_ASCII] == EscapePolicy.PLAIN || isEncodable(encodable, REPLACEMENT_CHARACTER)) {
+                out.write(REPLACEMENT_CHARACTER);
+            } else {
+                CharacterReferences.write(out, REPLACEMENT_CHARACTER);
+            }
+        } else if (cls == EscapePolicy.REPLACE_WITH_QUESTION_MARK) {
+            out.write('?');
+        } else if (cls != EscapePolicy.STRIP) {
+            throw invalidCharacter(c);
+        }
+    }
+
+    /**
+     * Creates the exception for a character that is not allowed in XML.
+     *
+     * @param c the character.
+     * @return the exception, never <code>null</code>.
+     */
+    static InvalidXMLException invalidCharacter(int c) {
+        return new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid.");
+    }
+
+    /**
+     * Determines whether the character at the specified index in a character array, which is a
+     * surrogate or a character after the surrogates, is allowed in XML. A surrogate is only
+     * allowed as part of a pair within the range; a pair is never completed across two calls.
+     *
+     * @param ch  the character array, not <code>null</code>.
+     * @param i   the index of the character, <code>ch[i] &gt;= 0xD800</code>.
+     * @param end the end index into <code>ch</code>, exclusive.
+     * @return <code>2</code> if the character starts a surrogate pair, <code>1</code> if it is
+     * allowed by itself, or <code>0</code> if it is not allowed in XML.
+     */
+    private static int validLength(char[] ch, int i, int end) {
+        char c = ch[i];
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 < end && Character.isLowSurrogate(ch[i + 1]) ? 2 : 0;
+        }
+        return c < Character.MIN_LOW_SURROGATE || c > Character.MAX_LOW_SURROGATE && c < 0xFFFE ? 1 : 0;
+    }
+
+    /**
+     * Determines whether the character at the specified index in a character sequence, which is
+     * a surrogate or a character after the surrogates, is allowed in XML. A surrogate is only
+     * allowed as part of a pair within the range; a pair is never completed across two calls.
+     *
+     * @param s   the character sequence, not <code>null</code>.
+     * @param i   the index of the character, <code>s.charAt(i) &gt;= 0xD800</code>.
+     * @param end the end index into <code>s</code>, exclusive.
+     * @return <code>2</code> if the character starts a surrogate pair, <code>1</code> if it is
+     * allowed by itself, or <code>0</code> if it is not allowed in XML.
+     */
+    private static int validLength(CharSequence s, int i, int end) {
+        char c = s.charAt(i);
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1)) ? 2 : 0;
+        }
+        return c < Character.MIN_LOW_SURROGATE || c > Character.MAX_LOW_SURROGATE && c < 0xFFFE ? 1 : 0;
+    }
+
+    /**
+     * Escapes text or an attribute value using the specified character class table.
+     *
+     * @param out    the character stream to write to, not <code>null</code>.
+     * @param ch     the character array from which to retrieve the text to be written,
+     *               not <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at
+     *               the <code>start</code> index.
+     * @param table    the character class table, see {@link EscapePolicy}.
+     * @param standard flag that indicates whether the table only marks characters that are
+     *                 special according to the {@link EscapeScanner}, see
+     *                 {@link EscapePolicy#isStandard()}.
+     * @param encodable the non-ASCII characters that the encoding supports, or <code>null</code>.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private static void escape(Writer out, char[] ch, int start, int length, byte[] table, boolean standard, EncodableCharacters encodable) throws InvalidXMLException, IOException {
+
+        int end = start + length;
+
+        // The position after the last escaped character
+        int lastEscaped = start;
 
         for (int i = start; i < end; i++) {
+
+            // Skip characters that certainly need no escaping
+            if (standard) {
+                i = EscapeScanner.indexOfSpecial(ch, i, end);
+                if (i == end) {
+                    break;
+                }
+            }
+
             int c = ch[i];
+            int cls = table[Math.min(c, EscapePolicy.NON_ASCII)];
 
-            if (c >= 63 && c <= 127 || c >= 40 && c <= 59 || c >= 32 && c <= 37 && c != 34 || c == 38 && !escapeAmpersands || c > 127 && !_sevenBitEncoding || !useQuote && c == 34 || useQuote && c == 39 || c == 10 || c == 13 || c == 61 || c == 9) {
-                continue;
-            } else {
+            // Check surrogates and the non-characters U+FFFE and U+FFFF
+            int count = c < Character.MIN_SURROGATE ? 1 : validLength(ch, i, end);
+            if (count == 0) {
+                cls = table[EscapePolicy.INVALID_NON_ASCII];
+            }
+
+            if (count == 0 || cls != EscapePolicy.PLAIN && !isEncodable(encodable, c)) {
                 out.write(ch, lastEscaped, i - lastEscaped);
-                if (c == 60) {
-                    out.write(ESC_LESS_THAN, 0, 4);
-                } else if (c == 62) {
-                    out.write(ESC_GREATER_THAN, 0, 4);
-                } else if (c == 34) {
-                    out.write(ESC_QUOTE, 0, 6);
-                } else if (c == 39) {
-                    out.write(ESC_APOSTROPHE, 0, 6);
-                } else if (c == 38) {
-                    out.write(ESC_AMPERSAND, 0, 5);
-                } else if (c > 127) {
-                    out.write(AMPERSAND_HASH, 0, 2);
-                    out.write(Integer.toString(c));
-                    out.write(';');
+
+                // Write a surrogate pair as a single supplementary reference
+                if (count == 2 && cls == EscapePolicy.CHARACTER_REFERENCE) {
+                    CharacterReferences.write(out, Character.toCodePoint((char) c, ch[++i]));
                 } else {
-                    throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not valid.");
+                    writeEscaped(out, cls, c, table, encodable);
                 }
                 lastEscaped = i + 1;
+            } else if (count == 2) {
+                i++;
             }
         }
+        out.write(ch, lastEscaped, end - lastEscaped);
+    }
 
-        out.write(ch, lastEscaped, length - lastEscaped);
-        out.write(quotationMark);
+    /**
+     * Escapes text or an attribute value using the specified character class table, scanning the
+     * character sequence in place.
+     *
+     * @param out   the character stream to write to, not <code>null</code>.
+     * @param s     the character sequence to be written, not <code>null</code>.
+     * @param start the start index into <code>s</code>, must be &gt;= 0.
+     * @param end   the end index into <code>s</code>, exclusive.
+     * @param table the character class table, see {@link EscapePolicy}.
+     * @param encodable the non-ASCII characters that the encoding supports, or <code>null</code>.
+     * @param scratch   the buffer to copy runs to, or <code>null</code>.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private static void escape(Writer out, CharSequence s, int start, int end, byte[] table, EncodableCharacters encodable, char[] scratch) throws InvalidXMLException, IOException {
+
+        // The position after the last escaped character
+        int lastEscaped = start;
+
+        for (int i = start; i < end; i++) {
+            int c = s.charAt(i);
+            int cls = table[Math.min(c, EscapePolicy.NON_ASCII)];
+
+            // Check surrogates and the non-characters U+FFFE and U+FFFF
+            int count = c < Character.MIN_SURROGATE ? 1 : validLength(s, i, end);
+            if (count == 0) {
+                cls = table[EscapePolicy.INVALID_NON_ASCII];
+            }
+
+            if (count == 0 || cls != EscapePolicy.PLAIN && !isEncodable(encodable, c)) {
+                writeRun(out, s, lastEscaped, i, scratch);
+
+                // Write a surrogate pair as a single supplementary reference
+                if (count == 2 && cls == EscapePolicy.CHARACTER_REFERENCE) {
+                    CharacterReferences.write(out, Character.toCodePoint((char) c, s.charAt(++i)));
+                } else {
+                    writeEscaped(out, cls, c, table, encodable);
+                }
+                lastEscaped = i + 1;
+            } else if (count == 2) {
+                i++;
+            }
+        }
+        writeRun(out, s, lastEscaped, end, scratch);
+    }
+
+    /**
+     * Writes a run of characters from the specified character sequence, without creating any
+     * objects. A {@link String} is passed on as-is. Other sequences are copied in chunks to the
+     * scratch buffer, or written one character at a time if there is none; unlike
+     * {@link Writer#append(CharSequence, int, int)}, this does not create a sub-sequence.
+     *
+     * @param out     the character stream to write to, not <code>null</code>.
+     * @param s       the character sequence, not <code>null</code>.
+     * @param start   the start index into <code>s</code>.
+     * @param end     the end index into <code>s</code>, exclusive.
+     * @param scratch the buffer to copy the run to, or <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeRun(Writer out, CharSequence s, int start, int end, char[] scratch) throws IOException {
+        if (start == end) {
+            return;
+        } else if (s instanceof String) {
+            out.write((String) s, start, end - start);
+        } else if (scratch == null) {
+            for (int i = start; i < end; i++) {
+                out.write(s.charAt(i));
+            }
+        } else {
+            while (start < end) {
+                int count = Math.min(end - start, scratch.length);
+                getChars(s, start, start + count, scratch);
+                out.write(scratch, 0, count);
+                start += count;
+            }
+        }
+    }
+
+    /**
+     * Copies characters from the specified character sequence to the specified
+     * array, using a bulk copy if the sequence supports it. The position of a
+     * <code>CharBuffer</code> is left unchanged.
+     *
+     * @param text  the character sequence, not <code>null</code>.
+     * @param start the start index into <code>text</code>.
+     * @param end   the end index into <code>text</code>, exclusive.
+     * @param dest  the destination array, at least <code>end - start</code> long.
+     */
+    static void getChars(CharSequence text, int start, int end, char[] dest) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, dest, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dest, 0);
+        } else if (text instanceof StringBuffer) {
+            ((StringBuffer) text).getChars(start, end, dest, 0);
+        } else if (text instanceof CharBuffer) {
+            CharBuffer buffer = (CharBuffer) text;
+            int position = buffer.position();
+            buffer.position(position + start);
+            buffer.get(dest, 0, end - start);
+            buffer.position(position);
+        } else {
+            for (int i = start; i < end; i++) {
+                dest[i - start] = text.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Escapes text or an attribute value and encodes it as UTF-8, in a single
+     * pass, directly into the buffer of the specified writer.
+     *
+     * @param out    the UTF-8 writer, not <code>null</code>.
+     * @param ch     the character array from which to retrieve the text to be written,
+     *               not <code>null</code>.
+     * @param start  the start index into <code>ch</code>, must be &gt;= 0.
+     * @param length the number of characters to take from <code>ch</code>, starting at
+     *               the <code>start</code> index.
+     * @param table    the character class table, see {@link EscapePolicy}.
+     * @param standard flag that indicates whether the table only marks characters that are
+     *                 special according to the {@link EscapeScanner}, see
+     *                 {@link EscapePolicy#isStandard()}.
+     * @param encodable the non-ASCII characters that the encoding supports, or <code>null</code>.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private static void escape(UTF8XMLWriter out, char[] ch, int start, int length, byte[] table, boolean standard, EncodableCharacters encodable) throws InvalidXMLException, IOException {
+
+        int i = start;
+        int end = start + length;
+
+        // A high surrogate left pending by a plain write is unpaired, since a
+        // surrogate pair is never completed across two calls
+        if (out._highSurrogate != 0 && i < end) {
+            out.completeSurrogate('?');
+        }
+
+        // The replacement character may be written as-is if all non-ASCII characters are
+        boolean plainNonASCII = table[EscapePolicy.NON_ASCII] == EscapePolicy.PLAIN;
+
+        byte[] buffer = out._buffer;
+        int limit = buffer.length - UTF8XMLWriter.MAX_BYTES_PER_CHAR;
+        while (i < end) {
+            if (out._position > limit) {
+                out.flushBuffer();
+            }
+
+            // Copy a run of ASCII characters that need no escaping, leaving room
+            // for one escape sequence after the run
+            int position = out._position;
+            int runEnd = Math.min(end, i + limit - position + 1);
+            if (standard) {
+                for (int special = EscapeScanner.indexOfSpecial(ch, i, runEnd); i < special; i++) {
+                    buffer[position++] = (byte) ch[i];
+                }
+            } else {
+                for (; i < runEnd; i++) {
+                    int c = ch[i];
+                    if (c < EscapePolicy.NON_ASCII && table[c] == EscapePolicy.PLAIN) {
+                        buffer[position++] = (byte) c;
+                    } else {
+                        break;
+                    }
+                }
+            }
+            out._position = position;
+
+            if (i == runEnd) {
+                continue;
+            }
+
+            int c = ch[i];
+            int cls = table[Math.min(c, EscapePolicy.NON_ASCII)];
+
+            // Check surrogates and the non-characters U+FFFE and U+FFFF
+            if (c >= Character.MIN_SURROGATE && validLength(ch, i, end) == 0) {
+                cls = table[EscapePolicy.INVALID_NON_ASCII];
+            } else if (cls == EscapePolicy.PLAIN || isEncodable(encodable, c)) {
+                if (c < EscapePolicy.NON_ASCII) {
+                    buffer[out._position++] = (byte) c;
+                    i++;
+                } else {
+                    i += out.encode((char) c, i + 1 < end ? ch[i + 1] : -1);
+                }
+                continue;
+            }
+
+            if (cls < EscapePolicy.CHARACTER_REFERENCE) {
+                char[] escapeSequence = ESCAPE_SEQUENCES[cls];
+                out.writeASCII(escapeSequence, 0, escapeSequence.length);
+            } else if (cls == EscapePolicy.CHARACTER_REFERENCE) {
+
+                // Write a surrogate pair as a single supplementary reference
+                if (Character.isHighSurrogate((char) c) && i + 1 < end && Character.isLowSurrogate(ch[i + 1])) {
+                    c = Character.toCodePoint((char) c, ch[++i]);
+                }
+                out.writeASCII(CharacterReferences.getChars(c), CharacterReferences.getOffset(c), CharacterReferences.getLength(c));
+            } else if (cls == EscapePolicy.REPLACE) {
+                if (plainNonASCII || isEncodable(encodable, REPLACEMENT_CHARACTER)) {
+                    out.encode(REPLACEMENT_CHARACTER, -1);
+                } else {
+                    out.writeASCII(CharacterReferences.getChars(REPLACEMENT_CHARACTER), CharacterReferences.getOffset(REPLACEMENT_CHARACTER), CharacterReferences.getLength(REPLACEMENT_CHARACTER));
+                }
+            } else if (cls == EscapePolicy.REPLACE_WITH_QUESTION_MARK) {
+                buffer[out._position++] = '?';
+            } else if (cls != EscapePolicy.STRIP) {
+                throw invalidCharacter(c);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Escapes text or an attribute value and encodes it as UTF-8, in a single
+     * pass, directly into the buffer of the specified writer, scanning the
+     * character sequence in place.
+     *
+     * @param out   the UTF-8 writer, not <code>null</code>.
+     * @param s     the character sequence to be written, not <code>null</code>.
+     * @param start the start index into <code>s</code>, must be &gt;= 0.
+     * @param end   the end index into <code>s</code>, exclusive.
+     * @param table the character class table, see {@link EscapePolicy}.
+     * @param encodable the non-ASCII characters that the encoding supports, or <code>null</code>.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private static void escape(UTF8XMLWriter out, CharSequence s, int start, int end, byte[] table, EncodableCharacters encodable) throws InvalidXMLException, IOException {
+
+        int i = start;
+
+        // A high surrogate left pending by a plain write is unpaired, since a
+        // surrogate pair is never completed across two calls
+        if (out._highSurrogate != 0 && i < end) {
+            out.completeSurrogate('?');
+        }
+
+        // The replacement character may be written as-is if all non-ASCII characters are
+        boolean plainNonASCII = table[EscapePolicy.NON_ASCII] == EscapePolicy.PLAIN;
+
+        byte[] buffer = out._buffer;
+        int limit = buffer.length - UTF8XMLWriter.MAX_BYTES_PER_CHAR;
+        while (i < end) {
+            if (out._position > limit) {
+                out.flushBuffer();
+            }
+
+            // Copy a run of ASCII characters that need no escaping, leaving room
+            // for one escape sequence after the run
+            int position = out._position;
+            int runEnd = Math.min(end, i + limit - position + 1);
+            for (; i < runEnd; i++) {
+                int c = s.charAt(i);
+                if (c < EscapePolicy.NON_ASCII && table[c] == EscapePolicy.PLAIN) {
+                    buffer[position++] = (byte) c;
+                } else {
+                    break;
+                }
+            }
+            out._position = position;
+
+            if (i == runEnd) {
+                continue;
+            }
+
+            int c = s.charAt(i);
+            int cls = table[Math.min(c, EscapePolicy.NON_ASCII)];
+
+            // Check surrogates and the non-characters U+FFFE and U+FFFF
+            if (c >= Character.MIN_SURROGATE && validLength(s, i, end) == 0) {
+                cls = table[EscapePolicy.INVALID_NON_ASCII];
+            } else if (cls == EscapePolicy.PLAIN || isEncodable(encodable, c)) {
+                i += out.encode((char) c, i + 1 < end ? s.charAt(i + 1) : -1);
+                continue;
+            }
+
+            if (cls < EscapePolicy.CHARACTER_REFERENCE) {
+                char[] escapeSequence = ESCAPE_SEQUENCES[cls];
+                out.writeASCII(escapeSequence, 0, escapeSequence.length);
+            } else if (cls == EscapePolicy.CHARACTER_REFERENCE) {
+
+                // Write a surrogate pair as a single supplementary reference
+                if (Character.isHighSurrogate((char) c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    c = Character.toCodePoint((char) c, s.charAt(++i));
+                }
+                out.writeASCII(CharacterReferences.getChars(c), CharacterReferences.getOffset(c), CharacterReferences.getLength(c));
+            } else if (cls == EscapePolicy.REPLACE) {
+                if (plainNonASCII || isEncodable(encodable, REPLACEMENT_CHARACTER)) {
+                    out.encode(REPLACEMENT_CHARACTER, -1);
+                } else {
+                    out.writeASCII(CharacterReferences.getChars(REPLACEMENT_CHARACTER), CharacterReferences.getOffset(REPLACEMENT_CHARACTER), CharacterReferences.getLength(REPLACEMENT_CHARACTER));
+                }
+            } else if (cls == EscapePolicy.REPLACE_WITH_QUESTION_MARK) {
+                buffer[out._position++] = '?';
+            } else if (cls != EscapePolicy.STRIP) {
+                throw invalidCharacter(c);
+            }
+            i++;
+        }
     }
 }
@@ -290,6 +290,58 @@ public interface XMLEventListener extends XMLEventListenerStates {
      */
     void attribute(String name, String value) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException;
 
+    /**
+     * Adds an attribute to the current element, with a value taken from a character sequence.
+     * There must currently be an open element.
+     * <p>
+     * The default implementation converts the value to a <code>String</code> and calls
+     * {@link #attribute(String, String)}. Implementations should override it to write the
+     * value without creating a <code>String</code>.
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    default void attribute(String name, CharSequence value) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+        attribute(name, value == null ? null : value.toString());
+    }
+
+    /**
+     * Adds an attribute to the current element, with a value taken from a character array.
+     * There must currently be an open element.
+     * <p>
+     * The default implementation converts the value to a <code>String</code> and calls
+     * {@link #attribute(String, String)}. Implementations should override it to write the
+     * value without creating a <code>String</code>.
+     *
+     * @param name   the name of the attribute, not <code>null</code>.
+     * @param ch     the character array that contains the value of the attribute, not
+     *               <code>null</code>.
+     * @param start  the start index in the array, must be &gt;= 0.
+     * @param length the number of characters to read from the array, must be &gt;= 0.
+     * @throws IllegalStateException     if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException  if <code>name == null || ch == null || start &lt; 0 || length &lt; 0</code>.
+     * @throws IndexOutOfBoundsException if <code>start + length &gt; ch.length</code>.
+     * @throws IOException               if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    default void attribute(String name, char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+
+        // Check arguments
+        if (ch == null) {
+            throw new IllegalArgumentException("ch == null");
+        } else if (start < 0) {
+            throw new IllegalArgumentException("start (" + start + ") < 0");
+        } else if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        }
+
+        attribute(name, new String(ch, start, length));
+    }
+
     /**
      * Notification of an element end tag.
      *
@@ -2,28 +2,44 @@
 package org.znerd.xmlenc;
 
 /**
- * State for an XML event listener.
+ * State for an XML event listener. The states are described in
+ * {@link XMLEventListenerStates}, which also defines a constant for each of them.
+ * <p />
+ * Since XMLenc 0.54 this is an enumeration. Each state has a bit, so that a set of states can be
+ * stored in an <code>int</code> and checked with a single operation.
  *
  * @since XMLenc 0.30
  */
-public final class XMLEventListenerState extends Object {
+public enum XMLEventListenerState {
+
+    UNINITIALIZED, BEFORE_XML_DECLARATION, BEFORE_DTD_DECLARATION, BEFORE_ROOT_ELEMENT, START_TAG_OPEN, WITHIN_ELEMENT, AFTER_ROOT_ELEMENT, DOCUMENT_ENDED, ERROR_STATE;
+
+    /**
+     * The bit for this state, <code>1 &lt;&lt; ordinal()</code>.
+     */
+    private final int _bit = 1 << ordinal();
 
     /**
-     * Creates a new <code>State</code>.
+     * Computes the set of the specified states.
      *
-     * @param name the name of the state, should not be <code>null</code>.
+     * @param states the states, not <code>null</code>.
+     * @return the set of states, as a bit mask.
      */
-    XMLEventListenerState(String name) {
-        _name = name;
+    static int setOf(XMLEventListenerState... states) {
+        int set = 0;
+        for (XMLEventListenerState state : states) {
+            set |= state._bit;
+        }
+        return set;
     }
 
     /**
-     * The name of this state. This field should never be <code>null</code>.
+     * Determines whether this state is in the specified set of states.
+     *
+     * @param states the set of states, as returned by {@link #setOf(XMLEventListenerState...)}.
+     * @return <code>true</code> if this state is in the set, <code>false</code> otherwise.
      */
-    private final String _name;
-
-    @Override
-    public String toString() {
-        return _name;
+    boolean isIn(int states) {
+        return (states & _bit) != 0;
     }
 }
@@ -11,7 +11,7 @@ public interface XMLEventListenerStates {
     /**
      * Uninitialized state. In this state no events notifications are valid.
      */
-    static final XMLEventListenerState UNINITIALIZED = new XMLEventListenerState("UNINITIALIZED");
+    static final XMLEventListenerState UNINITIALIZED = XMLEventListenerState.UNINITIALIZED;
 
     /**
      * The initial initialized state. No XML declaration has been written, no
@@ -27,7 +27,7 @@ public interface XMLEventListenerStates {
      * <li>start tag ({@link XMLEventListener#startTag(String)})</li>
      * </ul>
      */
-    static final XMLEventListenerState BEFORE_XML_DECLARATION = new XMLEventListenerState("BEFORE_XML_DECLARATION");
+    static final XMLEventListenerState BEFORE_XML_DECLARATION = XMLEventListenerState.BEFORE_XML_DECLARATION;
 
     /**
      * State after XML declaration but before the DTD declaration, if any. This
@@ -42,7 +42,7 @@ public interface XMLEventListenerStates {
      * <li>start tag ({@link XMLEventListener#startTag(String)})</li>
      * </ul>
      */
-    static final XMLEventListenerState BEFORE_DTD_DECLARATION = new XMLEventListenerState("BEFORE_DTD_DECLARATION");
+    static final XMLEventListenerState BEFORE_DTD_DECLARATION = XMLEventListenerState.BEFORE_DTD_DECLARATION;
 
     /**
      * State after DTD declaration but before the root element. This
@@ -57,7 +57,7 @@ public interface XMLEventListenerStates {
      * <li>start tag ({@link XMLEventListener#startTag(String)})</li>
      * </ul>
      */
-    static final XMLEventListenerState BEFORE_ROOT_ELEMENT = new XMLEventListenerState("BEFORE_ROOT_ELEMENT");
+    static final XMLEventListenerState BEFORE_ROOT_ELEMENT = XMLEventListenerState.BEFORE_ROOT_ELEMENT;
 
     /**
      * State in which a start tag is still open. This state is entered after
@@ -73,7 +73,7 @@ public interface XMLEventListenerStates {
      * <li>end tag ({@link XMLEventListener#endTag()})</li>
      * </ul>
      */
-    static final XMLEventListenerState START_TAG_OPEN = new XMLEventListenerState("START_TAG_OPEN");
+    static final XMLEventListenerState START_TAG_OPEN = XMLEventListenerState.START_TAG_OPEN;
 
     /**
      * State within an element, start tag is closed.
@@ -87,7 +87,7 @@ public interface XMLEventListenerStates {
      * <li>end tag ({@link XMLEventListener#endTag()})</li>
      * </ul>
      */
-    static final XMLEventListenerState WITHIN_ELEMENT = new XMLEventListenerState("WITHIN_ELEMENT");
+    static final XMLEventListenerState WITHIN_ELEMENT = XMLEventListenerState.WITHIN_ELEMENT;
 
     /**
      * State after the root element.
@@ -99,17 +99,17 @@ public interface XMLEventListenerStates {
      * <li>processing instruction ({@link XMLEventListener#pi(String, String)})</li>
      * </ul>
      */
-    static final XMLEventListenerState AFTER_ROOT_ELEMENT = new XMLEventListenerState("AFTER_ROOT_ELEMENT");
+    static final XMLEventListenerState AFTER_ROOT_ELEMENT = XMLEventListenerState.AFTER_ROOT_ELEMENT;
 
     /**
      * State entered when the document is ended. No more event notifications are
      * valid.
      */
-    static final XMLEventListenerState DOCUMENT_ENDED = new XMLEventListenerState("DOCUMENT_ENDED");
+    static final XMLEventListenerState DOCUMENT_ENDED = XMLEventListenerState.DOCUMENT_ENDED;
 
     /**
      * State reached when there was an error while writing output. No more
      * event notifications are valid.
      */
-    static final XMLEventListenerState ERROR_STATE = new XMLEventListenerState("ERROR_STATE");
+    static final XMLEventListenerState ERROR_STATE = XMLEventListenerState.ERROR_STATE;
 }
@@ -0,0 +1,223 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Element or attribute name that is validated and encoded once, so it can be written many times
+ * at little cost. An <code>XMLName</code> holds the ready-made start tag (<code>"&lt;name"</code>),
+ * end tag (<code>"&lt;/name&gt;"</code>) and attribute prefixes (<code>" name=\""</code> and
+ * <code>" name='"</code>), both as characters and as UTF-8 bytes. Each of these is written with
+ * a single bulk write; when writing to a {@link UTF8XMLWriter}, the bytes are copied straight
+ * into its buffer.
+ * <p />
+ * Typically an application creates its names once, as constants:
+ * <blockquote><pre>private static final XMLName PERSON = new XMLName("person");
+ *private static final XMLName ID = new XMLName("id");
+ *
+ *...
+ *outputter.startTag(PERSON);
+ *outputter.attribute(ID, id);</pre></blockquote>
+ * <p />
+ * Instances of this class are immutable and can be shared between threads.
+ *
+ * @since XMLenc 0.54
+ */
+public final class XMLName extends Object {
+
+    /**
+     * The UTF-8 character set.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Constructs a new <code>XMLName</code>. The name is checked against the <em>Name</em>
+     * production of the {@link NameRules#XML_1_0_FOURTH_EDITION fourth edition} of XML 1.0, the
+     * rules that {@link XMLChecker#checkName(String)} applies. Use
+     * {@link #XMLName(String, NameRules)} to check it against other rules.
+     *
+     * @param name the name, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws InvalidXMLException      if the specified name does not match the
+     *                                  <a href="http://www.w3.org/TR/REC-xml#NT-Name"><em>Name</em> production</a>
+     *                                  (see {@link XMLChecker#checkName(String)}).
+     */
+    public XMLName(String name) throws IllegalArgumentException, InvalidXMLException {
+        this(name, NameRules.XML_1_0_FOURTH_EDITION, true);
+    }
+
+    /**
+     * Constructs a new <code>XMLName</code> that is checked against the <em>Name</em>
+     * production of the specified set of rules. Names for an {@link XMLOutputter} that validates
+     * names should be checked against the same rules (see
+     * {@link XMLOutputter#setNameValidation(NameRules)}).
+     *
+     * @param name  the name, not <code>null</code>.
+     * @param rules the name rules to check the name against, not <code>null</code>.
+     * @throws IllegalArgumentException if <code>name == null || rules == null</code>.
+     * @throws InvalidXMLException      if the specified name does not match the <em>Name</em>
+     *                                  production of <code>rules</code> (see
+     *                                  {@link XMLChecker#checkName(CharSequence, NameRules)}).
+     */
+    public XMLName(String name, NameRules rules) throws IllegalArgumentException, InvalidXMLException {
+        this(name, rules, true);
+    }
+
+    /**
+     * Constructs a new <code>XMLName</code>, optionally checking the name against the
+     * <em>Name</em> production. Names that are not checked are used by {@link NameTable}.
+     *
+     * @param name  the name, not <code>null</code>.
+     * @param rules the name rules to check the name against, only used if <code>check</code> is
+     *              <code>true</code>.
+     * @param check <code>true</code> if the name should be checked.
+     * @throws IllegalArgumentException if <code>name == null || (check &amp;&amp; rules == null)</code>.
+     * @throws InvalidXMLException      if <code>check</code> is <code>true</code> and the name
+     *                                  does not match the <em>Name</em> production.
+     */
+    XMLName(String name, NameRules rules, boolean check) throws IllegalArgumentException, InvalidXMLException {
+
+        // Check arguments
+        if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        } else if (check && rules == null) {
+            throw new IllegalArgumentException("rules == null");
+        } else if (check) {
+            XMLChecker.checkName(name, rules);
+        }
+
+        _name = name;
+        _startTag = ('<' + name).toCharArray();
+        _endTag = ("</" + name + '>').toCharArray();
+        _attributeQuote = (' ' + name + "=\"").toCharArray();
+        _attributeApostrophe = (' ' + name + "='").toCharArray();
+        _startTagBytes = new String(_startTag).getBytes(UTF_8);
+        _endTagBytes = new String(_endTag).getBytes(UTF_8);
+        _attributeQuoteBytes = new String(_attributeQuote).getBytes(UTF_8);
+        _attributeApostropheBytes = new String(_attributeApostrophe).getBytes(UTF_8);
+    }
+
+    /**
+     * The name. Never <code>null</code>.
+     */
+    private final String _name;
+
+    /**
+     * The characters of the start tag, <code>"&lt;name"</code>.
+     */
+    private final char[] _startTag;
+
+    /**
+     * The characters of the end tag, <code>"&lt;/name&gt;"</code>.
+     */
+    private final char[] _endTag;
+
+    /**
+     * The characters that precede an attribute value in quotes, <code>" name=\""</code>.
+     */
+    private final char[] _attributeQuote;
+
+    /**
+     * The characters that precede an attribute value in apostrophes, <code>" name='"</code>.
+     */
+    private final char[] _attributeApostrophe;
+
+    /**
+     * The start tag, encoded as UTF-8.
+     */
+    private final byte[] _startTagBytes;
+
+    /**
+     * The end tag, encoded as UTF-8.
+     */
+    private final byte[] _endTagBytes;
+
+    /**
+     * The characters that precede an attribute value in quotes, encoded as UTF-8.
+     */
+    private final byte[] _attributeQuoteBytes;
+
+    /**
+     * The characters that precede an attribute value in apostrophes, encoded as UTF-8.
+     */
+    private final byte[] _attributeApostropheBytes;
+
+    /**
+     * Returns the name.
+     *
+     * @return the name, never <code>null</code>.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Writes the start of the start tag, <code>"&lt;name"</code>.
+     *
+     * @param out the character stream to write to, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeStartTag(Writer out) throws IOException {
+        write(out, _startTag, _startTagBytes);
+    }
+
+    /**
+     * Writes the end tag, <code>"&lt;/name&gt;"</code>.
+     *
+     * @param out the character stream to write to, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeEndTag(Writer out) throws IOException {
+        write(out, _endTag, _endTagBytes);
+    }
+
+    /**
+     * Writes the characters that precede an attribute value, for example
+     * <code>" name=\""</code>.
+     *
+     * @param out           the character stream to write to, not <code>null</code>.
+     * @param quotationMark the quotation mark, either <code>'"'</code> or <code>'\''</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeAttributeStart(Writer out, char quotationMark) throws IOException {
+        if (quotationMark == '"') {
+            write(out, _attributeQuote, _attributeQuoteBytes);
+        } else {
+            write(out, _attributeApostrophe, _attributeApostropheBytes);
+        }
+    }
+
+    /**
+     * Writes either the specified characters or, to a {@link UTF8XMLWriter}, the specified
+     * bytes.
+     *
+     * @param out   the character stream to write to, not <code>null</code>.
+     * @param chars the characters, not <code>null</code>.
+     * @param bytes the same characters, encoded as UTF-8, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void write(Writer out, char[] chars, byte[] bytes) throws IOException {
+        if (out instanceof UTF8XMLWriter) {
+            ((UTF8XMLWriter) out).writeBytes(bytes);
+        } else {
+            out.write(chars, 0, chars.length);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof XMLName && _name.equals(((XMLName) obj)._name);
+    }
+
+    @Override
+    public int hashCode() {
+        return _name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+}
@@ -2,8 +2,17 @@
 package org.znerd.xmlenc;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
 
 /**
  * Stream-based XML outputter. Instances of this class are able to write XML
@@ -11,8 +20,9 @@ import java.io.Writer;
  * output that conforms to the
  * <a href="http://www.w3.org/TR/2000/REC-xml-20001006">XML 1.0
  * Specification</a>. However, not all applicable restrictions are validated.
- * For example, it is currently not checked if names contain characters that
- * are invalid within a <em>Name</em> production.
+ * For example, by default it is not checked if names contain characters that
+ * are invalid within a <em>Name</em> production; this can be enabled with
+ * {@link #setNameValidation(NameRules)}.
  * <p />
  * Furthermore, not all possible XML documents can be produced. The following limitations apply:
  * <ul>
@@ -25,16 +35,18 @@ import java.io.Writer;
  * <li>XML Namespaces are not explicitly supported, although this can be implemented on top of this
  * class.</li>
  * </ul>
- * <h3>Supported encodings</h3> The following encodings are supported:
+ * <h3>Supported encodings</h3> All encodings that the JVM can encode to are supported, for
+ * example:
  * <ul>
  * <li>UTF-8</li>
  * <li>UTF-16</li>
- * <li>ISO-10646-UCS-2</li>
- * <li>ISO-10646-UCS-4</li>
- * <li>ISO-10646-UTF-1</li>
  * <li>US-ASCII (also known as ASCII)</li>
  * <li>ISO-8859-<em>n</em>, where <em>n</em> is the part number</li>
+ * <li>windows-1252</li>
+ * <li>Shift_JIS</li>
  * </ul>
+ * Characters that the encoding cannot represent are written as numeric character references. See
+ * {@link XMLEncoder}.
  * <h3>Multi-threading</h3> This class is <em>not</em> thread-safe. Do not use it from multiple
  * threads at the same time.
  * <h3>Exceptions</h3> Note that all methods check the state first and then check the arguments.
@@ -47,6 +59,14 @@ import java.io.Writer;
  * write to buffered {@link Writer Writers}. This typically improves performance on large documents
  * or relatively slow or blocking output streams.
  * <p />
+ * To produce UTF-8 output for an {@link java.io.OutputStream} or a
+ * {@link java.nio.channels.WritableByteChannel}, use a {@link UTF8XMLWriter} instead of an
+ * {@link java.io.OutputStreamWriter}. It escapes and encodes text in a single pass.
+ * <p />
+ * Producers that are known to call the methods in a valid order with valid arguments can use a
+ * {@link RawXMLOutputter} instead, which performs no checks at all. Such an outputter can be
+ * wrapped in a {@link ValidatingXMLEventListener} to get the same checks as this class.
+ * <p />
  * Instances of this class can be cached in a pool to reduce object creations. Call {@link #reset()}
  * (with no arguments) when storing an instance in the pool. Use {@link #reset(Writer, String)} (with
  * 2 arguments) to re-initialize the instance after fetching it from the pool.
@@ -61,6 +81,46 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      */
     public static final String DEFAULT_INDENTATION = "";
 
+    /**
+     * The size of the scratch buffer used to copy character sequences that are not strings.
+     */
+    private static final int SCRATCH_BUFFER_SIZE = 1024;
+
+    /**
+     * Character array representing the string <code>"true"</code>.
+     */
+    private static final char[] TRUE = new char[] { 't', 'r', 'u', 'e' };
+
+    /**
+     * Character array representing the string <code>"false"</code>.
+     */
+    private static final char[] FALSE = new char[] { 'f', 'a', 'l', 's', 'e' };
+
+    /**
+     * The states in which a DTD declaration can be written.
+     */
+    static final int DTD_STATES = XMLEventListenerState.setOf(XMLEventListenerState.BEFORE_XML_DECLARATION, XMLEventListenerState.BEFORE_DTD_DECLARATION);
+
+    /**
+     * The states in which an element can be started.
+     */
+    static final int START_TAG_STATES = XMLEventListenerState.setOf(XMLEventListenerState.BEFORE_XML_DECLARATION, XMLEventListenerState.BEFORE_DTD_DECLARATION, XMLEventListenerState.BEFORE_ROOT_ELEMENT, XMLEventListenerState.START_TAG_OPEN, XMLEventListenerState.WITHIN_ELEMENT);
+
+    /**
+     * The states in which content can be written and an element can be ended.
+     */
+    static final int CONTENT_STATES = XMLEventListenerState.setOf(XMLEventListenerState.START_TAG_OPEN, XMLEventListenerState.WITHIN_ELEMENT);
+
+    /**
+     * The states in which whitespace, comments and processing instructions can be written.
+     */
+    static final int MISC_STATES = XMLEventListenerState.setOf(XMLEventListenerState.BEFORE_XML_DECLARATION, XMLEventListenerState.BEFORE_DTD_DECLARATION, XMLEventListenerState.BEFORE_ROOT_ELEMENT, XMLEventListenerState.START_TAG_OPEN, XMLEventListenerState.WITHIN_ELEMENT, XMLEventListenerState.AFTER_ROOT_ELEMENT);
+
+    /**
+     * The states in which the document can be closed.
+     */
+    static final int CLOSE_STATES = XMLEventListenerState.setOf(XMLEventListenerState.START_TAG_OPEN, XMLEventListenerState.WITHIN_ELEMENT, XMLEventListenerState.AFTER_ROOT_ELEMENT);
+
     /**
      * Constructs a new <code>XMLOutputter</code>. This sets the state to {@link #UNINITIALIZED}.
      */
@@ -120,10 +180,28 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      * <p>
      * This field is initialized by the constructor. It can never be <code>null</code>.
      * <p />
-     * The value of this field is returned by {@link #getWriter()}.
+     * This is either the staging buffer or the writer returned by {@link #getWriter()}.
      */
     private Writer _out;
 
+    /**
+     * The writer passed to the constructor or to the <code>reset</code> method. This is
+     * {@link #_out}, unless a staging buffer is used.
+     */
+    private Writer _writer;
+
+    /**
+     * The staging buffer that output is collected in before it is passed to {@link #_writer}, or
+     * <code>null</code> if no staging buffer is configured.
+     */
+    private StagingWriter _staging;
+
+    /**
+     * The element depth at or below which the staging buffer is written to {@link #_writer}
+     * after an end tag. Never negative.
+     */
+    private int _bufferFlushDepth;
+
     /**
      * The encoder used to actually encode character streams.
      */
@@ -141,6 +219,22 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      */
     private String[] _elementStack;
 
+    /**
+     * The pre-encoded names of the open elements, either passed to {@link #startTag(XMLName)} or
+     * taken from the name table, at the same index as in {@link #_elementStack}. An entry is only
+     * valid if its name is the very same <code>String</code> instance as the one in the element
+     * stack; other entries are ignored. Allocated on first use, can be shorter than the element
+     * stack.
+     */
+    private XMLName[] _elementNames;
+
+    /**
+     * The table with the ready-made start and end tags of the element type names written by this
+     * outputter, and with the names that passed the check against {@link #_nameRules}. It is kept
+     * when this outputter is reset. Created on first use.
+     */
+    private NameTable _nameTable;
+
     /**
      * The size of the element stack. The actual capacity is {@link #_elementStack}
      * <code>.length</code>.
@@ -160,6 +254,18 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      */
     private boolean _escapeAmpersands = true;
 
+    /**
+     * The policy that determines which additional characters are escaped in PCDATA and attribute
+     * values. Should never become <code>null</code>.
+     */
+    private EscapePolicy _escapePolicy = EscapePolicy.DEFAULT;
+
+    /**
+     * The rules that element and attribute names are checked against, or <code>null</code> if
+     * names are not checked.
+     */
+    private NameRules _nameRules;
+
     /**
      * The line break that is currently in use. Should never become <code>null</code>.
      */
@@ -176,13 +282,61 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      */
     private String _indentation;
 
+    /**
+     * The line break followed by the indentation repeated for a number of levels, so that a line
+     * break and the indentation for an element can be written with a single call. Built on first
+     * use by {@link #buildIndentation(int)}.
+     */
+    private char[] _indentationChars;
+
+    /**
+     * The same block as {@link #_indentationChars}, as UTF-8 bytes.
+     */
+    private byte[] _indentationBytes;
+
+    /**
+     * The line break {@link #_indentationChars} was built for.
+     */
+    private char[] _indentationLineBreak;
+
+    /**
+     * The indentation {@link #_indentationChars} was built for.
+     */
+    private String _indentationString;
+
+    /**
+     * Reusable buffer that character sequences are copied into before they are encoded, so that
+     * they can be written without creating garbage. Allocated on first use.
+     */
+    private char[] _scratchBuffer;
+
+    /**
+     * Reusable buffer that bytes are read into before they are encoded as Base64 or hexadecimal
+     * text. Allocated on first use.
+     */
+    private byte[] _byteBuffer;
+
+    /**
+     * The maximum number of characters on a line of Base64 or hexadecimal text, or 0 if such
+     * text is not broken into lines. Never negative.
+     */
+    private int _binaryLineLength;
+
+    /**
+     * The writer for CDATA sections, reused for every section. Created on first use.
+     */
+    private CDATAWriter _cdataWriter;
+
     /**
      * Checks all invariants. This check should be performed at the end of
-     * every method that changes the internal state of this object.
+     * every method that changes the internal state of this object, as
+     * <code>assert checkInvariants()</code>, so that it only costs time if
+     * assertions are enabled.
      *
+     * @return <code>true</code>.
      * @throws Error if the state of this <code>XMLOutputter</code> is invalid.
      */
-    private final void checkInvariants() throws Error {
+    private final boolean checkInvariants() throws Error {
 
         if (_lineBreak == null) {
             throw new Error("_lineBreak == null");
@@ -192,23 +346,69 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
             throw new Error("_elementStack (" + _elementStack + " == null");
         } else if (_elementStackSize < 0) {
             throw new Error("_elementStackSize (" + _elementStackSize + ") < 0");
+        } else if (_binaryLineLength < 0) {
+            throw new Error("_binaryLineLength (" + _binaryLineLength + ") < 0");
         }
+        return true;
     }
 
     /**
-     * Writes the indentation to the output stream.
+     * Writes the line break followed by the indentation for the current element depth to the
+     * output stream, with a single write call.
      *
      * @throws IOException if an I/O error occurs.
      */
-    private final void writeIndentation() throws IOException {
+    private final void writeLineBreakAndIndentation() throws IOException {
+        int length = _lineBreakChars.length + _indentation.length() * Math.max(0, _elementStackSize - 1);
+        if (length == 0) {
+            return;
+        }
 
-        // Write indentation only if there is any
-        if (_indentation.length() > 0) {
-            int count = _elementStackSize - 1;
-            for (int i = 0; i < count; i++) {
-                _out.write(_indentation);
-            }
+        // Rebuild the block if the settings changed or if it is too short
+        if (_indentationLineBreak != _lineBreakChars || _indentationString != _indentation || _indentationChars.length < length) {
+            buildIndentation(length);
+        }
+
+        if (_out instanceof UTF8XMLWriter) {
+            ((UTF8XMLWriter) _out).writeBytes(_indentationBytes, 0, length);
+        } else {
+            _out.write(_indentationChars, 0, length);
+        }
+    }
+
+    /**
+     * Builds the line break and indentation block, in characters and in bytes. The block holds
+     * the indentation for at least twice the depth it held before, so that it only has to grow a
+     * few times for deep documents.
+     *
+     * @param length the minimum length of the block.
+     */
+    private void buildIndentation(int length) {
+        int lineBreakLength = _lineBreakChars.length;
+        int indentationLength = _indentation.length();
+        if (indentationLength > 0) {
+            int oldDepth = _indentationString == _indentation ? (_indentationChars.length - lineBreakLength) / indentationLength : 0;
+            int depth = Math.max((length - lineBreakLength) / indentationLength, Math.max(oldDepth * 2, 8));
+            length = lineBreakLength + indentationLength * depth;
+        }
+
+        char[] chars = new char[length];
+        System.arraycopy(_lineBreakChars, 0, chars, 0, lineBreakLength);
+        for (int i = lineBreakLength; i < length; i += indentationLength) {
+            _indentation.getChars(0, indentationLength, chars, i);
+        }
+
+        // The block only contains spaces, tabs and line breaks, which are
+        // single bytes in UTF-8
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) chars[i];
         }
+
+        _indentationChars = chars;
+        _indentationBytes = bytes;
+        _indentationLineBreak = _lineBreakChars;
+        _indentationString = _indentation;
     }
 
     /**
@@ -218,7 +418,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      * only if the state is {@link #UNINITIALIZED}.
      */
     public final Writer getWriter() {
-        return _out;
+        return _writer;
     }
 
     /**
@@ -241,25 +441,39 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      * cleared, the state will be set to {@link #UNINITIALIZED}, the line break
      * will be set to {@link LineBreak#NONE} and the indentation will be set to
      * {@link #DEFAULT_INDENTATION} (an empty string).
+     * <p />
+     * Output that is still in the staging buffer is passed to the old writer first. Since this
+     * method cannot throw an <code>IOException</code>, an I/O error while doing so is ignored;
+     * call {@link #flushBuffer()} first to detect it.
      */
     @Override
     public void reset() {
         _out = null;
+        _writer = null;
+        if (_staging != null) {
+            try {
+                _staging.reset(null);
+            } catch (IOException exception) {
+                // Ignore, the staged output is lost with the old writer
+            }
+        }
         _encoder = null;
         _elementStackSize = 0;
         _state = XMLEventListenerStates.UNINITIALIZED;
         _lineBreak = LineBreak.NONE;
         _lineBreakChars = _lineBreak._lineBreakChars;
         _indentation = DEFAULT_INDENTATION;
+        _binaryLineLength = 0;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
      * Resets this <code>XMLOutputter</code> and configures it for the
      * specified output stream. This sets the state to {@link #BEFORE_XML_DECLARATION} and clears
-     * the stack of open elements.
+     * the stack of open elements. Output that is still in the staging buffer is passed to the old
+     * writer first; an I/O error while doing so is ignored.
      *
      * @param out the new output stream, cannot be <code>null</code>.
      * @throws IllegalArgumentException if <code>out == null</code>.
@@ -271,16 +485,27 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
             throw new IllegalArgumentException("out == null");
         }
 
+        // Pass the staged output to the old writer and empty the buffer
+        if (_staging != null) {
+            try {
+                _staging.reset(null);
+            } catch (IOException exception) {
+                // Ignore, the staged output is lost with the old writer
+            }
+        }
+
         // Reset the fields
-        _out = out;
+        _writer = out;
+        _out = stage(out);
         _state = XMLEventListenerStates.BEFORE_XML_DECLARATION;
         _elementStackSize = 0;
         _lineBreak = LineBreak.NONE;
         _lineBreakChars = _lineBreak._lineBreakChars;
         _indentation = DEFAULT_INDENTATION;
+        _binaryLineLength = 0;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -306,7 +531,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _encoder = XMLEncoder.getEncoder(encoding);
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -332,7 +557,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _encoder = encoder;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -396,7 +621,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -438,7 +663,119 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _escapeAmpersands = escapeAmpersands;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
+    }
+
+    /**
+     * Returns the escape policy. It determines which characters are escaped in PCDATA
+     * ({@link #pcdata(String)} and {@link #pcdata(char[], int, int)}) and in attribute values
+     * ({@link #attribute(String, String)}), in addition to the characters that must always be
+     * escaped.
+     *
+     * @return the escape policy, never <code>null</code>.
+     * @since XMLenc 0.54
+     */
+    public final EscapePolicy getEscapePolicy() {
+        return _escapePolicy;
+    }
+
+    /**
+     * Sets the escape policy. It determines which characters are escaped in PCDATA
+     * ({@link #pcdata(String)} and {@link #pcdata(char[], int, int)}) and in attribute values
+     * ({@link #attribute(String, String)}), in addition to the characters that must always be
+     * escaped.
+     *
+     * @param escapePolicy the escape policy to use; specifying <code>null</code> as the argument
+     *                     is equivalent to specifying {@link EscapePolicy#DEFAULT}.
+     * @since XMLenc 0.54
+     */
+    public final void setEscapePolicy(EscapePolicy escapePolicy) {
+        _escapePolicy = escapePolicy != null ? escapePolicy : EscapePolicy.DEFAULT;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Returns the policy for characters that are not allowed in XML, when they are found in PCDATA,
+     * in attribute values or in CDATA sections. This is the invalid character policy of the escape
+     * policy.
+     *
+     * @return the invalid character policy, never <code>null</code>.
+     * @since XMLenc 0.54
+     */
+    public final InvalidCharacterPolicy getInvalidCharacterPolicy() {
+        return _escapePolicy.getInvalidCharacterPolicy();
+    }
+
+    /**
+     * Sets the policy for characters that are not allowed in XML, when they are found in PCDATA,
+     * in attribute values or in CDATA sections. This replaces the escape policy by one that escapes the same
+     * characters, but that uses the specified invalid character policy.
+     *
+     * @param invalidCharacterPolicy the invalid character policy to use; specifying
+     *                               <code>null</code> as the argument is equivalent to
+     *                               specifying {@link InvalidCharacterPolicy#THROW}.
+     * @since XMLenc 0.54
+     */
+    public final void setInvalidCharacterPolicy(InvalidCharacterPolicy invalidCharacterPolicy) {
+        _escapePolicy = _escapePolicy.withInvalidCharacterPolicy(invalidCharacterPolicy != null ? invalidCharacterPolicy : InvalidCharacterPolicy.THROW);
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Returns the rules that element and attribute names are checked against.
+     *
+     * @return the name rules, or <code>null</code> if names are not checked.
+     * @since XMLenc 0.54
+     */
+    public final NameRules getNameValidation() {
+        return _nameRules;
+    }
+
+    /**
+     * Sets the rules that element and attribute names are checked against. By default names are
+     * not checked. If they are, {@link #startTag(String)} and the <code>attribute</code> methods
+     * that take a <code>String</code> name throw an {@link InvalidXMLException} for a name that
+     * does not match the <em>Name</em> production, before anything is written.
+     * <p />
+     * Names that passed the check are remembered, so that checking a name that was used before
+     * only costs a lookup. Names passed as an {@link XMLName} are not checked again, since they
+     * were checked when the <code>XMLName</code> was constructed.
+     *
+     * @param rules the name rules to check names against, or <code>null</code> if names should
+     *              not be checked.
+     * @since XMLenc 0.54
+     */
+    public final void setNameValidation(NameRules rules) {
+        if (rules != _nameRules) {
+            _nameRules = rules;
+            if (_nameTable != null) {
+                _nameTable.clearValidated();
+            }
+        }
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Checks the specified element or attribute name against the current name rules. Should only
+     * be called if names are checked.
+     *
+     * @param name the name to check, not <code>null</code>.
+     * @throws InvalidXMLException if the name does not match the <em>Name</em> production.
+     */
+    private void checkName(String name) throws InvalidXMLException {
+        if (_nameTable == null) {
+            _nameTable = new NameTable();
+        } else if (_nameTable.isValidated(name)) {
+            return;
+        }
+        XMLChecker.checkName(name, _nameRules);
+        _nameTable.setValidated(name);
     }
 
     /**
@@ -509,7 +846,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _elementStack = newStack;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -535,7 +872,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -573,7 +910,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -619,7 +956,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _indentation = indentation;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -631,6 +968,163 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         return _indentation;
     }
 
+    /**
+     * Sets the maximum number of characters on a line of Base64 or hexadecimal text, written by
+     * the <code>pcdataBase64</code> and <code>pcdataHex</code> methods. If the value is positive,
+     * a line feed is inserted each time a line reaches this length. A length of 76 results in
+     * lines like those in MIME messages. By default, no line breaks are inserted.
+     *
+     * @param lineLength the maximum line length, or 0 if no line breaks should be inserted.
+     * @throws IllegalArgumentException if <code>lineLength &lt; 0</code>.
+     * @since XMLenc 0.54
+     */
+    public final void setBinaryLineLength(int lineLength) throws IllegalArgumentException {
+
+        // Check arguments
+        if (lineLength < 0) {
+            throw new IllegalArgumentException("lineLength (" + lineLength + ") < 0");
+        }
+
+        _binaryLineLength = lineLength;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Returns the maximum number of characters on a line of Base64 or hexadecimal text.
+     *
+     * @return the maximum line length, or 0 if no line breaks are inserted.
+     * @since XMLenc 0.54
+     */
+    public final int getBinaryLineLength() {
+        return _binaryLineLength;
+    }
+
+    /**
+     * Sets the size of the staging buffer. If the size is positive, all output is collected in a
+     * buffer of this many characters, that is passed to the writer in a single call when it is
+     * full, after an end tag at or below the {@link #setBufferFlushDepth(int) flush depth}, on
+     * {@link #flushBuffer()} and on {@link #endDocument()}. This replaces the many small writes
+     * for each event by a few array copies. By default, no staging buffer is used.
+     * <p />
+     * If the writer is a {@link UTF8XMLWriter}, then no staging buffer is used, since that writer
+     * already buffers its output.
+     * <p />
+     * Output still in the current staging buffer is written before the buffer is replaced. The
+     * staging buffer is kept when this outputter is reset; output still in the buffer is then
+     * passed to the old writer first.
+     *
+     * @param size the size of the staging buffer in characters, or 0 if no staging buffer should
+     *             be used.
+     * @throws IllegalArgumentException if <code>size &lt; 0</code>.
+     * @throws IOException              if an I/O error occurs while writing the current staging buffer.
+     * @since XMLenc 0.54
+     */
+    public final void setBufferSize(int size) throws IllegalArgumentException, IOException {
+
+        // Check arguments
+        if (size < 0) {
+            throw new IllegalArgumentException("size (" + size + ") < 0");
+        }
+
+        flushBuffer();
+        _staging = size > 0 ? new StagingWriter(size) : null;
+        _out = stage(_writer);
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Returns the size of the staging buffer.
+     *
+     * @return the size of the staging buffer in characters, or 0 if no staging buffer is used.
+     * @since XMLenc 0.54
+     */
+    public final int getBufferSize() {
+        return _staging == null ? 0 : _staging.getBufferSize();
+    }
+
+    /**
+     * Sets the element depth at or below which the staging buffer is written after an end tag.
+     * For example, with a depth of 1 the output is passed to the writer after each child of the
+     * root element, which is useful if the elements are records that should be sent as soon as
+     * they are complete. The default depth is 0: only the end of the root element causes the
+     * buffer to be written, apart from the buffer being full.
+     *
+     * @param depth the flush depth, must be &gt;= 0.
+     * @throws IllegalArgumentException if <code>depth &lt; 0</code>.
+     * @since XMLenc 0.54
+     */
+    public final void setBufferFlushDepth(int depth) throws IllegalArgumentException {
+
+        // Check arguments
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth (" + depth + ") < 0");
+        }
+
+        _bufferFlushDepth = depth;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Returns the element depth at or below which the staging buffer is written after an end tag.
+     *
+     * @return the flush depth, always &gt;= 0.
+     * @since XMLenc 0.54
+     */
+    public final int getBufferFlushDepth() {
+        return _bufferFlushDepth;
+    }
+
+    /**
+     * Returns the number of times the staging buffer passed output to the writer since the
+     * buffer was configured. This can be used to tune the buffer size.
+     *
+     * @return the number of writes of the staging buffer, or 0 if no staging buffer is used.
+     * @since XMLenc 0.54
+     */
+    public final long getBufferFlushCount() {
+        return _staging == null ? 0L : _staging.getFlushCount();
+    }
+
+    /**
+     * Passes the output in the staging buffer to the writer, without flushing the writer. If no
+     * staging buffer is used, then this method does nothing.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @since XMLenc 0.54
+     */
+    public final void flushBuffer() throws IOException {
+        if (_staging != null && _out == _staging) {
+            _staging.flushBuffer();
+        }
+    }
+
+    /**
+     * Returns the writer that output should be written to for the specified writer: the staging
+     * buffer if one is configured and useful, or the writer itself.
+     *
+     * The staging buffer must be empty.
+     *
+     * @param out the writer passed to this outputter, can be <code>null</code>.
+     * @return the writer to write output to, <code>null</code> if <code>out == null</code>.
+     */
+    private Writer stage(Writer out) {
+        if (out == null || _staging == null || out instanceof UTF8XMLWriter) {
+            return out;
+        }
+        try {
+            _staging.reset(out);
+        } catch (IOException exception) {
+            throw new Error("The staging buffer is not empty.", exception);
+        }
+        return _staging;
+    }
+
     /**
      * Closes an open start tag.
      * <p>
@@ -642,6 +1136,26 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _out.write('>');
     }
 
+    /**
+     * Writes the end tag for the element on top of the stack, using its pre-encoded name if it
+     * was started with one.
+     *
+     * @param type the type of the element on top of the stack, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void writeEndTag(String type) throws IOException {
+        int index = _elementStackSize - 1;
+        XMLName name = _elementNames != null && index < _elementNames.length ? _elementNames[index] : null;
+        if (name != null && name.getName() == type) {
+            name.writeEndTag(_out);
+        } else {
+            _out.write('<');
+            _out.write('/');
+            _out.write(type);
+            closeStartTag();
+        }
+    }
+
     /**
      * Writes the XML declaration. This method always prints the name of the
      * encoding. The case of the encoding is as it was specified during
@@ -673,7 +1187,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _state = XMLEventListenerStates.BEFORE_DTD_DECLARATION;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -722,7 +1236,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         // TODO: Respect _quotationMark
 
         // Check state
-        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION && _state != XMLEventListenerStates.BEFORE_DTD_DECLARATION) {
+        if (!_state.isIn(DTD_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
         }
 
@@ -774,7 +1288,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _state = XMLEventListenerStates.BEFORE_ROOT_ELEMENT;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -789,13 +1303,47 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      *                                  getState() != {@link #START_TAG_OPEN} &amp;&amp;
      *                                  getState() != {@link #WITHIN_ELEMENT}</code>.
      * @throws IllegalArgumentException if <code>type == null</code>.
+     * @throws InvalidXMLException      if names are checked (see {@link #setNameValidation(NameRules)})
+     *                                  and <code>type</code> does not match the <em>Name</em> production.
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
      */
     @Override
     public final void startTag(String type) throws IllegalStateException, IllegalArgumentException, IOException {
+        startTag(type, null);
+    }
+
+    /**
+     * Writes an element start tag, using a pre-encoded element type name. The element type name
+     * will be stored in the internal element stack. If necessary, the capacity of this stack will
+     * be extended. The matching end tag is written using the pre-encoded name as well.
+     *
+     * @param type the type of the tag to start, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #BEFORE_XML_DECLARATION} &amp;&amp;
+     *                                  getState() != {@link #BEFORE_DTD_DECLARATION} &amp;&amp;
+     *                                  getState() != {@link #BEFORE_ROOT_ELEMENT} &amp;&amp;
+     *                                  getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>.
+     * @throws IllegalArgumentException if <code>type == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void startTag(XMLName type) throws IllegalStateException, IllegalArgumentException, IOException {
+        startTag(type == null ? null : type.getName(), type);
+    }
+
+    /**
+     * Writes an element start tag, optionally using a pre-encoded name.
+     *
+     * @param type the type of the tag to start, not <code>null</code>.
+     * @param name the pre-encoded form of <code>type</code>, or <code>null</code>.
+     * @throws IllegalStateException    if the state does not allow a start tag.
+     * @throws IllegalArgumentException if <code>type == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    private void startTag(String type, XMLName name) throws IllegalStateException, IllegalArgumentException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION && _state != XMLEventListenerStates.BEFORE_DTD_DECLARATION && _state != XMLEventListenerStates.BEFORE_ROOT_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT) {
+        if (!_state.isIn(START_TAG_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
 
             // Check arguments
@@ -803,11 +1351,29 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
             throw new IllegalArgumentException("type == null");
         }
 
+        // Check the name, unless it was checked when the XMLName was constructed
+        if (_nameRules != null && name == null) {
+            checkName(type);
+        }
+
         // Temporarily set the state to ERROR_STATE. Unless an exception is
         // thrown in the write methods, it will be reset to a valid state.
         XMLEventListenerState oldState = _state;
         _state = XMLEventListenerStates.ERROR_STATE;
 
+        // Use the ready-made tags from the name table, unless a pre-encoded
+        // name was passed, the name is used for the first time or the table
+        // is full
+        if (name == null) {
+            if (_nameTable == null) {
+                _nameTable = new NameTable();
+            }
+            name = _nameTable.intern(type);
+            if (name != null) {
+                type = name.getName();
+            }
+        }
+
         // Increase the stack size if necessary
         if (_elementStackSize == _elementStack.length) {
             String[] newStack;
@@ -831,20 +1397,31 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
 
         // Write line break and indentation, except if this is first output
         if (oldState != XMLEventListenerStates.BEFORE_XML_DECLARATION) {
-            _out.write(_lineBreakChars);
-            writeIndentation();
+            writeLineBreakAndIndentation();
         }
 
-        _out.write('<');
-
-        // Escape the element name, if necessary
-        _out.write(type);
+        if (name != null) {
+            if (_elementNames == null || _elementNames.length < _elementStack.length) {
+                XMLName[] newNames = new XMLName[_elementStack.length];
+                if (_elementNames != null) {
+                    System.arraycopy(_elementNames, 0, newNames, 0, _elementNames.length);
+                }
+                _elementNames = newNames;
+            }
+            _elementNames[_elementStackSize - 1] = name;
+            name.writeStartTag(_out);
+        } else {
+            _out.write('<');
+
+            // Escape the element name, if necessary
+            _out.write(type);
+        }
 
         // Change the state
         _state = XMLEventListenerStates.START_TAG_OPEN;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -862,6 +1439,162 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      */
     @Override
     public final void attribute(String name, String value) throws IllegalStateException, IllegalArgumentException, IOException {
+        attribute(name, (CharSequence) value);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a value taken from a character sequence.
+     * There must currently be an open element. The character sequence is escaped in place; it is
+     * not converted to a <code>String</code>.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    @Override
+    public final void attribute(String name, CharSequence value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkAttribute(name, value);
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        _encoder.attribute(_out, name, value, _quotationMark, _escapeAmpersands, _escapePolicy, value instanceof String ? null : getScratchBuffer());
+
+        // Reset the state
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Adds an attribute to the current element, with a value taken from a character array.
+     * There must currently be an open element.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name   the name of the attribute, not <code>null</code>.
+     * @param ch     the character array that contains the value of the attribute, not
+     *               <code>null</code>.
+     * @param start  the start index in the array, must be &gt;= 0.
+     * @param length the number of characters to read from the array, must be &gt;= 0.
+     * @throws IllegalStateException     if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException  if <code>name == null || ch == null || start &lt; 0 || length &lt; 0</code>.
+     * @throws IndexOutOfBoundsException if <code>start + length &gt; ch.length</code>.
+     * @throws IOException               if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    @Override
+    public final void attribute(String name, char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, IOException {
+
+        // Check state and arguments
+        checkAttribute(name, ch, start, length);
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        _encoder.attribute(_out, name, ch, start, length, _quotationMark, _escapeAmpersands, _escapePolicy);
+
+        // Reset the state
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Adds an attribute with a pre-encoded name to the current element. There must currently be
+     * an open element.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attribute(XMLName name, CharSequence value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkAttribute(name, value);
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        _encoder.attribute(_out, name, value, _quotationMark, _escapeAmpersands, _escapePolicy, value instanceof String ? null : getScratchBuffer());
+
+        // Reset the state
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Adds an attribute with a pre-encoded name to the current element, with a value taken from
+     * a character array. There must currently be an open element.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name   the name of the attribute, not <code>null</code>.
+     * @param ch     the character array that contains the value of the attribute, not
+     *               <code>null</code>.
+     * @param start  the start index in the array, must be &gt;= 0.
+     * @param length the number of characters to read from the array, must be &gt;= 0.
+     * @throws IllegalStateException     if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException  if <code>name == null || ch == null || start &lt; 0 || length &lt; 0</code>.
+     * @throws IndexOutOfBoundsException if <code>start + length &gt; ch.length</code>.
+     * @throws IOException               if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attribute(XMLName name, char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, IOException {
+
+        // Check state and arguments
+        checkAttribute(name, ch, start, length);
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        _encoder.attribute(_out, name, ch, start, length, _quotationMark, _escapeAmpersands, _escapePolicy);
+
+        // Reset the state
+        _state = XMLEventListenerStates.START_TAG_OPEN;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Checks the state and the arguments for adding an attribute.
+     *
+     * @param name  the name of the attribute, a <code>String</code> or an {@link XMLName}.
+     * @param value the value of the attribute.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws InvalidXMLException      if names are checked and <code>name</code> is an invalid <code>String</code>.
+     */
+    private void checkAttribute(Object name, Object value) throws IllegalStateException, IllegalArgumentException {
 
         // Check state
         if (_state != XMLEventListenerStates.START_TAG_OPEN) {
@@ -878,18 +1611,80 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
             }
         }
 
+        // Check the name, unless it is an XMLName
+        if (_nameRules != null && name instanceof String) {
+            checkName((String) name);
+        }
+    }
+
+    /**
+     * Checks the state and the arguments for adding an attribute with a value taken from a
+     * character array.
+     *
+     * @param name   the name of the attribute, a <code>String</code> or an {@link XMLName}.
+     * @param ch     the character array that contains the value of the attribute.
+     * @param start  the start index in the array.
+     * @param length the number of characters to read from the array.
+     * @throws IllegalStateException     if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException  if <code>name == null || ch == null || start &lt; 0 || length &lt; 0</code>.
+     * @throws IndexOutOfBoundsException if <code>start + length &gt; ch.length</code>.
+     * @throws InvalidXMLException       if names are checked and <code>name</code> is an invalid <code>String</code>.
+     */
+    private void checkAttribute(Object name, char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException {
+
+        // Check state
+        if (_state != XMLEventListenerStates.START_TAG_OPEN) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        } else if (ch == null) {
+            throw new IllegalArgumentException("ch == null");
+        } else if (start < 0) {
+            throw new IllegalArgumentException("start (" + start + ") < 0");
+        } else if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        } else if (start > ch.length - length) {
+            throw new IndexOutOfBoundsException("start (" + start + ") + length (" + length + ") > ch.length (" + ch.length + ')');
+        }
+
+        // Check the name, unless it is an XMLName
+        if (_nameRules != null && name instanceof String) {
+            checkName((String) name);
+        }
+    }
+
+    /**
+     * Adds an attribute with a value that needs no escaping, such as the representation of a
+     * number, to the current element. There must currently be an open element.
+     *
+     * @param name   the name of the attribute, not <code>null</code>.
+     * @param ch     the character array that contains the value, not <code>null</code>. It must
+     *               only contain ASCII characters that need no escaping.
+     * @param start  the start index in the array.
+     * @param length the number of characters to read from the array.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    private void unescapedAttribute(String name, char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkAttribute(name, ch, start, length);
+
         // Temporarily set the state to ERROR_STATE. Unless an exception is
         // thrown in the write methods, it will be reset to a valid state.
         _state = XMLEventListenerStates.ERROR_STATE;
 
         // Write output
-        _encoder.attribute(_out, name, value, _quotationMark, _escapeAmpersands);
+        _encoder.unescapedAttribute(_out, name, ch, start, length, _quotationMark);
 
         // Reset the state
         _state = XMLEventListenerStates.START_TAG_OPEN;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -906,7 +1701,8 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
      */
     public final void attribute(String name, boolean value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, value ? "true" : "false");
+        char[] chars = value ? TRUE : FALSE;
+        unescapedAttribute(name, chars, 0, chars.length);
     }
 
     /**
@@ -923,7 +1719,9 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
      */
     public final void attribute(String name, byte value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Byte.toString(value));
+        char[] buffer = getScratchBuffer();
+        int start = Digits.getChars(value, buffer, Digits.MAX_LONG_LENGTH);
+        unescapedAttribute(name, buffer, start, Digits.MAX_LONG_LENGTH - start);
     }
 
     /**
@@ -939,108 +1737,1010 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
      * @throws IllegalArgumentException if <code>name == null</code>.
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
      */
-    public final void attribute(String name, short value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Short.toString(value));
+    public final void attribute(String name, short value) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        int start = Digits.getChars(value, buffer, Digits.MAX_LONG_LENGTH);
+        unescapedAttribute(name, buffer, start, Digits.MAX_LONG_LENGTH - start);
+    }
+
+    /**
+     * Adds an attribute to the current element, with an <code>int</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    public final void attribute(String name, int value) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        int start = Digits.getChars(value, buffer, Digits.MAX_LONG_LENGTH);
+        unescapedAttribute(name, buffer, start, Digits.MAX_LONG_LENGTH - start);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a <code>long</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    public final void attribute(String name, long value) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        int start = Digits.getChars(value, buffer, Digits.MAX_LONG_LENGTH);
+        unescapedAttribute(name, buffer, start, Digits.MAX_LONG_LENGTH - start);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a <code>float</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The value is written in the format of {@link Float#toString(float)}, but always with the
+     * shortest sequence of digits that converts back to the same value.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    public final void attribute(String name, float value) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        unescapedAttribute(name, buffer, 0, Decimals.getChars(value, buffer, 0));
+    }
+
+    /**
+     * Adds an attribute to the current element, with a <code>double</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The value is written in the format of {@link Double#toString(double)}, but always with the
+     * shortest sequence of digits that converts back to the same value.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    public final void attribute(String name, double value) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        unescapedAttribute(name, buffer, 0, Decimals.getChars(value, buffer, 0));
+    }
+
+    /**
+     * Adds an attribute to the current element, with a <code>BigDecimal</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The value is written in plain notation, as returned by {@link BigDecimal#toPlainString()}.
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attribute(String name, BigDecimal value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check arguments, the state and the name are checked by unescapedAttribute
+        if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+
+        char[] buffer = getScratchBuffer();
+        int end = Decimals.getChars(value, buffer, 0);
+        if (end < 0) {
+            buffer = value.toPlainString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedAttribute(name, buffer, 0, end);
+    }
+
+    /**
+     * Adds an attribute to the current element, with an <code>Instant</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The value is written in UTC, as returned by {@link Instant#toString()}, for example
+     * <code>2004-02-29T13:45:00Z</code>. For the years 0 to 9999 no intermediate
+     * <code>String</code> is created. The attribute value is surrounded by the quotation mark
+     * character (see {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attribute(String name, Instant value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check arguments, the state and the name are checked by unescapedAttribute
+        if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(value.getEpochSecond(), value.getNano(), buffer, 0);
+        if (end < 0) {
+            buffer = value.toString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedAttribute(name, buffer, 0, end);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a value that is a number of milliseconds
+     * since 1970-01-01T00:00:00Z. There must currently be an open element.
+     * <p />
+     * The value is written in the same format as {@link #attribute(String,Instant)}, for example
+     * <code>2004-02-29T13:45:00.250Z</code>. The attribute value is surrounded by the quotation
+     * mark character (see {@link #getQuotationMark()}).
+     *
+     * @param name        the name of the attribute, not <code>null</code>.
+     * @param epochMillis the value of the attribute, in milliseconds since the epoch.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attributeEpochMillis(String name, long epochMillis) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(Math.floorDiv(epochMillis, 1000L), (int) Math.floorMod(epochMillis, 1000L) * 1000000, buffer, 0);
+        if (end < 0) {
+            buffer = Instant.ofEpochMilli(epochMillis).toString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedAttribute(name, buffer, 0, end);
+    }
+
+    /**
+     * Adds an attribute to the current element, with an <code>OffsetDateTime</code> value.
+     * There must currently be an open element.
+     * <p />
+     * The value is written as returned by
+     * {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME}, for example
+     * <code>2004-02-29T13:45:00+01:00</code>. For the years 0 to 9999 no intermediate
+     * <code>String</code> is created. The attribute value is surrounded by the quotation mark
+     * character (see {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attribute(String name, OffsetDateTime value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check arguments, the state and the name are checked by unescapedAttribute
+        if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(value, buffer, 0);
+        if (end < 0) {
+            buffer = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value).toCharArray();
+            end = buffer.length;
+        }
+        unescapedAttribute(name, buffer, 0, end);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a <code>LocalDate</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The value is written as returned by {@link LocalDate#toString()}, for example
+     * <code>2004-02-29</code>. For the years 0 to 9999 no intermediate <code>String</code> is
+     * created. The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name  the name of the attribute, not <code>null</code>.
+     * @param value the value of the attribute, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null || value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void attribute(String name, LocalDate value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check arguments, the state and the name are checked by unescapedAttribute
+        if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(value, buffer, 0);
+        if (end < 0) {
+            buffer = value.toString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedAttribute(name, buffer, 0, end);
+    }
+
+    /**
+     * Adds an attribute to the current element, with a <code>char</code> value. There must
+     * currently be an open element.
+     * <p />
+     * The attribute value is surrounded by the quotation mark character (see
+     * {@link #getQuotationMark()}).
+     *
+     * @param name the name of the attribute, not <code>null</code>.
+     * @param c    the value of the attribute, a single character.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
+     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    public final void attribute(String name, char c) throws IllegalStateException, IllegalArgumentException, IOException {
+        char[] buffer = getScratchBuffer();
+        buffer[0] = c;
+        attribute(name, buffer, 0, 1);
+    }
+
+    /**
+     * Writes the end tag for the element on top of the stack.
+     *
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    @Override
+    public final void endTag() throws IllegalStateException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        String type = _elementStack[_elementStackSize - 1];
+
+        // Write output
+        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            _out.write('/');
+            _out.write('>');
+        } else {
+            writeLineBreakAndIndentation();
+            writeEndTag(type);
+        }
+
+        _elementStackSize--;
+        if (_elementStackSize <= _bufferFlushDepth) {
+            flushBuffer();
+        }
+
+        // Change the state
+        if (_elementStackSize == 0) {
+            _state = XMLEventListenerStates.AFTER_ROOT_ELEMENT;
+        } else {
+            _state = XMLEventListenerStates.WITHIN_ELEMENT;
+        }
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Writes end tags for elements on the stack until (and including) an
+     * element that matches the specified name.
+     *
+     * @param type the type of the tag to end, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>type == null</code>.
+     * @throws NoSuchElementException   if an element of the specified type could not be found on the stack.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.53
+     */
+    public final void endTag(String type) throws IllegalStateException, IllegalArgumentException, NoSuchElementException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (type == null) {
+            throw new IllegalArgumentException("type == null");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Names from the name table are the same instance for every element
+        // of a type, so mostly the identity check matches; otherwise the
+        // cached hash codes rule out most other names without equals()
+        int hash = type.hashCode();
+        String typeFound;
+        boolean found;
+        do {
+            typeFound = _elementStack[_elementStackSize - 1];
+
+            // Write output; only the innermost element can be empty
+            if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+                _out.write('/');
+                closeStartTag();
+                oldState = XMLEventListenerStates.WITHIN_ELEMENT;
+            } else {
+                writeLineBreakAndIndentation();
+                writeEndTag(typeFound);
+            }
+
+            _elementStackSize--;
+            found = typeFound == type || (typeFound.hashCode() == hash && typeFound.equals(type));
+        } while (!found && _elementStackSize > 0);
+
+        // Make sure the element was indeed found
+        if (!found) {
+            throw new NoSuchElementException("No element of type \"" + type + "\" was found on the stack of open elements.");
+        }
+        if (_elementStackSize <= _bufferFlushDepth) {
+            flushBuffer();
+        }
+
+        // Change the state
+        if (_elementStackSize == 0) {
+            _state = XMLEventListenerStates.AFTER_ROOT_ELEMENT;
+        } else {
+            _state = XMLEventListenerStates.WITHIN_ELEMENT;
+        }
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Writes an empty tag. This is equivalent to calling:
+     * <blockquote><code>startTag(type);
+     * <br/>endTag();</code></blockquote>
+     *
+     * @param type the type of the tag to start, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #BEFORE_XML_DECLARATION} &amp;&amp;
+     *                                  getState() != {@link #BEFORE_DTD_DECLARATION} &amp;&amp;
+     *                                  getState() != {@link #BEFORE_ROOT_ELEMENT} &amp;&amp;
+     *                                  getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>.
+     * @throws IllegalArgumentException if <code>type == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.53
+     */
+    public final void emptyTag(String type) throws IllegalStateException, IllegalArgumentException, IOException {
+        startTag(type);
+        endTag();
+    }
+
+    /**
+     * Writes the specified <code>String</code> as PCDATA.
+     *
+     * @param text the PCDATA text to be written, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>text == null</code>.
+     * @throws InvalidXMLException      if the specified text contains an invalid character.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    @Override
+    public final void pcdata(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+        pcdata((CharSequence) text);
+    }
+
+    /**
+     * Writes the specified character sequence as PCDATA. The characters are
+     * not copied to an intermediate string: a {@link String} is scanned in
+     * place, while other character sequences, such as a
+     * {@link StringBuilder}, are copied in chunks to a buffer that is reused
+     * by this outputter.
+     *
+     * @param text the PCDATA text to be written, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>text == null</code>.
+     * @throws InvalidXMLException      if the specified text contains an invalid character.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(CharSequence text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (text == null) {
+            throw new IllegalArgumentException("text == null");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            closeStartTag();
+            _out.write(_lineBreakChars);
+        }
+        text(text);
+
+        // Change the state
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Writes the remaining characters in the specified buffer as PCDATA. If the buffer is backed
+     * by an accessible array, the characters are escaped directly from that array; otherwise
+     * they are copied in chunks to a buffer that is reused by this outputter. The position of
+     * the buffer is left unchanged.
+     *
+     * @param text the buffer that contains the PCDATA text to be written, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>text == null</code>.
+     * @throws InvalidXMLException      if the specified text contains an invalid character.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(CharBuffer text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (text == null) {
+            throw new IllegalArgumentException("text == null");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            closeStartTag();
+            _out.write(_lineBreakChars);
+        }
+        if (text.hasArray()) {
+            _encoder.text(_out, text.array(), text.arrayOffset() + text.position(), text.remaining(), _escapeAmpersands, _escapePolicy);
+        } else {
+            text(text);
+        }
+
+        // Change the state
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Writes all characters read from the specified reader as PCDATA. The reader is read in
+     * chunks until its end, into a buffer that is reused by this outputter, so the memory used
+     * does not depend on the length of the text. A surrogate pair that is split between two
+     * chunks is kept together. The reader is not closed.
+     *
+     * @param in the reader to read the PCDATA text from, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>in == null</code>.
+     * @throws InvalidXMLException      if the text contains an invalid character.
+     * @throws IOException              if an I/O error occurs while reading or writing; this will set the state
+     *                                  to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(Reader in) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (in == null) {
+            throw new IllegalArgumentException("in == null");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            closeStartTag();
+            _out.write(_lineBreakChars);
+        }
+        char[] buffer = getScratchBuffer();
+        int length = 0;
+        int count;
+        while ((count = in.read(buffer, length, buffer.length - length)) >= 0) {
+            length += count;
+
+            // Hold back a trailing high surrogate until its low surrogate is read
+            int end = length;
+            if (end > 0 && Character.isHighSurrogate(buffer[end - 1])) {
+                end--;
+            }
+            _encoder.text(_out, buffer, 0, end, _escapeAmpersands, _escapePolicy);
+            if (end < length) {
+                buffer[0] = buffer[end];
+                length = 1;
+            } else {
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            _encoder.text(_out, buffer, 0, length, _escapeAmpersands, _escapePolicy);
+        }
+
+        // Change the state
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Escapes and writes the specified character sequence, without copying it
+     * to a new array. Sequences that cannot be scanned in place efficiently are
+     * copied in chunks to the scratch buffer. A chunk never ends with a high
+     * surrogate, so a surrogate pair is never split between two chunks.
+     *
+     * @param text the text to be written, not <code>null</code>.
+     * @throws InvalidXMLException if the specified text contains an invalid character.
+     * @throws IOException         if an I/O error occurs.
+     */
+    private void text(CharSequence text) throws InvalidXMLException, IOException {
+        if (text instanceof String || _out instanceof UTF8XMLWriter) {
+            _encoder.text(_out, text, _escapeAmpersands, _escapePolicy);
+            return;
+        }
+
+        char[] buffer = getScratchBuffer();
+
+        int length = text.length();
+        for (int start = 0; start < length;) {
+            int end = Math.min(length, start + buffer.length);
+            if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            XMLEncoder.getChars(text, start, end, buffer);
+            _encoder.text(_out, buffer, 0, end - start, _escapeAmpersands, _escapePolicy);
+            start = end;
+        }
+    }
+
+    /**
+     * Returns the scratch buffer, allocating it on first use.
+     *
+     * @return the scratch buffer, never <code>null</code>.
+     */
+    private char[] getScratchBuffer() {
+        if (_scratchBuffer == null) {
+            _scratchBuffer = new char[SCRATCH_BUFFER_SIZE];
+        }
+        return _scratchBuffer;
+    }
+
+    /**
+     * Writes the specified character array as PCDATA.
+     *
+     * @param ch     the character array containing the text to be written, not <code>null</code>.
+     * @param start  the start index in the array, must be &gt;= 0 and it must be &lt;
+     *               <code>ch.length</code>.
+     * @param length the number of characters to read from the array, must be &gt; 0.
+     * @throws IllegalStateException     if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                   getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException  if <code>ch     ==    null
+     *                                   || start  &lt;  0
+     *                                   || start  &gt;= ch.length
+     *                                   || length &lt;  0</code>.
+     * @throws IndexOutOfBoundsException if <code>start + length &gt; ch.length</code>.
+     * @throws InvalidXMLException       if the specified text contains an invalid character.
+     * @throws IOException               if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     */
+    @Override
+    public final void pcdata(char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (ch == null) {
+            throw new IllegalArgumentException("ch == null");
+        } else if (start < 0) {
+            throw new IllegalArgumentException("start (" + start + ") < 0");
+        } else if (start >= ch.length) {
+            throw new IllegalArgumentException("start (" + start + ") >= ch.length (" + ch.length + ')');
+        } else if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        }
+
+        // Temporarily set the state to ERROR_STATE. Unless an exception is
+        // thrown in the write methods, it will be reset to a valid state.
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Write output
+        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            closeStartTag();
+        }
+        _encoder.text(_out, ch, start, length, _escapeAmpersands, _escapePolicy);
+
+        // Change the state
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
+
+        // State has changed, check
+        assert checkInvariants();
+    }
+
+    /**
+     * Writes the specified character as PCDATA. Without this method, a <code>char</code>
+     * argument would be widened and written as a number by {@link #pcdata(long)}.
+     *
+     * @param c the character to write.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws InvalidXMLException   if the character is invalid.
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(char c) throws IllegalStateException, InvalidXMLException, IOException {
+        char[] buffer = getScratchBuffer();
+        buffer[0] = c;
+        pcdata(buffer, 0, 1);
+    }
+
+    /**
+     * Writes the specified <code>long</code> as PCDATA.
+     *
+     * @param value the value to write.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(long value) throws IllegalStateException, IOException {
+        char[] buffer = getScratchBuffer();
+        int start = Digits.getChars(value, buffer, Digits.MAX_LONG_LENGTH);
+        unescapedPcdata(buffer, start, Digits.MAX_LONG_LENGTH - start);
+    }
+
+    /**
+     * Writes the specified <code>float</code> as PCDATA. The value is written in the format of
+     * {@link Float#toString(float)}, but always with the shortest sequence of digits that
+     * converts back to the same value.
+     *
+     * @param value the value to write.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(float value) throws IllegalStateException, IOException {
+        char[] buffer = getScratchBuffer();
+        unescapedPcdata(buffer, 0, Decimals.getChars(value, buffer, 0));
+    }
+
+    /**
+     * Writes the specified <code>double</code> as PCDATA. The value is written in the format of
+     * {@link Double#toString(double)}, but always with the shortest sequence of digits that
+     * converts back to the same value.
+     *
+     * @param value the value to write.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(double value) throws IllegalStateException, IOException {
+        char[] buffer = getScratchBuffer();
+        unescapedPcdata(buffer, 0, Decimals.getChars(value, buffer, 0));
+    }
+
+    /**
+     * Writes the specified <code>BigDecimal</code> as PCDATA. The value is written in plain
+     * notation, as returned by {@link BigDecimal#toPlainString()}.
+     *
+     * @param value the value to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(BigDecimal value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkPcdata(value);
+
+        char[] buffer = getScratchBuffer();
+        int end = Decimals.getChars(value, buffer, 0);
+        if (end < 0) {
+            buffer = value.toPlainString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedPcdata(buffer, 0, end);
+    }
+
+    /**
+     * Writes the specified <code>Instant</code> as PCDATA. The value is written in UTC, as
+     * returned by {@link Instant#toString()}. For the years 0 to 9999 no intermediate
+     * <code>String</code> is created.
+     *
+     * @param value the value to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(Instant value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkPcdata(value);
+
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(value.getEpochSecond(), value.getNano(), buffer, 0);
+        if (end < 0) {
+            buffer = value.toString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedPcdata(buffer, 0, end);
+    }
+
+    /**
+     * Writes the specified number of milliseconds since 1970-01-01T00:00:00Z as PCDATA. The value
+     * is written in the same format as {@link #pcdata(Instant)}.
+     *
+     * @param epochMillis the value to write, in milliseconds since the epoch.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdataEpochMillis(long epochMillis) throws IllegalStateException, IOException {
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(Math.floorDiv(epochMillis, 1000L), (int) Math.floorMod(epochMillis, 1000L) * 1000000, buffer, 0);
+        if (end < 0) {
+            buffer = Instant.ofEpochMilli(epochMillis).toString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedPcdata(buffer, 0, end);
+    }
+
+    /**
+     * Writes the specified <code>OffsetDateTime</code> as PCDATA. The value is written as
+     * returned by {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME}. For the years 0 to 9999 no
+     * intermediate <code>String</code> is created.
+     *
+     * @param value the value to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(OffsetDateTime value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkPcdata(value);
+
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(value, buffer, 0);
+        if (end < 0) {
+            buffer = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value).toCharArray();
+            end = buffer.length;
+        }
+        unescapedPcdata(buffer, 0, end);
+    }
+
+    /**
+     * Writes the specified <code>LocalDate</code> as PCDATA. The value is written as returned by
+     * {@link LocalDate#toString()}. For the years 0 to 9999 no intermediate <code>String</code>
+     * is created.
+     *
+     * @param value the value to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>value == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdata(LocalDate value) throws IllegalStateException, IllegalArgumentException, IOException {
+
+        // Check state and arguments
+        checkPcdata(value);
+
+        char[] buffer = getScratchBuffer();
+        int end = DateTimes.getChars(value, buffer, 0);
+        if (end < 0) {
+            buffer = value.toString().toCharArray();
+            end = buffer.length;
+        }
+        unescapedPcdata(buffer, 0, end);
+    }
+
+    /**
+     * Checks the state and the value before PCDATA is written.
+     *
+     * @param value the value to write.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>value == null</code>.
+     */
+    private void checkPcdata(Object value) throws IllegalStateException, IllegalArgumentException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+
+            // Check arguments
+        } else if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+    }
+
+    /**
+     * Writes the specified bytes as PCDATA, encoded in Base64, as defined in RFC 4648. The text is
+     * written in chunks, without creating a <code>String</code>. Line breaks are inserted as
+     * configured with {@link #setBinaryLineLength(int)}.
+     *
+     * @param bytes the bytes to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>bytes == null</code>.
+     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final void pcdataBase64(byte[] bytes) throws IllegalStateException, IllegalArgumentException, IOException {
+        BinaryEncoder encoder = startBinaryPcdata(bytes, "bytes", true);
+        encoder.write(bytes, 0, bytes.length);
+        endBinaryPcdata(encoder);
     }
 
     /**
-     * Adds an attribute to the current element, with an <code>int</code> value. There must
-     * currently be an open element.
-     * <p />
-     * The attribute value is surrounded by the quotation mark character (see
-     * {@link #getQuotationMark()}).
+     * Writes the remaining bytes in the specified buffer as PCDATA, encoded in Base64, as defined
+     * in RFC 4648. Afterwards the position of the buffer is equal to its limit. Line breaks are
+     * inserted as configured with {@link #setBinaryLineLength(int)}.
      *
-     * @param name  the name of the attribute, not <code>null</code>.
-     * @param value the value of the attribute.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
-     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @param buffer the buffer that contains the bytes to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>buffer == null</code>.
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
      */
-    public final void attribute(String name, int value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Integer.toString(value));
+    public final void pcdataBase64(ByteBuffer buffer) throws IllegalStateException, IllegalArgumentException, IOException {
+        BinaryEncoder encoder = startBinaryPcdata(buffer, "buffer", true);
+        write(encoder, buffer);
+        endBinaryPcdata(encoder);
     }
 
     /**
-     * Adds an attribute to the current element, with a <code>long</code> value. There must
-     * currently be an open element.
-     * <p />
-     * The attribute value is surrounded by the quotation mark character (see
-     * {@link #getQuotationMark()}).
+     * Writes all bytes read from the specified stream as PCDATA, encoded in Base64, as defined in
+     * RFC 4648. The stream is read in chunks until its end, so the memory used does not depend on
+     * the number of bytes. The stream is not closed. Line breaks are inserted as configured with
+     * {@link #setBinaryLineLength(int)}.
      *
-     * @param name  the name of the attribute, not <code>null</code>.
-     * @param value the value of the attribute.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
-     * @throws IllegalArgumentException if <code>name == null</code>.
-     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @param in the stream to read the bytes from, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>in == null</code>.
+     * @throws IOException              if an I/O error occurs while reading or writing; this will set the state
+     *                                  to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
      */
-    public final void attribute(String name, long value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Long.toString(value));
+    public final void pcdataBase64(InputStream in) throws IllegalStateException, IllegalArgumentException, IOException {
+        BinaryEncoder encoder = startBinaryPcdata(in, "in", true);
+        write(encoder, in);
+        endBinaryPcdata(encoder);
     }
 
     /**
-     * Adds an attribute to the current element, with a <code>float</code> value. There must
-     * currently be an open element.
-     * <p />
-     * The attribute value is surrounded by the quotation mark character (see
-     * {@link #getQuotationMark()}).
+     * Writes the specified bytes as PCDATA, encoded in hexadecimal, with 2 upper case digits per
+     * byte. The text is written in chunks, without creating a <code>String</code>. Line breaks are
+     * inserted as configured with {@link #setBinaryLineLength(int)}.
      *
-     * @param name  the name of the attribute, not <code>null</code>.
-     * @param value the value of the attribute.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
-     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @param bytes the bytes to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>bytes == null</code>.
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
      */
-    public final void attribute(String name, float value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Float.toString(value));
+    public final void pcdataHex(byte[] bytes) throws IllegalStateException, IllegalArgumentException, IOException {
+        BinaryEncoder encoder = startBinaryPcdata(bytes, "bytes", false);
+        encoder.write(bytes, 0, bytes.length);
+        endBinaryPcdata(encoder);
     }
 
     /**
-     * Adds an attribute to the current element, with a <code>double</code> value. There must
-     * currently be an open element.
-     * <p />
-     * The attribute value is surrounded by the quotation mark character (see
-     * {@link #getQuotationMark()}).
+     * Writes the remaining bytes in the specified buffer as PCDATA, encoded in hexadecimal, with 2
+     * upper case digits per byte. Afterwards the position of the buffer is equal to its limit. Line
+     * breaks are inserted as configured with {@link #setBinaryLineLength(int)}.
      *
-     * @param name  the name of the attribute, not <code>null</code>.
-     * @param value the value of the attribute.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
-     * @throws IllegalArgumentException if <code>name == null</code>.
+     * @param buffer the buffer that contains the bytes to write, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>buffer == null</code>.
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
      */
-    public final void attribute(String name, double value) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Double.toString(value));
+    public final void pcdataHex(ByteBuffer buffer) throws IllegalStateException, IllegalArgumentException, IOException {
+        BinaryEncoder encoder = startBinaryPcdata(buffer, "buffer", false);
+        write(encoder, buffer);
+        endBinaryPcdata(encoder);
     }
 
     /**
-     * Adds an attribute to the current element, with a <code>char</code> value. There must
-     * currently be an open element.
-     * <p />
-     * The attribute value is surrounded by the quotation mark character (see
-     * {@link #getQuotationMark()}).
+     * Writes all bytes read from the specified stream as PCDATA, encoded in hexadecimal, with 2
+     * upper case digits per byte. The stream is read in chunks until its end, so the memory used
+     * does not depend on the number of bytes. The stream is not closed. Line breaks are inserted as
+     * configured with {@link #setBinaryLineLength(int)}.
      *
-     * @param name the name of the attribute, not <code>null</code>.
-     * @param c    the value of the attribute, a single character.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN}</code>.
-     * @throws IllegalArgumentException if <code>name == null</code>.
-     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @param in the stream to read the bytes from, not <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>in == null</code>.
+     * @throws IOException              if an I/O error occurs while reading or writing; this will set the state
+     *                                  to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
      */
-    public final void attribute(String name, char c) throws IllegalStateException, IllegalArgumentException, IOException {
-        attribute(name, Character.toString(c));
+    public final void pcdataHex(InputStream in) throws IllegalStateException, IllegalArgumentException, IOException {
+        BinaryEncoder encoder = startBinaryPcdata(in, "in", false);
+        write(encoder, in);
+        endBinaryPcdata(encoder);
     }
 
     /**
-     * Writes the end tag for the element on top of the stack.
+     * Checks the state and the argument and starts writing Base64 or hexadecimal PCDATA. The
+     * state is set to {@link #ERROR_STATE} until {@link #endBinaryPcdata(BinaryEncoder)} is
+     * called.
      *
-     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
-     *                               getState() != {@link #WITHIN_ELEMENT}</code>
-     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @param data         the data to write.
+     * @param argumentName the name of the argument that holds the data, for the exception message.
+     * @param base64       <code>true</code> for Base64, <code>false</code> for hexadecimal.
+     * @return the encoder to pass the bytes to, never <code>null</code>.
+     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IllegalArgumentException if <code>data == null</code>.
+     * @throws IOException              if an I/O error occurs.
      */
-    @Override
-    public final void endTag() throws IllegalStateException, IOException {
+    private BinaryEncoder startBinaryPcdata(Object data, String argumentName, boolean base64) throws IllegalStateException, IllegalArgumentException, IOException {
 
-        // Check state
-        if (_state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN) {
+        // Check state and arguments
+        if (!_state.isIn(CONTENT_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
+        } else if (data == null) {
+            throw new IllegalArgumentException(argumentName + " == null");
         }
 
         // Temporarily set the state to ERROR_STATE. Unless an exception is
@@ -1048,190 +2748,95 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         XMLEventListenerState oldState = _state;
         _state = XMLEventListenerStates.ERROR_STATE;
 
-        String type = _elementStack[_elementStackSize - 1];
-
         // Write output
         if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
-            _out.write('/');
-            _out.write('>');
-        } else {
-            _out.write(_lineBreakChars);
-            writeIndentation();
-
-            _out.write('<');
-            _out.write('/');
-            _out.write(type);
             closeStartTag();
         }
+        return new BinaryEncoder(_out, getScratchBuffer(), base64, _binaryLineLength);
+    }
 
-        _elementStackSize--;
+    /**
+     * Completes writing Base64 or hexadecimal PCDATA.
+     *
+     * @param encoder the encoder returned by {@link #startBinaryPcdata(Object,String,boolean)}, not
+     *                <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void endBinaryPcdata(BinaryEncoder encoder) throws IOException {
+        encoder.finish();
 
         // Change the state
-        if (_elementStackSize == 0) {
-            _state = XMLEventListenerStates.AFTER_ROOT_ELEMENT;
-        } else {
-            _state = XMLEventListenerStates.WITHIN_ELEMENT;
-        }
+        _state = XMLEventListenerStates.WITHIN_ELEMENT;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
-     * Writes end tags for elements on the stack until (and including) an
-     * element that matches the specified name.
+     * Passes the remaining bytes in the specified buffer to the specified encoder. A buffer
+     * without an accessible array is copied in chunks.
      *
-     * @param type the type of the tag to end, not <code>null</code>.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
-     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
-     * @throws IllegalArgumentException if <code>type == null</code>.
-     * @throws NoSuchElementException   if an element of the specified type could not be found on the stack.
-     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
-     * @since XMLenc 0.53
+     * @param encoder the encoder, not <code>null</code>.
+     * @param buffer  the buffer, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
      */
-    public final void endTag(String type) throws IllegalStateException, NoSuchElementException, IOException {
-
-        // Check state
-        if (_state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN) {
-            throw new IllegalStateException("getState() == " + _state);
-        }
-
-        // Temporarily set the state to ERROR_STATE. Unless an exception is
-        // thrown in the write methods, it will be reset to a valid state.
-        XMLEventListenerState oldState = _state;
-        _state = XMLEventListenerStates.ERROR_STATE;
-
-        String typeFound;
-        do {
-            typeFound = _elementStack[_elementStackSize - 1];
-
-            // Write output
-            if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
-                _out.write('/');
-                closeStartTag();
-            } else {
-                _out.write(_lineBreakChars);
-                writeIndentation();
-
-                _out.write('<');
-                _out.write('/');
-                _out.write(typeFound);
-                closeStartTag();
-            }
-
-            _elementStackSize--;
-        } while (!type.equals(typeFound) && _elementStackSize > 0);
-
-        // Make sure the element was indeed found
-        if (!type.equals(typeFound)) {
-            throw new NoSuchElementException("No element of type \"" + type + "\" was found on the stack of open elements.");
-        }
-
-        // Change the state
-        if (_elementStackSize == 0) {
-            _state = XMLEventListenerStates.AFTER_ROOT_ELEMENT;
+    private void write(BinaryEncoder encoder, ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            encoder.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
         } else {
-            _state = XMLEventListenerStates.WITHIN_ELEMENT;
+            byte[] bytes = getByteBuffer();
+            while (buffer.hasRemaining()) {
+                int count = Math.min(bytes.length, buffer.remaining());
+                buffer.get(bytes, 0, count);
+                encoder.write(bytes, 0, count);
+            }
         }
-
-        // State has changed, check
-        checkInvariants();
     }
 
     /**
-     * Writes an empty tag. This is equivalent to calling:
-     * <blockquote><code>startTag(type);
-     * <br/>endTag();</code></blockquote>
+     * Passes all bytes read from the specified stream to the specified encoder.
      *
-     * @param type the type of the tag to start, not <code>null</code>.
-     * @throws IllegalStateException    if <code>getState() != {@link #BEFORE_XML_DECLARATION} &amp;&amp;
-     *                                  getState() != {@link #BEFORE_DTD_DECLARATION} &amp;&amp;
-     *                                  getState() != {@link #BEFORE_ROOT_ELEMENT} &amp;&amp;
-     *                                  getState() != {@link #START_TAG_OPEN} &amp;&amp;
-     *                                  getState() != {@link #WITHIN_ELEMENT}</code>.
-     * @throws IllegalArgumentException if <code>type == null</code>.
-     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
-     * @since XMLenc 0.53
+     * @param encoder the encoder, not <code>null</code>.
+     * @param in      the stream, not <code>null</code>.
+     * @throws IOException if an I/O error occurs.
      */
-    public final void emptyTag(String type) throws IllegalStateException, IllegalArgumentException, IOException {
-        startTag(type);
-        endTag();
+    private void write(BinaryEncoder encoder, InputStream in) throws IOException {
+        byte[] bytes = getByteBuffer();
+        int count;
+        while ((count = in.read(bytes, 0, bytes.length)) >= 0) {
+            encoder.write(bytes, 0, count);
+        }
     }
 
     /**
-     * Writes the specified <code>String</code> as PCDATA.
+     * Returns the byte buffer, allocating it on first use.
      *
-     * @param text the PCDATA text to be written, not <code>null</code>.
-     * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
-     *                                  getState() != {@link #WITHIN_ELEMENT}</code>
-     * @throws IllegalArgumentException if <code>text == null</code>.
-     * @throws InvalidXMLException      if the specified text contains an invalid character.
-     * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @return the byte buffer, never <code>null</code>.
      */
-    @Override
-    public final void pcdata(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
-
-        // Check state
-        if (_state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT) {
-            throw new IllegalStateException("getState() == " + _state);
-
-            // Check arguments
-        } else if (text == null) {
-            throw new IllegalArgumentException("text == null");
-        }
-
-        // Temporarily set the state to ERROR_STATE. Unless an exception is
-        // thrown in the write methods, it will be reset to a valid state.
-        XMLEventListenerState oldState = _state;
-        _state = XMLEventListenerStates.ERROR_STATE;
-
-        // Write output
-        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
-            closeStartTag();
-            _out.write(_lineBreakChars);
+    private byte[] getByteBuffer() {
+        if (_byteBuffer == null) {
+            _byteBuffer = new byte[SCRATCH_BUFFER_SIZE];
         }
-        _encoder.text(_out, text, _escapeAmpersands);
-
-        // Change the state
-        _state = XMLEventListenerStates.WITHIN_ELEMENT;
-
-        // State has changed, check
-        checkInvariants();
+        return _byteBuffer;
     }
 
     /**
-     * Writes the specified character array as PCDATA.
+     * Writes PCDATA that needs no escaping, such as the representation of a number.
      *
-     * @param ch     the character array containing the text to be written, not <code>null</code>.
-     * @param start  the start index in the array, must be &gt;= 0 and it must be &lt;
-     *               <code>ch.length</code>.
-     * @param length the number of characters to read from the array, must be &gt; 0.
-     * @throws IllegalStateException     if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
-     *                                   getState() != {@link #WITHIN_ELEMENT}</code>
-     * @throws IllegalArgumentException  if <code>ch     ==    null
-     *                                   || start  &lt;  0
-     *                                   || start  &gt;= ch.length
-     *                                   || length &lt;  0</code>.
-     * @throws IndexOutOfBoundsException if <code>start + length &gt; ch.length</code>.
-     * @throws InvalidXMLException       if the specified text contains an invalid character.
-     * @throws IOException               if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @param ch     the character array that contains the text, not <code>null</code>. It must
+     *               only contain ASCII characters that need no escaping.
+     * @param start  the start index in the array.
+     * @param length the number of characters to read from the array.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp;
+     *                               getState() != {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
      */
-    @Override
-    public final void pcdata(char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
+    private void unescapedPcdata(char[] ch, int start, int length) throws IllegalStateException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT) {
+        if (!_state.isIn(CONTENT_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
-
-            // Check arguments
-        } else if (ch == null) {
-            throw new IllegalArgumentException("ch == null");
-        } else if (start < 0) {
-            throw new IllegalArgumentException("start (" + start + ") < 0");
-        } else if (start >= ch.length) {
-            throw new IllegalArgumentException("start (" + start + ") >= ch.length (" + ch.length + ')');
-        } else if (length < 0) {
-            throw new IllegalArgumentException("length < 0");
         }
 
         // Temporarily set the state to ERROR_STATE. Unless an exception is
@@ -1243,13 +2848,13 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
             closeStartTag();
         }
-        _encoder.text(_out, ch, start, length, _escapeAmpersands);
+        _out.write(ch, start, length);
 
         // Change the state
         _state = XMLEventListenerStates.WITHIN_ELEMENT;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -1274,7 +2879,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
     public final void whitespace(String whitespace) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION && _state != XMLEventListenerStates.BEFORE_DTD_DECLARATION && _state != XMLEventListenerStates.BEFORE_ROOT_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.AFTER_ROOT_ELEMENT) {
+        if (!_state.isIn(MISC_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
 
             // Check arguments
@@ -1306,7 +2911,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -1341,7 +2946,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
     public final void whitespace(char[] ch, int start, int length) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException, InvalidXMLException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION && _state != XMLEventListenerStates.BEFORE_DTD_DECLARATION && _state != XMLEventListenerStates.BEFORE_ROOT_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.AFTER_ROOT_ELEMENT) {
+        if (!_state.isIn(MISC_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
 
             // Check arguments
@@ -1378,7 +2983,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -1401,7 +3006,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
     public final void comment(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
 
         // Check arguments
-        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION && _state != XMLEventListenerStates.BEFORE_DTD_DECLARATION && _state != XMLEventListenerStates.BEFORE_ROOT_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.AFTER_ROOT_ELEMENT) {
+        if (!_state.isIn(MISC_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
 
             // Check arguments
@@ -1444,7 +3049,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -1473,7 +3078,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
     public final void pi(String target, String instruction) throws IllegalStateException, IllegalArgumentException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.BEFORE_XML_DECLARATION && _state != XMLEventListenerStates.BEFORE_DTD_DECLARATION && _state != XMLEventListenerStates.BEFORE_ROOT_ELEMENT && _state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.AFTER_ROOT_ELEMENT) {
+        if (!_state.isIn(MISC_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
 
             // Check arguments
@@ -1512,35 +3117,41 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         }
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
      * Writes a CDATA section.
      * <p />
-     * A CDATA section can contain any string, except <code>"]]&gt;"</code>. This will, however, not
-     * be checked by this method.
+     * A CDATA section cannot contain the string <code>"]]&gt;"</code>. If the specified string
+     * contains it, then the section is split between the <code>"]]"</code> and the
+     * <code>"&gt;"</code>.
      * <p />
      * Left angle brackets and ampersands will be output in their literal form; they need not (and
      * cannot) be escaped using <code>"&amp;lt;"</code> and <code>"&amp;amp;"</code>.
      * <p />
-     * If the specified string is empty (i.e. <code>"".equals(text)</code>, then nothing will be
-     * output.
+     * If the specified string is empty (i.e. <code>"".equals(text)</code>, then an empty CDATA
+     * section will be output.
+     * <p />
+     * Characters that cannot be printed in this encoding are written as numeric character
+     * references, between two CDATA sections. Characters that are not allowed in XML are handled
+     * according to the invalid character policy, see
+     * {@link #setInvalidCharacterPolicy(InvalidCharacterPolicy)}.
      * <p />
-     * If the specified string contains characters that cannot be printed in this encoding, then the
-     * result is undefined.
+     * To write a CDATA section in chunks, use {@link #cdataWriter()}.
      *
      * @param text the contents of the CDATA section, not <code>null</code>.
      * @throws IllegalStateException    if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp; getState() !=
      *                                  {@link #WITHIN_ELEMENT}</code>
      * @throws IllegalArgumentException if <code>text == null</code>.
+     * @throws InvalidXMLException      if the specified text contains an invalid character.
      * @throws IOException              if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
      */
     @Override
-    public final void cdata(String text) throws IllegalStateException, IllegalArgumentException, IOException {
+    public final void cdata(String text) throws IllegalStateException, IllegalArgumentException, InvalidXMLException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT) {
+        if (!_state.isIn(CONTENT_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
 
             // Check arguments
@@ -1558,24 +3169,86 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
             closeStartTag();
         }
 
-        _out.write("<![CDATA[");
-        _out.write(text);
-        _out.write(']');
-        _out.write(']');
-        _out.write('>');
+        // Closing the writer changes the state back to WITHIN_ELEMENT
+        CDATAWriter writer = getCDATAWriter();
+        writer.open(_out, _encoder, _escapePolicy);
+        writer.write(text, 0, text.length());
+        writer.close();
+    }
+
+    /**
+     * Starts a CDATA section and returns a writer for its contents. This allows a large CDATA
+     * section to be written in chunks, without holding the complete contents in memory.
+     * <p />
+     * The contents are treated as in {@link #cdata(String)}: the section is split where the
+     * contents contain <code>"]]&gt;"</code>, also if the <code>"]]"</code> and the
+     * <code>"&gt;"</code> are written in different calls, and characters that cannot be printed
+     * in this encoding are written as numeric character references.
+     * <p />
+     * Until the returned writer is closed, the state is {@link #ERROR_STATE}, so that no other
+     * output can be performed. Closing the writer ends the CDATA section and sets the state to
+     * {@link #WITHIN_ELEMENT}; it does not close the underlying output stream. The same writer
+     * instance is returned by every call to this method.
+     *
+     * @return the writer for the contents of the CDATA section, never <code>null</code>.
+     * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp; getState() !=
+     *                               {@link #WITHIN_ELEMENT}</code>
+     * @throws IOException           if an I/O error occurs; this will set the state to {@link #ERROR_STATE}.
+     * @since XMLenc 0.54
+     */
+    public final Writer cdataWriter() throws IllegalStateException, IOException {
+
+        // Check state
+        if (!_state.isIn(CONTENT_STATES)) {
+            throw new IllegalStateException("getState() == " + _state);
+        }
+
+        // Set the state to ERROR_STATE until the writer is closed
+        XMLEventListenerState oldState = _state;
+        _state = XMLEventListenerStates.ERROR_STATE;
+
+        // Complete the start tag if necessary
+        if (oldState == XMLEventListenerStates.START_TAG_OPEN) {
+            closeStartTag();
+        }
+
+        CDATAWriter writer = getCDATAWriter();
+        writer.open(_out, _encoder, _escapePolicy);
+        return writer;
+    }
+
+    /**
+     * Returns the CDATA writer, creating it on first use.
+     *
+     * @return the CDATA writer, never <code>null</code>.
+     */
+    private CDATAWriter getCDATAWriter() {
+        if (_cdataWriter == null) {
+            _cdataWriter = new CDATAWriter(this);
+        }
+        return _cdataWriter;
+    }
+
+    /**
+     * Called by the CDATA writer when it is closed, after the end of the CDATA section has been
+     * written.
+     */
+    void cdataWriterClosed() {
 
         // Change state
         _state = XMLEventListenerStates.WITHIN_ELEMENT;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
      * Closes all open elements. After calling this method, only the {@link #whitespace(String)}
      * method can be called.
      * <p />
-     * If you would like to flush the output stream as well, call {@link #endDocument()} instead.
+     * Output that is still in the staging buffer is passed to the writer, also if no elements
+     * were open. If you would like to flush the output stream as well, call {@link #endDocument()}
+     * instead.
      *
      * @throws IllegalStateException if <code>getState() != {@link #START_TAG_OPEN} &amp;&amp; getState() !=
      *                               {@link #WITHIN_ELEMENT} &amp;&amp; getState() != {@link #AFTER_ROOT_ELEMENT}</code>
@@ -1584,16 +3257,17 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
     public final void close() throws IllegalStateException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.AFTER_ROOT_ELEMENT) {
+        if (!_state.isIn(CLOSE_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
         }
 
         while (_elementStackSize > 0) {
             endTag();
         }
+        flushBuffer();
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 
     /**
@@ -1612,7 +3286,7 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
     public final void endDocument() throws IllegalStateException, IOException {
 
         // Check state
-        if (_state != XMLEventListenerStates.START_TAG_OPEN && _state != XMLEventListenerStates.WITHIN_ELEMENT && _state != XMLEventListenerStates.AFTER_ROOT_ELEMENT) {
+        if (!_state.isIn(CLOSE_STATES)) {
             throw new IllegalStateException("getState() == " + _state);
         }
 
@@ -1626,6 +3300,6 @@ public class XMLOutputter extends Object implements StatefulXMLEventListener {
         _state = XMLEventListenerStates.DOCUMENT_ENDED;
 
         // State has changed, check
-        checkInvariants();
+        assert checkInvariants();
     }
 }
@@ -0,0 +1,79 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+/**
+ * Finds the next character that may need special treatment in a character array. The
+ * {@link XMLEncoder} uses this class to skip over runs of characters that can be written
+ * as-is, and the {@link XMLChecker} uses it to find the next character that is not white space.
+ * <p />
+ * A character is <em>special</em> if it is a control character (below 0x20), a quote, an
+ * ampersand, an apostrophe, a less-than or greater-than character, or a non-ASCII character
+ * (0x80 and up). Whether a special character actually needs to be escaped depends on the
+ * character class table in use; the caller checks that.
+ * <p />
+ * This is the Java 17 implementation, stored under <code>META-INF/versions/17</code> in the
+ * multi-release JAR file. If the <code>jdk.incubator.vector</code> module is in the boot layer
+ * (for example because the JVM was started with
+ * <code>--add-modules jdk.incubator.vector</code>), then arrays are scanned by
+ * {@link VectorEscapeScanner}. Otherwise the {@link ScalarEscapeScanner} is used, just like in the
+ * Java 8 version.
+ *
+ * @since XMLenc 0.54
+ */
+final class EscapeScanner extends Object {
+
+    /**
+     * Flag that indicates whether the Vector API is available. If it is not, then
+     * {@link VectorEscapeScanner} is never loaded.
+     */
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * Constructs a new <code>EscapeScanner</code> object. This constructor is private, since this
+     * class only has static methods.
+     */
+    private EscapeScanner() {
+    }
+
+    /**
+     * Determines whether a vectorized implementation is in use.
+     *
+     * @return <code>true</code> if the Vector API is used, <code>false</code> otherwise.
+     */
+    static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Returns the index of the first special character in the specified part of a character
+     * array.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @return the index of the first special character, or <code>end</code> if there is none.
+     */
+    static int indexOfSpecial(char[] ch, int start, int end) {
+        if (VECTORIZED) {
+            return VectorEscapeScanner.indexOfSpecial(ch, start, end);
+        }
+        return ScalarEscapeScanner.indexOfSpecial(ch, start, end);
+    }
+
+    /**
+     * Returns the index of the first character that does not match the <em>S</em> (white space)
+     * production in the specified part of a character array.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @return the index of the first character that is not white space, or <code>end</code> if
+     * there is none.
+     */
+    static int indexOfNonWhitespace(char[] ch, int start, int end) {
+        if (VECTORIZED) {
+            return VectorEscapeScanner.indexOfNonWhitespace(ch, start, end);
+        }
+        return ScalarEscapeScanner.indexOfNonWhitespace(ch, start, end);
+    }
+}
@@ -0,0 +1,98 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of the {@link EscapeScanner} methods. It compares as many
+ * characters at a time as the preferred vector shape holds: 16 with AVX2 and 32 with AVX-512.
+ * The tail of an array that does not fill a vector is checked one character at a time.
+ * <p />
+ * This class must only be loaded if the <code>jdk.incubator.vector</code> module is present.
+ *
+ * @since XMLenc 0.54
+ */
+final class VectorEscapeScanner extends Object {
+
+    /**
+     * The vector species used, with 16-bit lanes.
+     */
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    /**
+     * Constructs a new <code>VectorEscapeScanner</code> object. This constructor is private,
+     * since this class only has static methods.
+     */
+    private VectorEscapeScanner() {
+    }
+
+    /**
+     * Returns the index of the first special character in the specified part of a character
+     * array. See {@link EscapeScanner#indexOfSpecial(char[], int, int)}.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @return the index of the first special character, or <code>end</code> if there is none.
+     */
+    static int indexOfSpecial(char[] ch, int start, int end) {
+        int i = start;
+        int step = SPECIES.length();
+        for (int upperBound = start + SPECIES.loopBound(end - start); i < upperBound; i += step) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, ch, i);
+
+            // Control characters and non-ASCII characters, compared unsigned
+            VectorMask<Short> special = v.compare(VectorOperators.UNSIGNED_LT, (short) 0x20).or(v.compare(VectorOperators.UNSIGNED_GE, (short) 0x80));
+            special = special.or(v.eq((short) '"')).or(v.eq((short) '&')).or(v.eq((short) '\'')).or(v.eq((short) '<')).or(v.eq((short) '>'));
+
+            if (special.anyTrue()) {
+                return i + special.firstTrue();
+            }
+        }
+
+        // Tail
+        for (; i < end; i++) {
+            char c = ch[i];
+            if (c < 0x20 || c >= 0x80 || c == '"' || c == '&' || c == '\'' || c == '<' || c == '>') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns the index of the first character that does not match the <em>S</em> (white space)
+     * production in the specified part of a character array. See
+     * {@link EscapeScanner#indexOfNonWhitespace(char[], int, int)}.
+     *
+     * @param ch    the character array, not <code>null</code>.
+     * @param start the start index into <code>ch</code>.
+     * @param end   the end index into <code>ch</code>, exclusive.
+     * @return the index of the first character that is not white space, or <code>end</code> if
+     * there is none.
+     */
+    static int indexOfNonWhitespace(char[] ch, int start, int end) {
+        int i = start;
+        int step = SPECIES.length();
+        for (int upperBound = start + SPECIES.loopBound(end - start); i < upperBound; i += step) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, ch, i);
+            VectorMask<Short> whitespace = v.eq((short) 0x20).or(v.eq((short) 0x9)).or(v.eq((short) 0xD)).or(v.eq((short) 0xA));
+
+            if (!whitespace.allTrue()) {
+                return i + whitespace.not().firstTrue();
+            }
+        }
+
+        // Tail
+        for (; i < end; i++) {
+            char c = ch[i];
+            if (c != 0x20 && c != 0x9 && c != 0xD && c != 0xA) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
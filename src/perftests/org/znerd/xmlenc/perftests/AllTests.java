@@ -17,6 +17,7 @@ public class AllTests extends TestSuite {
     */
    public static Test suite() {
       TestSuite suite = new TestSuite();
+      suite.addTestSuite(XMLCheckerTests.class);
       suite.addTestSuite(XMLEncoderTests.class);
       return suite;
    }
@@ -0,0 +1,133 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc.perftests;
+
+import org.znerd.xmlenc.NameRules;
+import org.znerd.xmlenc.XMLChecker;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Performance tests for class <code>XMLChecker</code>.
+ */
+public class XMLCheckerTests extends TestCase {
+
+   private static final int ROUNDS = 200000;
+
+   private static final String[] LATIN_NAMES = { "person", "firstName", "xsl:stylesheet", "r\u00e9sum\u00e9", "stra\u00dfe", "na\u00efve-caf\u00e9" };
+
+   private static final String[] CYRILLIC_NAMES = { "\u0438\u043c\u044f", "\u0444\u0430\u043c\u0438\u043b\u0438\u044f", "\u0430\u0434\u0440\u0435\u0441", "\u0433\u043e\u0440\u043e\u0434_1", "\u0442\u0435\u043b\u0435\u0444\u043e\u043d", "\u0414\u0430\u0442\u0430" };
+
+   private static final String[] CJK_NAMES = { "\u540d\u524d", "\u4f4f\u6240", "\u96fb\u8a71\u756a\u53f7", "\u3072\u3089\u304c\u306a", "\u30ab\u30bf\u30ab\u30ca", "\uc774\ub984" };
+
+   private static final String[] INVALID_NAMES = { "", "1st", "first name", "-dash", "a&b", "\u0661\u0662" };
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(XMLCheckerTests.class);
+   }
+
+   /**
+    * Constructs a new <code>XMLCheckerTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public XMLCheckerTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Tests the performance of checking names in Latin script.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceCheckName_Latin()
+   throws Exception {
+      doTestCheckName(LATIN_NAMES);
+   }
+
+   /**
+    * Tests the performance of checking names in Cyrillic script.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceCheckName_Cyrillic()
+   throws Exception {
+      doTestCheckName(CYRILLIC_NAMES);
+   }
+
+   /**
+    * Tests the performance of checking names in Chinese, Japanese and Korean
+    * scripts.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceCheckName_CJK()
+   throws Exception {
+      doTestCheckName(CJK_NAMES);
+   }
+
+   /**
+    * Tests the performance of checking names in Latin, Cyrillic and CJK
+    * scripts against the XML 1.0 Fifth Edition rules.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceCheckName_FifthEdition()
+   throws Exception {
+      for (int i = 0; i < ROUNDS; i++) {
+         for (int j = 0; j < LATIN_NAMES.length; j++) {
+            XMLChecker.checkName(LATIN_NAMES[j], NameRules.XML_1_0_FIFTH_EDITION);
+            XMLChecker.checkName(CYRILLIC_NAMES[j], NameRules.XML_1_0_FIFTH_EDITION);
+            XMLChecker.checkName(CJK_NAMES[j], NameRules.XML_1_0_FIFTH_EDITION);
+         }
+      }
+   }
+
+   /**
+    * Tests the performance of rejecting invalid names, without exceptions.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceIndexOfInvalidName()
+   throws Exception {
+      for (int i = 0; i < ROUNDS; i++) {
+         for (int j = 0; j < INVALID_NAMES.length; j++) {
+            if (XMLChecker.indexOfInvalidName(INVALID_NAMES[j]) < 0) {
+               fail("The name \"" + INVALID_NAMES[j] + "\" should be invalid.");
+            }
+         }
+      }
+   }
+
+   /**
+    * Checks the specified names repeatedly.
+    *
+    * @param names
+    *    the names to check, should not be <code>null</code>.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   private void doTestCheckName(String[] names)
+   throws Exception {
+      for (int i = 0; i < ROUNDS; i++) {
+         for (int j = 0; j < names.length; j++) {
+            XMLChecker.checkName(names[j]);
+         }
+      }
+   }
+}
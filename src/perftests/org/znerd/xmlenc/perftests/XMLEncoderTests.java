@@ -2,9 +2,14 @@
 package org.znerd.xmlenc.perftests;
 
 import java.io.FileWriter;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.Writer;
 
+import org.znerd.xmlenc.EscapePolicy;
+import org.znerd.xmlenc.UTF8XMLWriter;
 import org.znerd.xmlenc.XMLEncoder;
+import org.znerd.xmlenc.XMLOutputter;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -121,4 +126,225 @@ public class XMLEncoderTests extends TestCase {
          enc.text(out, "Here is a longer string & it contains some special chars like < and > and some more like \t (tab) and so on.", true);
       }
    }
+
+   /**
+    * Tests the performance of escaping text with few special characters,
+    * using the default escape policy.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceText_LowEscapeDensity()
+   throws Exception {
+      doTestText("UTF-8", EscapePolicy.DEFAULT, LOW_ESCAPE_TEXT);
+      doTestText("ASCII", EscapePolicy.DEFAULT, LOW_ESCAPE_TEXT);
+   }
+
+   /**
+    * Tests the performance of escaping text with many special characters,
+    * using the default escape policy.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceText_HighEscapeDensity()
+   throws Exception {
+      doTestText("UTF-8", EscapePolicy.DEFAULT, HIGH_ESCAPE_TEXT);
+      doTestText("ASCII", EscapePolicy.DEFAULT, HIGH_ESCAPE_TEXT);
+   }
+
+   /**
+    * Tests the performance of escaping text using a custom escape policy.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceText_CustomPolicy()
+   throws Exception {
+      EscapePolicy policy = EscapePolicy.escaping("/]");
+      doTestText("UTF-8", policy, LOW_ESCAPE_TEXT);
+      doTestText("UTF-8", policy, HIGH_ESCAPE_TEXT);
+   }
+
+   /**
+    * Tests the performance of escaping long text without any special
+    * characters. On Java 17 and up, run this test with and without
+    * <code>--add-modules jdk.incubator.vector</code> to compare the
+    * vectorized escape scanner with the scalar one.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceText_NoEscapes()
+   throws Exception {
+      StringBuffer buffer = new StringBuffer();
+      while (buffer.length() < 4096) {
+         buffer.append("The quick brown fox jumps over the lazy dog. 0123456789 ");
+      }
+      char[] ch = buffer.toString().toCharArray();
+
+      XMLEncoder enc = XMLEncoder.getEncoder("UTF-8");
+      Writer out = new NullWriter();
+      Writer utf8 = new UTF8XMLWriter(new NullOutputStream());
+      for (int i = 0; i < ROUNDS; i++) {
+         enc.text(out, ch, 0, ch.length, true);
+         enc.text(utf8, ch, 0, ch.length, true);
+      }
+   }
+
+   /**
+    * Tests the performance of writing attributes with numeric values, as
+    * found in metrics exports.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceNumericAttributes()
+   throws Exception {
+      XMLOutputter outputter = new XMLOutputter();
+      Writer out = new NullWriter();
+      for (int i = 0; i < ROUNDS; i++) {
+         outputter.reset(out, "UTF-8");
+         outputter.startTag("metric");
+         outputter.attribute("id", i);
+         outputter.attribute("timestamp", 1700000000000L + i);
+         outputter.attribute("count", i * 31);
+         outputter.attribute("min", -i);
+         outputter.attribute("max", (long) i * i);
+         outputter.attribute("valid", true);
+         outputter.endTag();
+      }
+   }
+
+   /**
+    * Tests the performance of writing <code>double</code> values, as found
+    * in telemetry data, both in attributes and as PCDATA.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceDoubleValues()
+   throws Exception {
+      XMLOutputter outputter = new XMLOutputter();
+      Writer out = new NullWriter();
+      for (int i = 0; i < ROUNDS; i++) {
+         outputter.reset(out, "UTF-8");
+         outputter.startTag("sample");
+         outputter.attribute("mean", i / 7.0);
+         outputter.attribute("stddev", Math.sqrt(i));
+         outputter.pcdata(i * 0.001);
+         outputter.endTag();
+      }
+   }
+
+   /**
+    * Tests the performance of writing many small elements with tiny
+    * payloads, which is dominated by the state checks of the outputter.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceTinyEvents()
+   throws Exception {
+      XMLOutputter outputter = new XMLOutputter();
+      Writer out = new NullWriter();
+      for (int i = 0; i < ROUNDS; i++) {
+         outputter.reset(out, "UTF-8");
+         outputter.startTag("r");
+         for (int j = 0; j < 10; j++) {
+            outputter.startTag("e");
+            outputter.attribute("a", "1");
+            outputter.pcdata("x");
+            outputter.endTag();
+         }
+         outputter.endTag();
+      }
+   }
+
+   /**
+    * Tests the performance of writing small documents with a new outputter
+    * for each document, so that nothing is reused between documents.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   public void testPerformanceOutputterPerDocument()
+   throws Exception {
+      Writer out = new NullWriter();
+      for (int i = 0; i < ROUNDS; i++) {
+         XMLOutputter outputter = new XMLOutputter(out, "UTF-8");
+         outputter.startTag("order");
+         outputter.attribute("id", i);
+         outputter.startTag("customer");
+         outputter.pcdata("John Doe");
+         outputter.endTag();
+         outputter.startTag("item");
+         outputter.attribute("sku", "A-1");
+         outputter.endTag();
+         outputter.startTag("item");
+         outputter.attribute("sku", "B-2");
+         outputter.endTag();
+         outputter.startTag("total");
+         outputter.pcdata("12.50");
+         outputter.endDocument();
+      }
+   }
+
+   private static final String LOW_ESCAPE_TEXT = "This is a fairly long piece of text that hardly contains any characters that need to be escaped, except for this one: & and this one: <.";
+
+   private static final String HIGH_ESCAPE_TEXT = "<a href=\"x/y\">&</a><b>]]></b>&&<<>>\u00e9\u00e8\u20ac";
+
+   /**
+    * Escapes the specified text repeatedly, discarding the output.
+    *
+    * @param encoding
+    *    the encoding to test with, should not be <code>null</code>.
+    *
+    * @param policy
+    *    the escape policy to use, should not be <code>null</code>.
+    *
+    * @param text
+    *    the text to escape, should not be <code>null</code>.
+    *
+    * @throws Exception
+    *    in case of an error.
+    */
+   private void doTestText(String encoding, EscapePolicy policy, String text)
+   throws Exception {
+
+      XMLEncoder enc = XMLEncoder.getEncoder(encoding);
+      Writer out = new NullWriter();
+      char[] ch = text.toCharArray();
+
+      for (int i = 0; i < ROUNDS; i++) {
+         enc.text(out, ch, 0, ch.length, true, policy);
+         enc.attribute(out, "value", text, '"', true, policy);
+      }
+   }
+
+   /**
+    * Writer that discards all output.
+    */
+   static class NullWriter extends Writer {
+      public void write(int c) {
+      }
+      public void write(char[] cbuf, int off, int len) {
+      }
+      public void write(String str, int off, int len) {
+      }
+      public void flush() {
+      }
+      public void close() {
+      }
+   }
+
+   /**
+    * Output stream that discards all output.
+    */
+   static class NullOutputStream extends OutputStream {
+      public void write(int b) {
+      }
+      public void write(byte[] b, int off, int len) {
+      }
+   }
 }
@@ -0,0 +1,140 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests on the <code>Decimals</code> class. Before Java 19, <code>Double.toString</code> does not
+ * always produce the shortest or closest representation, so random values are checked to convert
+ * back to the same value, with no more digits than <code>Double.toString</code> produces and at
+ * least as close to the exact value.
+ */
+public class DecimalsTest {
+
+    @Test
+    public void testDoubleChars() {
+        assertEquals("0.0", toString(0.0));
+        assertEquals("-0.0", toString(-0.0));
+        assertEquals("1.0", toString(1.0));
+        assertEquals("-1.5", toString(-1.5));
+        assertEquals("0.1", toString(0.1));
+        assertEquals("0.001", toString(0.001));
+        assertEquals("1.0E-4", toString(0.0001));
+        assertEquals("1234567.0", toString(1234567.0));
+        assertEquals("1.0E7", toString(1.0E7));
+        assertEquals("1.0E23", toString(1.0E23));
+        assertEquals("2.0E23", toString(2.0E23));
+        assertEquals("4.9E-324", toString(Double.MIN_VALUE));
+        assertEquals("1.7976931348623157E308", toString(Double.MAX_VALUE));
+        assertEquals("2.2250738585072014E-308", toString(Double.MIN_NORMAL));
+        assertEquals("-2.2250738585072014E-308", toString(-Double.MIN_NORMAL));
+        assertEquals("NaN", toString(Double.NaN));
+        assertEquals("Infinity", toString(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", toString(Double.NEGATIVE_INFINITY));
+
+        Random random = new Random(42L);
+        for (int i = 0; i < 20000; i++) {
+            doTestDoubleChars(Double.longBitsToDouble(random.nextLong()));
+            doTestDoubleChars(random.nextDouble() * 1000);
+            doTestDoubleChars(random.nextInt(1000000) / 100.0);
+        }
+        for (int e = -1074; e <= 1023; e++) {
+            doTestDoubleChars(Math.scalb(1.0, e));
+            doTestDoubleChars(Math.nextUp(Math.scalb(1.0, e)));
+            doTestDoubleChars(Math.nextDown(Math.scalb(1.0, e)));
+        }
+        for (int e = -323; e <= 308; e++) {
+            doTestDoubleChars(Double.parseDouble("1E" + e));
+        }
+    }
+
+    @Test
+    public void testFloatChars() {
+        assertEquals("0.0", toString(0.0F));
+        assertEquals("1.0", toString(1.0F));
+        assertEquals("0.1", toString(0.1F));
+        assertEquals("1.0E10", toString(1.0E10F));
+        assertEquals("1.4E-45", toString(Float.MIN_VALUE));
+        assertEquals("3.4028235E38", toString(Float.MAX_VALUE));
+        assertEquals("1.1754944E-38", toString(Float.MIN_NORMAL));
+        assertEquals("NaN", toString(Float.NaN));
+
+        Random random = new Random(42L);
+        for (int i = 0; i < 20000; i++) {
+            doTestFloatChars(Float.intBitsToFloat(random.nextInt()));
+            doTestFloatChars(random.nextFloat() * 1000);
+        }
+        for (int e = -149; e <= 127; e++) {
+            doTestFloatChars(Math.scalb(1.0F, e));
+            doTestFloatChars(Math.nextUp(Math.scalb(1.0F, e)));
+        }
+    }
+
+    @Test
+    public void testBigDecimalChars() {
+        BigDecimal[] values = { BigDecimal.ZERO, new BigDecimal("0.000"), new BigDecimal(BigInteger.ZERO, -3), new BigDecimal("-12.5"), new BigDecimal("1E+5"), new BigDecimal("-1.2E-7"), new BigDecimal("123456789.987654321"), new BigDecimal(Long.MIN_VALUE).movePointLeft(3), new BigDecimal(Long.MAX_VALUE) };
+        for (BigDecimal value : values) {
+            doTestBigDecimalChars(value);
+        }
+        Random random = new Random(42L);
+        for (int i = 0; i < 10000; i++) {
+            doTestBigDecimalChars(BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(60) - 30));
+        }
+
+        // Values that do not fit
+        char[] buf = new char[32];
+        assertEquals(-1, Decimals.getChars(new BigDecimal("1E+40"), buf, 0));
+        assertEquals(-1, Decimals.getChars(new BigDecimal(BigInteger.ONE.shiftLeft(64)), buf, 0));
+    }
+
+    private String toString(double value) {
+        char[] buf = new char[Decimals.MAX_DOUBLE_LENGTH + 1];
+        int end = Decimals.getChars(value, buf, 1);
+        return new String(buf, 1, end - 1);
+    }
+
+    private String toString(float value) {
+        char[] buf = new char[Decimals.MAX_DOUBLE_LENGTH + 1];
+        int end = Decimals.getChars(value, buf, 1);
+        return new String(buf, 1, end - 1);
+    }
+
+    private void doTestDoubleChars(double value) {
+        String s = toString(value);
+        String expected = Double.toString(value);
+        assertEquals(s, Double.doubleToLongBits(value), Double.doubleToLongBits(Double.parseDouble(s)));
+        assertTrue(s + " is longer than " + expected, s.length() <= expected.length());
+        if (!s.equals(expected) && s.length() == expected.length()) {
+            assertCloser(new BigDecimal(value), s, expected);
+        }
+    }
+
+    private void doTestFloatChars(float value) {
+        String s = toString(value);
+        String expected = Float.toString(value);
+        assertEquals(s, Float.floatToIntBits(value), Float.floatToIntBits(Float.parseFloat(s)));
+        assertTrue(s + " is longer than " + expected, s.length() <= expected.length());
+        if (!s.equals(expected) && s.length() == expected.length()) {
+            assertCloser(new BigDecimal(value), s, expected);
+        }
+    }
+
+    private void assertCloser(BigDecimal exact, String s, String expected) {
+        BigDecimal distance = exact.subtract(new BigDecimal(s)).abs();
+        BigDecimal expectedDistance = exact.subtract(new BigDecimal(expected)).abs();
+        assertTrue(s + " is further from " + exact + " than " + expected, distance.compareTo(expectedDistance) <= 0);
+    }
+
+    private void doTestBigDecimalChars(BigDecimal value) {
+        char[] buf = new char[64];
+        int end = Decimals.getChars(value, buf, 2);
+        assertEquals(value.toPlainString(), new String(buf, 2, end - 2));
+    }
+}
@@ -0,0 +1,53 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests on the <code>Digits</code> class. The output is compared with the output of the
+ * <code>toString</code> methods of <code>Integer</code> and <code>Long</code>.
+ */
+public class DigitsTest {
+
+    @Test
+    public void testIntChars() {
+        int[] values = { 0, 1, -1, 9, 10, 99, 100, -100, 101, 999, 1000, 65535, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1 };
+        for (int value : values) {
+            doTestIntChars(value);
+        }
+        Random random = new Random(42L);
+        for (int i = 0; i < 10000; i++) {
+            doTestIntChars(random.nextInt());
+            doTestIntChars(random.nextInt(1000) - 500);
+        }
+    }
+
+    @Test
+    public void testLongChars() {
+        long[] values = { 0L, -1L, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, Integer.MIN_VALUE, Integer.MIN_VALUE - 1L, 9999999999L, 10000000000L, -10000000000L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1L };
+        for (long value : values) {
+            doTestLongChars(value);
+        }
+        Random random = new Random(42L);
+        for (int i = 0; i < 10000; i++) {
+            doTestLongChars(random.nextLong());
+            doTestLongChars(random.nextLong() >> random.nextInt(64));
+        }
+    }
+
+    private void doTestIntChars(int value) {
+        char[] buf = new char[Digits.MAX_LONG_LENGTH + 2];
+        int start = Digits.getChars(value, buf, buf.length - 1);
+        assertEquals(Integer.toString(value), new String(buf, start, buf.length - 1 - start));
+    }
+
+    private void doTestLongChars(long value) {
+        char[] buf = new char[Digits.MAX_LONG_LENGTH + 2];
+        int start = Digits.getChars(value, buf, buf.length - 1);
+        assertEquals(Long.toString(value), new String(buf, start, buf.length - 1 - start));
+    }
+}
@@ -0,0 +1,68 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests on the <code>EscapeScanner</code> class. The array lengths are chosen so that both the
+ * vector loop and the tail loop of the Java 17 implementation are covered. The Maven build runs
+ * the tests a second time with the Java 17 classes and the Vector API, with the system property
+ * <code>org.znerd.xmlenc.vectorized</code> set to <code>true</code>.
+ */
+public class EscapeScannerTest {
+
+    @Test
+    public void testVectorized() {
+        if (Boolean.getBoolean("org.znerd.xmlenc.vectorized")) {
+            assertTrue(EscapeScanner.isVectorized());
+        }
+    }
+
+    @Test
+    public void testIndexOfSpecial() {
+        char[] specials = { '\u0000', '\t', '\n', '\u001f', '"', '&', '\'', '<', '>', '\u0080', '\u00e9', '\ud83d', '\uffff' };
+        for (int length = 0; length <= 70; length++) {
+            char[] ch = new char[length];
+            Arrays.fill(ch, 'a');
+            assertEquals(length, EscapeScanner.indexOfSpecial(ch, 0, length));
+
+            for (int i = 0; i < length; i++) {
+                for (char special : specials) {
+                    ch[i] = special;
+                    assertEquals(i, EscapeScanner.indexOfSpecial(ch, 0, length));
+                    assertEquals(i == 0 ? length : i, EscapeScanner.indexOfSpecial(ch, 1, length));
+                    assertEquals(i, EscapeScanner.indexOfSpecial(ch, 0, i));
+                }
+                ch[i] = '\u007f';
+            }
+            assertEquals(length, EscapeScanner.indexOfSpecial(ch, 0, length));
+        }
+    }
+
+    @Test
+    public void testIndexOfNonWhitespace() {
+        char[] others = { '\u0000', '\u000b', '!', 'a', '\u00a0', '\u3000' };
+        for (int length = 0; length <= 70; length++) {
+            char[] ch = new char[length];
+            for (int i = 0; i < length; i++) {
+                ch[i] = " \t\r\n".charAt(i % 4);
+            }
+            assertEquals(length, EscapeScanner.indexOfNonWhitespace(ch, 0, length));
+
+            for (int i = 0; i < length; i++) {
+                char c = ch[i];
+                for (char other : others) {
+                    ch[i] = other;
+                    assertEquals(i, EscapeScanner.indexOfNonWhitespace(ch, 0, length));
+                    assertEquals(i, EscapeScanner.indexOfNonWhitespace(ch, 0, i));
+                }
+                ch[i] = c;
+            }
+        }
+    }
+}
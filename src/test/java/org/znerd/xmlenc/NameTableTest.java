@@ -0,0 +1,103 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests on the <code>NameTable</code> class.
+ */
+public class NameTableTest {
+
+    @Test
+    public void testIntern() {
+        NameTable table = new NameTable();
+        assertNull(table.intern("a"));
+        XMLName a = table.intern("a");
+        assertEquals("a", a.getName());
+        assertSame(a, table.intern("a"));
+        assertSame(a, table.intern(new String("a")));
+        assertNull(table.intern("b"));
+        assertNotSame(a, table.intern("b"));
+        assertEquals(2, table.size());
+
+        // The entry holds the instance that was passed first
+        String c = new String("c");
+        table.intern(c);
+        assertSame(c, table.intern(new String("c")).getName());
+
+        // Names with the same hash code are different entries
+        table.intern("Aa");
+        table.intern("BB");
+        XMLName aa = table.intern("Aa");
+        XMLName bb = table.intern("BB");
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotSame(aa, bb);
+        assertSame(bb, table.intern(new String("BB")));
+    }
+
+    @Test
+    public void testValidated() {
+        NameTable table = new NameTable();
+        assertFalse(table.isValidated("a"));
+        table.setValidated("a");
+        assertTrue(table.isValidated("a"));
+        assertTrue(table.isValidated(new String("a")));
+        assertEquals(1, table.size());
+
+        // The flag is independent of the entry
+        assertNull(table.intern("b"));
+        assertFalse(table.isValidated("b"));
+        table.setValidated("b");
+        assertTrue(table.isValidated("b"));
+        XMLName a = table.intern("a");
+        assertNotNull(a);
+        assertEquals(2, table.size());
+
+        // Names with the same hash code are different entries
+        table.setValidated("Aa");
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertFalse(table.isValidated("BB"));
+
+        // Clearing the flags keeps the entries, also when the table grows
+        table.clearValidated();
+        assertFalse(table.isValidated("a"));
+        assertFalse(table.isValidated("Aa"));
+        for (int i = 0; i < 100; i++) {
+            table.setValidated("e" + i);
+        }
+        assertSame(a, table.intern("a"));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(table.isValidated("e" + i));
+        }
+    }
+
+    @Test
+    public void testFull() {
+        NameTable table = new NameTable();
+        XMLName[] names = new XMLName[NameTable.MAX_SIZE];
+        for (int i = 0; i < NameTable.MAX_SIZE; i++) {
+            assertNull(table.intern("e" + i));
+        }
+        for (int i = 0; i < NameTable.MAX_SIZE; i++) {
+            names[i] = table.intern("e" + i);
+            assertNotNull(names[i]);
+        }
+        assertEquals(NameTable.MAX_SIZE, table.size());
+        assertNull(table.intern("x"));
+        assertNull(table.intern("x"));
+        table.setValidated("x");
+        assertFalse(table.isValidated("x"));
+        assertEquals(NameTable.MAX_SIZE, table.size());
+        for (int i = 0; i < NameTable.MAX_SIZE; i++) {
+            assertSame(names[i], table.intern("e" + i));
+        }
+    }
+}
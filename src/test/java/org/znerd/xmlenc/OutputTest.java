@@ -3,11 +3,30 @@ package org.znerd.xmlenc;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -173,6 +192,1150 @@ public class OutputTest {
         doTestAttribute("US-ASCII");
     }
 
+    /**
+     * Performs all tests that check that characters that cannot be encoded are
+     * written as numeric character references, with a single reference for
+     * each surrogate pair.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testCharacterReferenceOutput() throws IOException {
+        String text = "a\u00e9\u20ac\ufffd\ud83d\ude00\udbff\udfffz";
+        String expected = "a&#233;&#8364;&#65533;&#128512;&#1114111;z";
+
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "US-ASCII");
+        out.startTag("a");
+        out.attribute("b", text);
+        out.pcdata(text);
+        assertEquals("<a b=\"" + expected + "\">" + expected, sw.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out = new XMLOutputter(new UTF8XMLWriter(bytes), "US-ASCII");
+        out.startTag("a");
+        out.attribute("b", text);
+        out.pcdata(text);
+        out.getWriter().flush();
+        assertEquals("<a b=\"" + expected + "\">" + expected, bytes.toString("US-ASCII"));
+    }
+
+    /**
+     * Performs all tests that check that character sequences other than
+     * strings are written correctly, including a surrogate pair that straddles
+     * the boundary between two internal chunks.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testCharSequenceOutput() throws IOException {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1023; i++) {
+            text.append(i % 10 == 0 ? '&' : 'x');
+            expected.append(i % 10 == 0 ? "&amp;" : "x");
+        }
+        text.append("\ud83d\ude00<\u00e9");
+        expected.append("&#128512;&lt;&#233;");
+
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "US-ASCII");
+        out.startTag("a");
+        out.pcdata(text);
+        out.pcdata(text.toString());
+        assertEquals("<a>" + expected + expected, sw.toString());
+    }
+
+    @Test
+    public void testCharSequenceAttributeOutput() throws IOException {
+        StringBuilder value = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            value.append(i % 100 == 0 ? '"' : 'x');
+            expected.append(i % 100 == 0 ? "&quot;" : "x");
+        }
+
+        // Runs are copied to a buffer, they are not appended as sub-sequences
+        StringWriter sw = new StringWriter();
+        Writer writer = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                sw.write(cbuf, off, len);
+            }
+
+            @Override
+            public Writer append(CharSequence csq, int start, int end) {
+                throw new AssertionError("append(CharSequence,int,int)");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        XMLOutputter out = new XMLOutputter(writer, "UTF-8");
+        out.startTag("a");
+        out.attribute("b", value);
+        out.attribute(new XMLName("c"), CharBuffer.wrap(value));
+        XMLEncoder.getEncoder("UTF-8").attribute(writer, "d", value, '"', true, EscapePolicy.DEFAULT);
+        XMLEncoder.getEncoder("UTF-8").text(writer, value, true, EscapePolicy.DEFAULT);
+        assertEquals("<a b=\"" + expected + "\" c=\"" + expected + "\" d=\"" + expected + "\"" + value, sw.toString());
+    }
+
+    /**
+     * Performs all tests that check that attributes with primitive values are
+     * properly output.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testPrimitiveAttributeOutput() throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "UTF-8");
+        out.startTag("a");
+        out.attribute("b", true);
+        out.attribute("c", (byte) -128);
+        out.attribute("d", (short) 32767);
+        out.attribute("e", Integer.MIN_VALUE);
+        out.attribute("f", Long.MAX_VALUE);
+        out.attribute("g", 0L);
+        out.attribute("h", 1.5);
+        out.attribute("i", '"');
+        out.attribute("j", 1.0E23);
+        out.attribute("k", 0.1F);
+        out.attribute("l", new BigDecimal("-1.5E-3"));
+        out.pcdata(-42L);
+        out.pcdata(' ');
+        out.pcdata(2.5E-5);
+        out.pcdata(' ');
+        out.pcdata(Float.NaN);
+        out.pcdata(' ');
+        out.pcdata(new BigDecimal("1E+3"));
+        out.endTag();
+        assertEquals("<a b=\"true\" c=\"-128\" d=\"32767\" e=\"-2147483648\" f=\"9223372036854775807\" g=\"0\" h=\"1.5\" i=\"&quot;\" j=\"1.0E23\" k=\"0.1\" l=\"-0.0015\">-42 2.5E-5 NaN 1000</a>", sw.toString());
+
+        out.reset(new StringWriter(), "UTF-8");
+        try {
+            out.attribute("a", 1);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+        try {
+            out.attribute("a", BigDecimal.ONE);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+        out.startTag("a");
+        try {
+            out.attribute("b", (BigDecimal) null);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+    }
+
+    /**
+     * Performs all tests that check the output of dates and times.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testDateTimeOutput() throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "UTF-8");
+        out.startTag("a");
+        out.attribute("b", Instant.parse("2004-02-29T13:45:00Z"));
+        out.attribute("c", Instant.parse("1969-12-31T23:59:59.000001Z"));
+        out.attributeEpochMillis("d", -1L);
+        out.attribute("e", OffsetDateTime.parse("2004-02-29T13:45:00.12+05:30"));
+        out.attribute("f", OffsetDateTime.parse("0001-01-01T00:00:00.000000001-00:00:30"));
+        out.attribute("g", LocalDate.of(2004, 2, 29));
+        out.attribute("h", LocalDate.of(10000, 1, 1));
+        out.pcdata(Instant.ofEpochSecond(253402300800L));
+        out.pcdata(' ');
+        out.pcdataEpochMillis(1078062300250L);
+        out.pcdata(' ');
+        out.pcdata(OffsetDateTime.parse("2004-02-29T13:45:00Z"));
+        out.pcdata(' ');
+        out.pcdata(LocalDate.of(0, 1, 1));
+        out.endTag();
+        assertEquals("<a b=\"2004-02-29T13:45:00Z\" c=\"1969-12-31T23:59:59.000001Z\" d=\"1969-12-31T23:59:59.999Z\""
+                + " e=\"2004-02-29T13:45:00.12+05:30\" f=\"0001-01-01T00:00:00.000000001-00:00:30\" g=\"2004-02-29\" h=\"+10000-01-01\">"
+                + "+10000-01-01T00:00:00Z 2004-02-29T13:45:00.250Z 2004-02-29T13:45:00Z 0000-01-01</a>", sw.toString());
+
+        // The name and the value are checked
+        sw = new StringWriter();
+        out = new XMLOutputter(sw, "UTF-8");
+        out.setNameValidation(NameRules.XML_1_0_FOURTH_EDITION);
+        out.startTag("a");
+        try {
+            out.attribute("1b", LocalDate.of(2004, 2, 29));
+            fail("Expected InvalidXMLException.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        try {
+            out.attribute("b", (Instant) null);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+        out.attribute("b", LocalDate.of(2004, 2, 29));
+        assertEquals("<a b=\"2004-02-29\"", sw.toString());
+
+        // Compare with the JDK formatters over a wide range
+        Random random = new Random(12345L);
+        char[] buffer = new char[DateTimes.MAX_LENGTH];
+        for (int i = 0; i < 10000; i++) {
+            long seconds = random.nextLong() % 253402300800L;
+            int nano = random.nextInt(1000000000);
+            switch (random.nextInt(4)) {
+                case 0: nano = 0; break;
+                case 1: nano -= nano % 1000000; break;
+                case 2: nano -= nano % 1000; break;
+            }
+            Instant instant = Instant.ofEpochSecond(Math.abs(seconds) - 62167219200L, nano);
+            int end = DateTimes.getChars(instant.getEpochSecond(), instant.getNano(), buffer, 0);
+            assertEquals(instant.toString(), new String(buffer, 0, end));
+
+            OffsetDateTime dateTime = instant.atOffset(ZoneOffset.ofTotalSeconds(random.nextInt(129601) - 64800));
+            if (dateTime.getYear() >= 0 && dateTime.getYear() <= 9999) {
+                end = DateTimes.getChars(dateTime, buffer, 0);
+                assertEquals(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(dateTime), new String(buffer, 0, end));
+                end = DateTimes.getChars(dateTime.toLocalDate(), buffer, 0);
+                assertEquals(dateTime.toLocalDate().toString(), new String(buffer, 0, end));
+            }
+        }
+    }
+
+    /**
+     * Performs all tests that check the output of binary data as Base64 and
+     * hexadecimal text.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testBinaryOutput() throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "UTF-8");
+        out.startTag("a");
+        out.pcdataBase64(new byte[] { 'a', 'b', 'c', 'd' });
+        out.pcdata(' ');
+        out.pcdataHex(ByteBuffer.wrap(new byte[] { 0, 1, (byte) 0xAB, (byte) 0xFF }, 1, 2));
+        out.pcdata(' ');
+        out.pcdataBase64(new byte[0]);
+        out.endTag();
+        assertEquals("<a>YWJjZA== 01AB </a>", sw.toString());
+
+        Random random = new Random(54321L);
+        for (int i = 0; i < 200; i++) {
+            byte[] bytes = new byte[random.nextInt(5000)];
+            random.nextBytes(bytes);
+            int lineLength = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100);
+            String base64 = Base64.getEncoder().encodeToString(bytes);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : bytes) {
+                hex.append(String.format("%02X", b & 0xFF));
+            }
+            doTestBinary(bytes, lineLength, true, base64);
+            doTestBinary(bytes, lineLength, false, hex.toString());
+        }
+
+        out.reset(new StringWriter(), "UTF-8");
+        try {
+            out.pcdataBase64(new byte[1]);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+        try {
+            out.setBinaryLineLength(-1);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+    }
+
+    private void doTestBinary(byte[] bytes, int lineLength, boolean base64, String text) throws IOException {
+
+        // Insert the expected line breaks
+        String expected = text;
+        if (lineLength > 0) {
+            StringBuilder buffer = new StringBuilder();
+            for (int i = 0; i < text.length(); i += lineLength) {
+                if (i > 0) {
+                    buffer.append('\n');
+                }
+                buffer.append(text, i, Math.min(i + lineLength, text.length()));
+            }
+            expected = buffer.toString();
+        }
+
+        for (int source = 0; source < 3; source++) {
+            StringWriter sw = new StringWriter();
+            XMLOutputter out = new XMLOutputter(sw, "UTF-8");
+            out.setBinaryLineLength(lineLength);
+            out.startTag("a");
+            if (source == 0) {
+                if (base64) {
+                    out.pcdataBase64(bytes);
+                } else {
+                    out.pcdataHex(bytes);
+                }
+            } else if (source == 1) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes).flip();
+                if (base64) {
+                    out.pcdataBase64(buffer);
+                } else {
+                    out.pcdataHex(buffer);
+                }
+                assertEquals(0, buffer.remaining());
+            } else {
+                if (base64) {
+                    out.pcdataBase64(new ByteArrayInputStream(bytes));
+                } else {
+                    out.pcdataHex(new ByteArrayInputStream(bytes));
+                }
+            }
+            out.endTag();
+            assertEquals("<a>" + expected + "</a>", sw.toString());
+        }
+    }
+
+    /**
+     * Performs all tests that check the output of PCDATA read from a
+     * <code>Reader</code> or a <code>CharBuffer</code>.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testStreamingPcdataOutput() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1023; i++) {
+            text.append('a');
+        }
+        text.append("\ud83d\ude00 & <\ud83d\ude00>");
+        for (int i = 0; i < 3000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        String expected = expectedStreamingPcdata(text.toString());
+
+        // Read in chunks that end within a surrogate pair
+        doTestStreamingPcdata(new StringReader(text.toString()), expected);
+        doTestStreamingPcdata(new Reader() {
+            private int _index;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                if (_index == text.length()) {
+                    return -1;
+                }
+                int count = Math.min(len, Math.min(2, text.length() - _index));
+                text.getChars(_index, _index + count, cbuf, off);
+                _index += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, expected);
+
+        CharBuffer heap = CharBuffer.wrap(text.toString().toCharArray(), 5, text.length() - 5).slice();
+        CharBuffer direct = ByteBuffer.allocateDirect(text.length() * 2).asCharBuffer();
+        direct.put(text.toString()).flip();
+        direct.position(5);
+        CharBuffer readOnly = CharBuffer.wrap(text);
+        readOnly.position(5);
+        expected = expectedStreamingPcdata(text.substring(5));
+        doTestStreamingPcdata(heap, expected);
+        doTestStreamingPcdata(direct, expected);
+        doTestStreamingPcdata(readOnly, expected);
+        assertEquals(5, direct.position());
+        assertEquals(5, readOnly.position());
+    }
+
+    private String expectedStreamingPcdata(String text) {
+        return "<a>" + text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\ud83d\ude00", "&#128512;") + "</a>";
+    }
+
+    private void doTestStreamingPcdata(Object source, String expected) throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "US-ASCII");
+        out.startTag("a");
+        if (source instanceof Reader) {
+            out.pcdata((Reader) source);
+        } else {
+            out.pcdata((CharBuffer) source);
+        }
+        out.endTag();
+        assertEquals(expected, sw.toString());
+    }
+
+    /**
+     * Performs all tests that check the output of CDATA sections.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testCDATAOutput() throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "US-ASCII");
+        out.startTag("a");
+        out.cdata("<b>]]></b>");
+        out.cdata("");
+        Writer writer = out.cdataWriter();
+        assertEquals(XMLEventListenerStates.ERROR_STATE, out.getState());
+        writer.write("x]");
+        writer.write(']');
+        writer.append(">caf\u00e9 \ud83d");
+        writer.write("\ude00]]");
+        writer.close();
+        assertEquals(XMLEventListenerStates.WITHIN_ELEMENT, out.getState());
+        out.endTag();
+        assertEquals("<a><![CDATA[<b>]]]]><![CDATA[></b>]]><![CDATA[]]><![CDATA[x]]]]><![CDATA[>caf]]>&#233;<![CDATA[ ]]>&#128512;<![CDATA[]]]]></a>", sw.toString());
+
+        sw = new StringWriter();
+        out = new XMLOutputter(sw, "UTF-8");
+        out.startTag("a");
+        out.cdata("caf\u00e9 \ud83d\ude00");
+        try {
+            out.cdata("\u0001");
+            fail("Expected InvalidXMLException.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        assertEquals("<a><![CDATA[caf\u00e9 \ud83d\ude00]]><![CDATA[", sw.toString());
+    }
+
+    @Test
+    public void testCDATAInvalidCharacters() throws IOException {
+        String[] invalid = { "p\u0001q", "a\ufffeb", "a\udc00", "a\ud83d", "\ud83db" };
+        for (String encoding : new String[] { "UTF-8", "US-ASCII" }) {
+            for (String text : invalid) {
+                StringWriter sw = new StringWriter();
+                XMLOutputter out = new XMLOutputter(sw, encoding);
+                out.startTag("a");
+                try {
+                    out.cdata(text);
+                    fail("The text \"" + text + "\" should be considered invalid.");
+                } catch (InvalidXMLException exception) {
+                    // as expected
+                }
+                assertEquals(-1, sw.toString().indexOf("&#55357;"));
+            }
+        }
+
+        doTestCDATAInvalidCharacters("UTF-8", InvalidCharacterPolicy.STRIP, "<![CDATA[pq]]><![CDATA[ab]]><![CDATA[]]]]><![CDATA[>]]><![CDATA[xy]]>");
+        doTestCDATAInvalidCharacters("UTF-8", InvalidCharacterPolicy.REPLACE, "<![CDATA[p\ufffdq]]><![CDATA[a\ufffdb\ufffd]]><![CDATA[]]\ufffd>]]><![CDATA[x\ufffdy\ufffd]]>");
+        doTestCDATAInvalidCharacters("US-ASCII", InvalidCharacterPolicy.REPLACE, "<![CDATA[p]]>&#65533;<![CDATA[q]]><![CDATA[a]]>&#65533;<![CDATA[b]]>&#65533;<![CDATA[]]><![CDATA[]]]]>&#65533;<![CDATA[>]]><![CDATA[x]]>&#65533;<![CDATA[y]]>&#65533;<![CDATA[]]>");
+        doTestCDATAInvalidCharacters("US-ASCII", InvalidCharacterPolicy.REPLACE_WITH_QUESTION_MARK, "<![CDATA[p?q]]><![CDATA[a?b?]]><![CDATA[]]?>]]><![CDATA[x?y?]]>");
+    }
+
+    private void doTestCDATAInvalidCharacters(String encoding, InvalidCharacterPolicy policy, String expected) throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, encoding);
+        out.setInvalidCharacterPolicy(policy);
+        out.startTag("a");
+        out.cdata("p\u0001q");
+        out.cdata("a\ufffeb\udc00");
+
+        // A stripped character does not separate "]]" from ">"
+        out.cdata("]]\u0001>");
+
+        // A high surrogate that is not completed by the next call or before the close is unpaired
+        Writer writer = out.cdataWriter();
+        writer.write("x\ud83d");
+        writer.write("y\ud83d");
+        writer.close();
+        assertEquals("<a>" + expected, sw.toString());
+    }
+
+    /**
+     * Performs all tests that check output through the staging buffer.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testStagingBufferOutput() throws IOException {
+        StringWriter sw = new StringWriter();
+        String expected = writeRecords(new XMLOutputter(sw, "UTF-8"), sw);
+
+        sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "UTF-8");
+        out.setBufferSize(256);
+        assertEquals(256, out.getBufferSize());
+        assertSame(sw, out.getWriter());
+        assertEquals(expected, writeRecords(out, sw));
+        long flushCount = out.getBufferFlushCount();
+        assertEquals(true, flushCount > 1 && flushCount < 100);
+
+        // Nothing is passed on before the buffer is full or the flush depth is reached
+        sw = new StringWriter();
+        out.reset(sw, "UTF-8");
+        out.setBufferFlushDepth(1);
+        out.startTag("records");
+        out.startTag("record");
+        out.pcdata("x");
+        assertEquals("", sw.toString());
+        out.endTag();
+        assertEquals("<records><record>x</record>", sw.toString());
+        out.setBufferSize(0);
+        out.endTag();
+        assertEquals("<records><record>x</record></records>", sw.toString());
+
+        // Output after the root element is passed on by close() and by reset()
+        sw = new StringWriter();
+        out = new XMLOutputter(sw, "UTF-8");
+        out.setBufferSize(256);
+        out.declaration();
+        out.startTag("r");
+        out.endTag();
+        out.comment("trailer");
+        out.close();
+        out.getWriter().flush();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><r/><!--trailer-->", sw.toString());
+        out.comment("more");
+        StringWriter next = new StringWriter();
+        out.reset(next, "UTF-8");
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><r/><!--trailer--><!--more-->", sw.toString());
+        out.startTag("s");
+        out.reset();
+        assertEquals("<s", next.toString());
+
+        // An I/O error of the old writer is ignored by reset
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("write");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        out.reset(failing, "UTF-8");
+        out.startTag("a");
+        out.pcdata("x");
+        next = new StringWriter();
+        out.reset(next, "UTF-8");
+        out.startTag("b");
+        out.endDocument();
+        assertEquals("<b/>", next.toString());
+        out.reset(failing, "UTF-8");
+        out.startTag("a");
+        out.reset();
+        out.setBufferSize(0);
+
+        // A UTF8XMLWriter is not staged
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.reset(new UTF8XMLWriter(bytes), "UTF-8");
+        out.setBufferSize(64);
+        out.startTag("a");
+        out.endDocument();
+        assertEquals("<a/>", bytes.toString("UTF-8"));
+        assertEquals(0L, out.getBufferFlushCount());
+
+        try {
+            out.setBufferSize(-1);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+    }
+
+    private String writeRecords(XMLOutputter out, StringWriter sw) throws IOException {
+        out.declaration();
+        out.startTag("records");
+        for (int i = 0; i < 100; i++) {
+            out.startTag("record");
+            out.attribute("id", i);
+            out.pcdata("R&D ");
+            out.cdata("]]>");
+            out.comment(" c ");
+            out.endTag();
+        }
+        out.endDocument();
+        return sw.toString();
+    }
+
+    /**
+     * Performs all tests that check that elements are ended by name.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testEndTagByName() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLOutputter out = new XMLOutputter(new UTF8XMLWriter(bytes), "UTF-8");
+        for (int i = 0; i < 2; i++) {
+            out.startTag("a");
+            out.startTag(new String("b"));
+            out.startTag("c");
+            out.pcdata("x");
+            out.startTag("\u00e9");
+            out.pcdata("y");
+            out.endTag(new String("b"));
+        }
+        out.endTag("a");
+        out.startTag("d");
+        try {
+            out.endTag("z");
+            fail("Expected NoSuchElementException.");
+        } catch (NoSuchElementException exception) {
+            // as expected
+        }
+        out.getWriter().flush();
+        assertEquals("<a><b><c>x<\u00e9>y</\u00e9></c></b><a><b><c>x<\u00e9>y</\u00e9></c></b></a><d/></a>", bytes.toString("UTF-8"));
+    }
+
+    /**
+     * Performs all tests that check the output of the raw outputter, with and
+     * without the validating decorator.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testRawOutput() throws IOException {
+        String expected = "<?xml version=\"1.0\" encoding=\"US-ASCII\"?><!DOCTYPE a SYSTEM \"a.dtd\"><a b=\"&lt;&amp;\"><!--c-->x &amp; &#233;<![CDATA[]]]]><![CDATA[>]]><e/> <?p q?></a>";
+
+        StringWriter sw = new StringWriter();
+        doTestRaw(new RawXMLOutputter(sw, "US-ASCII"));
+        assertEquals(expected, sw.toString());
+
+        sw = new StringWriter();
+        ValidatingXMLEventListener validating = new ValidatingXMLEventListener(new RawXMLOutputter(sw, "US-ASCII"));
+        assertEquals(XMLEventListenerStates.BEFORE_XML_DECLARATION, validating.getState());
+        doTestRaw(validating);
+        assertEquals(XMLEventListenerStates.DOCUMENT_ENDED, validating.getState());
+        assertEquals(expected, sw.toString());
+
+        // The decorator rejects what the raw outputter would write
+        sw = new StringWriter();
+        RawXMLOutputter raw = new RawXMLOutputter(sw, "UTF-8");
+        validating = new ValidatingXMLEventListener(raw);
+        validating.startTag("a");
+        validating.pcdata("x");
+        try {
+            validating.attribute("b", "c");
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+        try {
+            validating.dtd("a", "-//A//EN", null);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+        try {
+            validating.pcdata((String) null);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+        try {
+            validating.pcdata("\u0001");
+            fail("Expected InvalidXMLException.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        assertEquals(XMLEventListenerStates.ERROR_STATE, validating.getState());
+        raw.attribute("b", "c");
+        assertEquals("<a>x b=\"c\"", sw.toString());
+
+        // The raw outputter derives its state from the element stack
+        raw = new RawXMLOutputter();
+        assertEquals(XMLEventListenerStates.UNINITIALIZED, raw.getState());
+        raw.reset(new StringWriter(), "UTF-8");
+        assertEquals(XMLEventListenerStates.BEFORE_XML_DECLARATION, raw.getState());
+        raw.startTag("a");
+        assertEquals(XMLEventListenerStates.START_TAG_OPEN, raw.getState());
+        raw.startTag("b");
+        raw.endTag();
+        assertEquals(XMLEventListenerStates.WITHIN_ELEMENT, raw.getState());
+        raw.endTag();
+        assertEquals(XMLEventListenerStates.AFTER_ROOT_ELEMENT, raw.getState());
+        raw.setState(XMLEventListenerStates.BEFORE_XML_DECLARATION, null);
+        assertEquals(XMLEventListenerStates.BEFORE_XML_DECLARATION, raw.getState());
+        raw.reset();
+        assertEquals(XMLEventListenerStates.UNINITIALIZED, raw.getState());
+
+        // The decorator checks the productions of the document type declaration
+        validating = new ValidatingXMLEventListener(new RawXMLOutputter(new StringWriter(), "UTF-8"));
+        try {
+            validating.dtd("1a", null, null);
+            fail("Expected InvalidXMLException.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        assertEquals(XMLEventListenerStates.BEFORE_XML_DECLARATION, validating.getState());
+
+        // The state of a stateful listener is taken over
+        reset();
+        _outputter.startTag("a");
+        validating = new ValidatingXMLEventListener(_outputter);
+        assertEquals(XMLEventListenerStates.START_TAG_OPEN, validating.getState());
+        validating.endDocument();
+        assertEquals("<a/>", _stringWriter.toString());
+
+        // So is the number of open elements
+        reset();
+        _outputter.startTag("a");
+        _outputter.startTag("b");
+        doTestTakeOver(_outputter);
+        assertEquals("<a><b/></a>", _stringWriter.toString());
+        sw = new StringWriter();
+        raw = new RawXMLOutputter(sw, "UTF-8");
+        raw.startTag("a");
+        raw.startTag("b");
+        doTestTakeOver(new ValidatingXMLEventListener(raw));
+        assertEquals("<a><b/></a>", sw.toString());
+
+        // Other listeners can only be taken over outside the root element
+        Class<?>[] interfaces = { XMLEventListener.class };
+        XMLEventListener other = (XMLEventListener) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces,
+                (proxy, method, args) -> XMLEventListenerStates.WITHIN_ELEMENT);
+        try {
+            new ValidatingXMLEventListener(other);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+    }
+
+    private void doTestTakeOver(XMLEventListener listener) throws IOException {
+        ValidatingXMLEventListener validating = new ValidatingXMLEventListener(listener);
+        assertEquals(XMLEventListenerStates.START_TAG_OPEN, validating.getState());
+        validating.endTag();
+        assertEquals(XMLEventListenerStates.WITHIN_ELEMENT, validating.getState());
+        validating.endTag();
+        assertEquals(XMLEventListenerStates.AFTER_ROOT_ELEMENT, validating.getState());
+        try {
+            validating.endTag();
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+        try {
+            validating.pcdata("x");
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException exception) {
+            // as expected
+        }
+    }
+
+    private void doTestRaw(XMLEventListener out) throws IOException {
+        out.declaration();
+        out.dtd("a", null, "a.dtd");
+        out.startTag("a");
+        out.attribute("b", "<&");
+        out.comment("c");
+        out.pcdata("x & \u00e9");
+        out.cdata("]]>");
+        out.startTag("e");
+        out.endTag();
+        out.whitespace(" ");
+        out.pi("p", "q");
+        out.endDocument();
+    }
+
+    /**
+     * Performs all tests that check that only the characters that an encoding
+     * cannot represent are written as character references.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testEncodingOutput() throws IOException {
+        String text = "caf\u00e9 \u20ac \u65e5 \ud83d\ude00";
+        doTestEncoding("ISO-8859-1", text, "caf\u00e9 &#8364; &#26085; &#128512;");
+        doTestEncoding("windows-1252", text, "caf\u00e9 \u20ac &#26085; &#128512;");
+        doTestEncoding("Shift_JIS", text, "caf&#233; &#8364; \u65e5 &#128512;");
+        doTestEncoding("US-ASCII", text, "caf&#233; &#8364; &#26085; &#128512;");
+        doTestEncoding("GB18030", text, text);
+
+        assertSame(XMLEncoder.getEncoder("ISO-8859-1"), XMLEncoder.getEncoder("ISO-8859-1"));
+        try {
+            XMLEncoder.getEncoder("x-no-such-encoding");
+            fail("Expected UnsupportedEncodingException.");
+        } catch (UnsupportedEncodingException exception) {
+            // as expected
+        }
+    }
+
+    private void doTestEncoding(String encoding, String text, String expected) throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, encoding);
+        out.startTag("a");
+        out.attribute("b", text);
+        out.pcdata(text.toCharArray(), 0, text.length());
+        out.endTag();
+        assertEquals("<a b=\"" + expected + "\">" + expected + "</a>", sw.toString());
+    }
+
+    /**
+     * Performs all tests that check that attribute values taken from a
+     * character array or a character sequence are output the same as
+     * <code>String</code> values, both to a character stream and to a
+     * <code>UTF8XMLWriter</code>.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testCharArrayAttributeOutput() throws IOException {
+        String expected = "<a x=\"&lt;caf\u00e9&gt;\" y=\"1&quot;2\" z=\"\" x=\"&amp;\"/>";
+
+        StringWriter sw = new StringWriter();
+        doTestCharArrayAttributeOutput(new XMLOutputter(sw, "UTF-8"));
+        assertEquals(expected, sw.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLOutputter out = new XMLOutputter(new UTF8XMLWriter(bytes), "UTF-8");
+        doTestCharArrayAttributeOutput(out);
+        out.getWriter().flush();
+        assertEquals(expected, bytes.toString("UTF-8"));
+
+        out.reset(new StringWriter(), "UTF-8");
+        out.startTag("a");
+        try {
+            out.attribute("x", new char[2], 1, 2);
+            fail("Expected IndexOutOfBoundsException.");
+        } catch (IndexOutOfBoundsException exception) {
+            // as expected
+        }
+        assertEquals(XMLEventListenerStates.START_TAG_OPEN, out.getState());
+    }
+
+    private void doTestCharArrayAttributeOutput(XMLOutputter out) throws IOException {
+        char[] ch = "--<caf\u00e9>1\"2".toCharArray();
+        out.startTag("a");
+        out.attribute("x", ch, 2, 6);
+        out.attribute(new XMLName("y"), ch, 8, 3);
+        out.attribute("z", new StringBuilder());
+        out.attribute(new XMLName("x"), new StringBuilder("&"));
+        out.endTag();
+    }
+
+    /**
+     * Performs all tests that check that pre-encoded names produce the same
+     * output as plain strings, both to a character stream and to a
+     * <code>UTF8XMLWriter</code>.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testXMLNameOutput() throws IOException {
+        XMLName a = new XMLName("a");
+        XMLName b = new XMLName("caf\u00e9");
+        XMLName id = new XMLName("id");
+        String expected = "<a id=\"1\">\n  <caf\u00e9 id=\"&lt;\"/>\n  <caf\u00e9>\n    <a/>\n    <b/>\n  </caf\u00e9>\n</a>";
+
+        StringWriter sw = new StringWriter();
+        doTestXMLNameOutput(new XMLOutputter(sw, "UTF-8"), a, b, id);
+        assertEquals(expected, sw.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLOutputter out = new XMLOutputter(new UTF8XMLWriter(bytes), "UTF-8");
+        doTestXMLNameOutput(out, a, b, id);
+        out.getWriter().flush();
+        assertEquals(expected, bytes.toString("UTF-8"));
+
+        assertEquals(b, new XMLName("caf\u00e9"));
+        assertEquals("caf\u00e9", b.toString());
+        try {
+            new XMLName("a b");
+            fail("new XMLName(\"a b\") should throw an InvalidXMLException.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        try {
+            new XMLName(null);
+            fail("new XMLName(null) should throw an IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+    }
+
+    private void doTestXMLNameOutput(XMLOutputter out, XMLName a, XMLName b, XMLName id) throws IOException {
+        out.setLineBreak(LineBreak.UNIX);
+        out.setIndentation("  ");
+        out.startTag(a);
+        out.attribute(id, "1");
+        out.startTag(b);
+        out.attribute(id, "<");
+        out.endTag();
+        out.startTag(b);
+        out.startTag("a");
+        out.endTag();
+        out.startTag("b");
+        out.endTag();
+        out.endTag(b.getName());
+        out.endTag();
+    }
+
+    /**
+     * Performs all tests that check that a custom escape policy causes the
+     * additional characters to be escaped in PCDATA and attribute values.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testEscapePolicyOutput() throws IOException {
+        reset();
+        _outputter.setEscapePolicy(EscapePolicy.escaping("/]"));
+        _outputter.startTag("a");
+        _outputter.attribute("href", "http://x/]]>");
+        _outputter.pcdata("</script> ]]>");
+        assertEquals("<a href=\"http:&#47;&#47;x&#47;&#93;&#93;&gt;\">&lt;&#47;script&gt; &#93;&#93;&gt;", _stringWriter.toString());
+
+        reset();
+        _outputter.setEscapePolicy(null);
+        assertEquals(EscapePolicy.DEFAULT, _outputter.getEscapePolicy());
+        _outputter.startTag("a");
+        _outputter.pcdata("a/b]");
+        assertEquals("<a>a/b]", _stringWriter.toString());
+
+        try {
+            EscapePolicy.escaping("\u00e9");
+            fail("EscapePolicy.escaping(String) should throw an IllegalArgumentException for non-ASCII characters.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+    }
+
+    /**
+     * Performs all tests that check that characters that are not allowed in
+     * XML are handled according to the invalid character policy.
+     *
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testInvalidCharacterPolicyOutput() throws IOException {
+        assertSame(InvalidCharacterPolicy.THROW, _outputter.getInvalidCharacterPolicy());
+        assertSame(EscapePolicy.DEFAULT, EscapePolicy.DEFAULT.withInvalidCharacterPolicy(InvalidCharacterPolicy.STRIP).withInvalidCharacterPolicy(InvalidCharacterPolicy.THROW));
+
+        for (String encoding : new String[] { "UTF-8", "US-ASCII" }) {
+            doTestInvalidCharacterPolicy(encoding, InvalidCharacterPolicy.STRIP, "abcdef");
+            doTestInvalidCharacterPolicy(encoding, InvalidCharacterPolicy.REPLACE_WITH_QUESTION_MARK, "a?b?c?d?e?f?");
+        }
+        doTestInvalidCharacterPolicy("UTF-8", InvalidCharacterPolicy.REPLACE, "a\ufffdb\ufffdc\ufffdd\ufffde\ufffdf\ufffd");
+        doTestInvalidCharacterPolicy("US-ASCII", InvalidCharacterPolicy.REPLACE, "a&#65533;b&#65533;c&#65533;d&#65533;e&#65533;f&#65533;");
+
+        // The escape policy is kept
+        reset();
+        _outputter.setEscapePolicy(EscapePolicy.escaping("/"));
+        _outputter.setInvalidCharacterPolicy(InvalidCharacterPolicy.STRIP);
+        assertEquals("/", _outputter.getEscapePolicy().getEscapedCharacters());
+        _outputter.setInvalidCharacterPolicy(null);
+        assertSame(InvalidCharacterPolicy.THROW, _outputter.getInvalidCharacterPolicy());
+
+        String[] invalid = { "a\u0001", "a\ud800b", "a\udc00", "\ufffe", "a\uffff" };
+        for (String text : invalid) {
+            reset();
+            _outputter.startTag("a");
+            try {
+                _outputter.pcdata(text);
+                fail("The text \"" + text + "\" should be considered invalid.");
+            } catch (InvalidXMLException exception) {
+                // as expected
+            }
+        }
+    }
+
+    @Test
+    public void testNameValidation() throws IOException {
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, "UTF-8");
+        assertNull(out.getNameValidation());
+
+        // Names are not checked by default
+        out.startTag("1a");
+        out.attribute("b c", "d");
+        assertEquals("<1a b c=\"d\"", sw.toString());
+
+        // Valid names are accepted, also when used again
+        sw = new StringWriter();
+        out = new XMLOutputter(sw, "UTF-8");
+        out.setNameValidation(NameRules.XML_1_0_FOURTH_EDITION);
+        assertSame(NameRules.XML_1_0_FOURTH_EDITION, out.getNameValidation());
+        out.startTag("r");
+        for (int i = 0; i < 2; i++) {
+            out.startTag("a");
+            out.attribute("b", "c");
+            out.attribute("d", new char[] { 'e' }, 0, 1);
+            out.attribute("f", true);
+            out.endTag();
+        }
+        assertEquals("<r><a b=\"c\" d=\"e\" f=\"true\"/><a b=\"c\" d=\"e\" f=\"true\"/>", sw.toString());
+
+        // Invalid names are rejected before anything is written
+        doTestNameValidation(out, sw, "1a", null);
+        doTestNameValidation(out, sw, "a", "b c");
+        doTestNameValidation(out, sw, "a", "");
+
+        // A name that is only valid under the fifth edition rules
+        String name = "\u2c00\u2c01";
+        doTestNameValidation(out, sw, name, null);
+        out.setNameValidation(NameRules.XML_1_0_FIFTH_EDITION);
+        out.startTag(name);
+        out.attribute(name, "x");
+        out.setNameValidation(NameRules.XML_1_0_FOURTH_EDITION);
+        doTestNameValidation(out, sw, "a", name);
+
+        // Switching validation off
+        out.setNameValidation(null);
+        out.attribute("b c", "d");
+
+        // An XMLName is checked against the rules it is constructed with
+        try {
+            new XMLName(name);
+            fail("The name \"" + name + "\" should be considered invalid.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        try {
+            new XMLName("1a", NameRules.XML_1_0_FIFTH_EDITION);
+            fail("The name \"1a\" should be considered invalid.");
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        try {
+            new XMLName("a", null);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException exception) {
+            // as expected
+        }
+        XMLName xmlName = new XMLName(name, NameRules.XML_1_0_FIFTH_EDITION);
+        out.setNameValidation(NameRules.XML_1_0_FIFTH_EDITION);
+        int length = sw.getBuffer().length();
+        out.startTag(xmlName);
+        out.attribute(xmlName, "y");
+        out.endTag();
+        assertEquals("><" + name + " " + name + "=\"y\"/>", sw.toString().substring(length));
+    }
+
+    private void doTestNameValidation(XMLOutputter out, StringWriter sw, String element, String attribute) throws IOException {
+        int length = sw.getBuffer().length();
+        try {
+            if (attribute == null) {
+                out.startTag(element);
+                fail("The element name \"" + element + "\" should be considered invalid.");
+            } else {
+                out.startTag(element);
+                length = sw.getBuffer().length();
+                out.attribute(attribute, "x");
+                fail("The attribute name \"" + attribute + "\" should be considered invalid.");
+            }
+        } catch (InvalidXMLException exception) {
+            // as expected
+        }
+        assertEquals(length, sw.getBuffer().length());
+        assertNotSame(XMLEventListenerStates.ERROR_STATE, out.getState());
+    }
+
+    @Test
+    public void testUnpairedSurrogateAtCallBoundary() throws IOException {
+        for (String encoding : new String[] { "UTF-8", "US-ASCII" }) {
+            String replacement = "UTF-8".equals(encoding) ? "\ufffd" : "&#65533;";
+            for (boolean utf8Writer : new boolean[] { false, true }) {
+                doTestUnpairedSurrogate(encoding, utf8Writer, InvalidCharacterPolicy.THROW, null);
+                doTestUnpairedSurrogate(encoding, utf8Writer, InvalidCharacterPolicy.STRIP, "");
+                doTestUnpairedSurrogate(encoding, utf8Writer, InvalidCharacterPolicy.REPLACE, replacement);
+                doTestUnpairedSurrogate(encoding, utf8Writer, InvalidCharacterPolicy.REPLACE_WITH_QUESTION_MARK, "?");
+            }
+        }
+    }
+
+    /**
+     * Writes a trailing high surrogate and a leading low surrogate in text and in attribute
+     * values, each in a call of its own, and checks that the invalid character policy is applied
+     * to them.
+     *
+     * @param encoding    the encoding of the outputter, not <code>null</code>.
+     * @param utf8Writer  flag that indicates whether to write to a <code>UTF8XMLWriter</code>.
+     * @param policy      the invalid character policy, not <code>null</code>.
+     * @param replacement the expected replacement of each surrogate, or <code>null</code> if the
+     *                    policy should throw.
+     * @throws IOException in case of an I/O error.
+     */
+    private void doTestUnpairedSurrogate(String encoding, boolean utf8Writer, InvalidCharacterPolicy policy, String replacement) throws IOException {
+        String[] texts = { "x\ud83d", "\ude00x" };
+        for (String text : texts) {
+            for (int method = 0; method < 4; method++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                StringWriter sw = new StringWriter();
+                XMLOutputter out = new XMLOutputter(utf8Writer ? new UTF8XMLWriter(bytes) : sw, encoding);
+                out.setInvalidCharacterPolicy(policy);
+                out.startTag("a");
+                String expected;
+                try {
+                    if (method == 0) {
+                        out.pcdata(text);
+                        expected = "<a>" + text.replaceAll("[\ud800-\udfff]", replacement) + "</a>";
+                    } else if (method == 1) {
+                        out.pcdata(text.toCharArray(), 0, text.length());
+                        expected = "<a>" + text.replaceAll("[\ud800-\udfff]", replacement) + "</a>";
+                    } else if (method == 2) {
+                        out.pcdata(new StringReader(text));
+                        expected = "<a>" + text.replaceAll("[\ud800-\udfff]", replacement) + "</a>";
+                    } else {
+                        out.attribute("b", text);
+                        expected = "<a b=\"" + text.replaceAll("[\ud800-\udfff]", replacement) + "\"/>";
+                    }
+                    if (replacement == null) {
+                        fail("The unpaired surrogate in \"" + text + "\" should be considered invalid.");
+                    }
+                } catch (InvalidXMLException exception) {
+                    if (replacement != null) {
+                        throw exception;
+                    }
+                    continue;
+                }
+                out.endTag();
+                out.getWriter().flush();
+                assertEquals(expected, utf8Writer ? bytes.toString("UTF-8") : sw.toString());
+            }
+        }
+    }
+
+    private void doTestInvalidCharacterPolicy(String encoding, InvalidCharacterPolicy policy, String expected) throws IOException {
+        String text = "a\u0001b\ud800c\udc00d\ufffee\uffff\ud83d\ude00f\u001f";
+        String pair = "US-ASCII".equals(encoding) ? "&#128512;" : "\ud83d\ude00";
+        int split = expected.indexOf('f');
+        String expectedText = expected.substring(0, split) + pair + expected.substring(split);
+        String expectedOutput = "<a b=\"" + expectedText + "\">" + expectedText + expectedText;
+
+        StringWriter sw = new StringWriter();
+        XMLOutputter out = new XMLOutputter(sw, encoding);
+        out.setInvalidCharacterPolicy(policy);
+        out.startTag("a");
+        out.attribute("b", text);
+        out.pcdata(text);
+        out.pcdata(text.toCharArray(), 0, text.length());
+        assertEquals(expectedOutput, sw.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out = new XMLOutputter(new UTF8XMLWriter(bytes), encoding);
+        out.setInvalidCharacterPolicy(policy);
+        out.startTag("a");
+        out.attribute("b", text);
+        out.pcdata(text);
+        out.pcdata(text.toCharArray(), 0, text.length());
+        out.getWriter().flush();
+        assertEquals(expectedOutput, bytes.toString("UTF-8"));
+    }
+
     /**
      * Performs all tests that check that indentation settings cause proper
      * output.
@@ -299,6 +1462,53 @@ public class OutputTest {
         assertEquals(expected, sw.toString());
     }
 
+    /**
+     * Checks the indentation of deeply nested elements, also after the
+     * indentation is changed and when writing to a <code>UTF8XMLWriter</code>.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    @Test
+    public void testDeepIndentation() throws IOException {
+        StringWriter sw = new StringWriter();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLOutputter[] outs = new XMLOutputter[] { new XMLOutputter(sw, "UTF-8"), new XMLOutputter(new UTF8XMLWriter(bytes), "UTF-8") };
+        StringBuilder expected = new StringBuilder();
+        for (XMLOutputter out : outs) {
+            out.setLineBreak(LineBreak.DOS);
+            out.setIndentation("\t");
+        }
+        for (int i = 0; i < 40; i++) {
+            if (i == 20) {
+                for (XMLOutputter out : outs) {
+                    out.setIndentation(" ");
+                }
+            }
+            if (i > 0) {
+                expected.append("\r\n");
+                for (int j = 0; j < i; j++) {
+                    expected.append(i < 20 ? '\t' : ' ');
+                }
+            }
+            expected.append(i < 39 ? "<e>" : "<e/>");
+            for (XMLOutputter out : outs) {
+                out.startTag("e");
+            }
+        }
+        for (int i = 38; i >= 0; i--) {
+            expected.append("\r\n");
+            for (int j = 0; j < i; j++) {
+                expected.append(' ');
+            }
+            expected.append("</e>");
+        }
+        for (XMLOutputter out : outs) {
+            out.endDocument();
+        }
+        assertEquals(expected.toString(), sw.toString());
+        assertEquals(expected.toString(), bytes.toString("UTF-8"));
+    }
+
     private void doTestIndentation(String indent) throws IOException {
 
         String[] encodings = new String[] { "UTF-8", "US-ASCII" };
@@ -0,0 +1,132 @@
+// See the COPYRIGHT.txt file for copyright and license information
+package org.znerd.xmlenc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests on the <code>UTF8XMLWriter</code> class.
+ */
+public class UTF8XMLWriterTest {
+
+    private static final String TEXT = "Caf\u00e9 \u20ac & <\u00fcber> \"quotes\" 'apostrophes' \ud83d\ude00 \u4e2d\u6587";
+
+    @Test
+    public void testConstructor() {
+        try {
+            new UTF8XMLWriter((ByteArrayOutputStream) null);
+            fail("UTF8XMLWriter(OutputStream) should throw an IllegalArgumentException if out == null.");
+        } catch (IllegalArgumentException iae) { /* as expected */
+        }
+
+        try {
+            new UTF8XMLWriter(new ByteArrayOutputStream(), UTF8XMLWriter.MIN_BUFFER_SIZE - 1);
+            fail("UTF8XMLWriter(OutputStream,int) should throw an IllegalArgumentException if the buffer is too small.");
+        } catch (IllegalArgumentException iae) { /* as expected */
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UTF8XMLWriter writer = new UTF8XMLWriter(bytes);
+        writer.write(TEXT);
+        writer.write(TEXT.toCharArray(), 0, TEXT.length());
+        for (int i = 0; i < TEXT.length(); i++) {
+            writer.write(TEXT.charAt(i));
+        }
+        writer.flush();
+        assertArrayEquals((TEXT + TEXT + TEXT).getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+    }
+
+    @Test
+    public void testSplitSurrogatePair() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UTF8XMLWriter writer = new UTF8XMLWriter(bytes);
+        char[] pair = "\ud83d\ude00".toCharArray();
+        writer.write(pair, 0, 1);
+        writer.write(pair, 1, 1);
+        writer.flush();
+        assertArrayEquals("\ud83d\ude00".getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+    }
+
+    @Test
+    public void testUnpairedSurrogates() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UTF8XMLWriter writer = new UTF8XMLWriter(bytes);
+        writer.write("a\ude00b\ud83dc");
+        writer.write('\ud83d');
+        writer.close();
+        assertEquals("a?b?c?", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOutputter() throws IOException {
+        doTestOutputter("UTF-8", UTF8XMLWriter.DEFAULT_BUFFER_SIZE, false);
+        doTestOutputter("UTF-8", UTF8XMLWriter.MIN_BUFFER_SIZE, false);
+        doTestOutputter("UTF-8", UTF8XMLWriter.MIN_BUFFER_SIZE, true);
+        doTestOutputter("US-ASCII", UTF8XMLWriter.MIN_BUFFER_SIZE, false);
+    }
+
+    /**
+     * Checks that an outputter writing to a <code>UTF8XMLWriter</code> produces
+     * the same output as one writing to a <code>StringWriter</code>.
+     *
+     * @param encoding   the encoding to pass to the outputter, not <code>null</code>.
+     * @param bufferSize the size of the byte buffer.
+     * @param channel    flag that indicates whether to write to a channel instead of a stream.
+     * @throws IOException in case of an I/O error.
+     */
+    private void doTestOutputter(String encoding, int bufferSize, boolean channel) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UTF8XMLWriter writer = channel ? new UTF8XMLWriter(Channels.newChannel(bytes), bufferSize) : new UTF8XMLWriter(bytes, bufferSize);
+        StringWriter expected = new StringWriter();
+
+        writeDocument(new XMLOutputter(writer, encoding));
+        writeDocument(new XMLOutputter(expected, encoding));
+
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private void writeDocument(XMLOutputter outputter) throws IOException {
+        outputter.declaration();
+        outputter.startTag("r\u00e9sum\u00e9");
+        outputter.attribute("title", TEXT);
+        outputter.setQuotationMark('\'');
+        outputter.attribute("quoted", TEXT);
+        for (int i = 0; i < 20; i++) {
+            outputter.startTag("p");
+            outputter.pcdata(TEXT);
+            char[] ch = TEXT.toCharArray();
+
+            // A surrogate pair is never split over two calls
+            int split = TEXT.indexOf('\ud83d');
+            outputter.pcdata(ch, 0, split);
+            outputter.pcdata(ch, split, ch.length - split);
+            outputter.endTag();
+        }
+        outputter.endDocument();
+    }
+
+    @Test
+    public void testInvalidCharacter() throws IOException {
+        Writer writer = new UTF8XMLWriter(new ByteArrayOutputStream());
+        XMLOutputter outputter = new XMLOutputter(writer, "UTF-8");
+        outputter.startTag("a");
+        try {
+            outputter.pcdata("\u0001");
+            fail("XMLOutputter.pcdata(String) should throw an InvalidXMLException for character 0x1.");
+        } catch (InvalidXMLException ixe) { /* as expected */
+        }
+    }
+}
@@ -1,6 +1,7 @@
 // See the COPYRIGHT.txt file for copyright and license information
 package org.znerd.xmlenc;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import org.junit.Before;
@@ -37,6 +38,17 @@ public class XMLCheckerTest {
         doTestCheckName("-hhh", false);
         doTestCheckName("hhh:", true);
         doTestCheckName("hhh-", true);
+        doTestCheckName("\u00e9t\u00e9", true);
+        doTestCheckName("\u0438\u043c\u044f", true);
+        doTestCheckName("\u540d\u524d", true);
+        doTestCheckName("\u3007\u3005", true);
+        doTestCheckName("\u3005\u3007", false);
+        doTestCheckName("a\u0300\u0661\u00b7", true);
+        doTestCheckName("\u0661a", false);
+        doTestCheckName("a\u00d7", false);
+        doTestCheckName("\uac00\ud7a3", true);
+        doTestCheckName("a\ud7a4", false);
+        doTestCheckName("a\uffff", false);
     }
 
     private void doTestCheckName(String name, boolean okay) {
@@ -52,5 +64,130 @@ public class XMLCheckerTest {
                 fail("The string \"" + name + "\" should be considered valid for the \"" + production + "\" production.");
             }
         }
+
+        try {
+            XMLChecker.checkName(new StringBuilder(name));
+            if (!okay) {
+                fail("The character sequence \"" + name + "\" should be considered invalid for the \"" + production + "\" production.");
+            }
+        } catch (InvalidXMLException exception) {
+            if (okay) {
+                fail("The character sequence \"" + name + "\" should be considered valid for the \"" + production + "\" production.");
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfInvalidName() {
+        doTestIndexOfInvalidName("", 0);
+        doTestIndexOfInvalidName("a", -1);
+        doTestIndexOfInvalidName("h:tm", -1);
+        doTestIndexOfInvalidName("-hhh", 0);
+        doTestIndexOfInvalidName("HT L", 2);
+        doTestIndexOfInvalidName("hhh&", 3);
+        doTestIndexOfInvalidName("a\u0300\u00d7", 2);
+    }
+
+    private void doTestIndexOfInvalidName(String name, int expected) {
+        assertEquals(expected, XMLChecker.indexOfInvalidName(name));
+        assertEquals(expected < 0, XMLChecker.isName(name));
+
+        // The index into a character array includes the start offset
+        char[] ch = ("-&" + name + " ").toCharArray();
+        assertEquals(expected < 0 ? -1 : expected + 2, XMLChecker.indexOfInvalidName(ch, 2, name.length()));
+        try {
+            XMLChecker.checkName(ch, 2, name.length());
+            if (expected >= 0) {
+                fail("The characters \"" + name + "\" should be considered invalid for the \"Name\" production.");
+            }
+        } catch (InvalidXMLException exception) {
+            if (expected < 0) {
+                fail("The characters \"" + name + "\" should be considered valid for the \"Name\" production.");
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfInvalidLiteral() {
+        doTestIndexOfInvalidLiteral("\"\"", 2, 2);
+        doTestIndexOfInvalidLiteral("\"a\"", -1, -1);
+        doTestIndexOfInvalidLiteral("'a'", -1, -1);
+        doTestIndexOfInvalidLiteral("a\"a\"", 0, 0);
+        doTestIndexOfInvalidLiteral("\"ab'", 3, 3);
+        doTestIndexOfInvalidLiteral("\"a\"b\"", 2, 2);
+        doTestIndexOfInvalidLiteral("'a'b'", 2, 2);
+        doTestIndexOfInvalidLiteral("\"a'b\"", -1, -1);
+        doTestIndexOfInvalidLiteral("\"-//W3C//DTD XHTML 1.0 Strict//EN\"", -1, -1);
+        doTestIndexOfInvalidLiteral("\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\"", -1, -1);
+        doTestIndexOfInvalidLiteral("\"a&b\"", -1, 2);
+        doTestIndexOfInvalidLiteral("\"a\tb\"", -1, 2);
+        doTestIndexOfInvalidLiteral("\"\u00e9\u0661\"", -1, -1);
+    }
+
+    private void doTestIndexOfInvalidLiteral(String literal, int expectedSystem, int expectedPubid) {
+        assertEquals(expectedSystem, XMLChecker.indexOfInvalidSystemLiteral(literal));
+        assertEquals(expectedPubid, XMLChecker.indexOfInvalidPubidLiteral(literal));
+        assertEquals(expectedSystem < 0, XMLChecker.isSystemLiteral(literal));
+        assertEquals(expectedPubid < 0, XMLChecker.isPubidLiteral(literal));
+
+        // The index into a character array includes the start offset
+        char[] ch = ("<'" + literal + "'").toCharArray();
+        assertEquals(expectedSystem < 0 ? -1 : expectedSystem + 2, XMLChecker.indexOfInvalidSystemLiteral(ch, 2, literal.length()));
+        assertEquals(expectedPubid < 0 ? -1 : expectedPubid + 2, XMLChecker.indexOfInvalidPubidLiteral(ch, 2, literal.length()));
+        try {
+            XMLChecker.checkPubidLiteral(ch, 2, literal.length());
+            if (expectedPubid >= 0) {
+                fail("The characters " + literal + " should be considered invalid for the \"PubidLiteral\" production.");
+            }
+        } catch (InvalidXMLException exception) {
+            if (expectedPubid < 0) {
+                fail("The characters " + literal + " should be considered valid for the \"PubidLiteral\" production.");
+            }
+        }
+    }
+
+    @Test
+    public void testNameRules() {
+        doTestNameRules("html", true, true);
+        doTestNameRules("-html", false, false);
+        doTestNameRules("\u00e9t\u00e9", true, true);
+        doTestNameRules("\u540d\u524d", true, true);
+        doTestNameRules("\u0e01\u0e33", true, true);
+        doTestNameRules("a\u00d7", false, false);
+        doTestNameRules("a\u037e", false, false);
+        doTestNameRules("a\ufffe", false, false);
+        doTestNameRules("\u01f6", false, true);
+        doTestNameRules("\u2070", false, true);
+        doTestNameRules("a\u203f", false, true);
+        doTestNameRules("\ud840\udc00", false, true);
+        doTestNameRules("a\udb7f\udfff", false, true);
+        doTestNameRules("a\udb80\udc00", false, false);
+        doTestNameRules("a\ud840", false, false);
+        doTestNameRules("\udc00a", false, false);
+
+        assertEquals(3, XMLChecker.indexOfInvalidName("a\ud840\udc00\u037e", NameRules.XML_1_0_FIFTH_EDITION));
+        assertEquals(1, XMLChecker.indexOfInvalidName("a\ud840\udc00\u037e", NameRules.XML_1_0_FOURTH_EDITION));
+        assertEquals(0, XMLChecker.indexOfInvalidName("", NameRules.XML_1_1));
+        assertEquals(4, XMLChecker.indexOfInvalidName("-&\u0e01\u0e33 ".toCharArray(), 2, 3, NameRules.XML_1_1));
+    }
+
+    private void doTestNameRules(String name, boolean fourthEdition, boolean fifthEdition) {
+        assertEquals(fourthEdition, XMLChecker.isName(name, NameRules.XML_1_0_FOURTH_EDITION));
+        assertEquals(fourthEdition, XMLChecker.isName(name));
+        for (NameRules rules : new NameRules[] { NameRules.XML_1_0_FIFTH_EDITION, NameRules.XML_1_1 }) {
+            assertEquals(fifthEdition, XMLChecker.isName(name, rules));
+            char[] ch = ("-" + name + " ").toCharArray();
+            assertEquals(fifthEdition, XMLChecker.indexOfInvalidName(ch, 1, name.length(), rules) < 0);
+            try {
+                XMLChecker.checkName(name, rules);
+                if (!fifthEdition) {
+                    fail("The string \"" + name + "\" should be considered invalid for the \"Name\" production of " + rules + '.');
+                }
+            } catch (InvalidXMLException exception) {
+                if (fifthEdition) {
+                    fail("The string \"" + name + "\" should be considered valid for the \"Name\" production of " + rules + '.');
+                }
+            }
+        }
     }
 }
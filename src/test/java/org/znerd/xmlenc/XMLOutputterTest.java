@@ -413,7 +413,7 @@ public class XMLOutputterTest {
         reset();
 
         try {
-            _outputter.startTag(null);
+            _outputter.startTag((String) null);
             fail("XMLOutputter.startTag(null) should throw an IllegalArgumentException.");
         } catch (IllegalArgumentException iae) { /* as expected */
         }
@@ -490,19 +490,19 @@ public class XMLOutputterTest {
         _outputter.startTag("book");
 
         try {
-            _outputter.attribute(null, null);
+            _outputter.attribute((String) null, (String) null);
             fail("XMLOutputter.attribute(String,String) should throw an IllegalArgumentException if key == null && value == null.");
         } catch (IllegalArgumentException iae) { /* as expected */
         }
 
         try {
-            _outputter.attribute("key", null);
+            _outputter.attribute("key", (String) null);
             fail("XMLOutputter.attribute(String,String) should throw an IllegalArgumentException if value == null.");
         } catch (IllegalArgumentException iae) { /* as expected */
         }
 
         try {
-            _outputter.attribute(null, "value");
+            _outputter.attribute((String) null, "value");
             fail("XMLOutputter.attribute(String,String) should throw an IllegalArgumentException if key == null.");
         } catch (IllegalArgumentException iae) { /* as expected */
         }
@@ -564,7 +564,7 @@ public class XMLOutputterTest {
         _outputter.startTag("book");
 
         try {
-            _outputter.pcdata(null);
+            _outputter.pcdata((String) null);
             fail("XMLOutputter.pcdata(String) should throw an IllegalArgumentException if text == null.");
         } catch (IllegalArgumentException ise) { /* as expected */
         }